@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * This class contains the Java Flight Recorder events of the engine; it must only be used through EngineEvents, which loads it by reflection when JFR is
+ * available in the running JVM.
+ * <p/>
+ * This class is in its own source set because it requires the jdk.jfr API; the rest of the library only requires Java 8.
+ */
+final class JfrEngineEvents implements EngineEvents.Emitter {
+
+    // the event types, used to check whether an event is enabled without creating it
+    private static final EventType _VALIDATION_TYPE = EventType.getEventType(ValidationEvent.class);
+    private static final EventType _RULE_TYPE = EventType.getEventType(RuleExecutionEvent.class);
+    private static final EventType _UPDATE_TYPE = EventType.getEventType(EngineUpdateEvent.class);
+    private static final EventType _CONTEXT_TYPE = EventType.getEventType(ContextEvaluationEvent.class);
+
+    /**
+     * Constructor, only called (by reflection) from EngineEvents.
+     */
+    JfrEngineEvents() {
+    }
+
+    @Override
+    public Object validationStarted() {
+        if (!_VALIDATION_TYPE.isEnabled())
+            return null;
+        ValidationEvent event = new ValidationEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void validationDone(Object obj, String rootLevel, int numRules, int numFailures) {
+        ValidationEvent event = (ValidationEvent)obj;
+        event.end();
+        if (event.shouldCommit()) {
+            event.rootLevel = rootLevel;
+            event.numRules = numRules;
+            event.numFailures = numFailures;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object ruleStarted() {
+        if (!_RULE_TYPE.isEnabled())
+            return null;
+        RuleExecutionEvent event = new RuleExecutionEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void ruleDone(Object obj, String ruleId, String javaPath) {
+        RuleExecutionEvent event = (RuleExecutionEvent)obj;
+        event.end();
+        if (event.shouldCommit()) {
+            event.ruleId = ruleId;
+            event.javaPath = javaPath;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object updateStarted() {
+        if (!_UPDATE_TYPE.isEnabled())
+            return null;
+        EngineUpdateEvent event = new EngineUpdateEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void updateDone(Object obj, String operation, String id) {
+        EngineUpdateEvent event = (EngineUpdateEvent)obj;
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.id = id;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object contextStarted() {
+        if (!_CONTEXT_TYPE.isEnabled())
+            return null;
+        ContextEvaluationEvent event = new ContextEvaluationEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void contextDone(Object obj, String validatorId, String contextKey) {
+        ContextEvaluationEvent event = (ContextEvaluationEvent)obj;
+        event.end();
+        if (event.shouldCommit()) {
+            event.validatorId = validatorId;
+            event.contextKey = contextKey;
+            event.commit();
+        }
+    }
+
+    @Name("com.imsweb.validation.Validation")
+    @Label("Validation")
+    @Description("Validation of a validatable")
+    @Category({"Validation Engine"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ValidationEvent extends Event {
+
+        @Label("Root Level")
+        String rootLevel;
+
+        @Label("Executed Rules")
+        int numRules;
+
+        @Label("Failures")
+        int numFailures;
+    }
+
+    @Name("com.imsweb.validation.SlowRule")
+    @Label("Slow Rule")
+    @Description("Execution of a rule that took longer than the threshold")
+    @Category({"Validation Engine"})
+    @Enabled(false)
+    @StackTrace(false)
+    @Threshold("10 ms")
+    static final class RuleExecutionEvent extends Event {
+
+        @Label("Rule ID")
+        String ruleId;
+
+        @Label("Java Path")
+        String javaPath;
+    }
+
+    @Name("com.imsweb.validation.EngineUpdate")
+    @Label("Engine Update")
+    @Description("Initialization or update of the engine, including the compilation of the rules and conditions")
+    @Category({"Validation Engine"})
+    @Enabled(false)
+    static final class EngineUpdateEvent extends Event {
+
+        @Label("Operation")
+        String operation;
+
+        @Label("ID")
+        String id;
+    }
+
+    @Name("com.imsweb.validation.ContextEvaluation")
+    @Label("Context Evaluation")
+    @Description("Evaluation of a context entry")
+    @Category({"Validation Engine"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ContextEvaluationEvent extends Event {
+
+        @Label("Validator ID")
+        String validatorId;
+
+        @Label("Context Key")
+        String contextKey;
+    }
+}
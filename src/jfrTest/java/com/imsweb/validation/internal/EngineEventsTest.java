@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.imsweb.validation.TestingUtils;
+import com.imsweb.validation.ValidationEngine;
+import com.imsweb.validation.entities.RuleFailure;
+import com.imsweb.validation.entities.SimpleMapValidatable;
+import com.imsweb.validation.entities.Validatable;
+
+public class EngineEventsTest {
+
+    @Before
+    public void setUp() throws Exception {
+        TestingUtils.init();
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        Map<String, Object> entity = new HashMap<>();
+        entity.put("prop", "1");
+        Validatable validatable = new SimpleMapValidatable("ID", "level1", entity);
+
+        File file = new File(TestingUtils.TMP_DIR, "validation-events.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.imsweb.validation.Validation");
+            recording.enable("com.imsweb.validation.SlowRule").withThreshold(Duration.ZERO);
+            recording.enable("com.imsweb.validation.EngineUpdate");
+            recording.start();
+            TestingUtils.loadValidator("fake-validator");
+            Collection<RuleFailure> failures = ValidationEngine.validate(validatable);
+            recording.stop();
+            recording.dump(file.toPath());
+
+            Map<String, Integer> counts = new HashMap<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                counts.merge(event.getEventType().getName(), 1, Integer::sum);
+                if (event.getEventType().getName().equals("com.imsweb.validation.Validation")) {
+                    Assert.assertEquals("level1", event.getString("rootLevel"));
+                    Assert.assertTrue(event.getInt("numRules") > 0);
+                    Assert.assertEquals(failures.size(), event.getInt("numFailures"));
+                }
+                if (event.getEventType().getName().equals("com.imsweb.validation.EngineUpdate"))
+                    Assert.assertEquals("fake-validator", event.getString("id"));
+            }
+            Assert.assertEquals(Integer.valueOf(1), counts.get("com.imsweb.validation.Validation"));
+            Assert.assertEquals(Integer.valueOf(1), counts.get("com.imsweb.validation.EngineUpdate"));
+            Assert.assertTrue(counts.get("com.imsweb.validation.SlowRule") > 0);
+            Assert.assertNull(counts.get("com.imsweb.validation.ContextEvaluation")); // not enabled
+        }
+        finally {
+            if (file.exists() && !file.delete())
+                file.deleteOnExit();
+        }
+
+        TestingUtils.unloadValidator("fake-validator");
+    }
+}
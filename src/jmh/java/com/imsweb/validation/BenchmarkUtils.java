@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.imsweb.validation.entities.ContextEntry;
+import com.imsweb.validation.entities.Rule;
+import com.imsweb.validation.entities.Validator;
+import com.imsweb.validation.functions.MetafileContextFunctions;
+
+/**
+ * Utility methods shared by the benchmarks; the generated validators and records are deterministic, so the results of two runs can be compared.
+ */
+public final class BenchmarkUtils {
+
+    // the expressions of the generated rules, the first parameter is the alias, the second one the index of the rule
+    private static final String[] _EXPRESSIONS = {
+            "return %1$s.primarySite != 'C%2$03d'",
+            "if (!Functions.GEN_INLIST(%1$s.sex, '1-4,9')) return false; return true",
+            "return Functions.GEN_VAL(%1$s.ageAtDx) <= 120 + %2$d",
+            "return %1$s.dateOfDiagnosis == null || %1$s.dateOfDiagnosis.length() == 8",
+            "return !Context.BM_SITES.contains(%1$s.primarySite) || %1$s.histologyIcdO3 != '%2$04d'",
+            "def year = Functions.GEN_VAL(%1$s.dateOfDiagnosis?.substring(0, 4)); return year == 0 || year > 1900 + (%2$d %% 50)"
+    };
+
+    /**
+     * Private constructor, no instanciation...
+     */
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * Initializes the services and the metafile functions (if they are not initialized yet).
+     */
+    public static synchronized void initialize() {
+        if (!ValidatorServices.isInitialized())
+            ValidatorServices.initialize(new ValidatorServices());
+        if (!ValidatorContextFunctions.isInitialized())
+            ValidatorContextFunctions.initialize(new MetafileContextFunctions());
+    }
+
+    /**
+     * Creates a validator with the requested number of rules on the requested java-path, and a context used by some of them.
+     * @param id validator ID
+     * @param javaPath java-path of the rules
+     * @param numRules number of rules
+     * @return the validator
+     * @throws ConstructionException if a rule can't be created
+     */
+    public static Validator createValidator(String id, String javaPath, int numRules) throws ConstructionException {
+        String alias = ValidatorServices.getInstance().getAliasForJavaPath(javaPath);
+
+        Validator v = new Validator();
+        v.setId(id);
+
+        ContextEntry entry = new ContextEntry();
+        entry.setKey("BM_SITES");
+        entry.setType("java");
+        entry.setExpression(createContextExpression(100));
+        entry.setValidator(v);
+        v.getRawContext().add(entry);
+
+        for (int i = 0; i < numRules; i++) {
+            Rule r = new Rule();
+            r.setId(id + "-rule" + i);
+            r.setJavaPath(javaPath);
+            r.setMessage("Message for rule " + i);
+            r.setExpression(String.format(_EXPRESSIONS[i % _EXPRESSIONS.length], alias, i));
+            r.setValidator(v);
+            v.getRules().add(r);
+        }
+
+        return v;
+    }
+
+    /**
+     * Creates a Java context expression representing a list of sites.
+     * @param numSites number of sites
+     * @return the context expression
+     */
+    public static String createContextExpression(int numSites) {
+        StringBuilder buf = new StringBuilder("[");
+        for (int i = 0; i < numSites; i++)
+            buf.append(i == 0 ? "" : ", ").append("'C").append(String.format("%03d", i % 1000)).append("'");
+        return buf.append("]").toString();
+    }
+
+    /**
+     * Creates a NAACCR-like record.
+     * @param i index of the record (used to vary the values)
+     * @return the record
+     */
+    public static Map<String, String> createRecord(int i) {
+        Map<String, String> rec = new HashMap<>();
+        rec.put("primarySite", String.format("C%03d", i % 100));
+        rec.put("sex", String.valueOf(i % 5 + 1));
+        rec.put("ageAtDx", String.valueOf(i % 110));
+        rec.put("dateOfDiagnosis", String.format("%04d%02d%02d", 1990 + i % 30, i % 12 + 1, i % 28 + 1));
+        rec.put("histologyIcdO3", String.format("%04d", 8000 + i % 100));
+        rec.put("behaviorIcdO3", String.valueOf(i % 4));
+        return rec;
+    }
+
+    /**
+     * Creates a patient set (several NAACCR-like records).
+     * @param i index of the patient set (used to vary the values)
+     * @param numRecords number of records
+     * @return the records
+     */
+    public static List<Map<String, String>> createPatientSet(int i, int numRecords) {
+        List<Map<String, String>> recs = new ArrayList<>();
+        for (int j = 0; j < numRecords; j++)
+            recs.add(createRecord(i * numRecords + j));
+        return recs;
+    }
+}
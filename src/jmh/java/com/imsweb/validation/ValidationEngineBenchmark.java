@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.imsweb.validation.entities.RuleFailure;
+import com.imsweb.validation.entities.SimpleMapValidatable;
+import com.imsweb.validation.entities.SimpleNaaccrLinesValidatable;
+import com.imsweb.validation.entities.Validatable;
+
+/**
+ * Benchmarks the validation of records, on a single thread and on several threads.
+ * <p/>
+ * The number of rules is a parameter; a few hundred rules is typical of the SEER and NAACCR edits. The rules are compiled in their own classes, or fused in one
+ * class per java-path (see ValidationEngine.enableFusedCompilation()).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationEngineBenchmark {
+
+    // the number of records in each patient set
+    private static final int _NUM_RECORDS_PER_PATIENT = 3;
+
+    // the number of validatables of a batch
+    private static final int _BATCH_SIZE = 1000;
+
+    @Param({"100", "500"})
+    public int numRules;
+
+    @Param({"false", "true"})
+    public boolean fusedCompilation;
+
+    // whether or not the expressions are compiled with the time budget check (see ValidationEngine.enableRuleInterruption())
+    @Param({"false", "true"})
+    public boolean ruleInterruption;
+
+    private Validatable _mapValidatable;
+
+    private Validatable _linesValidatable;
+
+    private List<Validatable> _batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ConstructionException {
+        BenchmarkUtils.initialize();
+        if (fusedCompilation)
+            ValidationEngine.enableFusedCompilation();
+        else
+            ValidationEngine.disableFusedCompilation();
+        if (ruleInterruption)
+            ValidationEngine.enableRuleInterruption();
+        else
+            ValidationEngine.disableRuleInterruption();
+        ValidationEngine.initialize(Arrays.asList(BenchmarkUtils.createValidator("bm-record", "record", numRules),
+                BenchmarkUtils.createValidator("bm-lines", "lines.line", numRules)));
+
+        _mapValidatable = new SimpleMapValidatable("record", new HashMap<>(BenchmarkUtils.createRecord(1)));
+        _linesValidatable = new SimpleNaaccrLinesValidatable(BenchmarkUtils.createPatientSet(1, _NUM_RECORDS_PER_PATIENT));
+
+        _batch = new ArrayList<>();
+        for (int i = 0; i < _BATCH_SIZE; i++)
+            _batch.add(new SimpleNaaccrLinesValidatable(BenchmarkUtils.createPatientSet(i, _NUM_RECORDS_PER_PATIENT)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ValidationEngine.uninitialize();
+        ValidationEngine.disableFusedCompilation();
+        ValidationEngine.disableRuleInterruption();
+    }
+
+    @Benchmark
+    public Collection<RuleFailure> validateMap() throws ValidationException {
+        return ValidationEngine.validate(_mapValidatable);
+    }
+
+    @Benchmark
+    public Collection<RuleFailure> validateNaaccrLines() throws ValidationException {
+        return ValidationEngine.validate(_linesValidatable);
+    }
+
+    // the same benchmark as validateNaaccrLines(), but with as many threads as there are processors; the throughput should scale with the threads
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Collection<RuleFailure> validateNaaccrLinesConcurrently() throws ValidationException {
+        return ValidationEngine.validate(_linesValidatable);
+    }
+
+    /**
+     * The state of the batch benchmark; the pool is created once per trial.
+     */
+    @State(Scope.Benchmark)
+    public static class BatchState {
+
+        @Param({"1", "2", "4", "8"})
+        public int parallelism;
+
+        private ForkJoinPool _pool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            _pool = new ForkJoinPool(parallelism);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            _pool.shutdown();
+        }
+    }
+
+    // the number of operations is the number of batches, the number of validatables per second is _BATCH_SIZE times the reported throughput
+    @Benchmark
+    public List<Collection<RuleFailure>> validateBatch(BatchState state) throws ValidationException {
+        return ValidationEngine.validateBatch(_batch, state._pool);
+    }
+}
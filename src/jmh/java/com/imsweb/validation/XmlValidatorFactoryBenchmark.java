@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.imsweb.validation.entities.Validator;
+
+/**
+ * Benchmarks the loading of large XML validators (the XML is generated once and kept in memory, so the disk access is not measured).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlValidatorFactoryBenchmark {
+
+    @Param({"500", "2000"})
+    public int numRules;
+
+    private byte[] _xml;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ConstructionException, IOException {
+        BenchmarkUtils.initialize();
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        XmlValidatorFactory.writeValidatorToXml(BenchmarkUtils.createValidator("bm-xml", "lines.line", numRules), os);
+        _xml = os.toByteArray();
+    }
+
+    @Benchmark
+    public Validator loadValidatorFromXml() throws IOException {
+        return XmlValidatorFactory.loadValidatorFromXml(new ByteArrayInputStream(_xml));
+    }
+}
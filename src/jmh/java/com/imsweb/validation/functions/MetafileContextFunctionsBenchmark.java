@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import groovy.lang.Binding;
+
+import com.imsweb.validation.BenchmarkUtils;
+
+/**
+ * Benchmarks the metafile primitives that are called the most by the translated edits.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MetafileContextFunctionsBenchmark {
+
+    private MetafileContextFunctions _functions;
+
+    private Binding _binding;
+
+    private List<List<Object>> _table;
+
+    private List<List<Object>> _index;
+
+    private Map<Integer, char[]> _tableVars;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkUtils.initialize();
+
+        _functions = new MetafileContextFunctions();
+        _binding = new Binding();
+
+        // same table as the unit tests, but with more rows; the index is sorted by site
+        _table = new ArrayList<>();
+        _table.add(Arrays.asList("GPCODE", "GPNAME", "SITELOW", "SITEHIGH"));
+        _index = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            _table.add(Arrays.asList(String.valueOf(i), "Group " + i, String.format("C%02d0", i), String.format("C%02d9", i)));
+            _index.add(Arrays.asList(String.format("C%02d0", i), i + 1));
+        }
+        _tableVars = new HashMap<>();
+        for (int i = 0; i < 4; i++)
+            _tableVars.put(i, new char[20]);
+    }
+
+    @Benchmark
+    public boolean inList() {
+        return _functions.GEN_INLIST("101", "1,10-13,101-111");
+    }
+
+    @Benchmark
+    public boolean match() {
+        return _functions.GEN_MATCH("123", "(\\d\\d\\d)");
+    }
+
+    @Benchmark
+    public boolean lookupWithIndex() {
+        return _functions.GEN_LOOKUP("C440", _table, _index, _tableVars);
+    }
+
+    @Benchmark
+    public boolean lookupWithoutIndex() {
+        return _functions.GEN_LOOKUP("44Group 44C440C449", _table, null, _tableVars);
+    }
+
+    @Benchmark
+    public boolean validDate() {
+        _functions.GEN_RESET_LOCAL_CONTEXT(_binding);
+        return _functions.GEN_VALID_DATE_IOP(_binding, "20000615");
+    }
+
+    @Benchmark
+    public int compareDates() {
+        _functions.GEN_RESET_LOCAL_CONTEXT(_binding);
+        return _functions.GEN_DATECMP_IOP(_binding, "20000615", "20000616", MetafileContextFunctions.DT_EXACT);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.imsweb.validation.BenchmarkUtils;
+import com.imsweb.validation.entities.SimpleNaaccrLinesValidatable;
+import com.imsweb.validation.entities.Validatable;
+
+/**
+ * Benchmarks the creation of the Groovy bindings; a binding is built for every validatable and every level of the validatables.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidatingProcessorBenchmark {
+
+    private ValidatingProcessor _processor;
+
+    private Validatable _validatable;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkUtils.initialize();
+
+        _processor = new ValidatingProcessor("lines");
+        _validatable = new SimpleNaaccrLinesValidatable(BenchmarkUtils.createPatientSet(1, 3));
+    }
+
+    @Benchmark
+    public void buildBinding(Blackhole bh) {
+        ValidatingBinding binding = _processor.buildBinding(_validatable);
+        bh.consume(binding.getVariable("lines"));
+        _processor.releaseBinding(binding);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal.context;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.imsweb.validation.BenchmarkUtils;
+import com.imsweb.validation.ConstructionException;
+
+/**
+ * Benchmarks the parsing of large Java contexts (lists and tables, the two most common types of context in the edits).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JavaContextParserBenchmark {
+
+    @Param({"1000", "10000"})
+    public int numEntries;
+
+    private String _listExpression;
+
+    private String _tableExpression;
+
+    private Map<String, Object> _context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _listExpression = BenchmarkUtils.createContextExpression(numEntries);
+
+        StringBuilder buf = new StringBuilder("[");
+        for (int i = 0; i < numEntries; i++)
+            buf.append(i == 0 ? "" : ", ").append("['").append(i).append("', 'C").append(String.format("%03d", i % 1000)).append("', ").append(i % 10).append("]");
+        _tableExpression = buf.append("]").toString();
+
+        _context = new HashMap<>();
+    }
+
+    @Benchmark
+    public Object parseList() throws ConstructionException {
+        return JavaContextParser.parseContext(_listExpression, _context);
+    }
+
+    @Benchmark
+    public Object parseTable() throws ConstructionException {
+        return JavaContextParser.parseContext(_tableExpression, _context);
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation;
+
+import com.imsweb.validation.entities.RuleFailure;
+
+/**
+ * A <code>FailureSink</code> receives the failures of a validation as they occur (see ValidationEngine.validate(Validatable, FailureSink)); this avoids
+ * collecting the failures when they are only written out or counted.
+ * <p/>
+ * The failures are reported in the same order as they would be returned by the other validate methods, on the thread calling the validate method.
+ * <p/>
+ * To avoid copying them, the properties of a reported failure are a read-only view of the properties of the validatable; that view is only valid during the
+ * call. A sink retaining the failure after the call must call its <b>detach()</b> method first, which copies the properties.
+ */
+@FunctionalInterface
+public interface FailureSink {
+
+    /**
+     * Called for each failure of the validation.
+     * @param failure reported failure, never null
+     */
+    void failureReported(RuleFailure failure);
+}
@@ -3,6 +3,11 @@
  */
 package com.imsweb.validation;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -11,15 +16,25 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -32,15 +47,27 @@ import com.imsweb.validation.entities.EditableValidator;
 import com.imsweb.validation.entities.EmbeddedSet;
 import com.imsweb.validation.entities.Rule;
 import com.imsweb.validation.entities.RuleFailure;
-import com.imsweb.validation.entities.RuleHistory;
 import com.imsweb.validation.entities.Validatable;
 import com.imsweb.validation.entities.Validator;
+import com.imsweb.validation.internal.BackgroundCompiler;
+import com.imsweb.validation.internal.BatchCompiler;
+import com.imsweb.validation.internal.CompiledScriptsCache;
+import com.imsweb.validation.internal.EngineEvents;
+import com.imsweb.validation.internal.EngineMetrics;
 import com.imsweb.validation.internal.ExecutableCondition;
 import com.imsweb.validation.internal.ExecutableRule;
+import com.imsweb.validation.internal.ExpressionAnalyzer;
+import com.imsweb.validation.internal.ForcedRulesCache;
 import com.imsweb.validation.internal.IterativeProcessor;
 import com.imsweb.validation.internal.Processor;
+import com.imsweb.validation.internal.RevalidationIndex;
+import com.imsweb.validation.internal.RuleOrderer;
+import com.imsweb.validation.internal.RuleWatchdog;
 import com.imsweb.validation.internal.ValidatingContext;
+import com.imsweb.validation.internal.ValidatingIndexes;
 import com.imsweb.validation.internal.ValidatingProcessor;
+import com.imsweb.validation.internal.WarmUpDataGenerator;
+import com.imsweb.validation.internal.callable.BatchValidatingTask;
 import com.imsweb.validation.internal.callable.RuleCompilingCallable;
 
 /**
@@ -141,34 +168,20 @@ public final class ValidationEngine {
     public static final String EXCEPTION_MSG = "Rule failed with exception";
 
     /**
-     * Map of <code>Validator</code>s, keyed by validator ID
-     */
-    private static Map<String, Validator> _VALIDATORS = new ConcurrentHashMap<>();
-
-    /**
-     * Map of <code>Processor</code>s, keyed by java-path root
-     */
-    private static Map<String, ValidatingProcessor> _PROCESSORS = new ConcurrentHashMap<>();
-
-    /**
-     * Currently used processor roots (for SEER, that would be "lines", for DMS it would be "patient", etc...)
-     */
-    private static Map<String, Object> _PROCESSOR_ROOTS = new ConcurrentHashMap<>();
-
-    /**
-     * Map of <code>ExecutableRule</code>s, keyed by rule internal ID
+     * Message used when a rule exceeded its time budget (see ValidatingContext.setRuleTimeBudget()).
      */
-    private static Map<Long, ExecutableRule> _EXECUTABLE_RULES = new ConcurrentHashMap<>();
+    public static final String TIMEOUT_MSG = "Rule exceeded its time budget";
 
     /**
-     * Map of <code>ExecutableCondition</code>s, keyed by condition internal ID
+     * Name used to register the management interface of the engine (see registerMXBean())
      */
-    private static Map<Long, ExecutableCondition> _EXECUTABLE_CONDITIONS = new ConcurrentHashMap<>();
+    public static final String MXBEAN_NAME = "com.imsweb.validation:type=ValidationEngine";
 
     /**
-     * Compiled contexts, keyed by validator internal ID and context ID
+     * Current state of the engine (validators, processors, executable rules and conditions, contexts); a state is never modified once it has been published:
+     * the methods changing the engine build a new state on the side and replace this reference, so the methods using the engine don't need any lock.
      */
-    private static Map<Long, Map<String, Object>> _CONTEXTS = new ConcurrentHashMap<>();
+    private static volatile EngineState _STATE = new EngineState();
 
     /**
      * Possible statuses for the engine
@@ -191,7 +204,7 @@ public final class ValidationEngine {
     /**
      * Current engine status
      */
-    private static ValidationEngineStatus _STATUS = ValidationEngineStatus.NOT_INITIALIZED;
+    private static volatile ValidationEngineStatus _STATUS = ValidationEngineStatus.NOT_INITIALIZED;
 
     /**
      * The number of threads to use to compile the rules (see enableMultiThreadedCompilation() method)
@@ -199,10 +212,51 @@ public final class ValidationEngine {
     private static int _NUM_COMPILER_THREADS = 1;
 
     /**
-     * Private lock controlling access to the state of the engine; all methods using the state of the engine (including the validate methods) need to acquire a read lock;
-     * all methods changing the state of the engine need to acquire a write lock.
+     * Whether or not the expressions of a validator are compiled all at once (see enableBatchCompilation() method)
+     */
+    private static volatile boolean _BATCH_COMPILATION = true;
+
+    /**
+     * Whether or not the rules of each java-path are compiled in a single fused class (see enableFusedCompilation() method)
+     */
+    private static volatile boolean _FUSED_COMPILATION = false;
+
+    /**
+     * Whether or not the expressions are compiled so they can be stopped when they exceed their time budget (see enableRuleInterruption() method)
+     */
+    private static volatile boolean _RULE_INTERRUPTION = false;
+
+    /**
+     * Whether or not the rules are compiled the first time they run (see enableLazyCompilation() method)
+     */
+    private static volatile boolean _LAZY_COMPILATION = false;
+
+    /**
+     * The number of threads compiling the lazily created rules in the background, 0 if they are not compiled in the background
+     */
+    private static volatile int _NUM_BACKGROUND_COMPILER_THREADS = 0;
+
+    /**
+     * Whether or not the engine has been warmed up since its validators were loaded (see warmUp() method)
+     */
+    private static volatile boolean _WARMED_UP = false;
+
+    /**
+     * The number of ranges each thread should get when validating a batch of validatables (see validateBatch() methods)
+     */
+    private static final int _BATCH_RANGES_PER_THREAD = 8;
+
+    /**
+     * Private lock serializing the methods changing the state of the engine; the methods using the state of the engine (including the validate methods)
+     * don't need to acquire it since they read the current (immutable) state.
+     */
+    private static final ReentrantLock _LOCK = new ReentrantLock();
+
+    /**
+     * Profile used to order the rules within their dependency constraints (see setRuleOrderingProfile() method); null if the rules are only sorted by
+     * dependencies
      */
-    private static ReentrantReadWriteLock _LOCK = new ReentrantReadWriteLock();
+    private static volatile Map<String, ValidationEngineStats> _RULE_ORDERING_PROFILE;
 
     /**
      * Private constructor, no instanciation of this class!
@@ -213,7 +267,7 @@ public final class ValidationEngine {
     }
 
     // ********************************************************************************
-    //                INITIALIZATION METHOD (require the write lock)
+    //                INITIALIZATION METHOD (require the lock)
     // ********************************************************************************
 
     /**
@@ -259,46 +313,52 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void initialize(List<Validator> validators) throws ConstructionException {
-        _STATUS = ValidationEngineStatus.INITIALIZING;
+        long start = System.nanoTime();
+        Object event = EngineEvents.updateStarted();
 
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
+        ValidationEngineStatus previousStatus = _STATUS;
         try {
-            uninitialize();
+            // the new state is built off to the side, the current one keeps serving the validations until the new one is published
+            if (previousStatus != ValidationEngineStatus.INITIALIZED)
+                _STATUS = ValidationEngineStatus.INITIALIZING;
+
+            Map<String, Validator> allValidators = new HashMap<>();
+            Map<Long, ExecutableRule> rules = new ConcurrentHashMap<>();
+            Map<Long, ExecutableCondition> conditions = new ConcurrentHashMap<>();
+            Map<Long, Map<String, Object>> allContexts = new HashMap<>();
+
             if (validators != null) {
                 checkValidatorConstraints(validators);
 
-                Map<Long, ExecutableRule> rules = new ConcurrentHashMap<>();
-                Map<Long, ExecutableCondition> conditions = new ConcurrentHashMap<>();
-                Map<Long, Map<String, Object>> allContexts = new ConcurrentHashMap<>();
-
                 // internalize the validators (that will compile any Groovy, which could through a construction exception)
                 for (Validator v : validators) {
                     Map<String, Object> contexts = new HashMap<>();
                     internalizeValidator(v, conditions, rules, contexts);
                     allContexts.put(v.getValidatorId(), contexts);
+                    allValidators.put(v.getId(), v);
                 }
-
-                // sort the rules by dependencies (this could throw a dependency exception)
-                List<ExecutableRule> sortedRules = getRulesSortedByDependencies(rules, conditions);
-
-                // at this point we checked everything, so let's update the internal state of the engine
-                _EXECUTABLE_CONDITIONS.putAll(conditions);
-                _EXECUTABLE_RULES.putAll(rules);
-                _CONTEXTS.putAll(allContexts);
-                populateProcessors(sortedRules);
-
-                // update the raw structure only if the state was successfully updated...
-                for (Validator v : validators)
-                    _VALIDATORS.put(v.getId(), v);
             }
-            else
-                populateProcessors(null);
+
+            // at this point we checked everything (sorting the rules could still throw a dependency exception), so let's publish the new state of the engine
+            _STATE = new EngineState(allValidators, rules, conditions, allContexts, getRulesSortedByDependencies(rules, conditions));
+            _STATUS = ValidationEngineStatus.INITIALIZED;
+            _WARMED_UP = false;
+            ForcedRulesCache.clear();
+            BackgroundCompiler.cancel();
+            compileInBackground(rules.values());
+            EngineMetrics.initializationDone(System.nanoTime() - start);
+            if (event != null)
+                EngineEvents.updateDone(event, "initialize", null);
+        }
+        catch (ConstructionException | RuntimeException e) {
+            // the previous state is still published, the engine keeps using it
+            _STATUS = previousStatus;
+            throw e;
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
-
-        _STATUS = ValidationEngineStatus.INITIALIZED;
     }
 
     /**
@@ -309,22 +369,20 @@ public final class ValidationEngine {
     public static void uninitialize() {
         _STATUS = ValidationEngineStatus.NOT_INITIALIZED;
 
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
-            _VALIDATORS.clear();
-            _PROCESSORS.clear();
-            _PROCESSOR_ROOTS.clear();
-            _EXECUTABLE_RULES.clear();
-            _EXECUTABLE_CONDITIONS.clear();
-            _CONTEXTS.clear();
+            _STATE = new EngineState();
+            _WARMED_UP = false;
+            ForcedRulesCache.clear();
+            BackgroundCompiler.cancel();
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
     // ********************************************************************************
-    //                     GET METHODS (require the read lock)
+    //                     GET METHODS (no lock required)
     // ********************************************************************************
 
     /**
@@ -336,13 +394,7 @@ public final class ValidationEngine {
      * @return all the <code>Validator</code>s contained in the engine, keyed by their ID; maybe empty but never null
      */
     public static Map<String, Validator> getValidators() {
-        _LOCK.readLock().lock();
-        try {
-            return Collections.unmodifiableMap(_VALIDATORS);
-        }
-        finally {
-            _LOCK.readLock().unlock();
-        }
+        return _STATE._validators;
     }
 
     /**
@@ -359,13 +411,7 @@ public final class ValidationEngine {
         if (validatorId == null)
             return null;
 
-        _LOCK.readLock().lock();
-        try {
-            return _VALIDATORS.get(validatorId);
-        }
-        finally {
-            _LOCK.readLock().unlock();
-        }
+        return _STATE._validators.get(validatorId);
     }
 
     /**
@@ -391,26 +437,21 @@ public final class ValidationEngine {
         if (conditionId == null)
             return null;
 
-        _LOCK.readLock().lock();
-        try {
-            if (validatorId != null) {
-                Validator v = _VALIDATORS.get(validatorId);
-                if (v == null)
-                    return null;
-                return v.getCondition(conditionId);
-            }
-
-            for (Validator v : _VALIDATORS.values()) {
-                Condition c = v.getCondition(conditionId);
-                if (c != null)
-                    return c;
-            }
-
-            return null;
+        Map<String, Validator> validators = _STATE._validators;
+        if (validatorId != null) {
+            Validator v = validators.get(validatorId);
+            if (v == null)
+                return null;
+            return v.getCondition(conditionId);
         }
-        finally {
-            _LOCK.readLock().unlock();
+
+        for (Validator v : validators.values()) {
+            Condition c = v.getCondition(conditionId);
+            if (c != null)
+                return c;
         }
+
+        return null;
     }
 
     /**
@@ -436,26 +477,21 @@ public final class ValidationEngine {
         if (categoryId == null)
             return null;
 
-        _LOCK.readLock().lock();
-        try {
-            if (validatorId != null) {
-                Validator v = _VALIDATORS.get(validatorId);
-                if (v == null)
-                    return null;
-                return v.getCategory(categoryId);
-            }
-
-            for (Validator v : _VALIDATORS.values()) {
-                Category c = v.getCategory(categoryId);
-                if (c != null)
-                    return c;
-            }
-
-            return null;
+        Map<String, Validator> validators = _STATE._validators;
+        if (validatorId != null) {
+            Validator v = validators.get(validatorId);
+            if (v == null)
+                return null;
+            return v.getCategory(categoryId);
         }
-        finally {
-            _LOCK.readLock().unlock();
+
+        for (Validator v : validators.values()) {
+            Category c = v.getCategory(categoryId);
+            if (c != null)
+                return c;
         }
+
+        return null;
     }
 
     /**
@@ -481,26 +517,21 @@ public final class ValidationEngine {
         if (ruleId == null)
             return null;
 
-        _LOCK.readLock().lock();
-        try {
-            if (validatorId != null) {
-                Validator v = _VALIDATORS.get(validatorId);
-                if (v == null)
-                    return null;
-                return v.getRule(ruleId);
-            }
-
-            for (Validator v : _VALIDATORS.values()) {
-                Rule r = v.getRule(ruleId);
-                if (r != null)
-                    return r;
-            }
-
-            return null;
+        Map<String, Validator> validators = _STATE._validators;
+        if (validatorId != null) {
+            Validator v = validators.get(validatorId);
+            if (v == null)
+                return null;
+            return v.getRule(ruleId);
         }
-        finally {
-            _LOCK.readLock().unlock();
+
+        for (Validator v : validators.values()) {
+            Rule r = v.getRule(ruleId);
+            if (r != null)
+                return r;
         }
+
+        return null;
     }
 
     /**
@@ -526,30 +557,25 @@ public final class ValidationEngine {
         if (contextKey == null)
             return null;
 
-        _LOCK.readLock().lock();
-        try {
-            if (validatorId != null) {
-                Validator v = _VALIDATORS.get(validatorId);
-                if (v == null)
-                    return null;
-                return _CONTEXTS.get(v.getValidatorId()).get(contextKey);
-            }
-
-            for (Map<String, Object> context : _CONTEXTS.values()) {
-                Object c = context.get(contextKey);
-                if (c != null)
-                    return c;
-            }
-
-            return null;
+        EngineState state = _STATE;
+        if (validatorId != null) {
+            Validator v = state._validators.get(validatorId);
+            if (v == null)
+                return null;
+            return state._contexts.get(v.getValidatorId()).get(contextKey);
         }
-        finally {
-            _LOCK.readLock().unlock();
+
+        for (Map<String, Object> context : state._contexts.values()) {
+            Object c = context.get(contextKey);
+            if (c != null)
+                return c;
         }
+
+        return null;
     }
 
     // ********************************************************************************
-    //                    VALIDATE METHODS (require the read lock)
+    //                    VALIDATE METHODS (no lock required)
     // ********************************************************************************
 
     /**
@@ -563,13 +589,7 @@ public final class ValidationEngine {
      * @throws ValidationException if anything goes wrong during the validation
      */
     public static Collection<RuleFailure> validate(Validatable validatable) throws ValidationException {
-        _LOCK.readLock().lock();
-        try {
-            return internalValidate(validatable, new ValidatingContext());
-        }
-        finally {
-            _LOCK.readLock().unlock();
-        }
+        return internalValidate(validatable, new ValidatingContext());
     }
 
     /**
@@ -589,15 +609,9 @@ public final class ValidationEngine {
      * @throws ValidationException if anything goes wrong during the validation
      */
     public static Collection<RuleFailure> validate(Validatable validatable, Collection<String> ruleIdsToIgnore) throws ValidationException {
-        _LOCK.readLock().lock();
-        try {
-            ValidatingContext vContext = new ValidatingContext();
-            vContext.setToIgnore(ruleIdsToIgnore);
-            return internalValidate(validatable, vContext);
-        }
-        finally {
-            _LOCK.readLock().unlock();
-        }
+        ValidatingContext vContext = new ValidatingContext();
+        vContext.setToIgnore(ruleIdsToIgnore);
+        return internalValidate(validatable, vContext);
     }
 
     /**
@@ -618,16 +632,51 @@ public final class ValidationEngine {
      * @throws ValidationException if anything goes wrong during the validation
      */
     public static Collection<RuleFailure> validate(Validatable validatable, Collection<String> ruleIdsToIgnore, Collection<String> ruleIdsToExecute) throws ValidationException {
-        _LOCK.readLock().lock();
-        try {
+        ValidatingContext vContext = new ValidatingContext();
+        vContext.setToIgnore(ruleIdsToIgnore);
+        vContext.setToExecute(ruleIdsToExecute);
+        return internalValidate(validatable, vContext);
+    }
+
+    /**
+     * Re-validates the provided <code>Validatable</code> object after some of its properties changed, re-executing only the rules affected by the change
+     * and merging their failures with the previous ones.
+     * <p/>
+     * A rule is affected if it (or one of its conditions) uses a changed property or context entry, or if it depends on an affected rule; the rules that an
+     * affected rule depends on are also re-executed since their results decide whether it runs. The rules that don't use any property are always re-executed.
+     * The properties are identified the way they appear in the expressions (for example "line.primarySite", or "line" for all the properties of the line);
+     * the context entries use the "Context." prefix (for example "Context.FV_CONTEXT1").
+     * <p/>
+     * The properties are gathered by parsing the expressions; a property the parsing can't identify (for example one accessed using a dynamic name) is not
+     * tracked, and a full validation is required if it changes.
+     * <p/>
+     * The returned collection contains the previous failures of the rules that were not re-executed (in their original order), followed by the failures of the
+     * re-executed rules.
+     * @param validatable a <code>Validatable</code>, cannot be null
+     * @param previousFailures failures returned by the previous validation of the validatable (or by a previous re-validation)
+     * @param changedProperties properties and context entries that changed since the previous validation
+     * @return a collection of <code>RuleFailure</code>, maybe empty but not null
+     * @throws ValidationException if anything goes wrong during the validation
+     */
+    public static Collection<RuleFailure> revalidate(Validatable validatable, Collection<RuleFailure> previousFailures, Collection<String> changedProperties) throws ValidationException {
+
+        // the state is read only once, so the affected rules are computed and executed on the same version of it
+        EngineState state = _STATE;
+        Set<String> toExecute = state._revalidationIndex.getAffectedRuleIds(changedProperties == null ? Collections.emptySet() : changedProperties);
+
+        List<RuleFailure> results = new ArrayList<>();
+        if (previousFailures != null)
+            for (RuleFailure failure : previousFailures)
+                if (failure.getRule() == null || !toExecute.contains(failure.getRule().getId()))
+                    results.add(failure);
+
+        if (!toExecute.isEmpty()) {
             ValidatingContext vContext = new ValidatingContext();
-            vContext.setToIgnore(ruleIdsToIgnore);
-            vContext.setToExecute(ruleIdsToExecute);
-            return internalValidate(validatable, vContext);
-        }
-        finally {
-            _LOCK.readLock().unlock();
+            vContext.setToExecute(toExecute);
+            results.addAll(internalValidate(state, validatable, vContext));
         }
+
+        return results;
     }
 
     /**
@@ -647,18 +696,12 @@ public final class ValidationEngine {
      * @throws ValidationException if anything goes wrong during the validation
      */
     public static Collection<RuleFailure> validate(Validatable validatable, String ruleId) throws ValidationException {
-        _LOCK.readLock().lock();
-        try {
-            Rule rule = getRule(ruleId);
-            if (rule == null)
-                throw new RuntimeException("Unknown rule ID: " + ruleId);
-            ValidatingContext vContext = new ValidatingContext();
-            vContext.setToForce(rule);
-            return internalValidate(validatable, vContext);
-        }
-        finally {
-            _LOCK.readLock().unlock();
-        }
+        Rule rule = getRule(ruleId);
+        if (rule == null)
+            throw new RuntimeException("Unknown rule ID: " + ruleId);
+        ValidatingContext vContext = new ValidatingContext();
+        vContext.setToForce(rule);
+        return internalValidate(validatable, vContext);
     }
 
     /**
@@ -680,20 +723,14 @@ public final class ValidationEngine {
      * @throws ValidationException if anything goes wrong during the validation
      */
     public static Collection<RuleFailure> validate(Validatable validatable, Rule rule) throws ConstructionException, ValidationException {
-        _LOCK.readLock().lock();
-        try {
-            if (rule == null)
-                throw new RuntimeException("This method requires a non-null rule!");
-            if (rule.getJavaPath() == null)
-                throw new RuntimeException("The provided rule must have a java-path!");
-
-            ValidatingContext vContext = new ValidatingContext();
-            vContext.setToForce(rule);
-            return internalValidate(validatable, vContext);
-        }
-        finally {
-            _LOCK.readLock().unlock();
-        }
+        if (rule == null)
+            throw new RuntimeException("This method requires a non-null rule!");
+        if (rule.getJavaPath() == null)
+            throw new RuntimeException("The provided rule must have a java-path!");
+
+        ValidatingContext vContext = new ValidatingContext();
+        vContext.setToForce(rule);
+        return internalValidate(validatable, vContext);
     }
 
     /**
@@ -710,17 +747,135 @@ public final class ValidationEngine {
      * @throws ValidationException if anything goes wrong during the validation
      */
     public static Collection<RuleFailure> validate(Validatable validatable, ValidatingContext vContext) throws ValidationException {
-        _LOCK.readLock().lock();
+        return internalValidate(validatable, vContext);
+    }
+
+    /**
+     * Validates the provided <code>Validatable</code> object using all the rules loaded in the engine, reporting the failures to the provided sink as they occur
+     * instead of collecting them.
+     * <p/>
+     * The properties of the reported failures are a view of the properties of the validatable that is only valid during the call to the sink (see FailureSink).
+     * <p/>
+     * Note that a rule object itself can be flagged as ignored, in which case it will not run when this method is invoked.
+     * @param validatable a <code>Validatable</code>, cannot be null
+     * @param sink a <code>FailureSink</code> receiving the failures, cannot be null
+     * @throws ValidationException if anything goes wrong during the validation
+     */
+    public static void validate(Validatable validatable, FailureSink sink) throws ValidationException {
+        internalValidate(validatable, new ValidatingContext(), sink);
+    }
+
+    /**
+     * Validates the provided <code>Validatable</code> object using all the rules loaded in the engine, reporting the failures to the provided sink as they occur
+     * instead of collecting them.
+     * <p/>
+     * The properties of the reported failures are a view of the properties of the validatable that is only valid during the call to the sink (see FailureSink).
+     * @param validatable a <code>Validatable</code>, cannot be null
+     * @param vContext a <code>ValidatingContext</code>, cannot be null
+     * @param sink a <code>FailureSink</code> receiving the failures, cannot be null
+     * @throws ValidationException if anything goes wrong during the validation
+     */
+    public static void validate(Validatable validatable, ValidatingContext vContext, FailureSink sink) throws ValidationException {
+        internalValidate(validatable, vContext, sink);
+    }
+
+    /**
+     * Validates the provided <code>Validatable</code> objects using all the rules loaded in the engine, using as many threads as there are available processors.
+     * <p/>
+     * See the <b>validateBatch(Iterable, Collection, Collection, ForkJoinPool)</b> method for more information.
+     * @param validatables the <code>Validatable</code> objects to validate, cannot be null
+     * @return a list containing a collection of <code>RuleFailure</code> per validatable, in the same order as the validatables
+     * @throws ValidationException if anything goes wrong during the validation
+     */
+    public static List<Collection<RuleFailure>> validateBatch(Iterable<? extends Validatable> validatables) throws ValidationException {
+        return validateBatch(validatables, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Validates the provided <code>Validatable</code> objects using all the rules loaded in the engine, using the requested number of threads.
+     * <p/>
+     * See the <b>validateBatch(Iterable, Collection, Collection, ForkJoinPool)</b> method for more information.
+     * @param validatables the <code>Validatable</code> objects to validate, cannot be null
+     * @param parallelism the number of threads to use, must be positive
+     * @return a list containing a collection of <code>RuleFailure</code> per validatable, in the same order as the validatables
+     * @throws ValidationException if anything goes wrong during the validation
+     */
+    public static List<Collection<RuleFailure>> validateBatch(Iterable<? extends Validatable> validatables, int parallelism) throws ValidationException {
+        if (parallelism < 1)
+            throw new RuntimeException("Parallelism must be positive!");
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
         try {
-            return internalValidate(validatable, vContext);
+            return validateBatch(validatables, null, null, pool);
         }
         finally {
-            _LOCK.readLock().unlock();
+            pool.shutdown();
         }
     }
 
+    /**
+     * Validates the provided <code>Validatable</code> objects using all the rules loaded in the engine, using the provided pool.
+     * <p/>
+     * See the <b>validateBatch(Iterable, Collection, Collection, ForkJoinPool)</b> method for more information.
+     * @param validatables the <code>Validatable</code> objects to validate, cannot be null
+     * @param pool the <code>ForkJoinPool</code> to use, cannot be null
+     * @return a list containing a collection of <code>RuleFailure</code> per validatable, in the same order as the validatables
+     * @throws ValidationException if anything goes wrong during the validation
+     */
+    public static List<Collection<RuleFailure>> validateBatch(Iterable<? extends Validatable> validatables, ForkJoinPool pool) throws ValidationException {
+        return validateBatch(validatables, null, null, pool);
+    }
+
+    /**
+     * Validates the provided <code>Validatable</code> objects, executing the provided rule IDs or ignoring them, using the provided pool.
+     * <p/>
+     * The validatables are split into ranges that are validated by the threads of the pool; idle threads steal the ranges of the busy ones, so it's not
+     * a problem if some validatables are much more expensive to validate than others. All the validatables are validated using the same version of the engine,
+     * even if the engine is modified while the batch is running. The pool is not shut down by this method, it's the caller's responsibility to manage it.
+     * <p/>
+     * The ignored and executed rule IDs work the same way as for the <b>validate(Validatable, Collection, Collection)</b> method.
+     * <p/>
+     * If a validatable throws an exception, the remaining validatables are not validated and that exception is re-thrown.
+     * @param validatables the <code>Validatable</code> objects to validate, cannot be null
+     * @param ruleIdsToIgnore rule IDs that need to be ignored
+     * @param ruleIdsToExecute rule IDs that need to be executed
+     * @param pool the <code>ForkJoinPool</code> to use, cannot be null
+     * @return a list containing a collection of <code>RuleFailure</code> per validatable, in the same order as the validatables
+     * @throws ValidationException if anything goes wrong during the validation
+     */
+    public static List<Collection<RuleFailure>> validateBatch(Iterable<? extends Validatable> validatables, Collection<String> ruleIdsToIgnore, Collection<String> ruleIdsToExecute,
+            ForkJoinPool pool) throws ValidationException {
+        if (validatables == null)
+            throw new RuntimeException("This method requires non-null validatables!");
+        if (pool == null)
+            throw new RuntimeException("This method requires a non-null pool!");
+
+        List<Validatable> list = new ArrayList<>();
+        for (Validatable validatable : validatables)
+            list.add(validatable);
+
+        // pre-condition: engine must be initialized
+        List<Collection<RuleFailure>> results = new ArrayList<>(Collections.nCopies(list.size(), null));
+        if (_STATUS == ValidationEngineStatus.NOT_INITIALIZED || list.isEmpty()) {
+            for (int i = 0; i < list.size(); i++)
+                results.set(i, new HashSet<>());
+            return results;
+        }
+
+        // each thread should get several ranges to process, otherwise there wouldn't be anything left to steal once the first thread is done...
+        int threshold = Math.max(1, list.size() / (pool.getParallelism() * _BATCH_RANGES_PER_THREAD));
+
+        // the state is read only once, so the entire batch will use a single version of it
+        AtomicReference<ValidationException> exception = new AtomicReference<>();
+        pool.invoke(new BatchValidatingTask(list, 0, list.size(), threshold, _STATE._processors, ruleIdsToIgnore, ruleIdsToExecute, results, exception));
+        if (exception.get() != null)
+            throw exception.get();
+
+        return results;
+    }
+
     // ********************************************************************************
-    //              ADD/DELETE/UPDATE METHODS (require the write lock
+    //              ADD/DELETE/UPDATE METHODS (require the lock)
     // ********************************************************************************
 
     /**
@@ -741,8 +896,11 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static Rule addRule(EditableRule editableRule) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
+            long start = System.nanoTime();
+            Object event = EngineEvents.updateStarted();
+            EngineState state = _STATE;
 
             if (editableRule == null)
                 throw new ConstructionException("An editable rule is required for adding a new edit");
@@ -756,7 +914,7 @@ public final class ValidationEngine {
                 throw new ConstructionException("A message is required when adding a new edit");
             if (getRule(editableRule.getId()) != null)
                 throw new ConstructionException("Edit IDs must be unique within the edits engine, cannot add '" + editableRule.getId() + "'");
-            if (!_VALIDATORS.containsKey(editableRule.getValidatorId()))
+            if (!state._validators.containsKey(editableRule.getValidatorId()))
                 throw new ConstructionException("Unknown group: " + editableRule.getValidatorId());
             if (!ValidatorServices.getInstance().getAllJavaPaths().containsKey(editableRule.getJavaPath()))
                 throw new ConstructionException("Unknown java-path: " + editableRule.getJavaPath());
@@ -785,10 +943,11 @@ public final class ValidationEngine {
                 rule.setRuleId(ValidatorServices.getInstance().getNextRuleSequence());
             rule.setName(editableRule.getName());
             rule.setJavaPath(editableRule.getJavaPath());
-            rule.setExpression(editableRule.getExpression());
+            rule.setUnanalyzedExpression(editableRule.getExpression()); // the expression is analyzed while the executable rule compiles it
             rule.setMessage(editableRule.getMessage());
             if (editableRule.getIgnored() != null)
                 rule.setIgnored(editableRule.getIgnored());
+            rule.setUseStaticCompilation(editableRule.getUseStaticCompilation());
             if (editableRule.getSeverity() != null)
                 rule.setSeverity(editableRule.getSeverity());
             rule.setConditions(editableRule.getConditions());
@@ -797,36 +956,42 @@ public final class ValidationEngine {
             rule.setDescription(editableRule.getDescription());
             rule.setDependencies(editableRule.getDependencies());
             rule.setHistories(editableRule.getHistories());
-            rule.setValidator(_VALIDATORS.get(editableRule.getValidatorId()));
+            rule.setValidator(state._validators.get(editableRule.getValidatorId()));
 
             // create an executable rule from it
             ExecutableRule execRule = new ExecutableRule(rule);
-
-            // update the dependencies; make sure we don't leave the internal structures in a bad state if something goes wrong...
-            Map<Long, ExecutableRule> rules = new HashMap<>(_EXECUTABLE_RULES);
+            Map<Long, ExecutableRule> rules = new HashMap<>(state._executableRules);
             rules.put(execRule.getInternalId(), execRule);
-            List<ExecutableRule> sortedRules = getRulesSortedByDependencies(rules, _EXECUTABLE_CONDITIONS); // this will validate the rule dependencies...
-            _EXECUTABLE_RULES.put(execRule.getInternalId(), execRule);
 
-            // update the processors after re-evaluating the rules order (if the new java path doesn't exist, re-populate all the processors)
-            if (!_PROCESSORS.containsKey(editableRule.getJavaPath()))
-                populateProcessors(sortedRules);
-            else
-                updateProcessorsRules(sortedRules); // this is way less expensive than re-populating the processors...
+            // update the inverted dependencies in the raw data (the rules it depends on are replaced by copies, the published rules are never modified)
+            Validator validator = rule.getValidator();
+            Set<Rule> validatorRules = new HashSet<>(validator.getRules());
+            validatorRules.add(rule);
+            if (editableRule.getDependencies() != null && !editableRule.getDependencies().isEmpty()) {
+                for (Rule r : validator.getRules()) {
+                    if (rule.getDependencies().contains(r.getId())) {
+                        Rule copy = new Rule(r);
+                        copy.getInvertedDependencies().add(rule.getId());
+                        replaceRule(copy, validatorRules, rules);
+                    }
+                }
+            }
 
-            // update raw data
-            _VALIDATORS.get(editableRule.getValidatorId()).getRules().add(rule);
+            // update the dependencies; the current state is not modified, so nothing needs to be reverted if something goes wrong...
+            List<ExecutableRule> sortedRules = getRulesSortedByDependencies(rules, state._executableConditions); // this will validate the rule dependencies...
 
-            // update the inverted dependencies in the raw data
-            if (editableRule.getDependencies() != null && !editableRule.getDependencies().isEmpty())
-                for (Rule r : rule.getValidator().getRules())
-                    if (rule.getDependencies().contains(r.getId()))
-                        r.getInvertedDependencies().add(rule.getId());
+            // update the raw data (the collection is replaced, not modified, since it might be read at the same time) and publish the new state (the
+            // processors are re-populated after re-evaluating the rules order)
+            validator.setRules(validatorRules);
+            _STATE = new EngineState(state._validators, rules, state._executableConditions, state._contexts, sortedRules);
+            EngineMetrics.updateDone(System.nanoTime() - start);
+            if (event != null)
+                EngineEvents.updateDone(event, "addRule", editableRule.getId());
 
             return rule;
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -853,8 +1018,12 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void updateRule(EditableRule editableRule) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
+            long start = System.nanoTime();
+            Object event = EngineEvents.updateStarted();
+            EngineState state = _STATE;
+
             if (editableRule == null)
                 throw new ConstructionException("An editable rule is required for modifying an edit");
             if (editableRule.getRuleId() == null)
@@ -865,13 +1034,13 @@ public final class ValidationEngine {
                 throw new ConstructionException("A group is required when modifying an edit");
             if (editableRule.getMessage() == null)
                 throw new ConstructionException("A message is required when modifying an edit");
-            if (!_VALIDATORS.containsKey(editableRule.getValidatorId()))
+            if (!state._validators.containsKey(editableRule.getValidatorId()))
                 throw new ConstructionException("Unknown group: " + editableRule.getValidatorId());
             if (!ValidatorServices.getInstance().getAllJavaPaths().containsKey(editableRule.getJavaPath()))
                 throw new ConstructionException("Unknown java-path: " + editableRule.getJavaPath());
 
             // get original executable rule
-            ExecutableRule originalExecRule = _EXECUTABLE_RULES.get(editableRule.getRuleId());
+            ExecutableRule originalExecRule = state._executableRules.get(editableRule.getRuleId());
             if (originalExecRule == null)
                 throw new ConstructionException("Validation Engine does not contain requested edit");
 
@@ -905,13 +1074,22 @@ public final class ValidationEngine {
             boolean expressionUpdated = editableRule.getExpression() == null || !editableRule.getExpression().equals(rule.getExpression());
             boolean dependenciesUpdated = editableRule.getDependencies() == null || !editableRule.getDependencies().equals(rule.getDependencies());
             boolean historiesUpdated = editableRule.getHistories() == null || !editableRule.getHistories().equals(rule.getHistories());
+            boolean staticCompilationUpdated = !Objects.equals(editableRule.getUseStaticCompilation(), rule.getUseStaticCompilation());
 
-            // create an executable rule and update the requested properties (the cheap one are always updated, other ones have a pre-condition)
+            // create an executable rule and update the requested properties (the cheap one are always updated, other ones have a pre-condition); the new
+            // expression is analyzed while it's compiled, the raw rule takes its properties from that same analysis
+            ExpressionAnalyzer analyzer = new ExpressionAnalyzer();
             ExecutableRule execRule = new ExecutableRule(originalExecRule);
             if (idUpdated)
                 execRule.setId(editableRule.getId());
-            if (expressionUpdated)
-                execRule.setExpression(editableRule.getExpression());
+            if (staticCompilationUpdated) {
+                Boolean useStaticCompilation = editableRule.getUseStaticCompilation();
+                if (useStaticCompilation == null)
+                    useStaticCompilation = rule.getValidator() != null && Boolean.TRUE.equals(rule.getValidator().getUseStaticCompilation());
+                execRule.setUseStaticCompilation(useStaticCompilation);
+            }
+            if (expressionUpdated || staticCompilationUpdated)
+                execRule.setExpression(editableRule.getExpression(), analyzer);
             execRule.setMessage(editableRule.getMessage());
             execRule.setIgnored(editableRule.getIgnored() == null ? Boolean.FALSE : editableRule.getIgnored());
             if (dependenciesUpdated)
@@ -920,60 +1098,70 @@ public final class ValidationEngine {
             execRule.setUseAndForConditions(editableRule.getUseAndForConditions());
             execRule.setJavaPath(editableRule.getJavaPath());
 
-            // update the dependencies; make sure we don't leave the internal structures in a bad state if something goes wrong...
-            Map<Long, ExecutableRule> rules = new HashMap<>(_EXECUTABLE_RULES);
-            rules.put(execRule.getInternalId(), execRule);
-            List<ExecutableRule> sortedRules = getRulesSortedByDependencies(rules, _EXECUTABLE_CONDITIONS); // this will validate the rule dependencies...
-            _EXECUTABLE_RULES.put(execRule.getInternalId(), execRule);
-
-            // update the processors after re-evaluating the rules order (if the new java path doesn't exist, re-populate all the processors)
-            if (!_PROCESSORS.containsKey(editableRule.getJavaPath()))
-                populateProcessors(sortedRules);
-            else
-                updateProcessorsRules(sortedRules); // this is way less expensive than re-populating the processors...
-
-            // update the raw data
-            rule.setId(editableRule.getId());
-            rule.setName(editableRule.getName());
-            rule.setExpression(editableRule.getExpression());
-            rule.setMessage(editableRule.getMessage());
-            rule.setIgnored(editableRule.getIgnored() == null ? Boolean.FALSE : editableRule.getIgnored());
-            rule.setDescription(editableRule.getDescription());
-            rule.setJavaPath(editableRule.getJavaPath());
-            rule.setConditions(editableRule.getConditions());
-            rule.setUseAndForConditions(editableRule.getUseAndForConditions());
-            rule.setCategory(editableRule.getCategory());
+            // update the raw data on a copy of the rule; the published rule might be read at the same time, so it is never modified
+            Rule newRule = new Rule(rule);
+            newRule.setId(editableRule.getId());
+            newRule.setName(editableRule.getName());
+            newRule.setUnanalyzedExpression(editableRule.getExpression());
+            newRule.analyzeExpression(analyzer);
+            newRule.setMessage(editableRule.getMessage());
+            newRule.setIgnored(editableRule.getIgnored() == null ? Boolean.FALSE : editableRule.getIgnored());
+            newRule.setUseStaticCompilation(editableRule.getUseStaticCompilation());
+            newRule.setDescription(editableRule.getDescription());
+            newRule.setJavaPath(editableRule.getJavaPath());
+            newRule.setConditions(editableRule.getConditions());
+            newRule.setUseAndForConditions(editableRule.getUseAndForConditions());
+            newRule.setCategory(editableRule.getCategory());
             if (editableRule.getSeverity() != null)
-                rule.setSeverity(editableRule.getSeverity());
+                newRule.setSeverity(editableRule.getSeverity());
             if (dependenciesUpdated) {
                 Set<String> dependencies = new HashSet<>();
                 if (editableRule.getDependencies() != null)
                     dependencies.addAll(editableRule.getDependencies());
-                rule.setDependencies(new HashSet<>(dependencies));
+                newRule.setDependencies(dependencies);
             }
-            if (historiesUpdated) {
-                Set<RuleHistory> histories = new HashSet<>();
-                if (editableRule.getHistories() != null) {
-                    for (RuleHistory hist : editableRule.getHistories()) {
-                        hist.setRule(rule);
-                        histories.add(hist);
+            // the histories are (re-)copied once the ID is set since they are hashed on it
+            newRule.setHistories(newRule.copyHistories(historiesUpdated ? editableRule.getHistories() : rule.getHistories()));
+            execRule.setRule(newRule);
+
+            // swap the new rule in
+            Map<Long, ExecutableRule> rules = new HashMap<>(state._executableRules);
+            rules.put(execRule.getInternalId(), execRule);
+            Validator validator = state._validators.get(rule.getValidator().getId());
+            Set<Rule> validatorRules = new HashSet<>(validator.getRules());
+            validatorRules.remove(rule);
+            validatorRules.add(newRule);
+
+            // update the inverted dependencies in the raw data (the rules are replaced by copies, the published rules are never modified)
+            if (dependenciesUpdated || idUpdated) {
+                for (Rule r : validator.getRules()) {
+                    if (r.equals(rule))
+                        continue;
+                    Set<String> invertedDependencies = new HashSet<>(r.getInvertedDependencies());
+                    invertedDependencies.remove(rule.getId());
+                    if (newRule.getDependencies().contains(r.getId()))
+                        invertedDependencies.add(newRule.getId());
+                    if (!invertedDependencies.equals(r.getInvertedDependencies())) {
+                        Rule copy = new Rule(r);
+                        copy.setInvertedDependencies(invertedDependencies);
+                        replaceRule(copy, validatorRules, rules);
                     }
                 }
-                rule.setHistories(histories);
             }
 
-            // update the inverted dependencies in the raw data
-            if (dependenciesUpdated) {
-                for (Rule r : rule.getValidator().getRules()) {
-                    if (rule.getDependencies().contains(r.getId()))
-                        r.getInvertedDependencies().add(rule.getId());
-                    else
-                        r.getInvertedDependencies().remove(rule.getId());
-                }
-            }
+            // update the dependencies; the current state is not modified, so nothing needs to be reverted if something goes wrong...
+            List<ExecutableRule> sortedRules = getRulesSortedByDependencies(rules, state._executableConditions); // this will validate the rule dependencies...
+
+            // update the raw data (the collection is replaced, not modified, since it might be read at the same time) and publish the new state (the
+            // processors are re-populated after re-evaluating the rules order)
+            validator.setRules(validatorRules);
+            _STATE = new EngineState(state._validators, rules, state._executableConditions, state._contexts, sortedRules);
+            EngineMetrics.updateDone(System.nanoTime() - start);
+            if (event != null)
+                EngineEvents.updateDone(event, "updateRule", editableRule.getId());
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -987,7 +1175,7 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void deleteRule(String ruleId) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
             Rule r = getRule(ruleId);
             if (r == null)
@@ -995,7 +1183,7 @@ public final class ValidationEngine {
             deleteRule(new EditableRule(r));
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1014,8 +1202,10 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void deleteRule(EditableRule editableRule) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
+            EngineState state = _STATE;
+
             if (editableRule == null)
                 throw new ConstructionException("An editable rule is required for deleting an edit");
             if (editableRule.getRuleId() == null)
@@ -1024,10 +1214,10 @@ public final class ValidationEngine {
                 throw new ConstructionException("An edit ID is required when deleting an edit");
             if (editableRule.getValidatorId() == null)
                 throw new ConstructionException("A group is required when deleting an edit");
-            if (!_VALIDATORS.containsKey(editableRule.getValidatorId()))
+            if (!state._validators.containsKey(editableRule.getValidatorId()))
                 throw new ConstructionException("Unknown group: " + editableRule.getValidatorId());
 
-            for (Rule r : _VALIDATORS.get(editableRule.getValidatorId()).getRules())
+            for (Rule r : state._validators.get(editableRule.getValidatorId()).getRules())
                 if (r.getDependencies().contains(editableRule.getId()))
                     throw new ConstructionException(editableRule.getId() + " cannot be deleted, " + r.getId() + " depends on it");
 
@@ -1037,21 +1227,29 @@ public final class ValidationEngine {
                 throw new ConstructionException("Validation Engine does not contain requested edit");
 
             // update the executable rule
-            _EXECUTABLE_RULES.remove(rule.getRuleId());
-
-            // update the processors after re-evaluating the rules order
-            updateProcessorsRules(getRulesSortedByDependencies(_EXECUTABLE_RULES, _EXECUTABLE_CONDITIONS));
+            Map<Long, ExecutableRule> rules = new HashMap<>(state._executableRules);
+            rules.remove(rule.getRuleId());
+            Validator validator = state._validators.get(editableRule.getValidatorId());
+            Set<Rule> validatorRules = new HashSet<>(validator.getRules());
+            validatorRules.remove(rule);
 
-            // update raw data
-            _VALIDATORS.get(editableRule.getValidatorId()).getRules().remove(rule);
+            // update the inverted dependencies in the raw data (the rules are replaced by copies, the published rules are never modified)
+            for (Rule r : validator.getRules()) {
+                if (rule.getDependencies().contains(r.getId())) {
+                    Rule copy = new Rule(r);
+                    copy.getInvertedDependencies().remove(rule.getId());
+                    replaceRule(copy, validatorRules, rules);
+                }
+            }
+            List<ExecutableRule> sortedRules = getRulesSortedByDependencies(rules, state._executableConditions);
 
-            // update the inverted dependencies in the raw data
-            for (Rule r : rule.getValidator().getRules())
-                if (rule.getDependencies().contains(r.getId()))
-                    r.getInvertedDependencies().remove(rule.getId());
+            // update the raw data (the collection is replaced, not modified, since it might be read at the same time) and publish the new state (the
+            // processors are re-populated after re-evaluating the rules order)
+            validator.setRules(validatorRules);
+            _STATE = new EngineState(state._validators, rules, state._executableConditions, state._contexts, sortedRules);
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1073,8 +1271,12 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static Condition addCondition(EditableCondition editableCondition) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
+            long start = System.nanoTime();
+            Object event = EngineEvents.updateStarted();
+            EngineState state = _STATE;
+
             if (editableCondition == null)
                 throw new ConstructionException("An editable condition is required for adding a new condition");
             if (editableCondition.getId() == null)
@@ -1085,7 +1287,7 @@ public final class ValidationEngine {
                 throw new ConstructionException("A java-path is required when adding a new condition");
             if (getCondition(editableCondition.getId()) != null)
                 throw new ConstructionException("Condition IDs must be unique within the edits engine, cannot add '" + editableCondition.getId() + "'");
-            if (!_VALIDATORS.containsKey(editableCondition.getValidatorId()))
+            if (!state._validators.containsKey(editableCondition.getValidatorId()))
                 throw new ConstructionException("Unknown group: " + editableCondition.getValidatorId());
             if (!ValidatorServices.getInstance().getAllJavaPaths().containsKey(editableCondition.getJavaPath()))
                 throw new ConstructionException("Unknown java-path: " + editableCondition.getJavaPath());
@@ -1100,28 +1302,29 @@ public final class ValidationEngine {
             condition.setName(editableCondition.getName());
             condition.setDescription(editableCondition.getDescription());
             condition.setJavaPath(editableCondition.getJavaPath());
-            condition.setExpression(editableCondition.getExpression());
-            condition.setValidator(_VALIDATORS.get(editableCondition.getValidatorId()));
+            condition.setUnanalyzedExpression(editableCondition.getExpression()); // the expression is analyzed while the executable condition compiles it
+            condition.setValidator(state._validators.get(editableCondition.getValidatorId()));
 
             // create the executable condition
             ExecutableCondition execCondition = new ExecutableCondition(condition);
 
-            // update internal state
-            _EXECUTABLE_CONDITIONS.put(execCondition.getInternalId(), execCondition);
+            Map<Long, ExecutableCondition> conditions = new HashMap<>(state._executableConditions);
+            conditions.put(execCondition.getInternalId(), execCondition);
 
-            // update the processors (if the new java path doesn't exist, re-populate all the processors)
-            if (!_PROCESSORS.containsKey(editableCondition.getJavaPath()))
-                populateProcessors(getRulesSortedByDependencies(_EXECUTABLE_RULES, _EXECUTABLE_CONDITIONS));
-            else
-                updateProcessorsConditions(_EXECUTABLE_CONDITIONS.values()); // this is way less expensive than re-populating the processors...
-
-            // update the raw structure only if the state was successfully updated...
-            _VALIDATORS.get(editableCondition.getValidatorId()).getConditions().add(condition);
+            // update the raw structure (the collection is replaced, not modified, since it might be read at the same time) and publish the new state (the rules
+            // are not affected, so there is no need to re-sort them)
+            Set<Condition> validatorConditions = new HashSet<>(condition.getValidator().getConditions());
+            validatorConditions.add(condition);
+            condition.getValidator().setConditions(validatorConditions);
+            _STATE = new EngineState(state._validators, state._executableRules, conditions, state._contexts, state._sortedRules);
+            EngineMetrics.updateDone(System.nanoTime() - start);
+            if (event != null)
+                EngineEvents.updateDone(event, "addCondition", editableCondition.getId());
 
             return condition;
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1145,8 +1348,12 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void updateCondition(EditableCondition editableCondition) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
+            long start = System.nanoTime();
+            Object event = EngineEvents.updateStarted();
+            EngineState state = _STATE;
+
             if (editableCondition == null)
                 throw new ConstructionException("An editable condition is required for modifying an condition");
             if (editableCondition.getConditionId() == null)
@@ -1157,15 +1364,15 @@ public final class ValidationEngine {
                 throw new ConstructionException("A group is required when modifying a condition");
             if (editableCondition.getJavaPath() == null)
                 throw new ConstructionException("A java-path is required when adding a condition");
-            if (!_PROCESSOR_ROOTS.containsKey(editableCondition.getJavaPath().split("\\.")[0]))
+            if (!state._processorRoots.contains(editableCondition.getJavaPath().split("\\.")[0]))
                 throw new ConstructionException("Invalid java-path");
-            if (!_VALIDATORS.containsKey(editableCondition.getValidatorId()))
+            if (!state._validators.containsKey(editableCondition.getValidatorId()))
                 throw new ConstructionException("Unknown group: " + editableCondition.getValidatorId());
             if (!ValidatorServices.getInstance().getAllJavaPaths().containsKey(editableCondition.getJavaPath()))
                 throw new ConstructionException("Unknown java-path: " + editableCondition.getJavaPath());
 
             // get original executable condition
-            ExecutableCondition originalExecCondition = _EXECUTABLE_CONDITIONS.get(editableCondition.getConditionId());
+            ExecutableCondition originalExecCondition = state._executableConditions.get(editableCondition.getConditionId());
             if (originalExecCondition == null)
                 throw new ConstructionException("Unknown condition: " + editableCondition.getId());
 
@@ -1179,34 +1386,43 @@ public final class ValidationEngine {
                 if (getCondition(editableCondition.getId()) != null)
                     throw new ConstructionException("Condition IDs must be unique within the edits engine, cannot update ID to '" + editableCondition.getId() + "'");
 
-            // create the executable condition
+            // create the executable condition; the new expression is analyzed while it's compiled, the raw condition takes its properties from that same analysis
+            ExpressionAnalyzer analyzer = new ExpressionAnalyzer();
             ExecutableCondition execCondition = new ExecutableCondition(originalExecCondition);
             execCondition.setId(editableCondition.getId());
-            execCondition.setInternalValidatorId(_VALIDATORS.get(editableCondition.getValidatorId()).getValidatorId());
+            execCondition.setInternalValidatorId(state._validators.get(editableCondition.getValidatorId()).getValidatorId());
             execCondition.setJavaPath(editableCondition.getJavaPath());
             if ((condition.getExpression() == null && editableCondition.getExpression() != null) || (condition.getExpression() != null && !condition.getExpression().equals(
                     editableCondition.getExpression())))
-                execCondition.setExpression(editableCondition.getExpression());
-
-            // update internal state
-            _EXECUTABLE_CONDITIONS.put(execCondition.getInternalId(), execCondition);
-
-            // update the processors (if the new java path doesn't exist, re-populate all the processors)
-            if (!_PROCESSORS.containsKey(editableCondition.getJavaPath()))
-                populateProcessors(getRulesSortedByDependencies(_EXECUTABLE_RULES, _EXECUTABLE_CONDITIONS));
-            else
-                updateProcessorsConditions(_EXECUTABLE_CONDITIONS.values()); // this is way less expensive than re-populating the processors...
-
-            // update the raw structure only if the state was successfully updated...
-            condition.setId(editableCondition.getId());
-            condition.setValidator(_VALIDATORS.get(editableCondition.getValidatorId()));
-            condition.setName(editableCondition.getName());
-            condition.setDescription(editableCondition.getDescription());
-            condition.setJavaPath(editableCondition.getJavaPath());
-            condition.setExpression(editableCondition.getExpression());
+                execCondition.setExpression(editableCondition.getExpression(), analyzer);
+
+            // update the raw data on a copy of the condition; the published condition might be read at the same time, so it is never modified
+            Condition newCondition = new Condition(condition);
+            newCondition.setId(editableCondition.getId());
+            newCondition.setValidator(state._validators.get(editableCondition.getValidatorId()));
+            newCondition.setName(editableCondition.getName());
+            newCondition.setDescription(editableCondition.getDescription());
+            newCondition.setJavaPath(editableCondition.getJavaPath());
+            newCondition.setUnanalyzedExpression(editableCondition.getExpression());
+            newCondition.analyzeExpression(analyzer);
+            execCondition.setCondition(newCondition);
+            Map<Long, ExecutableCondition> conditions = new HashMap<>(state._executableConditions);
+            conditions.put(execCondition.getInternalId(), execCondition);
+
+            // swap the new condition in (the collection is replaced, not modified, since it might be read at the same time) and publish the new state (the
+            // rules are not affected, so there is no need to re-sort them)
+            Validator validator = state._validators.get(condition.getValidator().getId());
+            Set<Condition> validatorConditions = new HashSet<>(validator.getConditions());
+            validatorConditions.remove(condition);
+            validatorConditions.add(newCondition);
+            validator.setConditions(validatorConditions);
+            _STATE = new EngineState(state._validators, state._executableRules, conditions, state._contexts, state._sortedRules);
+            EngineMetrics.updateDone(System.nanoTime() - start);
+            if (event != null)
+                EngineEvents.updateDone(event, "updateCondition", editableCondition.getId());
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1220,7 +1436,7 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void deleteCondition(String conditionId) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
             Condition condition = getCondition(conditionId);
             if (condition == null)
@@ -1228,7 +1444,7 @@ public final class ValidationEngine {
             deleteCondition(new EditableCondition(condition));
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1247,22 +1463,28 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void deleteCondition(EditableCondition editableCondition) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
+            EngineState state = _STATE;
+
             // get the condition
             Condition condition = getCondition(editableCondition.getId());
             if (condition == null)
                 throw new ConstructionException("Unknown condition: " + editableCondition.getId());
 
-            // update internal state
-            _EXECUTABLE_CONDITIONS.remove(editableCondition.getConditionId());
-            updateProcessorsConditions(_EXECUTABLE_CONDITIONS.values());
+            Map<Long, ExecutableCondition> conditions = new HashMap<>(state._executableConditions);
+            conditions.remove(editableCondition.getConditionId());
 
-            // update the raw structure only if the state was successfully updated...
-            _VALIDATORS.get(editableCondition.getValidatorId()).getConditions().remove(condition);
+            // update the raw structure (the collection is replaced, not modified, since it might be read at the same time) and publish the new state (the rules
+            // are not affected, so there is no need to re-sort them)
+            Validator validator = state._validators.get(editableCondition.getValidatorId());
+            Set<Condition> validatorConditions = new HashSet<>(validator.getConditions());
+            validatorConditions.remove(condition);
+            validator.setConditions(validatorConditions);
+            _STATE = new EngineState(state._validators, state._executableRules, conditions, state._contexts, state._sortedRules);
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1284,8 +1506,12 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static Validator addValidator(EditableValidator editableValidator) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
+            long start = System.nanoTime();
+            Object event = EngineEvents.updateStarted();
+            EngineState state = _STATE;
+
             if (getValidator(editableValidator.getId()) != null)
                 throw new ConstructionException("Group IDs must be unique within the edits engine, cannot add '" + editableValidator.getId() + "'");
 
@@ -1311,25 +1537,28 @@ public final class ValidationEngine {
             internalizeValidator(v, conditions, rules, contexts);
 
             // add the existing rules and conditions
-            conditions.putAll(_EXECUTABLE_CONDITIONS);
-            rules.putAll(_EXECUTABLE_RULES);
+            conditions.putAll(state._executableConditions);
+            rules.putAll(state._executableRules);
 
             // sort the rules by dependencies (this could though a dependency exception)
             List<ExecutableRule> sortedRules = getRulesSortedByDependencies(rules, conditions);
 
-            // at this point we checked everything, so let's update the internal state of the engine
-            _EXECUTABLE_CONDITIONS.putAll(conditions);
-            _EXECUTABLE_RULES.putAll(rules);
-            _CONTEXTS.put(v.getValidatorId(), contexts);
-            populateProcessors(sortedRules);
-
-            // update the raw structure only if the state was successfully updated...
-            _VALIDATORS.put(v.getId(), v);
+            // at this point we checked everything, so let's publish the new state of the engine
+            Map<String, Validator> validators = new HashMap<>(state._validators);
+            validators.put(v.getId(), v);
+            Map<Long, Map<String, Object>> allContexts = new HashMap<>(state._contexts);
+            allContexts.put(v.getValidatorId(), contexts);
+            _STATE = new EngineState(validators, rules, conditions, allContexts, sortedRules);
+            _WARMED_UP = false;
+            compileInBackground(rules.values());
+            EngineMetrics.updateDone(System.nanoTime() - start);
+            if (event != null)
+                EngineEvents.updateDone(event, "addValidator", v.getId());
 
             return v;
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1353,11 +1582,11 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void updateValidator(EditableValidator editableValidator) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
             // get the validator
             Validator v = null;
-            for (Validator val : _VALIDATORS.values())
+            for (Validator val : _STATE._validators.values())
                 if (val.getValidatorId().equals(editableValidator.getValidatorId()))
                     v = val;
             if (v == null)
@@ -1368,7 +1597,7 @@ public final class ValidationEngine {
             addValidator(editableValidator);
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1382,7 +1611,7 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void deleteValidator(String validatorId) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
             Validator v = getValidator(validatorId);
             if (v == null)
@@ -1390,7 +1619,7 @@ public final class ValidationEngine {
             deleteValidator(new EditableValidator(v));
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1409,30 +1638,34 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void deleteValidator(EditableValidator editableValidator) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
+            EngineState state = _STATE;
+
             // get the validator
             Validator v = getValidator(editableValidator.getId());
             if (v == null)
                 throw new ConstructionException("Unknown group: " + editableValidator.getId());
 
+            Map<Long, ExecutableCondition> conditions = new HashMap<>(state._executableConditions);
             for (Condition condition : v.getConditions())
-                _EXECUTABLE_CONDITIONS.remove(condition.getConditionId());
+                conditions.remove(condition.getConditionId());
+            Map<Long, ExecutableRule> rules = new HashMap<>(state._executableRules);
             for (Rule r : v.getRules())
-                _EXECUTABLE_RULES.remove(r.getRuleId());
-            _CONTEXTS.remove(editableValidator.getValidatorId());
+                rules.remove(r.getRuleId());
+            Map<Long, Map<String, Object>> allContexts = new HashMap<>(state._contexts);
+            allContexts.remove(editableValidator.getValidatorId());
+            Map<String, Validator> validators = new HashMap<>(state._validators);
+            validators.remove(editableValidator.getId());
 
             // sort the rules by dependencies (this could though a dependency exception)
-            List<ExecutableRule> sortedRules = getRulesSortedByDependencies(_EXECUTABLE_RULES, _EXECUTABLE_CONDITIONS);
-
-            // update the internal state of the engine
-            populateProcessors(sortedRules);
+            List<ExecutableRule> sortedRules = getRulesSortedByDependencies(rules, conditions);
 
-            // update the raw structure only if the state was successfully updated...
-            _VALIDATORS.remove(editableValidator.getId());
+            // publish the new state of the engine
+            _STATE = new EngineState(validators, rules, conditions, allContexts, sortedRules);
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1449,35 +1682,41 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static ContextEntry addContext(Long contextEntryId, String contextKey, String validatorId, String expression, String type) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
+            EngineState state = _STATE;
+
             Validator v = getValidator(validatorId);
             if (v == null)
                 throw new ConstructionException("Invalid group: " + validatorId);
 
+            Map<String, Object> currentContexts = state._contexts.get(v.getValidatorId());
+            if (currentContexts == null)
+                throw new ConstructionException("Invalid group: " + validatorId);
+
             // check unicity
-            if (_CONTEXTS.get(v.getValidatorId()).containsKey(contextKey))
+            if (currentContexts.containsKey(contextKey))
                 throw new ConstructionException("Context key '" + contextKey + "' already exists; context keys must be unique within a group");
 
-            Map<String, Object> contexts = _CONTEXTS.get(v.getValidatorId());
-            if (contexts == null)
-                throw new ConstructionException("Invalid group: " + validatorId);
-
+            // the published contexts are never modified, so the new context is evaluated into a copy of them
+            Map<String, Object> contexts = new HashMap<>(currentContexts);
             ValidatorServices.getInstance().addContextExpression(expression, contexts, contextKey, type);
 
-            updateProcessorsContexts(_CONTEXTS);
+            publishContexts(state, v.getValidatorId(), contexts);
 
             ContextEntry entry = new ContextEntry();
             entry.setContextEntryId(contextEntryId);
             entry.setKey(contextKey);
             entry.setExpression(expression);
             entry.setType(type);
-            v.getRawContext().add(entry);
+            Set<ContextEntry> rawContext = new HashSet<>(v.getRawContext());
+            rawContext.add(entry);
+            v.setRawContext(rawContext);
 
             return entry;
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1492,8 +1731,10 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void updateContext(String contextKey, String validatorId, String expression, String type) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
+            EngineState state = _STATE;
+
             Validator v = getValidator(validatorId);
             if (v == null)
                 throw new ConstructionException("Invalid group: " + validatorId);
@@ -1501,21 +1742,23 @@ public final class ValidationEngine {
             if (entry == null)
                 throw new ConstructionException("Invalid key: " + contextKey);
 
-            Map<String, Object> contexts = _CONTEXTS.get(v.getValidatorId());
-            if (contexts == null)
+            Map<String, Object> currentContexts = state._contexts.get(v.getValidatorId());
+            if (currentContexts == null)
                 throw new ConstructionException("Invalid group: " + validatorId);
-            if (!contexts.containsKey(contextKey))
+            if (!currentContexts.containsKey(contextKey))
                 throw new ConstructionException("Group " + validatorId + " does not contain a context for key " + contextKey);
 
+            // the published contexts are never modified, so the context is re-evaluated into a copy of them
+            Map<String, Object> contexts = new HashMap<>(currentContexts);
             ValidatorServices.getInstance().addContextExpression(expression, contexts, contextKey, type);
 
-            updateProcessorsContexts(_CONTEXTS);
+            publishContexts(state, v.getValidatorId(), contexts);
 
             entry.setExpression(expression);
             entry.setType(type);
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1528,8 +1771,10 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void deleteContext(String contextKey, String validatorId) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
+            EngineState state = _STATE;
+
             Validator v = getValidator(validatorId);
             if (v == null)
                 throw new ConstructionException("Invalid group: " + validatorId);
@@ -1537,20 +1782,23 @@ public final class ValidationEngine {
             if (entry == null)
                 throw new ConstructionException("Invalid key: " + contextKey);
 
-            Map<String, Object> contexts = _CONTEXTS.get(v.getValidatorId());
-            if (contexts == null)
+            Map<String, Object> currentContexts = state._contexts.get(v.getValidatorId());
+            if (currentContexts == null)
                 throw new ConstructionException("Invalid group: " + validatorId);
-            if (!contexts.containsKey(contextKey))
+            if (!currentContexts.containsKey(contextKey))
                 throw new ConstructionException("Group " + validatorId + " does not contain a context for key " + contextKey);
 
+            Map<String, Object> contexts = new HashMap<>(currentContexts);
             contexts.remove(contextKey);
 
-            updateProcessorsContexts(_CONTEXTS);
+            publishContexts(state, v.getValidatorId(), contexts);
 
-            v.getRawContext().remove(entry);
+            Set<ContextEntry> rawContext = new HashSet<>(v.getRawContext());
+            rawContext.remove(entry);
+            v.setRawContext(rawContext);
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1565,40 +1813,54 @@ public final class ValidationEngine {
      * @param idsToStopIgnoring a collection of rule IDs that must not be ignored anymore, no rule will be set to not-ignore if the collection is null (or empty)
      */
     public static void massUpdateIgnoreFlags(Collection<String> idsToIgnore, Collection<String> idsToStopIgnoring) {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
-            // update the executable rules
-            for (ExecutableRule execRule : _EXECUTABLE_RULES.values()) {
-                String id = execRule.getId();
-
-                if (idsToIgnore != null && idsToIgnore.contains(id))
-                    execRule.setIgnored(Boolean.TRUE);
-                else if (idsToStopIgnoring != null && idsToStopIgnoring.contains(id))
-                    execRule.setIgnored(Boolean.FALSE);
-            }
-
-            // update the processors after re-evaluating the rules order
-            try {
-                updateProcessorsRules(getRulesSortedByDependencies(_EXECUTABLE_RULES, _EXECUTABLE_CONDITIONS));
-            }
-            catch (ConstructionException e) {
-                throw new RuntimeException("Internal state has not changed, this exception should not happen!", e);
-            }
+            EngineState state = _STATE;
 
-            // update the raw data
-            for (Validator v : _VALIDATORS.values()) {
+            // update the rules (the published ones are never modified, the rules that need to change are copied)
+            Map<Long, ExecutableRule> rules = new HashMap<>(state._executableRules);
+            Map<Validator, Set<Rule>> validatorsRules = new HashMap<>();
+            for (Validator v : state._validators.values()) {
+                Set<Rule> validatorRules = null;
                 for (Rule r : v.getRules()) {
                     String id = r.getId();
 
+                    Boolean ignored = null;
                     if (idsToIgnore != null && idsToIgnore.contains(id))
-                        r.setIgnored(Boolean.TRUE);
+                        ignored = Boolean.TRUE;
                     else if (idsToStopIgnoring != null && idsToStopIgnoring.contains(id))
-                        r.setIgnored(Boolean.FALSE);
+                        ignored = Boolean.FALSE;
+
+                    ExecutableRule execRule = rules.get(r.getRuleId());
+                    if (ignored != null && (!ignored.equals(r.getIgnored()) || (execRule != null && !ignored.equals(execRule.getIgnored())))) {
+                        if (validatorRules == null)
+                            validatorRules = new HashSet<>(v.getRules());
+                        Rule copy = new Rule(r);
+                        copy.setIgnored(ignored);
+                        replaceRule(copy, validatorRules, rules);
+                        if (execRule != null)
+                            rules.get(r.getRuleId()).setIgnored(ignored);
+                    }
                 }
+                if (validatorRules != null)
+                    validatorsRules.put(v, validatorRules);
+            }
+
+            List<ExecutableRule> sortedRules;
+            try {
+                sortedRules = getRulesSortedByDependencies(rules, state._executableConditions);
             }
+            catch (ConstructionException e) {
+                throw new RuntimeException("Internal state has not changed, this exception should not happen!", e);
+            }
+
+            // update the raw data (the collections are replaced, not modified, since they might be read at the same time) and publish the new state
+            for (Map.Entry<Validator, Set<Rule>> entry : validatorsRules.entrySet())
+                entry.getKey().setRules(entry.getValue());
+            _STATE = new EngineState(state._validators, rules, state._executableConditions, state._contexts, sortedRules);
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1609,7 +1871,7 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void enableEmbeddedSet(String validatorId, String setId) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
             Validator v = getValidator(validatorId);
             if (v == null)
@@ -1622,7 +1884,7 @@ public final class ValidationEngine {
             s.setIgnored(false);
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
@@ -1633,7 +1895,7 @@ public final class ValidationEngine {
      * @throws ConstructionException
      */
     public static void disableEmbeddedSet(String validatorId, String setId) throws ConstructionException {
-        _LOCK.writeLock().lock();
+        _LOCK.lock();
         try {
             Validator v = getValidator(validatorId);
             if (v == null)
@@ -1646,15 +1908,49 @@ public final class ValidationEngine {
             s.setIgnored(true);
         }
         finally {
-            _LOCK.writeLock().unlock();
+            _LOCK.unlock();
         }
     }
 
-    // ********************************************************************************
-    //       OTHER PUBLIC METHODS (some lock required, depends on the method)
-    // ********************************************************************************
-
-    public static String getEngineVersion() {
+    /**
+     * Sets the profile used to order the rules; the order always respects the dependencies, but among the rules that can run, the cheap rules that fail often
+     * (and whose failures prevent many dependent rules from running) run first. That doesn't change which failures are reported, but it changes their order,
+     * and a validation limited by a maximum number of failures or a time budget reports its failures sooner.
+     * <p/>
+     * The profile is typically the result of getStats() after a representative run (the statistics need to be on), or a profile saved with writeRuleProfile()
+     * and loaded at startup with readRuleProfile(), so the order is stable across restarts. The rules that are not in the profile are ordered using a static
+     * estimate of their cost, computed from their expression.
+     * <p/>
+     * If the engine is already initialized, the rules are re-ordered right away; otherwise the profile is used when the engine gets initialized.
+     * @param profile rule statistics keyed by rule ID; null to only sort the rules by dependencies (the default), empty to only use the static estimates
+     */
+    public static void setRuleOrderingProfile(Map<String, ValidationEngineStats> profile) {
+        _LOCK.lock();
+        try {
+            _RULE_ORDERING_PROFILE = profile == null ? null : Collections.unmodifiableMap(new HashMap<>(profile));
+
+            // publish the new state after re-evaluating the rules order
+            if (isInitialized()) {
+                EngineState state = _STATE;
+                try {
+                    _STATE = new EngineState(state._validators, state._executableRules, state._executableConditions, state._contexts,
+                            getRulesSortedByDependencies(state._executableRules, state._executableConditions));
+                }
+                catch (ConstructionException e) {
+                    throw new RuntimeException("Internal state has not changed, this exception should not happen!", e);
+                }
+            }
+        }
+        finally {
+            _LOCK.unlock();
+        }
+    }
+
+    // ********************************************************************************
+    //                       OTHER PUBLIC METHODS (no lock required)
+    // ********************************************************************************
+
+    public static String getEngineVersion() {
         return _ENGINE_VERSION;
     }
 
@@ -1665,13 +1961,7 @@ public final class ValidationEngine {
      * @return the root (first element) of the supported java-path
      */
     public static Set<String> getSupportedJavaPathRoots() {
-        _LOCK.readLock().lock();
-        try {
-            return Collections.unmodifiableSet(_PROCESSOR_ROOTS.keySet());
-        }
-        finally {
-            _LOCK.readLock().unlock();
-        }
+        return _STATE._processorRoots;
     }
 
     /**
@@ -1680,14 +1970,7 @@ public final class ValidationEngine {
      * Created on Jun 29, 2011 by depryf
      */
     public static void turnStatisticsOn() {
-        _LOCK.writeLock().lock();
-        try {
-            for (ValidatingProcessor processor : _PROCESSORS.values())
-                processor.setStatisticsOn(true);
-        }
-        finally {
-            _LOCK.writeLock().unlock();
-        }
+        ValidatingProcessor.setStatisticsOn(true);
     }
 
     /**
@@ -1696,30 +1979,29 @@ public final class ValidationEngine {
      * Created on Jun 29, 2011 by depryf
      */
     public static void turnStatisticsOff() {
-        _LOCK.writeLock().lock();
-        try {
-            for (ValidatingProcessor processor : _PROCESSORS.values())
-                processor.setStatisticsOn(false);
-        }
-        finally {
-            _LOCK.writeLock().unlock();
-        }
+        ValidatingProcessor.setStatisticsOn(false);
     }
 
     /**
      * Returns the statistics gathered so far...
      * <p/>
+     * The returned map is a snapshot, it's not updated by the validations running after this call.
+     * <p/>
      * Created on Nov 30, 2007 by depryf
      * @return a collection of <code>StatsDTO</code> object, possibly empty
      */
     public static Map<String, ValidationEngineStats> getStats() {
-        _LOCK.readLock().lock();
-        try {
-            return ValidatingProcessor.getStats();
-        }
-        finally {
-            _LOCK.readLock().unlock();
-        }
+        return ValidatingProcessor.getStats();
+    }
+
+    /**
+     * Returns a snapshot of the rule and condition statistics gathered so far.
+     * @param reset if true, the statistics are reset as part of the snapshot, which allows the statistics to be periodically collected without double-counting
+     * any run (a run recorded while the statistics are reset might be missed though)
+     * @return the snapshot, never null
+     */
+    public static ValidationEngineStatsSnapshot getStatsSnapshot(boolean reset) {
+        return ValidatingProcessor.getStatsSnapshot(reset);
     }
 
     /**
@@ -1728,12 +2010,79 @@ public final class ValidationEngine {
      * Created on Jun 29, 2009 by depryf
      */
     public static void resetStats() {
-        _LOCK.writeLock().lock();
+        ValidatingProcessor.resetStats();
+    }
+
+    /**
+     * Returns the profile used to order the rules (see setRuleOrderingProfile() method).
+     * @return the profile, null if the rules are only sorted by dependencies
+     */
+    public static Map<String, ValidationEngineStats> getRuleOrderingProfile() {
+        return _RULE_ORDERING_PROFILE;
+    }
+
+    /**
+     * Writes the provided rule profile (for example the result of getStats()) so it can be loaded at startup with readRuleProfile().
+     * <p/>
+     * The profile is written as comma-separated values: rule ID, number of runs, total time in nanoseconds and number of failures.
+     * @param profile rule statistics keyed by rule ID
+     * @param writer writer to use, it will not be closed
+     * @throws IOException if the profile can't be written
+     */
+    public static void writeRuleProfile(Map<String, ValidationEngineStats> profile, Writer writer) throws IOException {
+        RuleOrderer.writeProfile(profile, writer);
+    }
+
+    /**
+     * Reads a rule profile written by writeRuleProfile(); the result can be provided to setRuleOrderingProfile().
+     * @param reader reader to use, it will not be closed
+     * @return rule statistics keyed by rule ID, never null
+     * @throws IOException if the profile can't be read or is invalid
+     */
+    public static Map<String, ValidationEngineStats> readRuleProfile(Reader reader) throws IOException {
+        return RuleOrderer.readProfile(reader);
+    }
+
+    /**
+     * Returns whether or not the statistics are on.
+     * @return true if the statistics are on, false otherwise
+     */
+    public static boolean isStatisticsOn() {
+        return ValidatingProcessor.isStatisticsOn();
+    }
+
+    /**
+     * Registers the management interface of the engine (see ValidationEngineMXBean) in the platform MBean server, under the MXBEAN_NAME name; this
+     * allows the engine to be monitored (and its statistics and ignore flags to be managed) with standard JMX tools. Calling this method when the
+     * interface is already registered has no effect.
+     */
+    public static void registerMXBean() {
         try {
-            ValidatingProcessor.resetStats();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MXBEAN_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(new EngineMXBean(), name);
         }
-        finally {
-            _LOCK.writeLock().unlock();
+        catch (InstanceAlreadyExistsException e) {
+            // another thread registered it in the meantime
+        }
+        catch (JMException e) {
+            throw new RuntimeException("Unable to register the engine management interface", e);
+        }
+    }
+
+    /**
+     * Un-registers the management interface of the engine from the platform MBean server; calling this method when the interface is not registered has no effect.
+     */
+    public static void unregisterMXBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MXBEAN_NAME));
+        }
+        catch (InstanceNotFoundException e) {
+            // not registered
+        }
+        catch (JMException e) {
+            throw new RuntimeException("Unable to un-register the engine management interface", e);
         }
     }
 
@@ -1747,17 +2096,13 @@ public final class ValidationEngine {
      * @return a string representation of the engine's internal state
      */
     public static String dumpInternalState() {
-        _LOCK.readLock().lock();
-        try {
-            StringBuilder result = new StringBuilder();
-            for (String key : new TreeSet<>(_PROCESSORS.keySet())) // let's display the processors from smallest java path to biggest one...
-                _PROCESSORS.get(key).dumpCache(result, key);
+        Map<String, ValidatingProcessor> processors = _STATE._processors;
 
-            return result.toString();
-        }
-        finally {
-            _LOCK.readLock().unlock();
-        }
+        StringBuilder result = new StringBuilder();
+        for (String key : new TreeSet<>(processors.keySet())) // let's display the processors from smallest java path to biggest one...
+            processors.get(key).dumpCache(result, key);
+
+        return result.toString();
     }
 
     /**
@@ -1770,10 +2115,302 @@ public final class ValidationEngine {
         _NUM_COMPILER_THREADS = numThreads;
     }
 
+    /**
+     * Enables the batch compilation (it's enabled by default): when a validator is loaded, all its rule and condition expressions are compiled in a few
+     * shared compilation units (one per compiler thread, see enableMultiThreadedCompilation()) and their classes are defined in a single class loader,
+     * instead of creating a Groovy shell and a class loader for each expression.
+     * <p/>
+     * The batch compilation is not used when the on-disk cache of compiled expressions is enabled. The errors are reported the same way in both modes.
+     */
+    public static void enableBatchCompilation() {
+        _BATCH_COMPILATION = true;
+    }
+
+    /**
+     * Disables the batch compilation; each expression is then compiled individually.
+     */
+    public static void disableBatchCompilation() {
+        _BATCH_COMPILATION = false;
+    }
+
+    /**
+     * Returns whether or not the batch compilation is enabled.
+     * @return true if the batch compilation is enabled
+     */
+    public static boolean isBatchCompilationEnabled() {
+        return _BATCH_COMPILATION;
+    }
+
+    /**
+     * Enables the fused compilation (it's disabled by default): when a validator is loaded, the dynamically compiled rules of each java-path are compiled in a
+     * single class, with one method per rule and a generated dispatcher. This loads far fewer classes, and the rules of a java-path share their script
+     * instances, which helps the JVM inline the calls on large validators.
+     * <p/>
+     * The rules run exactly like before (same binding, same results, same failures). The rules that declare methods, classes or imports, the rules that
+     * request static compilation and the rules that can't be compiled in the fused class are compiled the usual way. The expressions that are not fused are
+     * batch-compiled (see enableBatchCompilation()), and the fused compilation is not used when the on-disk cache of compiled expressions is enabled.
+     * <p/>
+     * This needs to be called before the validators are loaded.
+     */
+    public static void enableFusedCompilation() {
+        _FUSED_COMPILATION = true;
+    }
+
+    /**
+     * Disables the fused compilation.
+     */
+    public static void disableFusedCompilation() {
+        _FUSED_COMPILATION = false;
+    }
+
+    /**
+     * Returns whether or not the fused compilation is enabled.
+     * @return true if the fused compilation is enabled
+     */
+    public static boolean isFusedCompilationEnabled() {
+        return _FUSED_COMPILATION;
+    }
+
+    /**
+     * Enables the lazy compilation (it's disabled by default): when a validator is loaded, its rules are not compiled anymore, the engine is ready as soon as
+     * the validator and the dependencies of its rules are checked. Each rule is compiled the first time it runs, and the rules that are not used are never
+     * compiled (unless background threads are requested).
+     * <p/>
+     * The compilation errors are not reported when the validators are loaded anymore: a rule that can't be compiled fails with the compilation error every time
+     * it runs, and awaitFullCompilation() can be used to compile all the rules and get their errors. The conditions, and the rules added or updated one at a
+     * time, are still compiled right away.
+     * <p/>
+     * This needs to be called before the validators are loaded.
+     * @param numBackgroundThreads number of low-priority threads compiling the rules in the background (0 to compile the rules only when they first run), must
+     * be between 0 and 32
+     */
+    public static void enableLazyCompilation(int numBackgroundThreads) {
+        if (numBackgroundThreads < 0 || numBackgroundThreads > 32)
+            throw new RuntimeException("Number of threads must be between 0 and 32!");
+        _NUM_BACKGROUND_COMPILER_THREADS = numBackgroundThreads;
+        _LAZY_COMPILATION = true;
+    }
+
+    /**
+     * Disables the lazy compilation; the rules are then compiled when their validator is loaded.
+     */
+    public static void disableLazyCompilation() {
+        _LAZY_COMPILATION = false;
+    }
+
+    /**
+     * Returns whether or not the lazy compilation is enabled.
+     * @return true if the lazy compilation is enabled
+     */
+    public static boolean isLazyCompilationEnabled() {
+        return _LAZY_COMPILATION;
+    }
+
+    /**
+     * Warms up the engine: synthetic validatables are created for each root java-path (with the properties used by the rules and conditions, see
+     * ValidatorServices.getAllJavaPaths()) and validated with all the rules, so the expressions are compiled (if they are lazily compiled) and optimized by the
+     * JVM before the real validatables come in. The values of the properties change from one iteration to the next so the rules go through different branches.
+     * <p/>
+     * The warm-up validations are not included in the statistics and in the metrics of the engine, and their failures are discarded. The engine is reported as
+     * warmed up (see isWarmedUp()) once this method returns, until the validators are loaded again; a load balancer can wait for it before routing traffic to
+     * the application. The engine is not reported as warmed up if nothing was validated (if it's not initialized, or if the iterations or the time budget
+     * didn't allow any validation), or if it was re-loaded during the warm-up.
+     * @param iterations number of synthetic validatables to validate for each root java-path
+     * @param timeBudget maximum time to spend warming up, in milliseconds (0 for no limit); the warm-up stops early once it's exceeded
+     * @return the number of validations executed
+     */
+    public static int warmUp(int iterations, long timeBudget) {
+        if (iterations < 0 || timeBudget < 0)
+            throw new RuntimeException("Number of iterations and time budget can't be negative!");
+
+        EngineState state = _STATE;
+        WarmUpDataGenerator generator = new WarmUpDataGenerator(state._executableRules.values(), state._executableConditions.values());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudget);
+        int count = 0;
+        for (int i = 0; i < iterations && (timeBudget == 0 || System.nanoTime() - deadline < 0); i++) {
+            for (String root : state._processorRoots) {
+                ValidatingContext vContext = new ValidatingContext();
+                vContext.setStatsExcluded(true);
+                try {
+                    internalValidate(state, generator.create(root, i), vContext, failure -> {});
+                }
+                catch (ValidationException e) {
+                    // a synthetic validatable might not make sense to some of the rules, the ones that ran are still warmed up
+                }
+                count++;
+            }
+        }
+
+        // the engine might have been re-loaded in the meantime (the check is done under the lock so a concurrent load can't be reported as warmed up)
+        if (count > 0) {
+            _LOCK.lock();
+            try {
+                if (state == _STATE)
+                    _WARMED_UP = true;
+            }
+            finally {
+                _LOCK.unlock();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns whether or not the engine has been warmed up (see warmUp()) since its validators were loaded.
+     * @return true if the engine has been warmed up
+     */
+    public static boolean isWarmedUp() {
+        return _WARMED_UP;
+    }
+
+    /**
+     * Returns the number of rules that haven't been compiled yet (see enableLazyCompilation()).
+     * @return the number of rules waiting to be compiled
+     */
+    public static int getNumPendingCompilations() {
+        int count = 0;
+        for (ExecutableRule rule : _STATE._sortedRules)
+            if (rule.isCompilationPending())
+                count++;
+        return count;
+    }
+
+    /**
+     * Compiles all the rules of the engine that haven't been compiled yet (see enableLazyCompilation()), in the current thread; the rules that are being
+     * compiled in the background are waited for.
+     * @throws ConstructionException if some rules can't be compiled (all the other rules are still compiled)
+     */
+    public static void awaitFullCompilation() throws ConstructionException {
+        ConstructionException error = null;
+        List<String> failedIds = new ArrayList<>();
+        for (ExecutableRule rule : _STATE._sortedRules) {
+            try {
+                rule.compile();
+            }
+            catch (ConstructionException e) {
+                if (error == null)
+                    error = e;
+                failedIds.add(rule.getId());
+            }
+        }
+
+        if (failedIds.size() > 1)
+            throw new ConstructionException("Unable to compile rules " + String.join(", ", failedIds), error);
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * Returns the number of times each rule exceeded its time budget (see ValidatingContext.setRuleTimeBudget()), since the engine was loaded or the counters were reset.
+     * @return the number of timeouts, keyed by rule ID (only the rules that timed out at least once are returned)
+     */
+    public static Map<String, Long> getRuleTimeouts() {
+        return RuleWatchdog.getTimeouts();
+    }
+
+    /**
+     * Resets the number of times each rule exceeded its time budget.
+     */
+    public static void resetRuleTimeouts() {
+        RuleWatchdog.resetTimeouts();
+    }
+
+    /**
+     * Enables the rule interruption (it's disabled by default): the expressions are compiled with a check of their time budget (see
+     * ValidatingContext.setRuleTimeBudget()) in every loop, closure and method, so a rule exceeding its budget is stopped. Without it, a rule exceeding its budget
+     * runs to completion, and it's reported as a timeout once it returns.
+     * <p/>
+     * The check has a cost on every iteration of every loop, even when no budget is set; that's why it's not compiled in by default. This needs to be called
+     * before the validators are loaded, the expressions compiled before the call are not affected.
+     */
+    public static void enableRuleInterruption() {
+        _RULE_INTERRUPTION = true;
+        ForcedRulesCache.clear();
+    }
+
+    /**
+     * Disables the rule interruption; this needs to be called before the validators are loaded.
+     */
+    public static void disableRuleInterruption() {
+        _RULE_INTERRUPTION = false;
+        ForcedRulesCache.clear();
+    }
+
+    /**
+     * Returns whether or not the rule interruption is enabled.
+     * @return true if the rule interruption is enabled
+     */
+    public static boolean isRuleInterruptionEnabled() {
+        return _RULE_INTERRUPTION;
+    }
+
+    /**
+     * Enables the on-disk cache of compiled rules and conditions: the bytecode of the compiled expressions is written to the provided directory, and the
+     * expressions found in the directory are not re-compiled anymore (they are defined from their cached bytecode instead).
+     * <p/>
+     * This needs to be called before the engine is initialized. The entries are keyed by the expression, the engine version and the Groovy version, so the same
+     * directory can be re-used after an upgrade. Note that when the cache is enabled, the expressions are not compiled through ValidatorServices.compileExpression()
+     * anymore (but the compiler configuration returned by ValidatorServices.getCompilerConfiguration() is still used).
+     * @param directory the cache directory, it will be created if it doesn't exist
+     */
+    public static void enableCompiledScriptsCache(File directory) {
+        CompiledScriptsCache.enable(directory);
+    }
+
+    /**
+     * Disables the on-disk cache of compiled rules and conditions (the cache is disabled by default).
+     */
+    public static void disableCompiledScriptsCache() {
+        CompiledScriptsCache.disable();
+    }
+
+    /**
+     * Sets the capacity of the cache of compiled forced rules (see validate(Validatable, Rule)); the cache is shared by all the processors, and the least
+     * recently used rules are evicted when one of the bounds is exceeded.
+     * <p/>
+     * By default, the cache keeps up to 500 rules, for a total of up to 2 million characters of expressions.
+     * @param maxEntries maximum number of cached rules (0 to disable the cache)
+     * @param maxWeight maximum total length of the expressions of the cached rules
+     */
+    public static void setForcedRulesCacheCapacity(int maxEntries, long maxWeight) {
+        ForcedRulesCache.setCapacity(maxEntries, maxWeight);
+    }
+
+    /**
+     * Returns the number of times a forced rule was found in the cache of compiled forced rules.
+     * @return the number of cache hits
+     */
+    public static long getForcedRulesCacheHits() {
+        return ForcedRulesCache.getHits();
+    }
+
+    /**
+     * Returns the number of times a forced rule had to be compiled because it wasn't in the cache of compiled forced rules.
+     * @return the number of cache misses
+     */
+    public static long getForcedRulesCacheMisses() {
+        return ForcedRulesCache.getMisses();
+    }
+
+    /**
+     * Returns the number of rules currently in the cache of compiled forced rules.
+     * @return the number of cached rules
+     */
+    public static int getForcedRulesCacheSize() {
+        return ForcedRulesCache.getSize();
+    }
+
     // ********************************************************************************
     //                  INTERNAL METHODS (no lock required)
     // ********************************************************************************
 
+    private static void compileInBackground(Collection<ExecutableRule> rules) {
+        int numThreads = _NUM_BACKGROUND_COMPILER_THREADS;
+        if (_LAZY_COMPILATION && numThreads > 0)
+            BackgroundCompiler.submit(rules, numThreads);
+    }
+
     private static void internalizeValidator(Validator validator, Map<Long, ExecutableCondition> conditions, Map<Long, ExecutableRule> rules, Map<String, Object> contexts) throws ConstructionException {
 
         if (validator.getValidatorId() == null)
@@ -1781,8 +2418,15 @@ public final class ValidationEngine {
         if (validator.getValidatorId() == null)
             throw new ConstructionException("Validator must have a non-null internal ID to be registered in the engine");
 
+        // compile all the expressions at once (unless the compiled expressions come from the on-disk cache, or the rules are lazily compiled); the expressions
+        // that fail are compiled again when the executable rules and conditions are created, which reports their errors
+        boolean lazy = _LAZY_COMPILATION;
+        BatchCompiler compiler = null;
+        if ((_BATCH_COMPILATION || _FUSED_COMPILATION) && CompiledScriptsCache.getInstance() == null && !lazy)
+            compiler = BatchCompiler.compile(validator, _NUM_COMPILER_THREADS, _FUSED_COMPILATION);
+
         // internalize the rules
-        ExecutorService service = Executors.newFixedThreadPool(_NUM_COMPILER_THREADS);
+        ExecutorService service = Executors.newFixedThreadPool(compiler == null ? _NUM_COMPILER_THREADS : 1);
         List<Future<Void>> results = new ArrayList<>(validator.getRules().size());
         if (validator.getRules() != null) {
             for (Rule r : validator.getRules()) {
@@ -1790,7 +2434,10 @@ public final class ValidationEngine {
                     r.setRuleId(ValidatorServices.getInstance().getNextRuleSequence());
                 if (r.getRuleId() == null)
                     throw new ConstructionException("Edits must have a non-null internal ID to be registered in the engine");
-                results.add(service.submit(new RuleCompilingCallable(r, rules)));
+                if (lazy)
+                    rules.put(r.getRuleId(), new ExecutableRule(r, null, true));
+                else
+                    results.add(service.submit(new RuleCompilingCallable(r, rules, compiler)));
             }
             validator.setRules(new HashSet<>(validator.getRules())); // since internal IDs might have changed
         }
@@ -1802,7 +2449,7 @@ public final class ValidationEngine {
                     c.setConditionId(ValidatorServices.getInstance().getNextConditionSequence());
                 if (c.getConditionId() == null)
                     throw new ConstructionException("Conditions must have a non-null internal ID to be registered in the engine");
-                conditions.put(c.getConditionId(), new ExecutableCondition(c));
+                conditions.put(c.getConditionId(), new ExecutableCondition(c, compiler));
             }
             validator.setConditions(new HashSet<>(validator.getConditions())); // since internal IDs might have changed
         }
@@ -1826,14 +2473,14 @@ public final class ValidationEngine {
                     if (entry.getExpression().contains(VALIDATOR_CONTEXT_KEY + "."))
                         reRun.add(entry);
                     else
-                        ValidatorServices.getInstance().addContextExpression(entry.getExpression(), contexts, entry.getKey(), entry.getType());
+                        evaluateContext(validator, entry, contexts);
                 }
                 catch (ConstructionException e) {
                     reRun.add(entry);
                 }
             }
             for (ContextEntry entry : reRun)
-                ValidatorServices.getInstance().addContextExpression(entry.getExpression(), contexts, entry.getKey(), entry.getType());
+                evaluateContext(validator, entry, contexts);
             validator.setRawContext(new HashSet<>(validator.getRawContext())); // since internal IDs might have changed
         }
 
@@ -1872,6 +2519,13 @@ public final class ValidationEngine {
         }
     }
 
+    private static void evaluateContext(Validator validator, ContextEntry entry, Map<String, Object> contexts) throws ConstructionException {
+        Object event = EngineEvents.contextStarted();
+        ValidatorServices.getInstance().addContextExpression(entry.getExpression(), contexts, entry.getKey(), entry.getType());
+        if (event != null)
+            EngineEvents.contextDone(event, validator.getId(), entry.getKey());
+    }
+
     private static Set<String> checkValidatorConstraints(List<Validator> validators) throws ConstructionException {
         Set<String> validatorIds = new HashSet<>(), conditionIds = new HashSet<>(), categoryIds = new HashSet<>(), ruleIds = new HashSet<>();
         for (Validator v : validators) {
@@ -1908,44 +2562,82 @@ public final class ValidationEngine {
     }
 
     private static Collection<RuleFailure> internalValidate(Validatable validatable, ValidatingContext vContext) throws ValidationException {
+        return internalValidate(_STATE, validatable, vContext);
+    }
+
+    private static Collection<RuleFailure> internalValidate(EngineState state, Validatable validatable, ValidatingContext vContext) throws ValidationException {
+
+        // the failures are retained after they are reported, so they need to be detached
+        List<RuleFailure> failures = new ArrayList<>();
+        internalValidate(state, validatable, vContext, failure -> failures.add(failure.detach()));
+        return failures;
+    }
+
+    private static void internalValidate(Validatable validatable, ValidatingContext vContext, FailureSink sink) throws ValidationException {
+        internalValidate(_STATE, validatable, vContext, sink);
+    }
+
+    private static void internalValidate(EngineState state, Validatable validatable, ValidatingContext vContext, FailureSink sink) throws ValidationException {
 
         // pre-condition: engine must be initialized
         if (_STATUS == ValidationEngineStatus.NOT_INITIALIZED)
-            return new HashSet<>();
+            return;
 
-        // pre-condition: there must be a root processor for this validatable
-        Processor processor = _PROCESSORS.get(validatable.getRootLevel());
+        // pre-condition: there must be a root processor for this validatable (the state is read only once by the caller, so the validation will use a single
+        // version of it)
+        Processor processor = state._processors.get(validatable.getRootLevel());
         if (processor == null)
-            return new HashSet<>();
+            return;
 
         // pre-condition: if a forced rule is provided, it must have a known java path
         if (vContext.getToForce() != null && !ValidatorServices.getInstance().getAllJavaPaths().containsKey(vContext.getToForce().getJavaPath()))
             throw new ValidationException("Unknown java path for forced edit: " + vContext.getToForce().getJavaPath());
 
-        // process the validatable
-        return processor.process(validatable, vContext);
+        // process the validatable; a single accumulator is passed down the processors, it counts the failures and limits them to the maximum number of failures
+        // (when the children are validated concurrently, some of them might report failures before they notice the validation is stopped)
+        Object event = EngineEvents.validationStarted();
+        if (event != null)
+            vContext.countExecutedRules();
+        Integer maxFailures = vContext.getMaxFailures();
+        int[] numFailures = new int[1];
+        processor.process(validatable, vContext, failure -> {
+            if (maxFailures == null || numFailures[0] < maxFailures) {
+                numFailures[0]++;
+                sink.failureReported(failure);
+            }
+        });
+        if (!vContext.isStatsExcluded())
+            EngineMetrics.validationDone(numFailures[0]);
+        if (event != null)
+            EngineEvents.validationDone(event, validatable.getRootLevel(), vContext.getNumExecutedRules(), numFailures[0]);
     }
 
-    private static void populateProcessors(List<ExecutableRule> sortedRules) {
+    private static void publishContexts(EngineState state, Long validatorId, Map<String, Object> contexts) {
+        Map<Long, Map<String, Object>> allContexts = new HashMap<>(state._contexts);
+        allContexts.put(validatorId, contexts);
 
-        _PROCESSORS.clear();
-        _PROCESSOR_ROOTS.clear();
+        // the rules are not affected, so there is no need to re-sort them
+        _STATE = new EngineState(state._validators, state._executableRules, state._executableConditions, allContexts, state._sortedRules);
+    }
+
+    private static void populateProcessors(Map<String, ValidatingProcessor> processors, Set<String> processorRoots, List<ExecutableRule> sortedRules, Collection<ExecutableCondition> conditions,
+            Map<Long, Map<String, Object>> contexts) {
 
         // go through each java path and create/get the corresponding processors        
         for (String javaPath : ValidatorServices.getInstance().getAllJavaPaths().keySet()) {
             String[] parts = StringUtils.split(javaPath, '.');
 
-            // keep track of the roots (I couldn't find a concurrent implementation of a set, so I am using a map with dummy objects)
-            _PROCESSOR_ROOTS.put(parts[0], new Object());
+            // keep track of the roots
+            processorRoots.add(parts[0]);
 
             // keep track of the current partial path
             StringBuilder partialPath = new StringBuilder(parts[0]);
 
             // first part correspond to a validating processor
-            ValidatingProcessor validatingProcessor = _PROCESSORS.get(partialPath.toString());
+            ValidatingProcessor validatingProcessor = processors.get(partialPath.toString());
             if (validatingProcessor == null) {
                 validatingProcessor = new ValidatingProcessor(partialPath.toString());
-                _PROCESSORS.put(partialPath.toString(), validatingProcessor);
+                processors.put(partialPath.toString(), validatingProcessor);
             }
 
             // the rest of the parts correspond to iterative processors...
@@ -1953,11 +2645,11 @@ public final class ValidationEngine {
             for (int i = 1; i < parts.length; i++) {
                 partialPath.append(".").append(parts[i]);
 
-                ValidatingProcessor vProcessor = _PROCESSORS.get(partialPath.toString());
+                ValidatingProcessor vProcessor = processors.get(partialPath.toString());
                 if (vProcessor == null) {
                     vProcessor = new ValidatingProcessor(partialPath.toString());
                     IterativeProcessor iProcessor = new IterativeProcessor(vProcessor, parts[i]);
-                    _PROCESSORS.put(partialPath.toString(), vProcessor);
+                    processors.put(partialPath.toString(), vProcessor);
                     current.addNested(iProcessor);
                 }
 
@@ -1966,13 +2658,14 @@ public final class ValidationEngine {
         }
 
         // update the processors
-        if (sortedRules != null)
-            updateProcessorsRules(sortedRules);
-        updateProcessorsConditions(_EXECUTABLE_CONDITIONS.values());
-        updateProcessorsContexts(_CONTEXTS);
+        ValidatingIndexes indexes = new ValidatingIndexes(sortedRules, conditions);
+        updateProcessorsRules(processors, sortedRules, indexes);
+        updateProcessorsConditions(processors, conditions, indexes);
+        updateProcessorsDescendantRules(processors, sortedRules);
+        updateProcessorsContexts(processors, contexts);
     }
 
-    private static void updateProcessorsRules(List<ExecutableRule> sortedRules) {
+    private static void updateProcessorsRules(Map<String, ValidatingProcessor> processors, List<ExecutableRule> sortedRules, ValidatingIndexes indexes) {
 
         // get the sorted rules by java-path
         Map<String, List<ExecutableRule>> rules = new HashMap<>();
@@ -1986,11 +2679,11 @@ public final class ValidationEngine {
         }
 
         // update all the processors
-        for (ValidatingProcessor p : _PROCESSORS.values())
-            p.setRules(rules.containsKey(p.getJavaPath()) ? rules.get(p.getJavaPath()) : Collections.emptyList());
+        for (ValidatingProcessor p : processors.values())
+            p.setRules(rules.containsKey(p.getJavaPath()) ? rules.get(p.getJavaPath()) : Collections.emptyList(), indexes);
     }
 
-    private static void updateProcessorsConditions(Collection<ExecutableCondition> allConditions) {
+    private static void updateProcessorsConditions(Map<String, ValidatingProcessor> processors, Collection<ExecutableCondition> allConditions, ValidatingIndexes indexes) {
 
         // get the conditions by java-path (there is no order needed for conditions)
         Map<String, List<ExecutableCondition>> conditions = new HashMap<>();
@@ -2004,18 +2697,53 @@ public final class ValidationEngine {
         }
 
         // update all the processors
-        for (ValidatingProcessor p : _PROCESSORS.values())
-            p.setConditions(conditions.containsKey(p.getJavaPath()) ? conditions.get(p.getJavaPath()) : Collections.emptyList());
+        for (ValidatingProcessor p : processors.values())
+            p.setConditions(conditions.containsKey(p.getJavaPath()) ? conditions.get(p.getJavaPath()) : Collections.emptyList(), indexes);
     }
 
-    private static void updateProcessorsContexts(Map<Long, Map<String, Object>> allContexts) {
+    private static void updateProcessorsDescendantRules(Map<String, ValidatingProcessor> processors, List<ExecutableRule> sortedRules) {
+
+        // get the rules using conditions by java-path, and assign them to all the parent paths (only those rules matter for the lazy evaluation of the conditions)
+        Map<String, List<ExecutableRule>> rules = new HashMap<>();
+        for (ExecutableRule rule : sortedRules) {
+            if (rule.getConditions() == null || rule.getConditions().isEmpty())
+                continue;
+            String path = rule.getJavaPath();
+            for (int idx = path.lastIndexOf('.'); idx != -1; idx = path.lastIndexOf('.', idx - 1)) {
+                String parentPath = path.substring(0, idx);
+                List<ExecutableRule> list = rules.get(parentPath);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    rules.put(parentPath, list);
+                }
+                list.add(rule);
+            }
+        }
+
+        // update all the processors
+        for (ValidatingProcessor p : processors.values())
+            p.setDescendantRules(rules.containsKey(p.getJavaPath()) ? rules.get(p.getJavaPath()) : Collections.emptyList());
+    }
+
+    private static void updateProcessorsContexts(Map<String, ValidatingProcessor> processors, Map<Long, Map<String, Object>> allContexts) {
 
         // this code used to be smart about which validator was used at which java-path, and provide only the contexts for that particular
         // java-path to the processor; but that doesn't work in SEER*DMS where some edits are persisted but not registered to the engine!
-        for (ValidatingProcessor p : _PROCESSORS.values())
+        for (ValidatingProcessor p : processors.values())
             p.setContexts(allContexts);
     }
 
+    private static void replaceRule(Rule rule, Set<Rule> validatorRules, Map<Long, ExecutableRule> rules) {
+        validatorRules.remove(rule);
+        validatorRules.add(rule);
+        ExecutableRule execRule = rules.get(rule.getRuleId());
+        if (execRule != null) {
+            execRule = new ExecutableRule(execRule);
+            execRule.setRule(rule);
+            rules.put(execRule.getInternalId(), execRule);
+        }
+    }
+
     private static List<ExecutableRule> getRulesSortedByDependencies(Map<Long, ExecutableRule> rules, Map<Long, ExecutableCondition> conditions) throws ConstructionException {
         List<ExecutableRule> rulesQueue = new LinkedList<>();
 
@@ -2052,6 +2780,11 @@ public final class ValidationEngine {
         while (!ruleCache.isEmpty())
             addToRuleQueue(ruleCache.remove(ruleCache.keySet().iterator().next()), ruleCache, currents, rulesQueue, pathCache, validatorCache);
 
+        // re-order the rules within their dependency constraints if a profile is available
+        Map<String, ValidationEngineStats> profile = _RULE_ORDERING_PROFILE;
+        if (profile != null)
+            return RuleOrderer.order(rulesQueue, profile);
+
         return rulesQueue;
     }
 
@@ -2108,4 +2841,262 @@ public final class ValidationEngine {
         currents.clear();
     }
 
-}
\ No newline at end of file
+
+    /**
+     * Snapshot of the internal state of the engine; a state is built entirely before being published, and it is never modified after that.
+     */
+    private static final class EngineState {
+
+        /**
+         * Map of <code>Validator</code>s, keyed by validator ID
+         */
+        private final Map<String, Validator> _validators;
+
+        /**
+         * Map of <code>Processor</code>s, keyed by java-path
+         */
+        private final Map<String, ValidatingProcessor> _processors;
+
+        /**
+         * Currently used processor roots (for SEER, that would be "lines", for DMS it would be "patient", etc...)
+         */
+        private final Set<String> _processorRoots;
+
+        /**
+         * Map of <code>ExecutableRule</code>s, keyed by rule internal ID
+         */
+        private final Map<Long, ExecutableRule> _executableRules;
+
+        /**
+         * Map of <code>ExecutableCondition</code>s, keyed by condition internal ID
+         */
+        private final Map<Long, ExecutableCondition> _executableConditions;
+
+        /**
+         * Compiled contexts, keyed by validator internal ID and context ID
+         */
+        private final Map<Long, Map<String, Object>> _contexts;
+
+        /**
+         * Executable rules sorted by dependencies
+         */
+        private final List<ExecutableRule> _sortedRules;
+
+        /**
+         * Index of the rules by the properties they use (see revalidate() method); built from the executable rules and conditions of this state
+         */
+        private final RevalidationIndex _revalidationIndex;
+
+        /**
+         * Constructor for an empty state (no processor at all).
+         */
+        private EngineState() {
+            _validators = Collections.emptyMap();
+            _processors = Collections.emptyMap();
+            _processorRoots = Collections.emptySet();
+            _executableRules = Collections.emptyMap();
+            _executableConditions = Collections.emptyMap();
+            _contexts = Collections.emptyMap();
+            _sortedRules = Collections.emptyList();
+            _revalidationIndex = new RevalidationIndex(Collections.emptyList(), Collections.emptyList());
+        }
+
+        /**
+         * Constructor; the provided collections are copied, and the processors are created from them.
+         * @param validators validators, keyed by ID
+         * @param rules executable rules, keyed by internal ID
+         * @param conditions executable conditions, keyed by internal ID
+         * @param contexts compiled contexts, keyed by validator internal ID (the individual context maps are not copied, they must not be modified once the state is published)
+         * @param sortedRules executable rules sorted by dependencies
+         */
+        private EngineState(Map<String, Validator> validators, Map<Long, ExecutableRule> rules, Map<Long, ExecutableCondition> conditions, Map<Long, Map<String, Object>> contexts,
+                List<ExecutableRule> sortedRules) {
+            _validators = Collections.unmodifiableMap(new HashMap<>(validators));
+            _executableRules = Collections.unmodifiableMap(new HashMap<>(rules));
+            _executableConditions = Collections.unmodifiableMap(new HashMap<>(conditions));
+            _contexts = Collections.unmodifiableMap(new HashMap<>(contexts));
+            _sortedRules = Collections.unmodifiableList(new ArrayList<>(sortedRules));
+
+            Map<String, ValidatingProcessor> processors = new HashMap<>();
+            Set<String> processorRoots = new HashSet<>();
+            populateProcessors(processors, processorRoots, _sortedRules, _executableConditions.values(), _contexts);
+            _processors = Collections.unmodifiableMap(processors);
+            _processorRoots = Collections.unmodifiableSet(processorRoots);
+            _revalidationIndex = new RevalidationIndex(_executableRules.values(), _executableConditions.values());
+        }
+    }
+
+    /**
+     * Implementation of the management interface of the engine; it always reads the current state of the engine.
+     */
+    private static final class EngineMXBean implements ValidationEngineMXBean {
+
+        // minimum time between two samples of the counters used to compute the rates
+        private static final long _MIN_SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+        // time of the last sample (see System.nanoTime()); guarded by this
+        private long _sampleTime = System.nanoTime();
+
+        // counters at the last sample (validations, failures, exceptions); guarded by this
+        private long[] _sampleCounts = getCounts();
+
+        // rates computed at the last sample (validations, failures, exceptions); guarded by this
+        private double[] _rates = new double[3];
+
+        @Override
+        public String getStatus() {
+            return _STATUS.name();
+        }
+
+        @Override
+        public int getNumValidators() {
+            return _STATE._validators.size();
+        }
+
+        @Override
+        public int getNumRules() {
+            return _STATE._executableRules.size();
+        }
+
+        @Override
+        public int getNumConditions() {
+            return _STATE._executableConditions.size();
+        }
+
+        @Override
+        public Map<String, Integer> getNumRulesPerJavaPath() {
+            Map<String, Integer> result = new TreeMap<>();
+            for (Map.Entry<String, ValidatingProcessor> entry : _STATE._processors.entrySet())
+                result.put(entry.getKey(), entry.getValue().getNumRules());
+            return result;
+        }
+
+        @Override
+        public long getNumValidations() {
+            return EngineMetrics.getNumValidations();
+        }
+
+        @Override
+        public long getNumFailures() {
+            return EngineMetrics.getNumFailures();
+        }
+
+        @Override
+        public long getNumExceptions() {
+            return EngineMetrics.getNumExceptions();
+        }
+
+        @Override
+        public double getValidationsPerSecond() {
+            return getRates()[0];
+        }
+
+        @Override
+        public double getFailuresPerSecond() {
+            return getRates()[1];
+        }
+
+        @Override
+        public double getExceptionsPerSecond() {
+            return getRates()[2];
+        }
+
+        @Override
+        public long getLastInitializationDuration() {
+            return EngineMetrics.getLastInitializationDuration();
+        }
+
+        @Override
+        public long getLastUpdateDuration() {
+            return EngineMetrics.getLastUpdateDuration();
+        }
+
+        @Override
+        public boolean isStatisticsOn() {
+            return ValidationEngine.isStatisticsOn();
+        }
+
+        @Override
+        public long getForcedRulesCacheHits() {
+            return ForcedRulesCache.getHits();
+        }
+
+        @Override
+        public long getForcedRulesCacheMisses() {
+            return ForcedRulesCache.getMisses();
+        }
+
+        @Override
+        public int getForcedRulesCacheSize() {
+            return ForcedRulesCache.getSize();
+        }
+
+        @Override
+        public boolean isWarmedUp() {
+            return ValidationEngine.isWarmedUp();
+        }
+
+        @Override
+        public List<String> getSlowestRules(int n) {
+            List<ValidationEngineStats> stats = new ArrayList<>(ValidationEngine.getStats().values());
+            stats.sort((s1, s2) -> Long.compare(s2.getAverageTimeNanos(), s1.getAverageTimeNanos()));
+
+            List<String> result = new ArrayList<>();
+            for (ValidationEngineStats s : stats.subList(0, Math.max(0, Math.min(n, stats.size()))))
+                result.add(s.getId() + ": " + s.getNumRun() + " run(s), average " + s.getAverageTimeNanos() / 1000 + "us, p99 " + s.getP99Nanos() / 1000 + "us, longest "
+                        + s.getLongestTimeNanos() / 1000 + "us");
+            return result;
+        }
+
+        @Override
+        public void turnStatisticsOn() {
+            ValidationEngine.turnStatisticsOn();
+        }
+
+        @Override
+        public void turnStatisticsOff() {
+            ValidationEngine.turnStatisticsOff();
+        }
+
+        @Override
+        public void resetStats() {
+            ValidationEngine.resetStats();
+        }
+
+        @Override
+        public void ignoreRules(String ruleIds) {
+            massUpdateIgnoreFlags(splitIds(ruleIds), null);
+        }
+
+        @Override
+        public void stopIgnoringRules(String ruleIds) {
+            massUpdateIgnoreFlags(null, splitIds(ruleIds));
+        }
+
+        private static Set<String> splitIds(String ids) {
+            Set<String> result = new HashSet<>();
+            if (ids != null)
+                for (String id : StringUtils.split(ids, ','))
+                    if (!id.trim().isEmpty())
+                        result.add(id.trim());
+            return result;
+        }
+
+        private static long[] getCounts() {
+            return new long[] {EngineMetrics.getNumValidations(), EngineMetrics.getNumFailures(), EngineMetrics.getNumExceptions()};
+        }
+
+        private synchronized double[] getRates() {
+            long now = System.nanoTime();
+            if (now - _sampleTime >= _MIN_SAMPLE_INTERVAL) {
+                long[] counts = getCounts();
+                double seconds = (double)(now - _sampleTime) / TimeUnit.SECONDS.toNanos(1);
+                for (int i = 0; i < counts.length; i++)
+                    _rates[i] = (counts[i] - _sampleCounts[i]) / seconds;
+                _sampleTime = now;
+                _sampleCounts = counts;
+            }
+            return _rates.clone();
+        }
+    }
+}
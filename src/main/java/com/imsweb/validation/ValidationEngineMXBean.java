@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management interface of the validation engine; it's registered in the platform MBean server by ValidationEngine.registerMXBean().
+ * <p/>
+ * The rates are computed between two samples of the counters; a sample is taken when a rate is requested and the previous sample is at least one second old.
+ */
+public interface ValidationEngineMXBean {
+
+    /**
+     * Returns the status of the engine.
+     * @return the status of the engine (see ValidationEngineStatus)
+     */
+    String getStatus();
+
+    /**
+     * Returns the number of validators loaded in the engine.
+     * @return the number of validators
+     */
+    int getNumValidators();
+
+    /**
+     * Returns the number of rules loaded in the engine.
+     * @return the number of rules
+     */
+    int getNumRules();
+
+    /**
+     * Returns the number of conditions loaded in the engine.
+     * @return the number of conditions
+     */
+    int getNumConditions();
+
+    /**
+     * Returns the number of rules of each processor.
+     * @return the number of rules, keyed by java-path
+     */
+    Map<String, Integer> getNumRulesPerJavaPath();
+
+    /**
+     * Returns the number of validated validatables since the engine was loaded.
+     * @return the number of validations
+     */
+    long getNumValidations();
+
+    /**
+     * Returns the number of failures reported since the engine was loaded.
+     * @return the number of failures
+     */
+    long getNumFailures();
+
+    /**
+     * Returns the number of rules that failed with an exception since the engine was loaded.
+     * @return the number of exceptions
+     */
+    long getNumExceptions();
+
+    /**
+     * Returns the number of validated validatables per second.
+     * @return the number of validations per second
+     */
+    double getValidationsPerSecond();
+
+    /**
+     * Returns the number of failures reported per second.
+     * @return the number of failures per second
+     */
+    double getFailuresPerSecond();
+
+    /**
+     * Returns the number of rules that failed with an exception per second.
+     * @return the number of exceptions per second
+     */
+    double getExceptionsPerSecond();
+
+    /**
+     * Returns the duration of the last initialization of the engine (including the compilation of the rules and conditions).
+     * @return the duration in ms, -1 if the engine was never initialized
+     */
+    long getLastInitializationDuration();
+
+    /**
+     * Returns the duration of the last update of the engine (adding or updating a validator, a rule or a condition, including the compilation).
+     * @return the duration in ms, -1 if the engine was never updated
+     */
+    long getLastUpdateDuration();
+
+    /**
+     * Returns whether or not the statistics are on.
+     * @return true if the statistics are on, false otherwise
+     */
+    boolean isStatisticsOn();
+
+    /**
+     * Returns the number of times a forced rule was found in the cache of compiled forced rules.
+     * @return the number of cache hits
+     */
+    long getForcedRulesCacheHits();
+
+    /**
+     * Returns the number of times a forced rule had to be compiled because it wasn't in the cache of compiled forced rules.
+     * @return the number of cache misses
+     */
+    long getForcedRulesCacheMisses();
+
+    /**
+     * Returns the number of rules currently in the cache of compiled forced rules.
+     * @return the number of cached rules
+     */
+    int getForcedRulesCacheSize();
+
+    /**
+     * Returns whether or not the engine has been warmed up since its validators were loaded.
+     * @return true if the engine has been warmed up
+     */
+    boolean isWarmedUp();
+
+    /**
+     * Returns the slowest rules, based on their average execution time (the statistics need to be on).
+     * @param n maximum number of rules to return
+     * @return the slowest rules (ID, number of runs, average, p99 and longest times), the slowest first
+     */
+    List<String> getSlowestRules(int n);
+
+    /**
+     * Turns the statistics on.
+     */
+    void turnStatisticsOn();
+
+    /**
+     * Turns the statistics off.
+     */
+    void turnStatisticsOff();
+
+    /**
+     * Resets the statistics gathered so far.
+     */
+    void resetStats();
+
+    /**
+     * Flags the provided rules as ignored.
+     * @param ruleIds comma-separated rule IDs
+     */
+    void ignoreRules(String ruleIds);
+
+    /**
+     * Flags the provided rules as not ignored.
+     * @param ruleIds comma-separated rule IDs
+     */
+    void stopIgnoringRules(String ruleIds);
+}
@@ -6,6 +6,9 @@ package com.imsweb.validation;
 /**
  * This class encapsulates the notion of a single statistics (for example the statistics for a single edit).
  * <p/>
+ * The times are measured in nanoseconds; the millisecond times (total, longest and shortest) are kept for backward compatibility. The percentiles come from a
+ * latency histogram and are approximate (the relative error is below 12.5%).
+ * <p/>
  * Created on Feb 23, 2011 by depryf
  */
 public class ValidationEngineStats {
@@ -25,6 +28,35 @@ public class ValidationEngineStats {
     /** Shortest run time */
     private Long _shortestTime = null;
 
+    /** Total time, in nanoseconds */
+    private long _totalTimeNanos;
+
+    /** Longest run time, in nanoseconds */
+    private long _longestTimeNanos;
+
+    /** Shortest run time, in nanoseconds */
+    private long _shortestTimeNanos;
+
+    /** Median run time, in nanoseconds */
+    private long _p50Nanos;
+
+    /** 99th percentile of the run times, in nanoseconds */
+    private long _p99Nanos;
+
+    /** 99.9th percentile of the run times, in nanoseconds */
+    private long _p999Nanos;
+
+    /** Number of failures (only used for the rules) */
+    private long _numFailures;
+
+    /**
+     * Constructor.
+     * @param id ID for this stat
+     */
+    public ValidationEngineStats(String id) {
+        _id = id;
+    }
+
     /**
      * Constructor.
      * <p/>
@@ -140,6 +172,78 @@ public class ValidationEngineStats {
         _shortestTime = time;
     }
 
+    public long getTotalTimeNanos() {
+        return _totalTimeNanos;
+    }
+
+    public void setTotalTimeNanos(long totalTimeNanos) {
+        _totalTimeNanos = totalTimeNanos;
+    }
+
+    public long getLongestTimeNanos() {
+        return _longestTimeNanos;
+    }
+
+    public void setLongestTimeNanos(long longestTimeNanos) {
+        _longestTimeNanos = longestTimeNanos;
+    }
+
+    public long getShortestTimeNanos() {
+        return _shortestTimeNanos;
+    }
+
+    public void setShortestTimeNanos(long shortestTimeNanos) {
+        _shortestTimeNanos = shortestTimeNanos;
+    }
+
+    /**
+     * Returns the average run time.
+     * @return the average run time, in nanoseconds
+     */
+    public long getAverageTimeNanos() {
+        return _numRun == null || _numRun == 0 ? 0 : _totalTimeNanos / _numRun;
+    }
+
+    public long getP50Nanos() {
+        return _p50Nanos;
+    }
+
+    public void setP50Nanos(long p50Nanos) {
+        _p50Nanos = p50Nanos;
+    }
+
+    public long getP99Nanos() {
+        return _p99Nanos;
+    }
+
+    public void setP99Nanos(long p99Nanos) {
+        _p99Nanos = p99Nanos;
+    }
+
+    public long getP999Nanos() {
+        return _p999Nanos;
+    }
+
+    public void setP999Nanos(long p999Nanos) {
+        _p999Nanos = p999Nanos;
+    }
+
+    public long getNumFailures() {
+        return _numFailures;
+    }
+
+    public void setNumFailures(long numFailures) {
+        _numFailures = numFailures;
+    }
+
+    /**
+     * Returns the failure rate.
+     * @return the number of failures divided by the number of runs
+     */
+    public double getFailureRate() {
+        return _numRun == null || _numRun == 0 ? 0 : (double)_numFailures / _numRun;
+    }
+
     /**
      * Reports that passed time to the passed <code>StatsDTO</code>
      * <p/>
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This class encapsulates the statistics of the rules and conditions gathered during a given period (between two resets of the statistics).
+ * <p/>
+ * A snapshot is never modified once it has been created.
+ */
+public class ValidationEngineStatsSnapshot {
+
+    /** Rule statistics, keyed by rule ID */
+    private Map<String, ValidationEngineStats> _ruleStats;
+
+    /** Condition statistics, keyed by condition ID */
+    private Map<String, ValidationEngineStats> _conditionStats;
+
+    /** Time (in ms) at which the statistics started being gathered */
+    private long _startTime;
+
+    /** Time (in ms) at which this snapshot was taken */
+    private long _endTime;
+
+    /**
+     * Constructor.
+     * @param ruleStats rule statistics, keyed by rule ID
+     * @param conditionStats condition statistics, keyed by condition ID
+     * @param startTime time (in ms) at which the statistics started being gathered
+     * @param endTime time (in ms) at which this snapshot was taken
+     */
+    public ValidationEngineStatsSnapshot(Map<String, ValidationEngineStats> ruleStats, Map<String, ValidationEngineStats> conditionStats, long startTime, long endTime) {
+        _ruleStats = Collections.unmodifiableMap(ruleStats);
+        _conditionStats = Collections.unmodifiableMap(conditionStats);
+        _startTime = startTime;
+        _endTime = endTime;
+    }
+
+    public Map<String, ValidationEngineStats> getRuleStats() {
+        return _ruleStats;
+    }
+
+    public Map<String, ValidationEngineStats> getConditionStats() {
+        return _conditionStats;
+    }
+
+    public long getStartTime() {
+        return _startTime;
+    }
+
+    public long getEndTime() {
+        return _endTime;
+    }
+}
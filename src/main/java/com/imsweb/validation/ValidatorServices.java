@@ -3,7 +3,6 @@
  */
 package com.imsweb.validation;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -12,24 +11,37 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
-import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.ClassHelper;
 import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.VariableScope;
+import org.codehaus.groovy.ast.expr.ArgumentListExpression;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.StaticMethodCallExpression;
+import org.codehaus.groovy.ast.stmt.ExpressionStatement;
 import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
 
 import groovy.lang.Binding;
 import groovy.lang.Closure;
 import groovy.lang.GroovyShell;
 import groovy.lang.Script;
+import groovy.transform.CompileStatic;
+import groovy.transform.ConditionalInterrupt;
 
 import com.imsweb.validation.entities.SimpleMapValidatable;
 import com.imsweb.validation.entities.SimpleNaaccrLinesValidatable;
 import com.imsweb.validation.entities.Validatable;
 import com.imsweb.validation.internal.EditCodeVisitorSupport;
+import com.imsweb.validation.internal.EditTypeCheckingExtension;
+import com.imsweb.validation.internal.ExpressionAnalyzer;
+import com.imsweb.validation.internal.MessageTemplate;
+import com.imsweb.validation.internal.RuleWatchdog;
 import com.imsweb.validation.internal.context.JavaContextParser;
 import com.imsweb.validation.shared.ValidatorLookup;
 
@@ -85,11 +97,6 @@ public class ValidatorServices {
      */
     private static ValidatorServices _INSTANCE;
 
-    /**
-     * Pattern for property values replacement
-     */
-    private static Pattern _PROP_REPLACEMENT_PATTERN = Pattern.compile("(\\$\\{(.+?)\\})");
-
     /**
      * Map of java-path -> alias to use in the edits
      */
@@ -184,6 +191,30 @@ public class ValidatorServices {
         return Collections.unmodifiableMap(_ALIASES);
     }
 
+    /**
+     * Returns the type of the objects bound to the passed alias when an expression is executed; this is used to statically compile the expressions.
+     * <p/>
+     * The default implementation knows the types of the aliases defined in this library (maps for the records and lines, lists for the collections of lines).
+     * Applications that use their own java-paths and want to use static compilation should override this method; the returned type must be the type of
+     * every object bound to the alias (or a super-type of it), otherwise the statically compiled expressions will fail at runtime.
+     * @param alias alias (as returned by getAllJavaPaths())
+     * @return the type of the objects bound to the alias, null if it's unknown (the alias will be dynamically dispatched)
+     */
+    public Class<?> getAliasType(String alias) {
+        String javaPath = null;
+        for (Map.Entry<String, String> entry : _ALIASES.entrySet())
+            if (entry.getValue().equals(alias))
+                javaPath = entry.getKey();
+        if (javaPath == null)
+            return null;
+
+        // a java-path that has children is a collection, any other java-path is a map
+        for (String path : _ALIASES.keySet())
+            if (path.startsWith(javaPath + "."))
+                return List.class;
+        return Map.class;
+    }
+
     /**
      * Returns the <code>ValidatorLookup</code> corresponding to the passed ID.
      * <p/>
@@ -394,6 +425,20 @@ public class ValidatorServices {
      * @throws CompilationFailedException
      */
     public void parseExpression(String id, String expression, Set<String> properties, Set<String> contextEntries, Set<String> lookups, boolean forceDefKeyword) throws CompilationFailedException {
+        ExpressionAnalyzer.visit(parseExpressionTree(id, expression), new EditCodeVisitorSupport(properties, contextEntries, lookups, forceDefKeyword));
+    }
+
+    /**
+     * Parses the given groovy expression into an AST (as built by the conversion phase), without compiling it.
+     * <p/>
+     * The engine doesn't parse the expressions it compiles, the AST built by the compilation is analyzed instead; this method is only called for the
+     * expressions that are not compiled, or whose compiled class comes from the on-disk cache.
+     * @param id identifier of the script being parsed
+     * @param expression expression to parse
+     * @return the AST of the expression
+     * @throws CompilationFailedException if the expression can't be parsed
+     */
+    public ModuleNode parseExpressionTree(String id, String expression) throws CompilationFailedException {
         if (expression == null || expression.trim().isEmpty())
             expression = "return true";
 
@@ -401,11 +446,7 @@ public class ValidatorServices {
         su.parse();
         su.completePhase();
         su.convert();
-        ModuleNode tree = su.getAST();
-        EditCodeVisitorSupport visitor = new EditCodeVisitorSupport(properties, contextEntries, lookups, forceDefKeyword);
-        tree.getStatementBlock().visit(visitor);
-        for (MethodNode method : tree.getMethods())
-            method.getCode().visit(visitor);
+        return su.getAST();
     }
 
     /**
@@ -420,83 +461,74 @@ public class ValidatorServices {
         if (expression == null || expression.trim().isEmpty())
             expression = "return true";
 
-        return new GroovyShell().parse(expression);
+        return new GroovyShell(getCompilerConfiguration(false)).parse(expression);
+    }
+
+    /**
+     * Compile the provided expression into a Groovy script, using Groovy static compilation if requested.
+     * <p/>
+     * The static compilation uses a type-checking extension that knows the types of the functions, the context and the aliases; the parts of the expression
+     * that can't be resolved statically are still dispatched dynamically. Note that the type of the functions is the one of the current functions instance,
+     * so the functions need to be initialized before the expressions are compiled.
+     * @param expression expression to compile
+     * @param useStaticCompilation whether or not to use static compilation
+     * @return Groovy Script
+     * @throws CompilationFailedException if the expression can't be compiled (or can't be type-checked if static compilation is requested)
+     */
+    public Script compileExpression(String expression, boolean useStaticCompilation) throws CompilationFailedException {
+        if (!useStaticCompilation)
+            return compileExpression(expression);
+
+        if (expression == null || expression.trim().isEmpty())
+            expression = "return true";
+
+        return new GroovyShell(getCompilerConfiguration(true)).parse(expression);
+    }
+
+    /**
+     * Returns the Groovy compiler configuration to use to compile the expressions.
+     * @param useStaticCompilation whether or not to use static compilation
+     * @return the compiler configuration
+     */
+    public CompilerConfiguration getCompilerConfiguration(boolean useStaticCompilation) {
+        CompilerConfiguration conf = new CompilerConfiguration();
+        // if requested, the scripts check whether their time budget expired in every loop, closure and method, so the rules exceeding it can be interrupted (the
+        // interrupted flag of the thread is not used for that, so interrupting a thread running a validation doesn't make its rules fail)
+        if (ValidationEngine.isRuleInterruptionEnabled()) {
+            ClosureExpression check = new ClosureExpression(Parameter.EMPTY_ARRAY, new ExpressionStatement(new StaticMethodCallExpression(ClassHelper.make(
+                    RuleWatchdog.class), "isCurrentWatchExpired", ArgumentListExpression.EMPTY_ARGUMENTS)));
+            check.setVariableScope(new VariableScope());
+            conf.addCompilationCustomizers(new ASTTransformationCustomizer(Collections.singletonMap("value", check), ConditionalInterrupt.class));
+        }
+        if (useStaticCompilation)
+            conf.addCompilationCustomizers(new ASTTransformationCustomizer(Collections.singletonMap("extensions", EditTypeCheckingExtension.class.getName()), CompileStatic.class));
+        return conf;
+    }
+
+    /**
+     * Called when an expression for which static compilation was requested can't be statically compiled; the expression is compiled dynamically instead.
+     * <p/>
+     * The default implementation doesn't do anything; applications can override it to log the failure.
+     * @param type type of expression ("rule" or "condition")
+     * @param id ID of the rule or condition
+     * @param e the static compilation error
+     */
+    public void reportStaticCompilationFailure(String type, String id, CompilationFailedException e) {
+        // nothing to do by default
     }
 
     /**
      * Replaces the property tags by their value (for example {line.vitalStatus})
      * <p/>
+     * The engine uses pre-parsed versions of the rule messages instead of calling this method, unless it's overridden.
+     * <p/>
      * Created on Aug 27, 2010 by depryf
      * @param msg message to full
      * @param validatable current validatable
      * @return replaced message
      */
     public String fillInMessage(String msg, Validatable validatable) {
-        if (msg == null)
-            return "";
-
-        List<Integer> starts = new ArrayList<>();
-        List<Integer> ends = new ArrayList<>();
-        List<String> values = new ArrayList<>();
-
-        Matcher matcher = _PROP_REPLACEMENT_PATTERN.matcher(msg);
-        while (matcher.find()) {
-            String[] parts = StringUtils.split(matcher.group(2), '.');
-
-            if (parts.length >= 2) {
-                String prefix = parts[0], propertyName = parts[1], suffix = parts.length == 3 ? parts[2] : null;
-                boolean error = false;
-                Object replacement = null;
-
-                Object obj = validatable.getScope().get(prefix);
-                if (obj instanceof Map)
-                    replacement = ((Map)obj).get(propertyName);
-                else {
-                    try {
-                        Field field = obj.getClass().getDeclaredField(propertyName);
-                        field.setAccessible(true);
-                        replacement = field.get(obj);
-                    }
-                    catch (IllegalAccessException | NoSuchFieldException e) {
-                        error = true;
-                    }
-                }
-
-                starts.add(matcher.start());
-                ends.add(matcher.end());
-
-                String value;
-                if (replacement != null && "formatDate()".equals(suffix)) {
-                    value = replacement.toString().trim();
-
-                    // check if we need to format a date...
-                    if ("formatDate()".equals(suffix)) {
-                        if (value.length() == 8)
-                            value = "Y:" + value.substring(0, 4) + " M:" + value.substring(4, 6) + " D:" + value.substring(6);
-                        else if (value.length() == 6)
-                            value = "Y:" + value.substring(0, 4) + " M:" + value.substring(4, 6) + " D:";
-                        else if (value.length() == 4)
-                            value = "Y:" + value + " M:   D:";
-                        else
-                            value = "Y:     M:   D:";
-                    }
-                }
-                else if (error)
-                    value = "<ERROR>";
-                else if (replacement == null || replacement.toString().trim().isEmpty())
-                    value = "<BLANK>";
-                else
-                    value = replacement.toString().trim();
-
-                values.add(value);
-            }
-        }
-
-        StringBuilder buf = new StringBuilder(msg);
-        for (int i = starts.size() - 1; i >= 0; i--)
-            buf.replace(starts.get(i), ends.get(i), values.get(i));
-
-        return buf.toString();
+        return MessageTemplate.compile(msg).fill(validatable);
     }
 
     public int compareEngineVersions(String version1, String version2) {
@@ -520,12 +520,7 @@ public final class XmlValidatorFactory {
                 if (type.getName() != null)
                     condition.setName(type.getName().trim());
                 condition.setJavaPath(type.getJavaPath().trim());
-                try {
-                    condition.setExpression(reAlign(type.getExpression()));
-                }
-                catch (ConstructionException e) {
-                    throw new IOException("Unable to load condition '" + condition.getId() + "'; it contain an invalid expression", e);
-                }
+                condition.setUnanalyzedExpression(reAlign(type.getExpression())); // analyzed (and validated) when the condition is compiled by the engine
                 if (type.getDescription() != null)
                     condition.setDescription(reAlign(type.getDescription()));
 
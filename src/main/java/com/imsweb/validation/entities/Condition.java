@@ -4,6 +4,7 @@
 package com.imsweb.validation.entities;
 
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -12,6 +13,7 @@ import org.codehaus.groovy.control.CompilationFailedException;
 
 import com.imsweb.validation.ConstructionException;
 import com.imsweb.validation.ValidatorServices;
+import com.imsweb.validation.internal.ExpressionAnalyzer;
 
 /**
  * A <code>Condition</code> allows a pre-condition to be set for one or several rules.
@@ -70,6 +72,11 @@ public class Condition {
      */
     protected Set<String> _potentialContextEntries;
 
+    /**
+     * Whether the expression was set without gathering its properties, context entries and lookup IDs yet (see setUnanalyzedExpression())
+     */
+    protected volatile boolean _analysisPending;
+
     /**
      * Constructor.
      * <p/>
@@ -81,6 +88,24 @@ public class Condition {
         _potentialContextEntries = new HashSet<>();
     }
 
+    /**
+     * Copy constructor; the collections are copied, so the copy can be modified without affecting the provided condition.
+     * @param condition condition to copy
+     */
+    public Condition(Condition condition) {
+        _conditionId = condition._conditionId;
+        _id = condition._id;
+        _name = condition._name;
+        _javaPath = condition._javaPath;
+        _expression = condition._expression;
+        _description = condition._description;
+        _validator = condition._validator;
+        _rawProperties = new HashSet<>(condition._rawProperties);
+        _usedLookupIds = new HashSet<>(condition._usedLookupIds);
+        _potentialContextEntries = new HashSet<>(condition._potentialContextEntries);
+        _analysisPending = condition._analysisPending;
+    }
+
     /**
      * Getter for the condition persistence ID. Must be unique within the validation engine.
      * <p/>
@@ -190,6 +215,7 @@ public class Condition {
      */
     public void setExpression(String expression) throws ConstructionException {
         _expression = expression;
+        _analysisPending = false;
 
         if (expression != null && !expression.trim().isEmpty()) {
             synchronized (this) {
@@ -203,6 +229,70 @@ public class Condition {
         }
     }
 
+    /**
+     * Setter for the expression (Groovy script), without parsing it.
+     * <p/>
+     * The used properties, context entries and lookup IDs are gathered when the condition is added to the engine, from the AST built to compile the
+     * expression (see analyzeExpression()); if they are requested before that, the expression is parsed at that time. An invalid expression is reported when
+     * the condition is added to the engine.
+     * @param expression the condition expression
+     */
+    public void setUnanalyzedExpression(String expression) {
+        if (!Objects.equals(expression, _expression)) {
+            synchronized (this) {
+                _expression = expression;
+                _analysisPending = true;
+            }
+        }
+    }
+
+    /**
+     * Gathers the used properties, context entries and lookup IDs of an expression set with setUnanalyzedExpression(), using the analysis the provided
+     * analyzer did while compiling it (the expression is parsed if the analyzer didn't compile it); this method does nothing if the expression was already
+     * analyzed.
+     * @param analyzer analyzer used to compile the expression
+     * @throws ConstructionException if the expression needs to be parsed and is not valid Groovy
+     */
+    public void analyzeExpression(ExpressionAnalyzer analyzer) throws ConstructionException {
+        if (_analysisPending) {
+            synchronized (this) {
+                if (_analysisPending) {
+                    Set<String> rawProperties = new HashSet<>(), potentialContextEntries = new HashSet<>(), usedLookupIds = new HashSet<>();
+                    try {
+                        analyzer.analyze("condition", _expression, rawProperties, potentialContextEntries, usedLookupIds);
+                    }
+                    catch (CompilationFailedException e) {
+                        throw new ConstructionException("Unable to parse condition " + getId(), e);
+                    }
+                    _rawProperties = rawProperties;
+                    _potentialContextEntries = potentialContextEntries;
+                    _usedLookupIds = usedLookupIds;
+                    _analysisPending = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gathers the used properties, context entries and lookup IDs if the expression hasn't been analyzed yet; if it can't be parsed, they are left empty (the
+     * error is reported when the condition is added to the engine).
+     */
+    private void completeAnalysis() {
+        if (_analysisPending) {
+            try {
+                analyzeExpression(new ExpressionAnalyzer());
+            }
+            catch (ConstructionException e) {
+                synchronized (this) {
+                    _rawProperties = new HashSet<>();
+                    _potentialContextEntries = new HashSet<>();
+                    _usedLookupIds = new HashSet<>();
+                    _analysisPending = false;
+                }
+            }
+        }
+    }
+
     /**
      * Getter for the description.
      * <p/>
@@ -250,6 +340,7 @@ public class Condition {
      * @return the set of properties, maybe empty but never null
      */
     public Set<String> getRawProperties() {
+        completeAnalysis();
         return _rawProperties;
     }
 
@@ -260,6 +351,7 @@ public class Condition {
      * @return the set of used lookup IDs, maybe empty but never null
      */
     public Set<String> getUsedLookupIds() {
+        completeAnalysis();
         return _usedLookupIds;
     }
 
@@ -270,6 +362,7 @@ public class Condition {
      * @return the set of potential context entries, maybe empty but never null
      */
     public Set<String> getPotentialContextEntries() {
+        completeAnalysis();
         return _potentialContextEntries;
     }
 
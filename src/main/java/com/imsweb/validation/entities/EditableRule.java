@@ -46,6 +46,8 @@ public class EditableRule implements Serializable {
 
     protected Boolean _ignored;
 
+    protected Boolean _useStaticCompilation;
+
     protected Set<String> _dependencies;
 
     protected transient Set<RuleHistory> _histories;
@@ -79,6 +81,7 @@ public class EditableRule implements Serializable {
         _expression = rule.getExpression();
         _description = rule.getDescription();
         _ignored = rule.getIgnored();
+        _useStaticCompilation = rule.getUseStaticCompilation();
         _dependencies.addAll(rule.getDependencies());
         _histories.addAll(rule.getHistories());
     }
@@ -274,6 +277,20 @@ public class EditableRule implements Serializable {
         this._ignored = ignored;
     }
 
+    /**
+     * @return Returns the static compilation flag (null means the flag of the validator is used).
+     */
+    public Boolean getUseStaticCompilation() {
+        return _useStaticCompilation;
+    }
+
+    /**
+     * @param useStaticCompilation The static compilation flag to set (null means the flag of the validator is used).
+     */
+    public void setUseStaticCompilation(Boolean useStaticCompilation) {
+        this._useStaticCompilation = useStaticCompilation;
+    }
+
     /**
      * @return Returns the dependencies.
      */
@@ -3,6 +3,7 @@
  */
 package com.imsweb.validation.entities;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
@@ -14,6 +15,7 @@ import org.codehaus.groovy.control.CompilationFailedException;
 
 import com.imsweb.validation.ConstructionException;
 import com.imsweb.validation.ValidatorServices;
+import com.imsweb.validation.internal.ExpressionAnalyzer;
 
 /**
  * A <code>Rule</code> is the smallest entity in the validation engine. It defines
@@ -117,11 +119,21 @@ public class Rule {
      */
     protected Set<String> _potentialContextEntries;
 
+    /**
+     * Whether the expression was set without gathering its properties, context entries and lookup IDs yet (see setUnanalyzedExpression())
+     */
+    protected volatile boolean _analysisPending;
+
     /**
      * If set to true, the rule won't be executed when validating a validatable, unless the rule is explicitly forced (default to false, should never be null)
      */
     protected Boolean _ignored;
 
+    /**
+     * If set to true (or false), the rule is (or is not) compiled with Groovy static compilation; if null, the flag of the validator is used
+     */
+    protected Boolean _useStaticCompilation;
+
     /**
      * Agency (used for translated edits only)
      */
@@ -144,6 +156,57 @@ public class Rule {
         _useAndForConditions = Boolean.TRUE;
     }
 
+    /**
+     * Copy constructor; the collections are copied, so the copy can be modified without affecting the provided rule (the histories are copied as well,
+     * see <code>copyHistories()</code>).
+     * @param rule rule to copy
+     */
+    public Rule(Rule rule) {
+        _ruleId = rule._ruleId;
+        _id = rule._id;
+        _name = rule._name;
+        _javaPath = rule._javaPath;
+        _severity = rule._severity;
+        _message = rule._message;
+        _expression = rule._expression;
+        _description = rule._description;
+        _histories = rule._histories == null ? null : copyHistories(rule._histories);
+        _validator = rule._validator;
+        _category = rule._category;
+        _conditions = rule._conditions == null ? null : new HashSet<>(rule._conditions);
+        _useAndForConditions = rule._useAndForConditions;
+        _dependencies = rule._dependencies == null ? null : new HashSet<>(rule._dependencies);
+        _invertedDependencies = rule._invertedDependencies == null ? null : new HashSet<>(rule._invertedDependencies);
+        _rawProperties = new HashSet<>(rule._rawProperties);
+        _usedLookupIds = new HashSet<>(rule._usedLookupIds);
+        _potentialContextEntries = new HashSet<>(rule._potentialContextEntries);
+        _analysisPending = rule._analysisPending;
+        _ignored = rule._ignored;
+        _useStaticCompilation = rule._useStaticCompilation;
+        _agency = rule._agency;
+    }
+
+    /**
+     * Returns copies of the provided histories, referencing this rule.
+     * @param histories histories to copy, cannot be null
+     * @return copies of the histories
+     */
+    public Set<RuleHistory> copyHistories(Collection<RuleHistory> histories) {
+        Set<RuleHistory> result = new HashSet<>();
+        for (RuleHistory history : histories) {
+            RuleHistory copy = new RuleHistory();
+            copy.setRuleHistoryId(history.getRuleHistoryId());
+            copy.setMessage(history.getMessage());
+            copy.setVersion(history.getVersion());
+            copy.setUsername(history.getUsername());
+            copy.setDate(history.getDate());
+            copy.setReference(history.getReference());
+            copy.setRule(this);
+            result.add(copy);
+        }
+        return result;
+    }
+
     /**
      * Getter for the rule persistence ID. Must be unique within the validation engine.
      * <p/>
@@ -301,6 +364,7 @@ public class Rule {
                     _rawProperties.clear();
                     _potentialContextEntries.clear();
                     _usedLookupIds.clear();
+                    _analysisPending = false;
                     ValidatorServices.getInstance().parseExpression("rule", _expression, _rawProperties, _potentialContextEntries, _usedLookupIds);
                 }
                 catch (CompilationFailedException e) {
@@ -310,6 +374,70 @@ public class Rule {
         }
     }
 
+    /**
+     * Setter for the expression (Groovy script), without parsing it.
+     * <p/>
+     * The used properties, context entries and lookup IDs are gathered when the rule is added to the engine, from the AST built to compile the expression
+     * (see analyzeExpression()); if they are requested before that, the expression is parsed at that time. An invalid expression is reported when the rule is
+     * added to the engine.
+     * @param expression the rule expression
+     */
+    public void setUnanalyzedExpression(String expression) {
+        if (!Objects.equals(expression, _expression)) {
+            synchronized (this) {
+                _expression = expression;
+                _analysisPending = true;
+            }
+        }
+    }
+
+    /**
+     * Gathers the used properties, context entries and lookup IDs of an expression set with setUnanalyzedExpression(), using the analysis the provided
+     * analyzer did while compiling it (the expression is parsed if the analyzer didn't compile it); this method does nothing if the expression was already
+     * analyzed.
+     * @param analyzer analyzer used to compile the expression
+     * @throws ConstructionException if the expression needs to be parsed and is not valid Groovy
+     */
+    public void analyzeExpression(ExpressionAnalyzer analyzer) throws ConstructionException {
+        if (_analysisPending) {
+            synchronized (this) {
+                if (_analysisPending) {
+                    Set<String> rawProperties = new HashSet<>(), potentialContextEntries = new HashSet<>(), usedLookupIds = new HashSet<>();
+                    try {
+                        analyzer.analyze("rule", _expression, rawProperties, potentialContextEntries, usedLookupIds);
+                    }
+                    catch (CompilationFailedException e) {
+                        throw new ConstructionException("Unable to parse rule " + getId(), e);
+                    }
+                    _rawProperties = rawProperties;
+                    _potentialContextEntries = potentialContextEntries;
+                    _usedLookupIds = usedLookupIds;
+                    _analysisPending = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gathers the used properties, context entries and lookup IDs if the expression hasn't been analyzed yet; if it can't be parsed, they are left empty (the
+     * error is reported when the rule is added to the engine).
+     */
+    private void completeAnalysis() {
+        if (_analysisPending) {
+            try {
+                analyzeExpression(new ExpressionAnalyzer());
+            }
+            catch (ConstructionException e) {
+                synchronized (this) {
+                    _rawProperties = new HashSet<>();
+                    _potentialContextEntries = new HashSet<>();
+                    _usedLookupIds = new HashSet<>();
+                    _analysisPending = false;
+                }
+            }
+        }
+    }
+
     /**
      * Getter for the description.
      * <p/>
@@ -397,6 +525,7 @@ public class Rule {
      * @return the set of properties, maybe empty but never null
      */
     public Set<String> getRawProperties() {
+        completeAnalysis();
         return _rawProperties;
     }
 
@@ -407,6 +536,7 @@ public class Rule {
      * @return the set of used lookup IDs, maybe empty but never null
      */
     public Set<String> getUsedLookupIds() {
+        completeAnalysis();
         return _usedLookupIds;
     }
 
@@ -488,6 +618,32 @@ public class Rule {
         _ignored = ignored == null ? Boolean.FALSE : ignored;
     }
 
+    /**
+     * Getter for the static compilation flag.
+     * @return the static compilation flag, null if the flag of the validator should be used
+     */
+    public Boolean getUseStaticCompilation() {
+        return _useStaticCompilation;
+    }
+
+    /**
+     * Setter for the static compilation flag.
+     * @param useStaticCompilation the static compilation flag to set, null to use the flag of the validator
+     */
+    public void setUseStaticCompilation(Boolean useStaticCompilation) {
+        _useStaticCompilation = useStaticCompilation;
+    }
+
+    /**
+     * Returns whether or not this rule should be compiled with Groovy static compilation (using the flag of the validator if the rule doesn't define it).
+     * @return true if the rule should be statically compiled
+     */
+    public boolean isStaticCompilationRequested() {
+        if (_useStaticCompilation != null)
+            return _useStaticCompilation;
+        return _validator != null && Boolean.TRUE.equals(_validator.getUseStaticCompilation());
+    }
+
     /**
      * Getter for the condition operator.
      * <p/>
@@ -515,6 +671,7 @@ public class Rule {
      * @return the set of potential context entries, maybe empty but never null
      */
     public Set<String> getPotentialContextEntries() {
+        completeAnalysis();
         return _potentialContextEntries;
     }
 
@@ -3,9 +3,11 @@
  */
 package com.imsweb.validation.entities;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -27,6 +29,11 @@ public class RuleFailure {
      */
     protected String _message;
 
+    /**
+     * Supplier computing the message the first time it's requested (null if the message is already computed)
+     */
+    protected volatile Supplier<String> _messageSupplier;
+
     /**
      * Extra failure messages (used only by translated metafile edits); can be null or empty.
      */
@@ -59,6 +66,16 @@ public class RuleFailure {
      */
     protected Boolean _originalResult;
 
+    /**
+     * Whether or not this failure was reported because the rule exceeded its time budget (in which case the rule didn't complete)
+     */
+    protected boolean _timedOut;
+
+    /**
+     * Whether or not the properties are a read-only view of the properties of the validatable (in which case they are copied when the failure is detached)
+     */
+    protected boolean _propertiesView;
+
     /**
      * Default constructor. This constructor is inteded for testing only; it by-passes any nullity checking!
      * <p/>
@@ -100,6 +117,21 @@ public class RuleFailure {
      * @param validatable <code>Validatable</code>, can't be null
      */
     public RuleFailure(Rule rule, String message, Validatable validatable, Throwable groovyException) {
+        this(rule, message, validatable, groovyException, true);
+    }
+
+    /**
+     * Constructor.
+     * <p/>
+     * If the properties are not copied, they are a read-only view of the properties with error of the validatable, and that view becomes invalid once these
+     * properties are cleared; the failure needs to be detached (see detach()) to be used after that.
+     * @param rule <code>Rule</code>, can't be null
+     * @param message error message
+     * @param validatable <code>Validatable</code>, can't be null
+     * @param groovyException exception thrown by the rule, can be null
+     * @param copyProperties whether or not the properties with error of the validatable should be copied
+     */
+    public RuleFailure(Rule rule, String message, Validatable validatable, Throwable groovyException, boolean copyProperties) {
 
         if (rule == null)
             throw new RuntimeException("Can't build a RuleFailure from a null rule!");
@@ -108,7 +140,8 @@ public class RuleFailure {
 
         _rule = rule;
         _message = message == null ? "" : message; // avoid NPE on message...
-        _properties = new HashSet<>(validatable.getPropertiesWithError());
+        _properties = copyProperties ? new HashSet<>(validatable.getPropertiesWithError()) : Collections.unmodifiableSet(validatable.getPropertiesWithError());
+        _propertiesView = !copyProperties;
         _tumorIdentifier = validatable.getCurrentTumorId();
         _groovyException = groovyException;
     }
@@ -140,6 +173,11 @@ public class RuleFailure {
      * @return the message
      */
     public String getMessage() {
+        Supplier<String> supplier = _messageSupplier;
+        if (supplier != null) {
+            _message = supplier.get();
+            _messageSupplier = null;
+        }
         return _message;
     }
 
@@ -151,6 +189,15 @@ public class RuleFailure {
      */
     public void setMessage(String message) {
         _message = message;
+        _messageSupplier = null;
+    }
+
+    /**
+     * Sets a supplier computing the message the first time it's requested; the engine uses it to format the messages only if they are used.
+     * @param messageSupplier the message supplier
+     */
+    public void setMessageSupplier(Supplier<String> messageSupplier) {
+        _messageSupplier = messageSupplier;
     }
 
     /**
@@ -171,6 +218,20 @@ public class RuleFailure {
      */
     public void setProperties(Set<String> properties) {
         _properties = properties;
+        _propertiesView = false;
+    }
+
+    /**
+     * Copies the properties of this failure if they are a view of the properties of the validatable (see the constructors); this method needs to be called
+     * by a <code>FailureSink</code> that retains the failure after it was reported. It does nothing if the properties are not a view.
+     * @return this failure
+     */
+    public RuleFailure detach() {
+        if (_propertiesView) {
+            _properties = new HashSet<>(_properties);
+            _propertiesView = false;
+        }
+        return this;
     }
 
     /**
@@ -261,6 +322,22 @@ public class RuleFailure {
         _originalResult = originalResult;
     }
 
+    /**
+     * Returns whether or not this failure was reported because the rule exceeded its time budget.
+     * @return true if the rule timed out, false otherwise
+     */
+    public boolean isTimedOut() {
+        return _timedOut;
+    }
+
+    /**
+     * Setter for the timed out flag
+     * @param timedOut true if the rule timed out
+     */
+    public void setTimedOut(boolean timedOut) {
+        _timedOut = timedOut;
+    }
+
     @Override
     public boolean equals(Object other) {
         if (!(other instanceof RuleFailure))
@@ -299,7 +376,7 @@ public class RuleFailure {
 
         if (_rule != null && _rule.getName() != null && _rule.getJavaPath().startsWith("untrimmedlines.")) {
             StringBuilder buf = new StringBuilder();
-            buf.append(_rule.getName()).append(": ").append(_message);
+            buf.append(_rule.getName()).append(": ").append(getMessage());
             if (_extraErrorMessages != null && !_extraErrorMessages.isEmpty()) {
                 buf.append(" (");
                 for (String msg : _extraErrorMessages)
@@ -310,7 +387,7 @@ public class RuleFailure {
             result = buf.toString();
         }
         else
-            result = _message;
+            result = getMessage();
 
         return maxLength > 0 && result != null && result.length() > maxLength ? (result.substring(0, maxLength - 3) + "...") : result;
 
@@ -88,6 +88,11 @@ public class Validator {
      */
     protected Set<EmbeddedSet> _sets;
 
+    /**
+     * If set to true, the rules and conditions of this validator are compiled with Groovy static compilation (unless a rule overrides it)
+     */
+    protected Boolean _useStaticCompilation;
+
     /**
      * Constructor.
      * <p/>
@@ -219,6 +224,22 @@ public class Validator {
         _translatedFrom = translatedFrom;
     }
 
+    /**
+     * Getter for the static compilation flag.
+     * @return true if the rules and conditions should be statically compiled, null or false otherwise
+     */
+    public Boolean getUseStaticCompilation() {
+        return _useStaticCompilation;
+    }
+
+    /**
+     * Setter for the static compilation flag; it needs to be set before the validator is added to the engine.
+     * @param useStaticCompilation true if the rules and conditions should be statically compiled
+     */
+    public void setUseStaticCompilation(Boolean useStaticCompilation) {
+        _useStaticCompilation = useStaticCompilation;
+    }
+
     /**
      * Getter.
      * <p/>
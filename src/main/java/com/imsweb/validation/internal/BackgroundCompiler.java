@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.Collection;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.imsweb.validation.ConstructionException;
+
+/**
+ * This class compiles the lazily created rules (see ExecutableRule.compile()) in the background, using low-priority daemon threads; the threads are created on
+ * demand and stop once there is nothing left to compile.
+ * <p/>
+ * The compilation errors are not reported here, they are kept by the rules and reported when they run.
+ */
+public final class BackgroundCompiler {
+
+    // how long an idle thread is kept, in seconds
+    private static final long _KEEP_ALIVE_SECONDS = 30L;
+
+    // the thread counter, used to name the threads
+    private static final AtomicInteger _THREAD_COUNTER = new AtomicInteger();
+
+    // the executor, lazily created
+    private static ThreadPoolExecutor _EXECUTOR;
+
+    /**
+     * Private constructor, no instanciation of this class!
+     */
+    private BackgroundCompiler() {
+    }
+
+    /**
+     * Schedules the compilation of the provided rules (the rules that are already compiled are ignored).
+     * @param rules rules to compile
+     * @param numThreads number of threads to use, must be at least 1
+     */
+    public static synchronized void submit(Collection<ExecutableRule> rules, int numThreads) {
+        if (_EXECUTOR == null) {
+            _EXECUTOR = new ThreadPoolExecutor(numThreads, numThreads, _KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "validation-engine-compiler-" + _THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            _EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+        else if (numThreads > _EXECUTOR.getMaximumPoolSize()) {
+            _EXECUTOR.setMaximumPoolSize(numThreads);
+            _EXECUTOR.setCorePoolSize(numThreads);
+        }
+        else if (numThreads < _EXECUTOR.getMaximumPoolSize()) {
+            _EXECUTOR.setCorePoolSize(numThreads);
+            _EXECUTOR.setMaximumPoolSize(numThreads);
+        }
+
+        for (ExecutableRule rule : rules) {
+            if (rule.isCompilationPending()) {
+                _EXECUTOR.execute(() -> {
+                    try {
+                        rule.compile();
+                    }
+                    catch (ConstructionException | RuntimeException e) {
+                        // the rule keeps its error, it will be reported when the rule runs
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Cancels the compilations that haven't started yet.
+     */
+    public static synchronized void cancel() {
+        if (_EXECUTOR != null)
+            _EXECUTOR.getQueue().clear();
+    }
+}
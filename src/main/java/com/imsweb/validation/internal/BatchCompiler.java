@@ -0,0 +1,517 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.messages.Message;
+import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+
+import com.imsweb.validation.ValidatorServices;
+import com.imsweb.validation.entities.Condition;
+import com.imsweb.validation.entities.Rule;
+import com.imsweb.validation.entities.Validator;
+
+/**
+ * This class compiles all the rule and condition expressions of a validator at once: the expressions are compiled in a few shared compilation units (one per
+ * compiler thread and compilation mode), and all the resulting classes are defined in a single class loader. This is much cheaper than compiling each
+ * expression with its own shell and class loader, and identical expressions are only compiled once.
+ * <p/>
+ * The expressions that can't be compiled as part of the batch are not returned by getScriptClass(); they are compiled individually when the executable rules
+ * and conditions are created, so their errors are reported exactly like before (including the static compilation failures).
+ * <p/>
+ * The dynamically compiled rules can also be fused (see getFusedEdit()): the rules of a java-path are compiled in a single class, with one method per rule and
+ * a dispatcher calling the method of a rule by its index. A rule that can't be fused (it declares methods, classes or imports, or its method doesn't compile)
+ * is compiled with the other expressions.
+ */
+public final class BatchCompiler {
+
+    // prefix of the names of the script classes
+    private static final String _CLASS_PREFIX = "EditScript";
+
+    // number of times a batch is re-compiled without the expressions that failed, before falling back to the individual compilation
+    private static final int _MAX_ATTEMPTS = 3;
+
+    // prefix of the names of the fused classes
+    private static final String _FUSED_CLASS_PREFIX = "FusedEdits";
+
+    // maximum number of methods and total length of the expressions of a fused class (a class is limited in size, a java-path is split if needed)
+    private static final int _MAX_FUSED_METHODS = 200;
+    private static final int _MAX_FUSED_WEIGHT = 100000;
+
+    // the compiled script classes, keyed by expression
+    private Map<String, Class<? extends Script>> _dynamicClasses = new HashMap<>();
+    private Map<String, Class<? extends Script>> _staticClasses = new HashMap<>();
+
+    // the fused edits, keyed by rule
+    private Map<Rule, FusedEdit> _fusedEdits = new IdentityHashMap<>();
+
+    // the analyzer added to the compilations (and used to check whether the rules can be fused), so the expressions don't need to be parsed again
+    private ExpressionAnalyzer _analyzer = new ExpressionAnalyzer();
+
+    /**
+     * Private constructor, use compile().
+     */
+    private BatchCompiler() {
+    }
+
+    /**
+     * Compiles the rule and condition expressions of the provided validator.
+     * @param validator validator
+     * @param numThreads number of threads to use
+     * @return a compiler holding the compiled classes, never null
+     */
+    public static BatchCompiler compile(Validator validator, int numThreads) {
+        return compile(validator, numThreads, false);
+    }
+
+    /**
+     * Compiles the rule and condition expressions of the provided validator, fusing the dynamically compiled rules of each java-path if requested.
+     * @param validator validator
+     * @param numThreads number of threads to use
+     * @param fuseJavaPaths whether or not to fuse the rules of each java-path
+     * @return a compiler holding the compiled classes, never null
+     */
+    public static BatchCompiler compile(Validator validator, int numThreads, boolean fuseJavaPaths) {
+        BatchCompiler compiler = new BatchCompiler();
+
+        // fuse the rules first, the ones that can't be fused are compiled with the other expressions
+        if (fuseJavaPaths && validator.getRules() != null) {
+            List<FusedGroup> groups = createFusedGroups(validator.getRules(), compiler._analyzer);
+            List<Runnable> tasks = new ArrayList<>();
+            for (FusedGroup group : groups)
+                tasks.add(group::compile);
+            if (!runAll(tasks, numThreads))
+                return compiler;
+            GroovyClassLoader fusedLoader = new GroovyClassLoader(BatchCompiler.class.getClassLoader());
+            for (FusedGroup group : groups)
+                group.define(fusedLoader, compiler._fusedEdits);
+        }
+
+        Set<String> dynamicExpressions = new LinkedHashSet<>(), staticExpressions = new LinkedHashSet<>();
+        if (validator.getRules() != null)
+            for (Rule r : validator.getRules())
+                if (!compiler._fusedEdits.containsKey(r))
+                    (r.isStaticCompilationRequested() ? staticExpressions : dynamicExpressions).add(normalize(r.getExpression()));
+        boolean staticConditions = Boolean.TRUE.equals(validator.getUseStaticCompilation());
+        if (validator.getConditions() != null)
+            for (Condition c : validator.getConditions())
+                (staticConditions ? staticExpressions : dynamicExpressions).add(normalize(c.getExpression()));
+
+        // split the expressions in one chunk per thread and compilation mode; the class names must be unique across all the chunks
+        List<Chunk> chunks = new ArrayList<>();
+        int index = 0;
+        for (boolean useStaticCompilation : new boolean[] {false, true}) {
+            List<String> expressions = new ArrayList<>(useStaticCompilation ? staticExpressions : dynamicExpressions);
+            int numChunks = Math.max(1, Math.min(numThreads, expressions.size()));
+            for (int i = 0; i < numChunks; i++) {
+                Chunk chunk = new Chunk(useStaticCompilation);
+                for (String expression : expressions.subList(expressions.size() * i / numChunks, expressions.size() * (i + 1) / numChunks))
+                    chunk._sources.put(_CLASS_PREFIX + (index++), expression);
+                if (!chunk._sources.isEmpty())
+                    chunks.add(chunk);
+            }
+        }
+
+        // compile the chunks (in parallel if requested)
+        List<Runnable> tasks = new ArrayList<>();
+        for (Chunk chunk : chunks)
+            tasks.add(() -> chunk.compile(compiler._analyzer));
+        if (!runAll(tasks, numThreads)) {
+            BatchCompiler fusedOnly = new BatchCompiler();
+            fusedOnly._fusedEdits = compiler._fusedEdits;
+            fusedOnly._analyzer = compiler._analyzer;
+            return fusedOnly;
+        }
+
+        // define all the classes in a single class loader
+        GroovyClassLoader loader = new GroovyClassLoader(GroovyShell.class.getClassLoader());
+        for (Chunk chunk : chunks) {
+            if (chunk._classes == null)
+                continue;
+            Map<String, Class<? extends Script>> scriptClasses = chunk._useStaticCompilation ? compiler._staticClasses : compiler._dynamicClasses;
+            try {
+                Map<String, Class<?>> defined = new HashMap<>();
+                for (GroovyClass cls : chunk._classes)
+                    defined.put(cls.getName(), loader.defineClass(cls.getName(), cls.getBytes()));
+                for (Map.Entry<String, String> entry : chunk._sources.entrySet())
+                    if (defined.containsKey(entry.getKey()))
+                        scriptClasses.put(entry.getValue(), defined.get(entry.getKey()).asSubclass(Script.class));
+            }
+            catch (LinkageError | ClassCastException e) {
+                // same as a compilation error, the expressions will be compiled individually
+            }
+        }
+
+        return compiler;
+    }
+
+    /**
+     * Runs the provided compilation tasks, in parallel if requested; a task that fails leaves its expressions to the individual compilation.
+     * @param tasks tasks to run
+     * @param numThreads number of threads to use
+     * @return true if all the tasks ran, false if the current thread was interrupted
+     */
+    private static boolean runAll(List<Runnable> tasks, int numThreads) {
+        if (numThreads > 1 && tasks.size() > 1) {
+            ExecutorService service = Executors.newFixedThreadPool(Math.min(numThreads, tasks.size()));
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (Runnable task : tasks)
+                    futures.add(service.submit(task));
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    }
+                    catch (ExecutionException e) {
+                        // the expressions of a task that couldn't be compiled will be compiled individually
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // some tasks might still be compiling, all their expressions will be compiled individually
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            finally {
+                service.shutdown();
+            }
+        }
+        else
+            for (Runnable task : tasks)
+                task.run();
+        return true;
+    }
+
+    /**
+     * Groups the dynamically compiled rules that can be fused by java-path.
+     * @param rules rules
+     * @param analyzer analyzer recording the analysis of the parsed expressions
+     * @return the groups to compile
+     */
+    private static List<FusedGroup> createFusedGroups(Set<Rule> rules, ExpressionAnalyzer analyzer) {
+        Map<String, List<FusedGroup>> groupsByJavaPath = new LinkedHashMap<>();
+        for (Rule rule : rules) {
+            if (rule.isStaticCompilationRequested() || rule.getJavaPath() == null || !isFusable(normalize(rule.getExpression()), analyzer))
+                continue;
+            List<FusedGroup> groups = groupsByJavaPath.computeIfAbsent(rule.getJavaPath(), k -> new ArrayList<>());
+            String expression = normalize(rule.getExpression());
+            FusedGroup group = groups.isEmpty() ? null : groups.get(groups.size() - 1);
+            if (group == null || (!group._rules.containsKey(expression) && (group._rules.size() >= _MAX_FUSED_METHODS || group._weight + expression.length() > _MAX_FUSED_WEIGHT))) {
+                group = new FusedGroup();
+                groups.add(group);
+            }
+            group.add(expression, rule);
+        }
+
+        List<FusedGroup> result = new ArrayList<>();
+        for (List<FusedGroup> groups : groupsByJavaPath.values())
+            result.addAll(groups);
+        for (int i = 0; i < result.size(); i++)
+            result.get(i)._className = _FUSED_CLASS_PREFIX + i;
+        return result;
+    }
+
+    /**
+     * Returns whether or not the provided expression can be compiled as the body of a method: it can be parsed, and it doesn't declare any method, class or
+     * import; the AST built to check it is analyzed by the provided analyzer (a fused expression is not compiled as a script, so it's not analyzed during the
+     * compilation).
+     * @param expression expression
+     * @param analyzer analyzer recording the analysis of the expression
+     * @return true if the expression can be fused
+     */
+    private static boolean isFusable(String expression, ExpressionAnalyzer analyzer) {
+        try {
+            ModuleNode tree = ValidatorServices.getInstance().parseExpressionTree("fusable", expression);
+            analyzer.record(expression, tree);
+            if (!tree.getMethods().isEmpty() || !tree.getImports().isEmpty() || !tree.getStarImports().isEmpty() || !tree.getStaticImports().isEmpty()
+                    || !tree.getStaticStarImports().isEmpty())
+                return false;
+            for (ClassNode node : tree.getClasses())
+                if (!node.isScript())
+                    return false;
+            return true;
+        }
+        catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the analyzer used by this compiler; it holds the analysis of the compiled expressions.
+     * @return the analyzer, never null
+     */
+    public ExpressionAnalyzer getAnalyzer() {
+        return _analyzer;
+    }
+
+    /**
+     * Returns the fused edit for the provided rule.
+     * @param rule rule
+     * @return the fused edit, null if the rule wasn't fused (or if it changed since it was compiled)
+     */
+    public FusedEdit getFusedEdit(Rule rule) {
+        FusedEdit edit = _fusedEdits.get(rule);
+        return edit != null && !rule.isStaticCompilationRequested() && edit.getExpression().equals(normalize(rule.getExpression())) ? edit : null;
+    }
+
+    /**
+     * Returns the compiled script class for the provided expression.
+     * @param expression expression
+     * @param useStaticCompilation whether or not the expression needs to be statically compiled
+     * @return the compiled script class, null if the expression wasn't compiled as part of the batch
+     */
+    public Class<? extends Script> getScriptClass(String expression, boolean useStaticCompilation) {
+        return (useStaticCompilation ? _staticClasses : _dynamicClasses).get(normalize(expression));
+    }
+
+    private static String normalize(String expression) {
+        return expression == null || expression.trim().isEmpty() ? "return true" : expression;
+    }
+
+    /**
+     * The rules of a java-path (or part of them) compiled in a single fused class.
+     */
+    private static final class FusedGroup {
+
+        // the name of the fused class
+        private String _className;
+
+        // the rules, keyed by expression (rules with the same expression share the same method); the index of an expression is the index of its method
+        private final Map<String, List<Rule>> _rules = new LinkedHashMap<>();
+
+        // the total length of the expressions
+        private int _weight;
+
+        // the compiled classes (including the closures), null if the group couldn't be compiled
+        private List<GroovyClass> _classes;
+
+        private void add(String expression, Rule rule) {
+            List<Rule> rules = _rules.get(expression);
+            if (rules == null) {
+                rules = new ArrayList<>();
+                _rules.put(expression, rules);
+                _weight += expression.length();
+            }
+            rules.add(rule);
+        }
+
+        /**
+         * Compiles this group; the expressions that fail are removed and the remaining ones are compiled again.
+         */
+        @SuppressWarnings("unchecked")
+        private void compile() {
+            CompilerConfiguration conf = ValidatorServices.getInstance().getCompilerConfiguration(false);
+            for (int attempt = 0; attempt < _MAX_ATTEMPTS && !_rules.isEmpty(); attempt++) {
+                List<String> expressions = new ArrayList<>(_rules.keySet());
+                int[] firstLines = new int[expressions.size()], lastLines = new int[expressions.size()];
+                CompilationUnit unit = new CompilationUnit(conf, null, new GroovyClassLoader(BatchCompiler.class.getClassLoader(), conf));
+                unit.addSource(_className + ".groovy", generateSource(expressions, firstLines, lastLines));
+                try {
+                    unit.compile(Phases.CLASS_GENERATION);
+                    _classes = unit.getClasses();
+                    return;
+                }
+                catch (CompilationFailedException e) {
+                    Set<Integer> failed = getFailedIndexes(unit, firstLines, lastLines);
+                    if (failed.isEmpty())
+                        return;
+                    for (Integer index : failed)
+                        _rules.remove(expressions.get(index));
+                }
+                catch (RuntimeException e) {
+                    // the compiler failed unexpectedly, the expressions will be compiled individually
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Generates the source of the fused class; the first and last lines of the expressions are recorded so the compilation errors can be tied to them.
+         */
+        private String generateSource(List<String> expressions, int[] firstLines, int[] lastLines) {
+            StringBuilder buf = new StringBuilder();
+            buf.append("class ").append(_className).append(" extends groovy.lang.Script implements ").append(FusedEdit.Dispatcher.class.getName().replace('$', '.')).append(" {\n");
+            int line = 2;
+            for (int i = 0; i < expressions.size(); i++) {
+                String expression = expressions.get(i);
+                buf.append("    Object __edit").append(i).append("() {\n");
+                firstLines[i] = ++line;
+                buf.append(expression).append("\n");
+                line += StringUtils.countMatches(expression, '\n');
+                lastLines[i] = line;
+                buf.append("    }\n");
+                line += 2;
+            }
+            buf.append("    Object run() {\n        null\n    }\n");
+
+            // the dispatcher finds the method of an edit with a few comparisons on a primitive int (those are not dispatched dynamically); it can't be
+            // statically compiled since that breaks the interrupt checks added to the closures of the class
+            buf.append("    Object runEdit(int index) {\n");
+            appendDispatch(buf, 0, expressions.size(), "        ");
+            buf.append("    }\n}\n");
+            return buf.toString();
+        }
+
+        private static void appendDispatch(StringBuilder buf, int from, int to, String indent) {
+            if (to - from == 1)
+                buf.append(indent).append("return __edit").append(from).append("()\n");
+            else {
+                int middle = (from + to) >>> 1;
+                buf.append(indent).append("if (index < ").append(middle).append(") {\n");
+                appendDispatch(buf, from, middle, indent + "    ");
+                buf.append(indent).append("}\n");
+                appendDispatch(buf, middle, to, indent);
+            }
+        }
+
+        /**
+         * Returns the indexes of the expressions that failed to compile.
+         * @return the indexes, empty if the errors can't be tied to their expressions
+         */
+        @SuppressWarnings("unchecked")
+        private Set<Integer> getFailedIndexes(CompilationUnit unit, int[] firstLines, int[] lastLines) {
+            Set<Integer> result = new HashSet<>();
+            List<? extends Message> errors = unit.getErrorCollector().getErrors();
+            if (errors != null) {
+                for (Message message : errors) {
+                    if (!(message instanceof SyntaxErrorMessage))
+                        return new HashSet<>();
+                    int line = ((SyntaxErrorMessage)message).getCause().getLine();
+                    int index = -1;
+                    for (int i = 0; i < firstLines.length && index == -1; i++)
+                        if (line >= firstLines[i] && line <= lastLines[i])
+                            index = i;
+                    if (index == -1)
+                        return new HashSet<>();
+                    result.add(index);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Defines the classes of this group and registers its fused edits; if the classes can't be defined, the rules are not fused.
+         */
+        private void define(GroovyClassLoader loader, Map<Rule, FusedEdit> fusedEdits) {
+            if (_classes == null)
+                return;
+            try {
+                Class<?> fusedClass = null;
+                for (GroovyClass cls : _classes) {
+                    Class<?> defined = loader.defineClass(cls.getName(), cls.getBytes());
+                    if (cls.getName().equals(_className))
+                        fusedClass = defined;
+                }
+                if (fusedClass == null || !FusedEdit.Dispatcher.class.isAssignableFrom(fusedClass))
+                    return;
+                ThreadLocal<Script> scripts = FusedEdit.createScripts(fusedClass.asSubclass(Script.class));
+                int index = 0;
+                for (Map.Entry<String, List<Rule>> entry : _rules.entrySet()) {
+                    FusedEdit edit = new FusedEdit(scripts, index++, entry.getKey());
+                    for (Rule rule : entry.getValue())
+                        fusedEdits.put(rule, edit);
+                }
+            }
+            catch (LinkageError | ClassCastException e) {
+                // same as a compilation error, the expressions will be compiled with the other ones
+            }
+        }
+    }
+
+    /**
+     * A set of expressions compiled in the same compilation unit.
+     */
+    private static final class Chunk {
+
+        // whether or not to use static compilation
+        private final boolean _useStaticCompilation;
+
+        // the expressions to compile, keyed by class name
+        private final Map<String, String> _sources = new LinkedHashMap<>();
+
+        // the compiled classes (including the closures), null if the chunk couldn't be compiled
+        private List<GroovyClass> _classes;
+
+        private Chunk(boolean useStaticCompilation) {
+            _useStaticCompilation = useStaticCompilation;
+        }
+
+        /**
+         * Compiles this chunk; an expression that fails is removed and the remaining ones are compiled again.
+         * @param analyzer analyzer to add to the compilation
+         */
+        @SuppressWarnings("unchecked")
+        private void compile(ExpressionAnalyzer analyzer) {
+            CompilerConfiguration conf = ValidatorServices.getInstance().getCompilerConfiguration(_useStaticCompilation);
+            conf.addCompilationCustomizers(analyzer);
+            for (int attempt = 0; attempt < _MAX_ATTEMPTS && !_sources.isEmpty(); attempt++) {
+                CompilationUnit unit = new CompilationUnit(conf, null, new GroovyClassLoader(GroovyShell.class.getClassLoader(), conf));
+                for (Map.Entry<String, String> entry : _sources.entrySet())
+                    unit.addSource(entry.getKey() + ".groovy", entry.getValue());
+                try {
+                    unit.compile(Phases.CLASS_GENERATION);
+                    _classes = unit.getClasses();
+                    return;
+                }
+                catch (CompilationFailedException e) {
+                    Set<String> failed = getFailedClassNames(unit);
+                    if (failed.isEmpty())
+                        return;
+                    _sources.keySet().removeAll(failed);
+                }
+                catch (RuntimeException e) {
+                    // the compiler failed unexpectedly, the expressions will be compiled individually
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns the names of the classes whose expression failed to compile.
+         * @param unit compilation unit
+         * @return the class names, empty if the errors can't be tied to their expressions
+         */
+        @SuppressWarnings("unchecked")
+        private Set<String> getFailedClassNames(CompilationUnit unit) {
+            Set<String> result = new HashSet<>();
+            List<? extends Message> errors = unit.getErrorCollector().getErrors();
+            if (errors != null) {
+                for (Message message : errors) {
+                    if (!(message instanceof SyntaxErrorMessage))
+                        return new HashSet<>();
+                    String source = ((SyntaxErrorMessage)message).getCause().getSourceLocator();
+                    if (source == null || !source.endsWith(".groovy"))
+                        return new HashSet<>();
+                    result.add(source.substring(0, source.length() - ".groovy".length()));
+                }
+            }
+            return result;
+        }
+    }
+}
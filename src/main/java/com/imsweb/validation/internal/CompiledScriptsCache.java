@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyShell;
+import groovy.lang.GroovySystem;
+import groovy.lang.Script;
+
+import com.imsweb.validation.ValidationEngine;
+import com.imsweb.validation.ValidatorServices;
+
+/**
+ * This class caches the bytecode of the compiled rules and conditions in a directory, so the expressions don't need to be re-compiled every time the engine
+ * is initialized in a new JVM.
+ * <p/>
+ * The entries are keyed by a hash of the expression, the engine version, the Groovy version and the compilation mode (the types used for static compilation
+ * are also part of the key). On a miss, the expression is compiled and the resulting classes are written to the directory; a corrupted entry is ignored,
+ * deleted and re-created.
+ * <p/>
+ * The cache is disabled by default, see ValidationEngine.enableCompiledScriptsCache().
+ */
+public class CompiledScriptsCache {
+
+    // the format of the cache files (and of the compiler configuration); it's part of the keys so changing it invalidates the existing entries
+    private static final int _FORMAT_VERSION = 3;
+
+    // the magic number starting each cache file
+    private static final int _MAGIC_NUMBER = 0x56414C44;
+
+    // the extension of the cache files
+    private static final String _EXTENSION = ".classes";
+
+    // the current cache, null if the cache is disabled
+    private static volatile CompiledScriptsCache _INSTANCE;
+
+    // the directory containing the cache files
+    private File _directory;
+
+    /**
+     * Constructor.
+     * @param directory directory containing the cache files, it will be created if it doesn't exist
+     */
+    public CompiledScriptsCache(File directory) {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new RuntimeException("Unable to create compiled scripts cache directory " + directory.getPath());
+        _directory = directory;
+    }
+
+    /**
+     * Enables the cache, using the provided directory.
+     * @param directory directory containing the cache files, it will be created if it doesn't exist
+     */
+    public static void enable(File directory) {
+        _INSTANCE = new CompiledScriptsCache(directory);
+    }
+
+    /**
+     * Disables the cache; the files already written to the directory are not deleted.
+     */
+    public static void disable() {
+        _INSTANCE = null;
+    }
+
+    /**
+     * Returns the current cache.
+     * @return the current cache, null if the cache is disabled
+     */
+    public static CompiledScriptsCache getInstance() {
+        return _INSTANCE;
+    }
+
+    /**
+     * Returns the compiled script class for the provided expression, using the cache if it's enabled.
+     * @param expression expression to compile
+     * @param useStaticCompilation whether or not to use static compilation
+     * @return the compiled script class
+     * @throws CompilationFailedException if the expression can't be compiled
+     */
+    public static Class<? extends Script> getScriptClass(String expression, boolean useStaticCompilation) throws CompilationFailedException {
+        return getScriptClass(expression, useStaticCompilation, null);
+    }
+
+    /**
+     * Returns the compiled script class for the provided expression, using the cache if it's enabled; if the expression needs to be compiled, the provided
+     * analyzer gathers the properties, context entries and lookups it uses from the same AST.
+     * @param expression expression to compile
+     * @param useStaticCompilation whether or not to use static compilation
+     * @param analyzer analyzer to add to the compilation, can be null
+     * @return the compiled script class
+     * @throws CompilationFailedException if the expression can't be compiled
+     */
+    public static Class<? extends Script> getScriptClass(String expression, boolean useStaticCompilation, ExpressionAnalyzer analyzer) throws CompilationFailedException {
+        CompiledScriptsCache cache = _INSTANCE;
+        if (cache == null) {
+            if (analyzer == null)
+                return ValidatorServices.getInstance().compileExpression(expression, useStaticCompilation).getClass();
+            if (expression == null || expression.trim().isEmpty())
+                expression = "return true";
+            CompilerConfiguration conf = ValidatorServices.getInstance().getCompilerConfiguration(useStaticCompilation);
+            conf.addCompilationCustomizers(analyzer);
+            return new GroovyShell(conf).parse(expression).getClass();
+        }
+        return cache.load(expression, useStaticCompilation, analyzer);
+    }
+
+    public File getDirectory() {
+        return _directory;
+    }
+
+    /**
+     * Returns the compiled script class for the provided expression; the class is defined from the cached bytecode if possible, otherwise the expression is
+     * compiled and its bytecode is added to the cache.
+     * @param expression expression to compile
+     * @param useStaticCompilation whether or not to use static compilation
+     * @return the compiled script class
+     * @throws CompilationFailedException if the expression can't be compiled
+     */
+    public Class<? extends Script> load(String expression, boolean useStaticCompilation) throws CompilationFailedException {
+        return load(expression, useStaticCompilation, null);
+    }
+
+    /**
+     * Returns the compiled script class for the provided expression; the class is defined from the cached bytecode if possible, otherwise the expression is
+     * compiled (with the provided analyzer) and its bytecode is added to the cache.
+     * @param expression expression to compile
+     * @param useStaticCompilation whether or not to use static compilation
+     * @param analyzer analyzer to add to the compilation, can be null
+     * @return the compiled script class
+     * @throws CompilationFailedException if the expression can't be compiled
+     */
+    public Class<? extends Script> load(String expression, boolean useStaticCompilation, ExpressionAnalyzer analyzer) throws CompilationFailedException {
+        if (expression == null || expression.trim().isEmpty())
+            expression = "return true";
+
+        String key = computeKey(expression, useStaticCompilation);
+        String className = "Script" + key;
+        File file = new File(_directory, key + _EXTENSION);
+
+        if (file.exists()) {
+            try {
+                return defineClasses(className, readClasses(file));
+            }
+            catch (IOException | LinkageError | ClassCastException e) {
+                // the entry is corrupted, it will be re-created
+                if (!file.delete())
+                    file.deleteOnExit();
+            }
+        }
+
+        Map<String, byte[]> classes = compileClasses(className, expression, useStaticCompilation, analyzer);
+        try {
+            writeClasses(file, classes);
+        }
+        catch (IOException e) {
+            // the cache is only an optimization, failing to write an entry doesn't prevent the expression from being used
+        }
+
+        return defineClasses(className, classes);
+    }
+
+    /**
+     * Computes the key of the provided expression.
+     * @param expression expression
+     * @param useStaticCompilation whether or not to use static compilation
+     * @return the key, as an hexadecimal string
+     */
+    private String computeKey(String expression, boolean useStaticCompilation) {
+        StringBuilder buf = new StringBuilder();
+        buf.append(_FORMAT_VERSION).append('\n');
+        buf.append(ValidationEngine.getEngineVersion()).append('\n');
+        buf.append(GroovySystem.getVersion()).append('\n');
+        buf.append(useStaticCompilation).append('\n');
+        buf.append(ValidationEngine.isRuleInterruptionEnabled()).append('\n');
+        if (useStaticCompilation)
+            for (Map.Entry<String, Class<?>> entry : EditTypeCheckingExtension.getVariableTypes().entrySet())
+                buf.append(entry.getKey()).append('=').append(entry.getValue().getName()).append('\n');
+        buf.append(expression);
+
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(buf.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : hash)
+                key.append(String.format("%02x", b));
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // SHA-256 is always available
+        }
+    }
+
+    /**
+     * Compiles the provided expression.
+     * @param className name of the script class
+     * @param expression expression to compile
+     * @param useStaticCompilation whether or not to use static compilation
+     * @param analyzer analyzer to add to the compilation, can be null
+     * @return the bytecode of the script class and of its inner classes (closures), keyed by class name
+     * @throws CompilationFailedException if the expression can't be compiled
+     */
+    private Map<String, byte[]> compileClasses(String className, String expression, boolean useStaticCompilation, ExpressionAnalyzer analyzer) throws CompilationFailedException {
+        CompilerConfiguration conf = ValidatorServices.getInstance().getCompilerConfiguration(useStaticCompilation);
+        if (analyzer != null)
+            conf.addCompilationCustomizers(analyzer);
+        CompilationUnit unit = new CompilationUnit(conf, null, new GroovyClassLoader(GroovyShell.class.getClassLoader(), conf));
+        unit.addSource(className + ".groovy", expression);
+        unit.compile(Phases.CLASS_GENERATION);
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (Object obj : unit.getClasses()) {
+            GroovyClass groovyClass = (GroovyClass)obj;
+            classes.put(groovyClass.getName(), groovyClass.getBytes());
+        }
+        return classes;
+    }
+
+    /**
+     * Defines the provided classes in a new class loader.
+     * @param className name of the script class
+     * @param classes the bytecode of the script class and of its inner classes, keyed by class name
+     * @return the script class
+     * @throws LinkageError if the bytecode is not valid
+     * @throws ClassCastException if the script class is not a script
+     */
+    private Class<? extends Script> defineClasses(String className, Map<String, byte[]> classes) {
+        GroovyClassLoader loader = new GroovyClassLoader(GroovyShell.class.getClassLoader());
+        Class<?> scriptClass = null;
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            Class<?> cls = loader.defineClass(entry.getKey(), entry.getValue());
+            if (entry.getKey().equals(className))
+                scriptClass = cls;
+        }
+        if (scriptClass == null)
+            throw new ClassFormatError("Script class " + className + " not found");
+        return scriptClass.asSubclass(Script.class);
+    }
+
+    /**
+     * Reads the classes from the provided cache file.
+     * @param file cache file
+     * @return the bytecode of the classes, keyed by class name
+     * @throws IOException if the file can't be read or is corrupted
+     */
+    private Map<String, byte[]> readClasses(File file) throws IOException {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        // the file is read in memory so the counts and lengths can be checked against what's left of it (a corrupted length would make the allocation fail)
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            if (in.readInt() != _MAGIC_NUMBER)
+                throw new IOException("Invalid cache file " + file.getName());
+            int numClasses = in.readInt();
+            // each class takes at least 6 bytes (the length of its name and the length of its bytecode)
+            if (numClasses < 0 || numClasses > in.available() / 6)
+                throw new IOException("Invalid cache file " + file.getName());
+            for (int i = 0; i < numClasses; i++) {
+                String name = in.readUTF();
+                int length = in.readInt();
+                if (length < 0 || length > in.available())
+                    throw new IOException("Invalid cache file " + file.getName());
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                classes.put(name, bytes);
+            }
+            if (in.read() != -1)
+                throw new IOException("Invalid cache file " + file.getName());
+        }
+        return classes;
+    }
+
+    /**
+     * Writes the classes to the provided cache file; the file is written under a temporary name and then renamed, so other threads and JVMs never read a
+     * partially written file.
+     * @param file cache file
+     * @param classes the bytecode of the classes, keyed by class name
+     * @throws IOException if the file can't be written
+     */
+    private void writeClasses(File file, Map<String, byte[]> classes) throws IOException {
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", _directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(_MAGIC_NUMBER);
+                out.writeInt(classes.size());
+                for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+}
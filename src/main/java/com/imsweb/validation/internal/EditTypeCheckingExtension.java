@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.expr.ArgumentListExpression;
+import org.codehaus.groovy.ast.expr.MethodCall;
+import org.codehaus.groovy.ast.expr.PropertyExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.transform.stc.AbstractTypeCheckingExtension;
+import org.codehaus.groovy.transform.stc.StaticTypeCheckingVisitor;
+
+import com.imsweb.validation.ValidationEngine;
+import com.imsweb.validation.ValidatorContextFunctions;
+import com.imsweb.validation.ValidatorServices;
+
+/**
+ * This type-checking extension is used when the rules and conditions are compiled with Groovy static compilation.
+ * <p/>
+ * The variables of an expression are not declared anywhere (they come from the binding at runtime), so this extension resolves them:
+ * <ul>
+ * <li><code>Functions</code> is typed with the class of the current <code>ValidatorContextFunctions</code> instance</li>
+ * <li><code>Context</code> is typed as a map</li>
+ * <li>the aliases returned by <code>ValidatorServices.getAllJavaPaths()</code> are typed using <code>ValidatorServices.getAliasType()</code></li>
+ * <li>any other variable (like a context entry referenced without the prefix) is typed as an object</li>
+ * </ul>
+ * Any property or method that can't be resolved statically (typically a property of an untyped variable) is dispatched dynamically, so only the parts of the
+ * expression that can be resolved are statically compiled.
+ */
+public class EditTypeCheckingExtension extends AbstractTypeCheckingExtension {
+
+    // the types of the variables known by this extension
+    private Map<String, ClassNode> _types;
+
+    /**
+     * Constructor.
+     * @param typeCheckingVisitor type checking visitor
+     */
+    public EditTypeCheckingExtension(StaticTypeCheckingVisitor typeCheckingVisitor) {
+        super(typeCheckingVisitor);
+
+        _types = new HashMap<>();
+        for (Map.Entry<String, Class<?>> entry : getVariableTypes().entrySet())
+            _types.put(entry.getKey(), ClassHelper.make(entry.getValue()));
+    }
+
+    /**
+     * Returns the types of the variables known by this extension; the result depends on the current services and functions.
+     * @return the types of the variables, sorted by variable name
+     */
+    public static SortedMap<String, Class<?>> getVariableTypes() {
+        SortedMap<String, Class<?>> types = new TreeMap<>();
+        for (String alias : ValidatorServices.getInstance().getAllJavaPaths().values()) {
+            Class<?> type = ValidatorServices.getInstance().getAliasType(alias);
+            if (type != null)
+                types.put(alias, type);
+        }
+        types.put(ValidationEngine.VALIDATOR_FUNCTIONS_KEY, getPublicType(ValidatorContextFunctions.getInstance().getClass()));
+        types.put(ValidationEngine.VALIDATOR_CONTEXT_KEY, Map.class);
+        return types;
+    }
+
+    /**
+     * Returns the first public type of the hierarchy of the provided type (the compiled scripts can only reference public types).
+     * @param type type
+     * @return the first public type, never null
+     */
+    private static Class<?> getPublicType(Class<?> type) {
+        while (!Modifier.isPublic(type.getModifiers()))
+            type = type.getSuperclass();
+        return type;
+    }
+
+    @Override
+    public boolean handleUnresolvedVariableExpression(VariableExpression vexp) {
+        ClassNode type = _types.get(vexp.getName());
+        makeDynamic(vexp, type == null ? ClassHelper.OBJECT_TYPE : type);
+        return true;
+    }
+
+    @Override
+    public boolean handleUnresolvedProperty(PropertyExpression pexp) {
+        makeDynamic(pexp);
+        return true;
+    }
+
+    @Override
+    public List<MethodNode> handleMissingMethod(ClassNode receiver, String name, ArgumentListExpression argumentList, ClassNode[] argumentTypes, MethodCall call) {
+        return Collections.singletonList(makeDynamic(call));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+/**
+ * This class emits the Java Flight Recorder events of the engine:
+ * <ul>
+ * <li><code>com.imsweb.validation.Validation</code>: validation of a validatable (root level, number of executed rules, number of failures)</li>
+ * <li><code>com.imsweb.validation.SlowRule</code>: execution of a rule longer than the threshold (10 ms by default)</li>
+ * <li><code>com.imsweb.validation.EngineUpdate</code>: initialization or update of the engine (including the compilation of the expressions)</li>
+ * <li><code>com.imsweb.validation.ContextEvaluation</code>: evaluation of a context entry when a validator is loaded</li>
+ * </ul>
+ * The events are disabled by default, they need to be enabled in the recording settings. When an event is disabled (or when no recording is running), the
+ * methods starting it return null without creating anything, and the calling code skips the methods ending it.
+ * <p/>
+ * JFR is not available in all the JVMs supported by this library; the events are defined in JfrEngineEvents (compiled in its own source set since it
+ * requires the jdk.jfr API) and that class is loaded by reflection. If it can't be loaded, no event is ever emitted.
+ */
+public final class EngineEvents {
+
+    // the class emitting the JFR events, null if the JFR API is not available in the running JVM
+    private static final Emitter _EMITTER = createEmitter();
+
+    /**
+     * Private constructor, no instanciation...
+     */
+    private EngineEvents() {
+    }
+
+    private static Emitter createEmitter() {
+        try {
+            return (Emitter)Class.forName("com.imsweb.validation.internal.JfrEngineEvents", true, EngineEvents.class.getClassLoader()).newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts a validation event.
+     * @return the event, null if the event is disabled
+     */
+    public static Object validationStarted() {
+        return _EMITTER != null ? _EMITTER.validationStarted() : null;
+    }
+
+    /**
+     * Ends the provided validation event.
+     * @param event event returned by validationStarted(), can't be null
+     * @param rootLevel root level of the validatable
+     * @param numRules number of executed rules
+     * @param numFailures number of failures
+     */
+    public static void validationDone(Object event, String rootLevel, int numRules, int numFailures) {
+        _EMITTER.validationDone(event, rootLevel, numRules, numFailures);
+    }
+
+    /**
+     * Starts a rule execution event.
+     * @return the event, null if the event is disabled
+     */
+    public static Object ruleStarted() {
+        return _EMITTER != null ? _EMITTER.ruleStarted() : null;
+    }
+
+    /**
+     * Ends the provided rule execution event; the event is only committed if the rule took longer than the threshold.
+     * @param event event returned by ruleStarted(), can't be null
+     * @param ruleId rule ID
+     * @param javaPath java-path of the rule
+     */
+    public static void ruleDone(Object event, String ruleId, String javaPath) {
+        _EMITTER.ruleDone(event, ruleId, javaPath);
+    }
+
+    /**
+     * Starts an engine update event.
+     * @return the event, null if the event is disabled
+     */
+    public static Object updateStarted() {
+        return _EMITTER != null ? _EMITTER.updateStarted() : null;
+    }
+
+    /**
+     * Ends the provided engine update event.
+     * @param event event returned by updateStarted(), can't be null
+     * @param operation operation (name of the engine method)
+     * @param id ID of the updated validator, rule or condition (null for an initialization)
+     */
+    public static void updateDone(Object event, String operation, String id) {
+        _EMITTER.updateDone(event, operation, id);
+    }
+
+    /**
+     * Starts a context evaluation event.
+     * @return the event, null if the event is disabled
+     */
+    public static Object contextStarted() {
+        return _EMITTER != null ? _EMITTER.contextStarted() : null;
+    }
+
+    /**
+     * Ends the provided context evaluation event.
+     * @param event event returned by contextStarted(), can't be null
+     * @param validatorId validator ID
+     * @param contextKey context key
+     */
+    public static void contextDone(Object event, String validatorId, String contextKey) {
+        _EMITTER.contextDone(event, validatorId, contextKey);
+    }
+
+    /**
+     * The methods emitting the events, implemented by JfrEngineEvents.
+     */
+    interface Emitter {
+
+        Object validationStarted();
+
+        void validationDone(Object event, String rootLevel, int numRules, int numFailures);
+
+        Object ruleStarted();
+
+        void ruleDone(Object event, String ruleId, String javaPath);
+
+        Object updateStarted();
+
+        void updateDone(Object event, String operation, String id);
+
+        Object contextStarted();
+
+        void contextDone(Object event, String validatorId, String contextKey);
+    }
+}
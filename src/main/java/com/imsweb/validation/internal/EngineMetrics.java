@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps track of the activity of the engine (number of validations, failures and exceptions, duration of the last initialization and update).
+ * <p/>
+ * Unlike the statistics (see StatsRecorder), these counters are always on; they are striped counters (LongAdder) so updating them doesn't add any contention.
+ */
+public final class EngineMetrics {
+
+    // number of validated validatables
+    private static final LongAdder _VALIDATIONS = new LongAdder();
+
+    // number of reported failures
+    private static final LongAdder _FAILURES = new LongAdder();
+
+    // number of rules that failed with an exception
+    private static final LongAdder _EXCEPTIONS = new LongAdder();
+
+    // duration (in ms) of the last initialization of the engine, -1 if the engine was never initialized
+    private static volatile long _LAST_INITIALIZATION_DURATION = -1;
+
+    // duration (in ms) of the last update of the engine (adding or updating a validator, a rule or a condition), -1 if the engine was never updated
+    private static volatile long _LAST_UPDATE_DURATION = -1;
+
+    /**
+     * Private constructor, no instanciation...
+     */
+    private EngineMetrics() {
+    }
+
+    /**
+     * Keeps track of a validated validatable.
+     * @param numFailures number of failures reported for the validatable
+     */
+    public static void validationDone(int numFailures) {
+        _VALIDATIONS.increment();
+        if (numFailures > 0)
+            _FAILURES.add(numFailures);
+    }
+
+    /**
+     * Keeps track of a rule that failed with an exception.
+     */
+    public static void exceptionReported() {
+        _EXCEPTIONS.increment();
+    }
+
+    /**
+     * Keeps track of the duration of an initialization of the engine.
+     * @param nanos duration, in nanoseconds
+     */
+    public static void initializationDone(long nanos) {
+        _LAST_INITIALIZATION_DURATION = TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Keeps track of the duration of an update of the engine.
+     * @param nanos duration, in nanoseconds
+     */
+    public static void updateDone(long nanos) {
+        _LAST_UPDATE_DURATION = TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public static long getNumValidations() {
+        return _VALIDATIONS.sum();
+    }
+
+    public static long getNumFailures() {
+        return _FAILURES.sum();
+    }
+
+    public static long getNumExceptions() {
+        return _EXCEPTIONS.sum();
+    }
+
+    public static long getLastInitializationDuration() {
+        return _LAST_INITIALIZATION_DURATION;
+    }
+
+    public static long getLastUpdateDuration() {
+        return _LAST_UPDATE_DURATION;
+    }
+}
@@ -7,6 +7,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
 
 import groovy.lang.Binding;
 import groovy.lang.Script;
@@ -54,9 +55,29 @@ public class ExecutableCondition {
     private Set<String> _contextKeys;
 
     /**
-     * Groovy script to execute
+     * Properties used by the expression, as they appear in it
      */
-    private Script _script;
+    private Set<String> _rawProperties;
+
+    /**
+     * Compiled Groovy script class (null if the expression could not be compiled)
+     */
+    private volatile Class<? extends Script> _scriptClass;
+
+    /**
+     * Groovy script instances to execute, one per thread (a script holds its binding so it can't be shared between threads)
+     */
+    private volatile ThreadLocal<Script> _scripts;
+
+    /**
+     * Whether or not static compilation is requested for this condition (it's requested on the validator of the condition)
+     */
+    private volatile boolean _useStaticCompilation;
+
+    /**
+     * Whether or not the current script class was statically compiled (false if static compilation wasn't requested, or if it failed)
+     */
+    private volatile boolean _staticallyCompiled;
 
     /**
      * Constructor.
@@ -66,24 +87,40 @@ public class ExecutableCondition {
      * @throws ConstructionException
      */
     public ExecutableCondition(Condition condition) throws ConstructionException {
+        this(condition, null);
+    }
+
+    /**
+     * Constructor.
+     * @param condition the <code>Condition</code> on which this executable ruleset is based one
+     * @param compiler batch compiler holding the already compiled expressions (if null or if the expression isn't in it, the expression is compiled)
+     * @throws ConstructionException
+     */
+    public ExecutableCondition(Condition condition, BatchCompiler compiler) throws ConstructionException {
         _condition = condition;
         _id = condition.getId();
         _internalId = condition.getConditionId();
         _internalValidatorId = condition.getValidator() != null ? condition.getValidator().getValidatorId() : null;
         _javaPath = condition.getJavaPath();
 
-        _contextKeys = new HashSet<>();
-        _contextKeys.addAll(condition.getPotentialContextEntries());
+        _useStaticCompilation = condition.getValidator() != null && Boolean.TRUE.equals(condition.getValidator().getUseStaticCompilation());
 
+        ExpressionAnalyzer analyzer = compiler == null ? new ExpressionAnalyzer() : compiler.getAnalyzer();
         synchronized (this) {
             try {
-                _script = ValidatorServices.getInstance().compileExpression(condition.getExpression());
+                setScriptClass(compileExpression(condition.getExpression(), compiler, analyzer));
             }
             catch (CompilationFailedException e) {
-                _script = null;
+                setScriptClass(null);
                 throw new ConstructionException("Unable to compile expression for condition " + _condition.getId(), e);
             }
         }
+
+        // the properties are gathered from the AST built to compile the expression
+        condition.analyzeExpression(analyzer);
+        _contextKeys = new HashSet<>();
+        _contextKeys.addAll(condition.getPotentialContextEntries());
+        _rawProperties = new HashSet<>(condition.getRawProperties());
     }
 
     /**
@@ -100,9 +137,12 @@ public class ExecutableCondition {
         _internalValidatorId = condition._internalValidatorId;
         _javaPath = condition._javaPath;
         _contextKeys = condition._contextKeys;
+        _rawProperties = condition._rawProperties;
+        _useStaticCompilation = condition._useStaticCompilation;
 
         synchronized (this) {
-            _script = condition._script;
+            setScriptClass(condition._scriptClass); // the compiled class is shared, but not the script instances
+            _staticallyCompiled = condition._staticallyCompiled;
         }
     }
 
@@ -116,6 +156,16 @@ public class ExecutableCondition {
         return _condition;
     }
 
+    /**
+     * Setter for the condition; the properties and context keys are taken from it.
+     * @param condition condition
+     */
+    public void setCondition(Condition condition) {
+        _condition = condition;
+        _contextKeys = new HashSet<>(condition.getPotentialContextEntries());
+        _rawProperties = new HashSet<>(condition.getRawProperties());
+    }
+
     /**
      * Getter for the ID.
      * <p/>
@@ -174,6 +224,14 @@ public class ExecutableCondition {
         return _contextKeys;
     }
 
+    /**
+     * Getter for the properties used by the expression, as they appear in it.
+     * @return the raw properties
+     */
+    public Set<String> getRawProperties() {
+        return _rawProperties;
+    }
+
     /**
      * Stter for the java path.
      * <p/>
@@ -192,17 +250,80 @@ public class ExecutableCondition {
      * @throws ConstructionException
      */
     public void setExpression(String expression) throws ConstructionException {
+        setExpression(expression, new ExpressionAnalyzer());
+    }
+
+    /**
+     * Sets the condition expression, compiling it with the provided analyzer; the properties and context keys are gathered from the AST built to compile it,
+     * and the analyzer can then be used to analyze the expression of the corresponding condition without parsing it again (see Condition.analyzeExpression()).
+     * @param expression expression
+     * @param analyzer analyzer to add to the compilation of the expression
+     * @throws ConstructionException
+     */
+    public void setExpression(String expression, ExpressionAnalyzer analyzer) throws ConstructionException {
         synchronized (this) {
             try {
-                _script = ValidatorServices.getInstance().compileExpression(expression);
+                setScriptClass(compileExpression(expression, null, analyzer));
+                Set<String> rawProperties = new HashSet<>();
+                Set<String> contextKeys = new HashSet<>();
+                analyzer.analyze("condition", expression, rawProperties, contextKeys, null);
+                _rawProperties = rawProperties;
+                _contextKeys = contextKeys;
             }
             catch (CompilationFailedException e) {
-                _script = null;
+                setScriptClass(null);
                 throw new ConstructionException("Unable to compile expression for confdition " + _condition.getId(), e);
             }
         }
     }
 
+    /**
+     * Returns whether or not the expression of this condition was statically compiled.
+     * @return true if the expression was statically compiled, false if it was dynamically compiled
+     */
+    public boolean isStaticallyCompiled() {
+        return _staticallyCompiled;
+    }
+
+    /**
+     * Compiles the provided expression; if static compilation is requested but fails, the expression is dynamically compiled and the failure is reported.
+     * @param expression expression to compile
+     * @param compiler batch compiler holding the already compiled expressions, can be null
+     * @param analyzer analyzer to add to the compilation of the expression, can be null
+     * @return the compiled script class
+     * @throws CompilationFailedException if the expression can't be compiled
+     */
+    private Class<? extends Script> compileExpression(String expression, BatchCompiler compiler, ExpressionAnalyzer analyzer) throws CompilationFailedException {
+        _staticallyCompiled = false;
+        Class<? extends Script> compiled = compiler == null ? null : compiler.getScriptClass(expression, _useStaticCompilation);
+        if (compiled != null) {
+            _staticallyCompiled = _useStaticCompilation;
+            return compiled;
+        }
+        if (_useStaticCompilation) {
+            try {
+                Class<? extends Script> scriptClass = CompiledScriptsCache.getScriptClass(expression, true, analyzer);
+                _staticallyCompiled = true;
+                return scriptClass;
+            }
+            catch (CompilationFailedException e) {
+                Class<? extends Script> scriptClass = CompiledScriptsCache.getScriptClass(expression, false, analyzer);
+                ValidatorServices.getInstance().reportStaticCompilationFailure("condition", _id, e);
+                return scriptClass;
+            }
+        }
+        return CompiledScriptsCache.getScriptClass(expression, false, analyzer);
+    }
+
+    /**
+     * Sets the compiled script class; the script instances will be lazily created for each thread that runs this condition.
+     * @param scriptClass compiled script class, can be null
+     */
+    private void setScriptClass(Class<? extends Script> scriptClass) {
+        _scriptClass = scriptClass;
+        _scripts = scriptClass == null ? null : ThreadLocal.withInitial(() -> InvokerHelper.createScript(scriptClass, new Binding()));
+    }
+
     @Override
     public String toString() {
         return _id;
@@ -242,16 +363,20 @@ public class ExecutableCondition {
      * @return evaluation result
      * @throws ValidationException
      */
-    private synchronized boolean checkForGroovy(Validatable validatable, Binding binding) throws ValidationException {
-        if (_script == null)
+    private boolean checkForGroovy(Validatable validatable, Binding binding) throws ValidationException {
+        ThreadLocal<Script> scripts = _scripts;
+        if (scripts == null)
             return true;
 
+        // each thread runs its own instance of the script, so no synchronization is needed here
+        Script script = scripts.get();
+
         boolean success = false;
 
         try {
-            _script.setBinding(binding);
+            script.setBinding(binding);
 
-            Object result = _script.run();
+            Object result = script.run();
             if (result instanceof Boolean)
                 success = (Boolean)result;
             else {
@@ -274,7 +399,7 @@ public class ExecutableCondition {
             throw new ValidationException(buf.toString(), e);
         }
         finally {
-            _script.setBinding(null);
+            script.setBinding(null);
         }
 
         return success;
@@ -3,9 +3,11 @@
  */
 package com.imsweb.validation.internal;
 
+import java.util.HashSet;
 import java.util.Set;
 
 import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
 
 import groovy.lang.Binding;
 import groovy.lang.Script;
@@ -41,7 +43,7 @@ public class ExecutableRule {
     /**
      * ID
      */
-    private String _id;
+    private volatile String _id;
 
     /**
      * Condition IDs.
@@ -63,6 +65,11 @@ public class ExecutableRule {
      */
     private String _message;
 
+    /**
+     * Pre-parsed message
+     */
+    private MessageTemplate _messageTemplate;
+
     /**
      * Dependencies
      */
@@ -88,12 +95,28 @@ public class ExecutableRule {
      * Whether this rule needs to check for forced failures on entities/properties (this is an expensive mechanism);
      * automatically populated when setExpression() is called.
      */
-    private Boolean _checkForcedEntities;
+    private volatile boolean _checkForcedEntities;
+
+    /**
+     * Compiled expression, shared with the copies of this rule until the expression is changed (so a lazy compilation happens only once for all of them)
+     */
+    private volatile Compilation _compilation;
+
+    /**
+     * Groovy script instances to execute, one per thread (a script holds its binding so it can't be shared between threads, nor between copies)
+     */
+    private final ThreadLocal<Script> _scripts = new ThreadLocal<>();
 
     /**
-     * Groovy script to execute
+     * Static estimate of the cost of the expression (see RuleOrderer), taken from the analysis done while compiling it or lazily computed; 0 if it hasn't been
+     * computed yet
      */
-    private Script _script;
+    private volatile long _staticCost;
+
+    /**
+     * Whether or not static compilation is requested for this rule
+     */
+    private volatile boolean _useStaticCompilation;
 
     /**
      * Constructor.
@@ -103,6 +126,27 @@ public class ExecutableRule {
      * @throws ConstructionException
      */
     public ExecutableRule(Rule rule) throws ConstructionException {
+        this(rule, null);
+    }
+
+    /**
+     * Constructor.
+     * @param rule parent rule
+     * @param compiler batch compiler holding the already compiled expressions (if null or if the expression isn't in it, the expression is compiled)
+     * @throws ConstructionException
+     */
+    public ExecutableRule(Rule rule, BatchCompiler compiler) throws ConstructionException {
+        this(rule, compiler, false);
+    }
+
+    /**
+     * Constructor.
+     * @param rule parent rule
+     * @param compiler batch compiler holding the already compiled expressions (if null or if the expression isn't in it, the expression is compiled)
+     * @param lazy if true, the expression is not compiled until the rule first runs (or compile() is called), and its compilation errors are reported then
+     * @throws ConstructionException
+     */
+    public ExecutableRule(Rule rule, BatchCompiler compiler, boolean lazy) throws ConstructionException {
         _rule = rule;
         _internalId = rule.getRuleId();
         _internalValidatorId = rule.getValidator() != null ? rule.getValidator().getValidatorId() : null;
@@ -111,25 +155,41 @@ public class ExecutableRule {
         _useAndForConditions = rule.getUseAndForConditions();
         _dependencies = rule.getDependencies();
         _message = rule.getMessage();
+        _messageTemplate = MessageTemplate.compile(_message);
         _ignored = rule.getIgnored() == null ? Boolean.FALSE : rule.getIgnored();
-        _rawProperties = rule.getRawProperties();
-        _potentialContextEntries = rule.getPotentialContextEntries();
+        _id = rule.getId();
+        _useStaticCompilation = rule.isStaticCompilationRequested();
 
+        ExpressionAnalyzer analyzer = compiler == null ? new ExpressionAnalyzer() : compiler.getAnalyzer();
         synchronized (this) {
-            _id = rule.getId();
-
+            Compilation compilation = new Compilation();
             try {
-                _script = ValidatorServices.getInstance().compileExpression(rule.getExpression());
+                FusedEdit fusedEdit = compiler == null ? null : compiler.getFusedEdit(rule);
+                if (lazy)
+                    compilation._pending = true;
+                else if (fusedEdit != null)
+                    compilation._fusedEdit = fusedEdit;
+                else
+                    compilation._scriptClass = compileExpression(rule.getExpression(), compiler, compilation, analyzer);
             }
             catch (CompilationFailedException e) {
-                _script = null;
                 throw new ConstructionException("Unable to compile rule " + _rule.getId(), e);
             }
+            _compilation = compilation;
 
             if (rule.getExpression() != null)
                 _checkForcedEntities = rule.getExpression().contains("forceFailureOnEntity") || rule.getExpression().contains("forceFailureOnProperty") || rule.getExpression().contains(
                         "ignoreFailureOnProperty");
         }
+
+        // the properties are gathered from the AST built to compile the expression (a lazily compiled expression is parsed instead, its errors are reported
+        // when it's compiled); they are copied since the rule might be modified by the caller
+        if (!lazy) {
+            rule.analyzeExpression(analyzer);
+            _staticCost = analyzer.getCost(rule.getExpression());
+        }
+        _rawProperties = new HashSet<>(rule.getRawProperties());
+        _potentialContextEntries = new HashSet<>(rule.getPotentialContextEntries());
     }
 
     /**
@@ -147,14 +207,17 @@ public class ExecutableRule {
         _useAndForConditions = execRule._useAndForConditions;
         _dependencies = execRule._dependencies;
         _message = execRule._message;
+        _messageTemplate = execRule._messageTemplate;
         _ignored = execRule._ignored;
         _rawProperties = execRule._rawProperties;
-        _potentialContextEntries = execRule._rawProperties;
+        _potentialContextEntries = execRule._potentialContextEntries;
+        _id = execRule._id;
+        _useStaticCompilation = execRule._useStaticCompilation;
         synchronized (this) {
-            _id = execRule._id;
-            _script = execRule._script;
+            _compilation = execRule._compilation; // the compiled expression is shared, but not the script instances
             _checkForcedEntities = execRule._checkForcedEntities;
         }
+        _staticCost = execRule._staticCost;
     }
 
     /**
@@ -188,14 +251,14 @@ public class ExecutableRule {
     /**
      * @return Returns the id.
      */
-    public synchronized String getId() {
+    public String getId() {
         return _id;
     }
 
     /**
      * @param id The id to set.
      */
-    public synchronized void setId(String id) {
+    public void setId(String id) {
         this._id = id;
     }
 
@@ -209,6 +272,22 @@ public class ExecutableRule {
         return _rule;
     }
 
+    /**
+     * Getter for the properties used by the expression, as they appear in it.
+     * @return the raw properties
+     */
+    public Set<String> getRawProperties() {
+        return _rawProperties;
+    }
+
+    /**
+     * Getter for the potential context entries used by the expression.
+     * @return the potential context entries
+     */
+    public Set<String> getPotentialContextEntries() {
+        return _potentialContextEntries;
+    }
+
     /**
      * Getter for the dependencies.
      * <p/>
@@ -239,6 +318,14 @@ public class ExecutableRule {
         return _message;
     }
 
+    /**
+     * Getter for the pre-parsed message.
+     * @return the pre-parsed message, never null
+     */
+    public MessageTemplate getMessageTemplate() {
+        return _messageTemplate;
+    }
+
     /**
      * Getter for the ignored flag.
      * <p/>
@@ -268,6 +355,7 @@ public class ExecutableRule {
      */
     public void setMessage(String message) {
         _message = message;
+        _messageTemplate = MessageTemplate.compile(message);
     }
 
     /**
@@ -326,15 +414,34 @@ public class ExecutableRule {
      * @throws ConstructionException
      */
     public void setExpression(String expression) throws ConstructionException {
+        setExpression(expression, new ExpressionAnalyzer());
+    }
+
+    /**
+     * Sets the rule expression, compiling it with the provided analyzer; the analyzer can then be used to analyze the expression of the corresponding rule
+     * without parsing it again (see Rule.analyzeExpression()).
+     * @param expression expression
+     * @param analyzer analyzer to add to the compilation of the expression
+     * @throws ConstructionException
+     */
+    public void setExpression(String expression, ExpressionAnalyzer analyzer) throws ConstructionException {
         synchronized (this) {
             try {
-                _rawProperties.clear();
-                _potentialContextEntries.clear();
-                ValidatorServices.getInstance().parseExpression("rule", expression, _rawProperties, _potentialContextEntries, null);
-                _script = ValidatorServices.getInstance().compileExpression(expression);
+                // the copies of this rule keep the previous expression
+                Compilation compilation = new Compilation();
+                compilation._scriptClass = compileExpression(expression, null, compilation, analyzer);
+                _compilation = compilation;
+
+                // the properties are gathered from the AST built to compile the expression (unless the class comes from the on-disk cache)
+                Set<String> rawProperties = new HashSet<>();
+                Set<String> potentialContextEntries = new HashSet<>();
+                analyzer.analyze("rule", expression, rawProperties, potentialContextEntries, null);
+                _rawProperties = rawProperties;
+                _potentialContextEntries = potentialContextEntries;
+                _staticCost = analyzer.getCost(expression);
             }
             catch (CompilationFailedException e) {
-                _script = null;
+                _compilation = new Compilation();
                 throw new ConstructionException("Unable to compile rule " + _rule.getId(), e);
             }
 
@@ -343,6 +450,108 @@ public class ExecutableRule {
         }
     }
 
+    /**
+     * Compiles the expression of this rule if it was created lazily and hasn't been compiled yet; the compilation happens only once, even if several threads
+     * call this method at the same time (on this rule or on its copies).
+     * @throws ConstructionException if the expression can't be compiled (the same error is returned every time)
+     */
+    public void compile() throws ConstructionException {
+        Compilation compilation = _compilation;
+        if (compilation._pending) {
+            synchronized (compilation) {
+                if (compilation._pending) {
+                    try {
+                        compilation._scriptClass = compileExpression(_rule.getExpression(), null, compilation, null);
+                    }
+                    catch (CompilationFailedException e) {
+                        compilation._error = new ConstructionException("Unable to compile rule " + _rule.getId(), e);
+                    }
+                    compilation._pending = false;
+                }
+            }
+        }
+
+        ConstructionException error = compilation._error;
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * Returns whether or not the expression of this rule still needs to be compiled (see compile()).
+     * @return true if the expression hasn't been compiled yet
+     */
+    public boolean isCompilationPending() {
+        return _compilation._pending;
+    }
+
+    /**
+     * Returns a static estimate of the cost of the expression of this rule (see RuleOrderer.estimateCost()).
+     * @return the estimated cost, always at least 1
+     */
+    public long getStaticCost() {
+        long cost = _staticCost;
+        if (cost == 0L) {
+            cost = RuleOrderer.estimateCost(_rule.getExpression());
+            _staticCost = cost;
+        }
+        return cost;
+    }
+
+    /**
+     * Returns whether or not static compilation is requested for this rule.
+     * @return true if static compilation is requested
+     */
+    public boolean getUseStaticCompilation() {
+        return _useStaticCompilation;
+    }
+
+    /**
+     * Sets whether or not static compilation is requested for this rule; this only takes effect the next time the expression is set.
+     * @param useStaticCompilation true if static compilation is requested
+     */
+    public void setUseStaticCompilation(boolean useStaticCompilation) {
+        _useStaticCompilation = useStaticCompilation;
+    }
+
+    /**
+     * Returns whether or not the expression of this rule was statically compiled.
+     * @return true if the expression was statically compiled, false if it was dynamically compiled
+     */
+    public boolean isStaticallyCompiled() {
+        return _compilation._staticallyCompiled;
+    }
+
+    /**
+     * Compiles the provided expression; if static compilation is requested but fails, the expression is dynamically compiled and the failure is reported.
+     * @param expression expression to compile
+     * @param compiler batch compiler holding the already compiled expressions, can be null
+     * @param compilation the compilation being done, updated with whether or not the expression was statically compiled
+     * @param analyzer analyzer to add to the compilation of the expression, can be null
+     * @return the compiled script class
+     * @throws CompilationFailedException if the expression can't be compiled
+     */
+    private Class<? extends Script> compileExpression(String expression, BatchCompiler compiler, Compilation compilation, ExpressionAnalyzer analyzer) throws CompilationFailedException {
+        compilation._staticallyCompiled = false;
+        Class<? extends Script> compiled = compiler == null ? null : compiler.getScriptClass(expression, _useStaticCompilation);
+        if (compiled != null) {
+            compilation._staticallyCompiled = _useStaticCompilation;
+            return compiled;
+        }
+        if (_useStaticCompilation) {
+            try {
+                Class<? extends Script> scriptClass = CompiledScriptsCache.getScriptClass(expression, true, analyzer);
+                compilation._staticallyCompiled = true;
+                return scriptClass;
+            }
+            catch (CompilationFailedException e) {
+                Class<? extends Script> scriptClass = CompiledScriptsCache.getScriptClass(expression, false, analyzer);
+                ValidatorServices.getInstance().reportStaticCompilationFailure("rule", _id, e);
+                return scriptClass;
+            }
+        }
+        return CompiledScriptsCache.getScriptClass(expression, false, analyzer);
+    }
+
     @Override
     public String toString() {
         return _id;
@@ -368,11 +577,7 @@ public class ExecutableRule {
      * @throws ValidationException
      */
     public boolean validate(Validatable validatable, Binding binding) throws ValidationException {
-        ExtraPropertyHandlerDto extra = null;
-        synchronized (this) {
-            if (_checkForcedEntities)
-                extra = new ExtraPropertyHandlerDto();
-        }
+        ExtraPropertyHandlerDto extra = _checkForcedEntities ? new ExtraPropertyHandlerDto() : null;
 
         // this is a bit convoluted, but we still want to set the failing properties even if an exception happens...
         ValidationException exception = null;
@@ -428,10 +633,34 @@ public class ExecutableRule {
      * @throws ValidationException
      */
     @SuppressWarnings("unchecked")
-    private synchronized boolean validateForGroovy(Validatable validatable, Binding binding, ExtraPropertyHandlerDto extra) throws ValidationException {
-        if (_script == null)
+    private boolean validateForGroovy(Validatable validatable, Binding binding, ExtraPropertyHandlerDto extra) throws ValidationException {
+
+        // a lazily created rule is compiled the first time it runs
+        Compilation compilation = _compilation;
+        if (compilation._pending || compilation._error != null) {
+            try {
+                compile();
+            }
+            catch (ConstructionException e) {
+                throw new ValidationException(e.getMessage(), e);
+            }
+        }
+
+        FusedEdit fusedEdit = compilation._fusedEdit;
+        Class<? extends Script> scriptClass = compilation._scriptClass;
+        if (fusedEdit == null && scriptClass == null)
             return true;
 
+        // each thread runs its own instance of the script, so no synchronization is needed here (the fused edits handle their own instances)
+        Script script = null;
+        if (fusedEdit == null) {
+            script = _scripts.get();
+            if (script == null || script.getClass() != scriptClass) {
+                script = InvokerHelper.createScript(scriptClass, new Binding());
+                _scripts.set(script);
+            }
+        }
+
         boolean success = false;
 
         try {
@@ -445,16 +674,20 @@ public class ExecutableRule {
             binding.setVariable(ValidationEngine.VALIDATOR_FAILING_FLAG, null);
             binding.setVariable(ValidationEngine.VALIDATOR_ORIGINAL_RESULT, null);
 
-            _script.setBinding(binding);
-
-            Object result = _script.run();
+            Object result;
+            if (fusedEdit != null)
+                result = fusedEdit.run(binding);
+            else {
+                script.setBinding(binding);
+                result = script.run();
+            }
             if (result instanceof Boolean)
                 success = (Boolean)result;
             else
                 throw new ValidationException("result is not a boolean");
 
             // read back the forced/ignored entities/properties if there are any
-            if (_checkForcedEntities) {
+            if (extra != null) {
                 Object forcedEntities = binding.getVariable(ValidationEngine.VALIDATOR_FORCE_FAILURE_ENTITY_KEY);
                 if (forcedEntities != null)
                     extra.setForcedEntities((Set<ExtraPropertyEntityHandlerDto>)forcedEntities);
@@ -485,9 +718,31 @@ public class ExecutableRule {
             throw new ValidationException(buf.toString(), e);
         }
         finally {
-            _script.setBinding(null);
+            if (script != null)
+                script.setBinding(null);
         }
 
         return success;
     }
+
+    /**
+     * The compiled expression of a rule, shared by the rule and its copies.
+     */
+    private static final class Compilation {
+
+        // compiled Groovy script class (null if the expression could not be compiled, or if it's run by a fused class)
+        private volatile Class<? extends Script> _scriptClass;
+
+        // method of a fused class running the expression (see BatchCompiler), null if the expression was compiled in its own class
+        private volatile FusedEdit _fusedEdit;
+
+        // whether or not the script class was statically compiled (false if static compilation wasn't requested, or if it failed)
+        private volatile boolean _staticallyCompiled;
+
+        // whether or not the expression still needs to be compiled (see compile())
+        private volatile boolean _pending;
+
+        // the error returned by the lazy compilation of the expression, null if the expression compiled fine (or if it hasn't been compiled yet)
+        private volatile ConstructionException _error;
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.GroovyCodeVisitor;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.classgen.GeneratorContext;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.CompilationCustomizer;
+
+import com.imsweb.validation.ValidatorServices;
+
+/**
+ * This class gathers the properties, context entries and lookup IDs used by the expressions (and the static estimate of their cost) while they are compiled:
+ * it's added to the compiler configuration of a given compilation (see CompiledScriptsCache.getScriptClass() and BatchCompiler) and visits the AST of each
+ * script right after it's built, so the compiled expressions don't need to be parsed a second time to be analyzed.
+ * <p/>
+ * The analyses belong to the analyzer, they are released with it once the compilation is done; an expression that wasn't compiled with the analyzer (because
+ * its class was loaded from the on-disk cache for example) is parsed instead, once.
+ */
+public final class ExpressionAnalyzer extends CompilationCustomizer {
+
+    // the analyses of the expressions compiled with this analyzer, keyed by expression
+    private final Map<String, Analysis> _analyses = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     */
+    public ExpressionAnalyzer() {
+        super(CompilePhase.CONVERSION);
+    }
+
+    @Override
+    public void call(SourceUnit source, GeneratorContext context, ClassNode classNode) throws CompilationFailedException {
+        // only the script classes correspond to expressions (a fused class for example is not analyzed)
+        if (!classNode.isScript())
+            return;
+
+        String expression;
+        try (Reader reader = source.getSource().getReader()) {
+            StringBuilder buf = new StringBuilder();
+            char[] chars = new char[4096];
+            for (int read = reader.read(chars); read != -1; read = reader.read(chars))
+                buf.append(chars, 0, read);
+            expression = buf.toString();
+        }
+        catch (IOException e) {
+            return;
+        }
+
+        record(expression, source.getAST());
+    }
+
+    /**
+     * Analyzes the provided AST and keeps the result for the provided expression.
+     * @param expression expression
+     * @param tree AST of the expression, as built by the conversion phase
+     */
+    void record(String expression, ModuleNode tree) {
+        Set<String> properties = new HashSet<>();
+        Set<String> contextEntries = new HashSet<>();
+        Set<String> lookups = new HashSet<>();
+        long cost;
+        try {
+            visit(tree, new EditCodeVisitorSupport(properties, contextEntries, lookups, false));
+            cost = RuleOrderer.estimateCost(tree);
+        }
+        catch (RuntimeException e) {
+            // the analysis is only an optimization, the expression will be parsed again when its analysis is requested
+            return;
+        }
+
+        _analyses.put(expression, new Analysis(properties, contextEntries, lookups, cost));
+    }
+
+    /**
+     * Visits the statements and methods of the provided AST.
+     * @param tree AST
+     * @param visitor visitor
+     */
+    public static void visit(ModuleNode tree, GroovyCodeVisitor visitor) {
+        tree.getStatementBlock().visit(visitor);
+        for (MethodNode method : tree.getMethods())
+            method.getCode().visit(visitor);
+    }
+
+    /**
+     * Gathers the properties, context entries and lookup IDs used by the provided expression; the analysis done when the expression was compiled with this
+     * analyzer is used if it's available, otherwise the expression is parsed.
+     * @param id identifier of the expression
+     * @param expression expression
+     * @param properties properties used in the expression (if null, they will not be gathered)
+     * @param contextEntries context entries used in the expression (if null, they will not be gathered)
+     * @param lookups lookup IDs used in the expression (if null, they will not be gathered)
+     * @return true if the analysis done during the compilation was used, false if the expression had to be parsed
+     * @throws CompilationFailedException if the expression needs to be parsed and can't be
+     */
+    public boolean analyze(String id, String expression, Set<String> properties, Set<String> contextEntries, Set<String> lookups) throws CompilationFailedException {
+        if (expression == null || expression.trim().isEmpty())
+            expression = "return true";
+
+        // the expression is parsed only once, its analysis is kept like the ones done during the compilation
+        boolean recorded = true;
+        Analysis analysis = _analyses.get(expression);
+        if (analysis == null) {
+            record(expression, ValidatorServices.getInstance().parseExpressionTree(id, expression));
+            analysis = _analyses.get(expression);
+            recorded = false;
+            if (analysis == null) {
+                ValidatorServices.getInstance().parseExpression(id, expression, properties, contextEntries, lookups);
+                return false;
+            }
+        }
+
+        if (properties != null)
+            properties.addAll(analysis._properties);
+        if (contextEntries != null)
+            contextEntries.addAll(analysis._contextEntries);
+        if (lookups != null)
+            lookups.addAll(analysis._lookups);
+        return recorded;
+    }
+
+    /**
+     * Returns the static estimate of the cost of the provided expression (see RuleOrderer.estimateCost()), if it was analyzed by this analyzer.
+     * @param expression expression
+     * @return the estimated cost, 0 if the expression wasn't analyzed
+     */
+    public long getCost(String expression) {
+        Analysis analysis = _analyses.get(expression == null || expression.trim().isEmpty() ? "return true" : expression);
+        return analysis == null ? 0L : analysis._cost;
+    }
+
+    /**
+     * The result of the analysis of an expression.
+     */
+    private static final class Analysis {
+
+        private final Set<String> _properties;
+
+        private final Set<String> _contextEntries;
+
+        private final Set<String> _lookups;
+
+        private final long _cost;
+
+        private Analysis(Set<String> properties, Set<String> contextEntries, Set<String> lookups, long cost) {
+            _properties = Collections.unmodifiableSet(properties);
+            _contextEntries = Collections.unmodifiableSet(contextEntries);
+            _lookups = Collections.unmodifiableSet(lookups);
+            _cost = cost;
+        }
+    }
+}
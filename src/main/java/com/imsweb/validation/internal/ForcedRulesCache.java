@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.imsweb.validation.ConstructionException;
+import com.imsweb.validation.entities.Rule;
+
+/**
+ * This class caches the compiled forced rules (see ValidatingContext.getToForce()), so a rule that is forced repeatedly (by an editor or a testing tool) is
+ * not re-compiled every time it runs; the cache is shared by all the processors and can be used by concurrent validations.
+ * <p/>
+ * The entries are keyed by rule ID, java-path and expression, so a modified expression is never served from the cache. The cache is bounded by a number of
+ * entries and by a weight (the total length of the cached expressions); when one of the bounds is exceeded, the least recently used entries are evicted.
+ */
+public final class ForcedRulesCache {
+
+    /**
+     * Default maximum number of entries
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+
+    /**
+     * Default maximum weight (total length of the cached expressions)
+     */
+    public static final long DEFAULT_MAX_WEIGHT = 2000000L;
+
+    // the cached rules
+    private static final Map<Key, CachedRule> _RULES = new ConcurrentHashMap<>();
+
+    // logical clock used to know which entries were used the least recently
+    private static final AtomicLong _CLOCK = new AtomicLong();
+
+    // the current total weight of the entries
+    private static final AtomicLong _WEIGHT = new AtomicLong();
+
+    // metrics
+    private static final LongAdder _HITS = new LongAdder();
+    private static final LongAdder _MISSES = new LongAdder();
+    private static final LongAdder _EVICTIONS = new LongAdder();
+
+    // the bounds of the cache
+    private static volatile int _MAX_ENTRIES = DEFAULT_MAX_ENTRIES;
+    private static volatile long _MAX_WEIGHT = DEFAULT_MAX_WEIGHT;
+
+    /**
+     * Private constructor, no instanciation of this class!
+     */
+    private ForcedRulesCache() {
+    }
+
+    /**
+     * Returns the executable rule for the provided forced rule, compiling it if it's not in the cache.
+     * @param rule forced rule
+     * @return the corresponding executable rule, never null
+     * @throws ConstructionException if the rule can't be compiled
+     */
+    public static ExecutableRule get(Rule rule) throws ConstructionException {
+        Key key = new Key(rule.getId(), rule.getJavaPath(), rule.getExpression());
+
+        CachedRule cached = _RULES.get(key);
+        if (cached != null) {
+            _HITS.increment();
+            cached._lastAccess = _CLOCK.incrementAndGet();
+            return cached._rule;
+        }
+
+        // the compilation happens outside of the map so it doesn't block the other threads; if two threads compile the same rule, the first one wins
+        _MISSES.increment();
+        CachedRule compiled = new CachedRule(new ExecutableRule(rule), key._expression == null ? 0 : key._expression.length());
+        if (_MAX_ENTRIES <= 0 || compiled._weight > _MAX_WEIGHT)
+            return compiled._rule;
+        compiled._lastAccess = _CLOCK.incrementAndGet();
+        cached = _RULES.putIfAbsent(key, compiled);
+        if (cached != null)
+            return cached._rule;
+        _WEIGHT.addAndGet(compiled._weight);
+        evict();
+
+        return compiled._rule;
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is within its bounds; the entries are scanned, but this only happens after a compilation,
+     * which costs much more than the scan.
+     */
+    private static synchronized void evict() {
+        while (_RULES.size() > _MAX_ENTRIES || _WEIGHT.get() > _MAX_WEIGHT) {
+            Map.Entry<Key, CachedRule> eldest = null;
+            for (Map.Entry<Key, CachedRule> entry : _RULES.entrySet())
+                if (eldest == null || entry.getValue()._lastAccess < eldest.getValue()._lastAccess)
+                    eldest = entry;
+            if (eldest == null)
+                break;
+            if (_RULES.remove(eldest.getKey(), eldest.getValue())) {
+                _WEIGHT.addAndGet(-eldest.getValue()._weight);
+                _EVICTIONS.increment();
+            }
+        }
+    }
+
+    /**
+     * Sets the bounds of the cache; the entries exceeding the new bounds are evicted right away.
+     * @param maxEntries maximum number of entries (0 to disable the cache)
+     * @param maxWeight maximum weight (total length of the cached expressions)
+     */
+    public static void setCapacity(int maxEntries, long maxWeight) {
+        if (maxEntries < 0 || maxWeight < 0)
+            throw new RuntimeException("The capacity of the forced rules cache can't be negative!");
+        _MAX_ENTRIES = maxEntries;
+        _MAX_WEIGHT = maxWeight;
+        evict();
+    }
+
+    public static int getMaxEntries() {
+        return _MAX_ENTRIES;
+    }
+
+    public static long getMaxWeight() {
+        return _MAX_WEIGHT;
+    }
+
+    public static int getSize() {
+        return _RULES.size();
+    }
+
+    public static long getWeight() {
+        return _WEIGHT.get();
+    }
+
+    public static long getHits() {
+        return _HITS.sum();
+    }
+
+    public static long getMisses() {
+        return _MISSES.sum();
+    }
+
+    public static long getEvictions() {
+        return _EVICTIONS.sum();
+    }
+
+    /**
+     * Removes all the entries (the metrics are not reset).
+     */
+    public static synchronized void clear() {
+        for (Key key : _RULES.keySet()) {
+            CachedRule removed = _RULES.remove(key);
+            if (removed != null)
+                _WEIGHT.addAndGet(-removed._weight);
+        }
+    }
+
+    /**
+     * Key of the cache; the hash is computed once.
+     */
+    private static final class Key {
+
+        private final String _id;
+
+        private final String _javaPath;
+
+        private final String _expression;
+
+        private final int _hash;
+
+        private Key(String id, String javaPath, String expression) {
+            _id = id;
+            _javaPath = javaPath;
+            _expression = expression;
+            int hash = id == null ? 0 : id.hashCode();
+            hash = 31 * hash + (javaPath == null ? 0 : javaPath.hashCode());
+            _hash = 31 * hash + (expression == null ? 0 : expression.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other)
+                return true;
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key)other;
+            return _hash == key._hash && Objects.equals(_id, key._id) && Objects.equals(_javaPath, key._javaPath) && Objects.equals(_expression, key._expression);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+    }
+
+    /**
+     * A cached rule.
+     */
+    private static final class CachedRule {
+
+        private final ExecutableRule _rule;
+
+        private final long _weight;
+
+        // value of the clock the last time this entry was used
+        private volatile long _lastAccess;
+
+        private CachedRule(ExecutableRule rule, long weight) {
+            _rule = rule;
+            _weight = weight;
+        }
+    }
+}
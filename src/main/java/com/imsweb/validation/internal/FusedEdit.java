@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import groovy.lang.Binding;
+import groovy.lang.Script;
+
+/**
+ * An edit compiled as one method of a fused class (see BatchCompiler): all the edits of a java-path are compiled in a single class, with one method per edit
+ * and a generated dispatcher calling the method of an edit by its index.
+ * <p/>
+ * The edits of a fused class share the script instances (one per thread); the binding is set for the duration of the call only.
+ */
+public final class FusedEdit {
+
+    /**
+     * Interface implemented by the fused classes.
+     */
+    public interface Dispatcher {
+
+        /**
+         * Runs the edit with the provided index.
+         * @param index index of the edit in the fused class
+         * @return the result of the edit
+         */
+        Object runEdit(int index);
+    }
+
+    // the script instances of the fused class, one per thread (shared by all the edits of the class)
+    private final ThreadLocal<Script> _scripts;
+
+    // the index of this edit in the fused class
+    private final int _index;
+
+    // the expression of this edit
+    private final String _expression;
+
+    /**
+     * Constructor.
+     * @param scripts script instances of the fused class
+     * @param index index of the edit in the fused class
+     * @param expression expression of the edit
+     */
+    FusedEdit(ThreadLocal<Script> scripts, int index, String expression) {
+        _scripts = scripts;
+        _index = index;
+        _expression = expression;
+    }
+
+    /**
+     * Creates the per-thread script instances for the provided fused class.
+     * @param fusedClass fused class
+     * @return the script instances
+     */
+    static ThreadLocal<Script> createScripts(Class<? extends Script> fusedClass) {
+        return ThreadLocal.withInitial(() -> InvokerHelper.createScript(fusedClass, new Binding()));
+    }
+
+    public String getExpression() {
+        return _expression;
+    }
+
+    public int getIndex() {
+        return _index;
+    }
+
+    /**
+     * Runs this edit with the provided binding.
+     * @param binding binding to use
+     * @return the result of the edit
+     */
+    public Object run(Binding binding) {
+        Script script = _scripts.get();
+
+        // the instance is shared by the edits of the class, so the previous binding is restored in case an edit triggers a nested validation
+        Binding previous = script.getBinding();
+        script.setBinding(binding);
+        try {
+            return ((Dispatcher)script).runEdit(_index);
+        }
+        finally {
+            script.setBinding(previous);
+        }
+    }
+}
@@ -5,10 +5,17 @@ package com.imsweb.validation.internal;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
 
+import com.imsweb.validation.FailureSink;
 import com.imsweb.validation.ValidationException;
 import com.imsweb.validation.entities.RuleFailure;
 import com.imsweb.validation.entities.Validatable;
+import com.imsweb.validation.internal.callable.ChildrenValidatingTask;
 
 /**
  * An <code>IterativeProcessor</code> is a <code>Processor</code> that <i>follows</i> a collection on a <code>Validatable</code>.
@@ -48,18 +55,60 @@ public class IterativeProcessor implements Processor {
     }
 
     @Override
-    public Collection<RuleFailure> process(Validatable validatable, ValidatingContext procCtx) throws ValidationException {
-        Collection<RuleFailure> results = new ArrayList<>();
-
+    public void process(Validatable validatable, ValidatingContext procCtx, FailureSink sink) throws ValidationException {
+        List<Validatable> children;
         try {
-            // it is important to pass a new version of the failedRuleIds and failedConditionsIds!
-            for (Validatable childValidatable : validatable.followCollection(_collectionName))
-                results.addAll(_processor.process(childValidatable, procCtx));
+            children = validatable.followCollection(_collectionName);
         }
         catch (IllegalAccessException e) {
             throw new ValidationException(e);
         }
 
-        return results;
+        // the children can be validated concurrently only if the failures are tracked by index (the contexts overriding the checks might need to see all the failures)
+        ForkJoinPool pool = procCtx.getIntraRecordPool();
+        if (pool != null && children.size() > 1 && procCtx.usesIndexedFailures()) {
+            processConcurrently(children, procCtx, pool, sink);
+            return;
+        }
+
+        // it is important to pass a new version of the failedRuleIds and failedConditionsIds!
+        for (Validatable childValidatable : children) {
+            if (procCtx.isStopped())
+                break;
+            _processor.process(childValidatable, procCtx, sink);
+        }
+    }
+
+    /**
+     * Validates the provided children concurrently on the provided pool; the failures are reported (and merged into the context) in the same order as if the
+     * children were validated sequentially, so the failures of each child are collected (and detached) until all the children are validated.
+     * @param children children to validate
+     * @param procCtx current validating context
+     * @param pool pool to use
+     * @param sink the sink receiving the failures
+     * @throws ValidationException if a child can't be validated
+     */
+    private void processConcurrently(List<Validatable> children, ValidatingContext procCtx, ForkJoinPool pool, FailureSink sink) throws ValidationException {
+        List<ValidatingContext> contexts = new ArrayList<>(children.size());
+        for (int i = 0; i < children.size(); i++)
+            contexts.add(procCtx.copyForChild());
+        List<Collection<RuleFailure>> childrenResults = new ArrayList<>(Collections.nCopies(children.size(), null));
+        AtomicReference<ValidationException> exception = new AtomicReference<>();
+
+        // if this is already running in the pool (nested collections), the current thread participates in the validation instead of blocking
+        ChildrenValidatingTask task = new ChildrenValidatingTask(_processor, children, contexts, 0, children.size(), childrenResults, exception);
+        if (ForkJoinTask.getPool() == pool)
+            task.invoke();
+        else
+            pool.invoke(task);
+        if (exception.get() != null)
+            throw exception.get();
+
+        for (int i = 0; i < children.size(); i++) {
+            if (childrenResults.get(i) != null) // null if the validation was stopped before the child was validated
+                for (RuleFailure failure : childrenResults.get(i))
+                    sink.failureReported(failure);
+            procCtx.mergeFailures(contexts.get(i));
+        }
     }
 }
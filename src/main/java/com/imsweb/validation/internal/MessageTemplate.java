@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.imsweb.validation.ValidatorServices;
+import com.imsweb.validation.entities.RuleFailure;
+import com.imsweb.validation.entities.Validatable;
+
+/**
+ * A pre-parsed failure message: the message is split once into literal segments and property tags (for example ${line.vitalStatus}), so filling it in doesn't
+ * require any regex matching.
+ * <p/>
+ * The values of the properties are read when the failure is reported (the validatable might change after that), but the message itself is formatted only when
+ * it's requested from the failure.
+ */
+public final class MessageTemplate {
+
+    /**
+     * Pattern for property values replacement
+     */
+    private static final Pattern _PROP_REPLACEMENT_PATTERN = Pattern.compile("(\\$\\{(.+?)\\})");
+
+    /**
+     * Value of a property that couldn't be read
+     */
+    private static final Object _ERROR = new Object();
+
+    /**
+     * Accessible fields of the scope objects that are not maps, cached per class and field name (empty if the class doesn't declare the field)
+     */
+    private static final ClassValue<Map<String, Optional<Field>>> _FIELDS = new ClassValue<Map<String, Optional<Field>>>() {
+        @Override
+        protected Map<String, Optional<Field>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * Whether or not a class of services uses the default fillInMessage() method (a template can't be used if that method is overridden)
+     */
+    private static final ClassValue<Boolean> _DEFAULT_FILLING = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("fillInMessage", String.class, Validatable.class).getDeclaringClass() == ValidatorServices.class;
+            }
+            catch (NoSuchMethodException e) {
+                return Boolean.FALSE;
+            }
+        }
+    };
+
+    // the literal segments, there is one more segment than there are tags
+    private String[] _literals;
+
+    // the prefix (alias), property and whether the value is a date to format, for each tag
+    private String[] _prefixes;
+    private String[] _properties;
+    private boolean[] _formatDates;
+
+    /**
+     * Private constructor, use compile().
+     */
+    private MessageTemplate(String[] literals, String[] prefixes, String[] properties, boolean[] formatDates) {
+        _literals = literals;
+        _prefixes = prefixes;
+        _properties = properties;
+        _formatDates = formatDates;
+    }
+
+    /**
+     * Parses the provided message.
+     * @param msg message to parse, can be null
+     * @return the corresponding template, never null
+     */
+    public static MessageTemplate compile(String msg) {
+        if (msg == null)
+            msg = "";
+
+        List<String> literals = new ArrayList<>();
+        List<String[]> tags = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int last = 0;
+        Matcher matcher = _PROP_REPLACEMENT_PATTERN.matcher(msg);
+        while (matcher.find()) {
+            String[] parts = StringUtils.split(matcher.group(2), '.');
+
+            // tags that don't have at least a prefix and a property are not replaced
+            if (parts.length >= 2) {
+                literals.add(literal.append(msg, last, matcher.start()).toString());
+                literal.setLength(0);
+                tags.add(parts);
+                last = matcher.end();
+            }
+        }
+        literals.add(literal.append(msg, last, msg.length()).toString());
+
+        String[] prefixes = new String[tags.size()];
+        String[] properties = new String[tags.size()];
+        boolean[] formatDates = new boolean[tags.size()];
+        for (int i = 0; i < tags.size(); i++) {
+            String[] parts = tags.get(i);
+            prefixes[i] = parts[0];
+            properties[i] = parts[1];
+            formatDates[i] = parts.length == 3 && "formatDate()".equals(parts[2]);
+        }
+
+        return new MessageTemplate(literals.toArray(new String[literals.size()]), prefixes, properties, formatDates);
+    }
+
+    /**
+     * Returns true if the provided services use the default fillInMessage() method, in which case the templates can be used instead of calling that method.
+     * @param services services
+     * @return true if the services use the default fillInMessage() method
+     */
+    public static boolean isDefaultFilling(ValidatorServices services) {
+        return _DEFAULT_FILLING.get(services.getClass());
+    }
+
+    /**
+     * Fills in this template using the provided validatable.
+     * @param validatable current validatable
+     * @return the message
+     */
+    public String fill(Validatable validatable) {
+        return _prefixes.length == 0 ? _literals[0] : format(capture(validatable));
+    }
+
+    /**
+     * Sets the message of the provided failure; the values of the properties are read right away, but the message is formatted only when it's requested.
+     * @param failure failure
+     * @param validatable current validatable
+     */
+    public void fill(RuleFailure failure, Validatable validatable) {
+        if (_prefixes.length == 0)
+            failure.setMessage(_literals[0]);
+        else {
+            Object[] values = capture(validatable);
+            failure.setMessageSupplier(() -> format(values));
+        }
+    }
+
+    /**
+     * Reads the values of the properties of this template.
+     * @param validatable current validatable
+     * @return the values (_ERROR if a value couldn't be read)
+     */
+    @SuppressWarnings("rawtypes")
+    private Object[] capture(Validatable validatable) {
+        Object[] values = new Object[_prefixes.length];
+        Map<String, Object> scope = validatable.getScope();
+        for (int i = 0; i < _prefixes.length; i++) {
+            Object obj = scope.get(_prefixes[i]);
+            if (obj instanceof Map)
+                values[i] = ((Map)obj).get(_properties[i]);
+            else {
+                Optional<Field> field = _FIELDS.get(obj.getClass()).computeIfAbsent(_properties[i], name -> findField(obj.getClass(), name));
+                try {
+                    values[i] = field.isPresent() ? field.get().get(obj) : _ERROR;
+                }
+                catch (IllegalAccessException e) {
+                    values[i] = _ERROR;
+                }
+            }
+        }
+        return values;
+    }
+
+    private static Optional<Field> findField(Class<?> type, String name) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return Optional.of(field);
+        }
+        catch (NoSuchFieldException | SecurityException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Formats the message using the provided values.
+     * @param values values returned by capture()
+     * @return the message
+     */
+    private String format(Object[] values) {
+        StringBuilder buf = new StringBuilder(_literals[0]);
+        for (int i = 0; i < values.length; i++) {
+            Object replacement = values[i];
+
+            String value;
+            if (replacement != null && replacement != _ERROR && _formatDates[i]) {
+                value = replacement.toString().trim();
+                if (value.length() == 8)
+                    value = "Y:" + value.substring(0, 4) + " M:" + value.substring(4, 6) + " D:" + value.substring(6);
+                else if (value.length() == 6)
+                    value = "Y:" + value.substring(0, 4) + " M:" + value.substring(4, 6) + " D:";
+                else if (value.length() == 4)
+                    value = "Y:" + value + " M:   D:";
+                else
+                    value = "Y:     M:   D:";
+            }
+            else if (replacement == _ERROR)
+                value = "<ERROR>";
+            else if (replacement == null || replacement.toString().trim().isEmpty())
+                value = "<BLANK>";
+            else
+                value = replacement.toString().trim();
+
+            buf.append(value).append(_literals[i + 1]);
+        }
+        return buf.toString();
+    }
+}
@@ -3,10 +3,8 @@
  */
 package com.imsweb.validation.internal;
 
-import java.util.Collection;
-
+import com.imsweb.validation.FailureSink;
 import com.imsweb.validation.ValidationException;
-import com.imsweb.validation.entities.RuleFailure;
 import com.imsweb.validation.entities.Validatable;
 
 /**
@@ -22,11 +20,13 @@ public interface Processor {
     /**
      * Calculates the edits on the passed validatable object
      * <p/>
+     * The failures are reported to the provided sink as they occur, in the validation order; the same sink is passed down to the children processors.
+     * <p/>
      * Created on Nov 15, 2007 by depryf
      * @param validatable the <code>Validatable</code> to process
      * @param procCtx a processing context
-     * @return a collection of <code>RuleFailure</code>, maybe empty but never null
+     * @param sink the sink receiving the failures
      * @throws ValidationException
      */
-    Collection<RuleFailure> process(Validatable validatable, ValidatingContext procCtx) throws ValidationException;
+    void process(Validatable validatable, ValidatingContext procCtx, FailureSink sink) throws ValidationException;
 }
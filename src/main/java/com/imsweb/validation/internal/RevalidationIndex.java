@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.imsweb.validation.ValidationEngine;
+
+/**
+ * This class indexes the rules by the properties and context entries they use (directly or through their conditions), so the rules affected by a change can
+ * be found without going through all the rules.
+ * <p/>
+ * The properties are the ones gathered when the expressions are parsed (for example "line.primarySite"); the context entries use the "Context." prefix.
+ */
+public final class RevalidationIndex {
+
+    // rule IDs keyed by the properties and context entries they use
+    private Map<String, Set<String>> _rulesByProperty = new HashMap<>();
+
+    // rule IDs keyed by the (proper) prefixes of the properties they use, for example "line" for "line.primarySite"
+    private Map<String, Set<String>> _rulesByPrefix = new HashMap<>();
+
+    // rules that don't use any property or context entry (as far as the parsing can tell), they are always affected
+    private Set<String> _unboundRules = new HashSet<>();
+
+    // dependencies and dependents of each rule
+    private Map<String, Set<String>> _dependencies = new HashMap<>();
+    private Map<String, Set<String>> _dependents = new HashMap<>();
+
+    /**
+     * Constructor.
+     * @param rules executable rules
+     * @param conditions executable conditions
+     */
+    public RevalidationIndex(Collection<ExecutableRule> rules, Collection<ExecutableCondition> conditions) {
+        Map<String, ExecutableCondition> conditionsById = new HashMap<>();
+        for (ExecutableCondition condition : conditions)
+            conditionsById.put(condition.getId(), condition);
+
+        for (ExecutableRule execRule : rules) {
+            String id = execRule.getId();
+
+            Set<String> used = new HashSet<>();
+            addUsedProperties(used, execRule.getRawProperties(), execRule.getPotentialContextEntries());
+            if (execRule.getConditions() != null) {
+                for (String conditionId : execRule.getConditions()) {
+                    ExecutableCondition condition = conditionsById.get(conditionId);
+                    if (condition != null)
+                        addUsedProperties(used, condition.getRawProperties(), condition.getContextKeys());
+                }
+            }
+
+            if (used.isEmpty())
+                _unboundRules.add(id);
+            for (String property : used) {
+                _rulesByProperty.computeIfAbsent(property, k -> new HashSet<>()).add(id);
+                for (int idx = property.lastIndexOf('.'); idx > 0; idx = property.lastIndexOf('.', idx - 1))
+                    _rulesByPrefix.computeIfAbsent(property.substring(0, idx), k -> new HashSet<>()).add(id);
+            }
+
+            if (execRule.getDependencies() != null) {
+                for (String dependency : execRule.getDependencies()) {
+                    _dependencies.computeIfAbsent(id, k -> new HashSet<>()).add(dependency);
+                    _dependents.computeIfAbsent(dependency, k -> new HashSet<>()).add(id);
+                }
+            }
+        }
+    }
+
+    private static void addUsedProperties(Set<String> used, Set<String> properties, Set<String> contextEntries) {
+        if (properties != null)
+            used.addAll(properties);
+        if (contextEntries != null)
+            for (String entry : contextEntries)
+                used.add(ValidationEngine.VALIDATOR_CONTEXT_KEY + "." + entry);
+    }
+
+    /**
+     * Returns the IDs of the rules that need to be re-executed after the provided properties changed.
+     * <p/>
+     * Those are the rules using a changed property (a changed property also affects the rules using one of its sub-properties, or one of its parent
+     * properties), the rules that don't use any property, the rules depending on those rules, and the rules they depend on (their results are needed to know
+     * whether the dependent rules can run).
+     * @param changedProperties changed properties and context entries
+     * @return the IDs of the rules to re-execute, maybe empty but never null
+     */
+    public Set<String> getAffectedRuleIds(Collection<String> changedProperties) {
+        Set<String> affected = new HashSet<>(_unboundRules);
+        for (String property : changedProperties) {
+            if (property == null)
+                continue;
+            property = StringUtils.trim(property);
+            affected.addAll(_rulesByProperty.getOrDefault(property, Collections.emptySet()));
+            affected.addAll(_rulesByPrefix.getOrDefault(property, Collections.emptySet()));
+            for (int idx = property.lastIndexOf('.'); idx > 0; idx = property.lastIndexOf('.', idx - 1))
+                affected.addAll(_rulesByProperty.getOrDefault(property.substring(0, idx), Collections.emptySet()));
+        }
+
+        // add the dependent rules (their result might change), and then the rules they depend on
+        Set<String> result = closure(affected, _dependents);
+        return closure(result, _dependencies);
+    }
+
+    private static Set<String> closure(Set<String> ids, Map<String, Set<String>> edges) {
+        Set<String> result = new HashSet<>(ids);
+        Deque<String> toVisit = new ArrayDeque<>(ids);
+        while (!toVisit.isEmpty())
+            for (String id : edges.getOrDefault(toVisit.pop(), Collections.emptySet()))
+                if (result.add(id))
+                    toVisit.push(id);
+        return result;
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.codehaus.groovy.ast.CodeVisitorSupport;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.expr.BinaryExpression;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.ast.expr.PropertyExpression;
+import org.codehaus.groovy.ast.expr.StaticMethodCallExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.ast.stmt.DoWhileStatement;
+import org.codehaus.groovy.ast.stmt.ForStatement;
+import org.codehaus.groovy.ast.stmt.WhileStatement;
+
+import com.imsweb.validation.ValidationEngineStats;
+import com.imsweb.validation.ValidatorServices;
+
+/**
+ * This class orders the rules using a runtime profile (the statistics of a previous run), or a static estimate of their cost when they are not in the profile.
+ * <p/>
+ * The order always respects the dependencies; among the rules that are ready to run, the cheap rules that fail often (and whose failures skip many dependent
+ * rules) come first. The rules that run and the failures they report don't depend on the order, but a validation that is stopped early (maximum number of
+ * failures, time budget) gets to its failures sooner, and the failures are reported in the new order.
+ */
+public final class RuleOrderer {
+
+    /**
+     * Header of the profile files
+     */
+    private static final String _PROFILE_HEADER = "ruleId,runs,totalTimeNanos,failures";
+
+    /**
+     * Weight of a rule that never fails, so those rules are still ordered by cost
+     */
+    private static final double _BASE_WEIGHT = 0.01;
+
+    /**
+     * Static cost of a method call and of any other node, and factor applied to the nodes inside a loop or a closure
+     */
+    private static final long _METHOD_CALL_COST = 5L;
+    private static final long _NODE_COST = 1L;
+    private static final long _LOOP_FACTOR = 10L;
+
+    /**
+     * Private constructor, no instanciation of this class!
+     */
+    private RuleOrderer() {
+    }
+
+    /**
+     * Orders the provided rules.
+     * <p/>
+     * The measured cost of a rule is its average time; the rules that are not in the profile get their static estimate, converted to nanoseconds using the
+     * median ratio between the measured and the static costs of the profiled rules, and the average failure rate of the profiled rules.
+     * @param sortedRules rules sorted by dependencies
+     * @param profile profile, keyed by rule ID (can be empty, in which case only the static estimates are used)
+     * @return the ordered rules
+     */
+    public static List<ExecutableRule> order(List<ExecutableRule> sortedRules, Map<String, ValidationEngineStats> profile) {
+        int size = sortedRules.size();
+        Map<String, Integer> indexes = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++)
+            indexes.put(sortedRules.get(i).getId(), i);
+
+        // build the dependency graph (dependencies that are not part of the rules have already been validated, they are ignored)
+        int[] numDependencies = new int[size];
+        List<List<Integer>> dependents = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            dependents.add(new ArrayList<>());
+        for (int i = 0; i < size; i++) {
+            ExecutableRule rule = sortedRules.get(i);
+            if (rule.getDependencies() != null) {
+                for (String dependency : rule.getDependencies()) {
+                    Integer index = indexes.get(dependency);
+                    if (index != null) {
+                        dependents.get(index).add(i);
+                        numDependencies[i]++;
+                    }
+                }
+            }
+        }
+
+        // calibrate the static estimates against the measured costs
+        List<Double> ratios = new ArrayList<>();
+        double totalFailureRate = 0;
+        for (ExecutableRule rule : sortedRules) {
+            ValidationEngineStats stats = rule.getId() == null ? null : profile.get(rule.getId());
+            if (stats != null && stats.getNumRun() > 0) {
+                ratios.add((double)stats.getAverageTimeNanos() / rule.getStaticCost());
+                totalFailureRate += stats.getFailureRate();
+            }
+        }
+        Collections.sort(ratios);
+        double nanosPerUnit = ratios.isEmpty() ? 1 : Math.max(ratios.get(ratios.size() / 2), Double.MIN_VALUE);
+        double defaultFailureRate = ratios.isEmpty() ? 0 : totalFailureRate / ratios.size();
+
+        double[] priorities = new double[size];
+        for (int i = 0; i < size; i++) {
+            ExecutableRule rule = sortedRules.get(i);
+            ValidationEngineStats stats = rule.getId() == null ? null : profile.get(rule.getId());
+            double cost, failureRate;
+            if (stats != null && stats.getNumRun() > 0) {
+                cost = stats.getAverageTimeNanos();
+                failureRate = stats.getFailureRate();
+            }
+            else {
+                cost = rule.getStaticCost() * nanosPerUnit;
+                failureRate = defaultFailureRate;
+            }
+            priorities[i] = (failureRate * (1 + dependents.get(i).size()) + _BASE_WEIGHT) / Math.max(cost, 1);
+        }
+
+        // topological sort, taking the ready rule with the highest priority first (ties keep the original order)
+        PriorityQueue<Integer> ready = new PriorityQueue<>(Math.max(size, 1), (i1, i2) -> {
+            int result = Double.compare(priorities[i2], priorities[i1]);
+            return result != 0 ? result : Integer.compare(i1, i2);
+        });
+        for (int i = 0; i < size; i++)
+            if (numDependencies[i] == 0)
+                ready.add(i);
+        List<ExecutableRule> result = new ArrayList<>(size);
+        while (!ready.isEmpty()) {
+            int i = ready.poll();
+            result.add(sortedRules.get(i));
+            for (int dependent : dependents.get(i))
+                if (--numDependencies[dependent] == 0)
+                    ready.add(dependent);
+        }
+
+        // this can't happen since the circular dependencies have already been rejected, but better safe than sorry...
+        if (result.size() != size)
+            return sortedRules;
+
+        return result;
+    }
+
+    /**
+     * Returns a static estimate of the cost of the provided expression: each node costs 1, each method call costs 5, and the nodes inside a loop or a closure
+     * cost 10 times more (per level of nesting).
+     * @param expression expression, can be null
+     * @return the estimated cost (always at least 1)
+     */
+    public static long estimateCost(String expression) {
+        if (expression == null || expression.trim().isEmpty())
+            return 1L;
+
+        try {
+            return estimateCost(ValidatorServices.getInstance().parseExpressionTree("cost", expression));
+        }
+        catch (RuntimeException e) {
+            // the expression can't be parsed, use its length as a (very) rough estimate
+            return Math.max(expression.length() / 10, 1L);
+        }
+    }
+
+    /**
+     * Returns a static estimate of the cost of the expression corresponding to the provided AST (see estimateCost(String)).
+     * @param tree AST of the expression, as built by the conversion phase
+     * @return the estimated cost (always at least 1)
+     */
+    public static long estimateCost(ModuleNode tree) {
+        CostVisitor visitor = new CostVisitor();
+        ExpressionAnalyzer.visit(tree, visitor);
+        return Math.max(visitor._cost, 1L);
+    }
+
+    /**
+     * Writes the provided profile (rule ID, number of runs, total time in nanoseconds and number of failures, one rule per line).
+     * @param profile profile to write, keyed by rule ID
+     * @param writer writer to use, it will not be closed
+     * @throws IOException if the profile can't be written
+     */
+    public static void writeProfile(Map<String, ValidationEngineStats> profile, Writer writer) throws IOException {
+        writer.write(_PROFILE_HEADER);
+        writer.write("\n");
+        for (Map.Entry<String, ValidationEngineStats> entry : new TreeMap<>(profile).entrySet()) {
+            ValidationEngineStats stats = entry.getValue();
+            writer.write(entry.getKey());
+            writer.write(",");
+            writer.write(String.valueOf(stats.getNumRun()));
+            writer.write(",");
+            writer.write(String.valueOf(stats.getTotalTimeNanos()));
+            writer.write(",");
+            writer.write(String.valueOf(stats.getNumFailures()));
+            writer.write("\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads a profile written by writeProfile().
+     * @param reader reader to use, it will not be closed
+     * @return the profile, keyed by rule ID
+     * @throws IOException if the profile can't be read or is invalid
+     */
+    public static Map<String, ValidationEngineStats> readProfile(Reader reader) throws IOException {
+        Map<String, ValidationEngineStats> profile = new LinkedHashMap<>();
+
+        BufferedReader buffered = reader instanceof BufferedReader ? (BufferedReader)reader : new BufferedReader(reader);
+        int lineNumber = 0;
+        String line = buffered.readLine();
+        while (line != null) {
+            lineNumber++;
+            if (!line.trim().isEmpty() && !(lineNumber == 1 && line.trim().equals(_PROFILE_HEADER))) {
+                String[] parts = line.trim().split(",");
+                if (parts.length != 4)
+                    throw new IOException("Invalid profile line " + lineNumber + ": " + Arrays.toString(parts));
+                try {
+                    ValidationEngineStats stats = new ValidationEngineStats(parts[0]);
+                    stats.setNumRun(Long.valueOf(parts[1]));
+                    stats.setTotalTimeNanos(Long.parseLong(parts[2]));
+                    stats.setNumFailures(Long.parseLong(parts[3]));
+                    profile.put(stats.getId(), stats);
+                }
+                catch (NumberFormatException e) {
+                    throw new IOException("Invalid profile line " + lineNumber + ": " + line, e);
+                }
+            }
+            line = buffered.readLine();
+        }
+
+        return profile;
+    }
+
+    /**
+     * Visitor computing the static cost of an expression.
+     */
+    private static final class CostVisitor extends CodeVisitorSupport {
+
+        // accumulated cost
+        private long _cost;
+
+        // factor applied to the current nodes (grows with the nesting of the loops and closures)
+        private long _factor = 1L;
+
+        private void add(long cost) {
+            _cost = Math.min(_cost + cost * _factor, Long.MAX_VALUE / 2);
+        }
+
+        private long enterLoop() {
+            long factor = _factor;
+            _factor = Math.min(_factor * _LOOP_FACTOR, Long.MAX_VALUE / (_LOOP_FACTOR * _METHOD_CALL_COST));
+            return factor;
+        }
+
+        @Override
+        public void visitMethodCallExpression(MethodCallExpression call) {
+            add(_METHOD_CALL_COST);
+            super.visitMethodCallExpression(call);
+        }
+
+        @Override
+        public void visitStaticMethodCallExpression(StaticMethodCallExpression call) {
+            add(_METHOD_CALL_COST);
+            super.visitStaticMethodCallExpression(call);
+        }
+
+        @Override
+        public void visitPropertyExpression(PropertyExpression expression) {
+            add(_NODE_COST);
+            super.visitPropertyExpression(expression);
+        }
+
+        @Override
+        public void visitVariableExpression(VariableExpression expression) {
+            add(_NODE_COST);
+            super.visitVariableExpression(expression);
+        }
+
+        @Override
+        public void visitBinaryExpression(BinaryExpression expression) {
+            add(_NODE_COST);
+            super.visitBinaryExpression(expression);
+        }
+
+        @Override
+        public void visitForLoop(ForStatement forLoop) {
+            forLoop.getCollectionExpression().visit(this);
+            long factor = enterLoop();
+            forLoop.getLoopBlock().visit(this);
+            _factor = factor;
+        }
+
+        @Override
+        public void visitWhileLoop(WhileStatement loop) {
+            long factor = enterLoop();
+            super.visitWhileLoop(loop);
+            _factor = factor;
+        }
+
+        @Override
+        public void visitDoWhileLoop(DoWhileStatement loop) {
+            long factor = enterLoop();
+            super.visitDoWhileLoop(loop);
+            _factor = factor;
+        }
+
+        @Override
+        public void visitClosureExpression(ClosureExpression expression) {
+            long factor = enterLoop();
+            super.visitClosureExpression(expression);
+            _factor = factor;
+        }
+    }
+}
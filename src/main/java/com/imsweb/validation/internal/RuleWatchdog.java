@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class enforces the time budgets of the rules: each thread running a rule publishes the deadline of the rule, and a single daemon thread periodically
+ * sweeps the deadlines and flags the rules running for longer than their budget (the rules don't schedule anything, so the validating threads never contend
+ * with each other).
+ * <p/>
+ * The interruption is cooperative: when the rule interruption is enabled (see ValidationEngine.enableRuleInterruption()), the expressions are compiled with the
+ * Groovy ConditionalInterrupt transformation (see ValidatorServices.getCompilerConfiguration()), which checks the watch of the current thread in every loop,
+ * closure and method. Otherwise, a rule exceeding its budget can't be stopped, but it's still reported as a timeout once it returns.
+ * <p/>
+ * The watched threads are not interrupted: interrupting a thread would close the NIO channels it's using (like a file channel shared by a lookup with the other
+ * threads), so a rule blocked in a Java call is only flagged once the call returns. The scripts ignore the interrupted flag, so interrupting a thread for
+ * another reason doesn't make its rules fail either.
+ * <p/>
+ * The number of timeouts is kept for each rule.
+ */
+public final class RuleWatchdog {
+
+    // how often the deadlines are swept, in milliseconds (a rule is flagged at most that long after its deadline)
+    private static final long _SWEEP_PERIOD_MILLIS = 5L;
+
+    // the threads that ran a rule with a budget (a thread is forgotten once it dies)
+    private static final Set<WatchedThread> _THREADS = ConcurrentHashMap.newKeySet();
+
+    // the state of the current thread, null if the thread never ran a rule with a budget
+    private static final ThreadLocal<WatchedThread> _CURRENT_THREAD = new ThreadLocal<>();
+
+    // number of timeouts, keyed by rule ID
+    private static final Map<String, LongAdder> _TIMEOUTS = new ConcurrentHashMap<>();
+
+    // the thread sweeping the deadlines, lazily started
+    private static volatile ScheduledThreadPoolExecutor _SWEEPER;
+
+    /**
+     * Private constructor, no instanciation...
+     */
+    private RuleWatchdog() {
+    }
+
+    /**
+     * Starts watching the current thread; the returned watch must be stopped once the rule returns.
+     * <p/>
+     * If the thread is already watched (a rule triggering a nested validation), the new watch can't outlive the current one, and the current one is restored
+     * when the new one is stopped.
+     * @param budget time budget, in nanoseconds
+     * @return the watch
+     */
+    public static Watch watch(long budget) {
+        if (_SWEEPER == null)
+            startSweeper();
+
+        WatchedThread thread = _CURRENT_THREAD.get();
+        if (thread == null) {
+            thread = new WatchedThread(Thread.currentThread());
+            _THREADS.add(thread);
+            _CURRENT_THREAD.set(thread);
+        }
+        Watch outer = thread._watch;
+        long deadline = System.nanoTime() + budget;
+        if (outer != null && outer._deadline - deadline < 0)
+            deadline = outer._deadline;
+        Watch watch = new Watch(thread, outer, deadline);
+        thread._watch = watch;
+        return watch;
+    }
+
+    private static synchronized void startSweeper() {
+        if (_SWEEPER == null) {
+            ScheduledThreadPoolExecutor sweeper = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "validation-engine-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(RuleWatchdog::sweep, _SWEEP_PERIOD_MILLIS, _SWEEP_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            _SWEEPER = sweeper;
+        }
+    }
+
+    // called periodically by the sweeper thread
+    private static void sweep() {
+        long now = System.nanoTime();
+        for (WatchedThread thread : _THREADS) {
+            Watch watch = thread._watch;
+            if (watch != null) {
+                // flagging a watch that was just stopped is harmless, it's not used anymore
+                if (!watch._expired && now - watch._deadline >= 0)
+                    watch._expired = true;
+            }
+            else if (!thread._thread.isAlive())
+                _THREADS.remove(thread);
+        }
+    }
+
+    /**
+     * Returns true if the rule running on the current thread exceeded its time budget; this method is called by the compiled expressions.
+     * @return true if the rule exceeded its time budget, false otherwise (or if the rule doesn't have any budget)
+     */
+    public static boolean isCurrentWatchExpired() {
+        WatchedThread thread = _CURRENT_THREAD.get();
+        Watch watch = thread == null ? null : thread._watch;
+        return watch != null && watch._expired;
+    }
+
+    /**
+     * Keeps track of a timeout for the provided rule.
+     * @param ruleId rule ID
+     */
+    public static void timeoutReported(String ruleId) {
+        _TIMEOUTS.computeIfAbsent(ruleId, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Returns the number of timeouts for each rule that timed out at least once.
+     * @return the number of timeouts, keyed by rule ID
+     */
+    public static Map<String, Long> getTimeouts() {
+        Map<String, Long> result = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : _TIMEOUTS.entrySet())
+            result.put(entry.getKey(), entry.getValue().sum());
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Resets the number of timeouts.
+     */
+    public static void resetTimeouts() {
+        _TIMEOUTS.clear();
+    }
+
+    /**
+     * A thread running rules with a budget.
+     */
+    private static final class WatchedThread {
+
+        // the thread
+        private final Thread _thread;
+
+        // the watch of the rule currently running on the thread, null if none; written by the thread only, read by the sweeper
+        private volatile Watch _watch;
+
+        private WatchedThread(Thread thread) {
+            _thread = thread;
+        }
+    }
+
+    /**
+     * A watch on a thread running a rule.
+     */
+    public static final class Watch {
+
+        // the watched thread
+        private final WatchedThread _thread;
+
+        // the watch that was running when this one started, null if none
+        private final Watch _outer;
+
+        // the deadline, as a System.nanoTime() value
+        private final long _deadline;
+
+        // whether or not the deadline was reached; set by the sweeper
+        private volatile boolean _expired;
+
+        private Watch(WatchedThread thread, Watch outer, long deadline) {
+            _thread = thread;
+            _outer = outer;
+            _deadline = deadline;
+        }
+
+        /**
+         * Stops this watch and restores the one that was running when it started; must be called by the watched thread.
+         * @return true if the budget was exceeded, false otherwise
+         */
+        public boolean stop() {
+            _thread._watch = _outer;
+            // the sweeper might not have run since the deadline was reached
+            if (!_expired && System.nanoTime() - _deadline >= 0)
+                _expired = true;
+            return _expired;
+        }
+    }
+}
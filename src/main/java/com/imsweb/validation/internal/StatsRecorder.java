@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.imsweb.validation.ValidationEngineStats;
+import com.imsweb.validation.ValidationEngineStatsSnapshot;
+
+/**
+ * This class records the execution times of the rules and conditions (and the number of failures of the rules).
+ * <p/>
+ * The times are measured with System.nanoTime() and accumulated into striped counters (LongAdder), so the threads running the same rule don't contend on a lock
+ * or on a single counter. Each rule and condition also keeps a log-linear latency histogram (8 sub-buckets per power of two, so the relative error of the
+ * percentiles is below 12.5%); the buckets are created the first time they are hit, so a rule only pays for the latencies it actually has.
+ * <p/>
+ * All the accumulators live in a single generation object that is replaced when the statistics are reset, so a snapshot taken with a reset doesn't need to lock
+ * the recording threads: a run is never reported in two snapshots. The recording is not blocked by the snapshot though, so a run recorded while the statistics
+ * are reset might be missed: the recording thread can still be using the replaced generation after it was summed.
+ */
+public final class StatsRecorder {
+
+    // number of sub-buckets per power of two (as a number of bits)
+    private static final int _SUB_BUCKET_BITS = 3;
+
+    // number of sub-buckets per power of two
+    private static final int _SUB_BUCKET_COUNT = 1 << _SUB_BUCKET_BITS;
+
+    // number of buckets needed to cover all the positive long values
+    private static final int _NUM_BUCKETS = (64 - _SUB_BUCKET_BITS) * _SUB_BUCKET_COUNT;
+
+    // the current generation of accumulators
+    private static final AtomicReference<Generation> _CURRENT = new AtomicReference<>(new Generation());
+
+    /**
+     * Private constructor, no instanciation...
+     */
+    private StatsRecorder() {
+    }
+
+    /**
+     * Records a run of the provided rule.
+     * @param ruleId rule ID
+     * @param nanos execution time, in nanoseconds
+     * @param failed whether or not the rule failed
+     */
+    public static void ruleExecuted(String ruleId, long nanos, boolean failed) {
+        Accumulator accumulator = _CURRENT.get().getRuleAccumulator(ruleId);
+        accumulator.record(nanos);
+        if (failed)
+            accumulator._failures.increment();
+    }
+
+    /**
+     * Records a run of the provided condition.
+     * @param conditionId condition ID
+     * @param nanos execution time, in nanoseconds
+     */
+    public static void conditionExecuted(String conditionId, long nanos) {
+        _CURRENT.get().getConditionAccumulator(conditionId).record(nanos);
+    }
+
+    /**
+     * Returns a snapshot of the statistics recorded so far.
+     * @param reset if true, the statistics are reset as part of the snapshot (the runs reported after the snapshot will be part of the next one)
+     * @return the snapshot, never null
+     */
+    public static ValidationEngineStatsSnapshot snapshot(boolean reset) {
+        Generation generation = reset ? _CURRENT.getAndSet(new Generation()) : _CURRENT.get();
+        return new ValidationEngineStatsSnapshot(toStats(generation._rules), toStats(generation._conditions), generation._startTime, System.currentTimeMillis());
+    }
+
+    /**
+     * Resets the statistics recorded so far.
+     */
+    public static void reset() {
+        _CURRENT.set(new Generation());
+    }
+
+    /**
+     * Converts the provided accumulators to statistics.
+     * @param accumulators accumulators, keyed by ID
+     * @return the statistics, keyed by ID
+     */
+    private static Map<String, ValidationEngineStats> toStats(Map<String, Accumulator> accumulators) {
+        Map<String, ValidationEngineStats> result = new HashMap<>();
+        for (Map.Entry<String, Accumulator> entry : accumulators.entrySet()) {
+            ValidationEngineStats stats = entry.getValue().toStats(entry.getKey());
+            if (stats != null)
+                result.put(entry.getKey(), stats);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the bucket of the provided value.
+     * @param value value (negative values are treated as 0)
+     * @return the bucket index
+     */
+    static int getBucketIndex(long value) {
+        if (value < _SUB_BUCKET_COUNT)
+            return value < 0 ? 0 : (int)value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int)((value >>> (exponent - _SUB_BUCKET_BITS)) & (_SUB_BUCKET_COUNT - 1));
+        return (exponent - _SUB_BUCKET_BITS + 1) * _SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the highest value of the provided bucket.
+     * @param index bucket index
+     * @return the highest value falling in that bucket
+     */
+    static long getBucketUpperBound(int index) {
+        if (index < _SUB_BUCKET_COUNT)
+            return index;
+        int exponent = index / _SUB_BUCKET_COUNT + _SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - _SUB_BUCKET_BITS);
+        long lowerBound = (_SUB_BUCKET_COUNT + index % _SUB_BUCKET_COUNT) * width;
+        return lowerBound + (width - 1);
+    }
+
+    /**
+     * The accumulators of a statistics generation (everything recorded between two resets).
+     */
+    private static final class Generation {
+
+        // the time (in ms) at which this generation started
+        private final long _startTime = System.currentTimeMillis();
+
+        // rule accumulators, keyed by rule ID
+        private final ConcurrentMap<String, Accumulator> _rules = new ConcurrentHashMap<>();
+
+        // condition accumulators, keyed by condition ID
+        private final ConcurrentMap<String, Accumulator> _conditions = new ConcurrentHashMap<>();
+
+        private Accumulator getRuleAccumulator(String id) {
+            Accumulator accumulator = _rules.get(id);
+            return accumulator != null ? accumulator : _rules.computeIfAbsent(id, k -> new Accumulator());
+        }
+
+        private Accumulator getConditionAccumulator(String id) {
+            Accumulator accumulator = _conditions.get(id);
+            return accumulator != null ? accumulator : _conditions.computeIfAbsent(id, k -> new Accumulator());
+        }
+    }
+
+    /**
+     * The accumulator of a single rule or condition.
+     */
+    private static final class Accumulator {
+
+        // number of runs
+        private final LongAdder _count = new LongAdder();
+
+        // total time, in nanoseconds
+        private final LongAdder _totalTime = new LongAdder();
+
+        // number of failures (only used for the rules)
+        private final LongAdder _failures = new LongAdder();
+
+        // shortest time, in nanoseconds
+        private final LongAccumulator _shortestTime = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+        // longest time, in nanoseconds
+        private final LongAccumulator _longestTime = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        // latency histogram, the buckets are created when they are first hit
+        private final AtomicReferenceArray<LongAdder> _buckets = new AtomicReferenceArray<>(_NUM_BUCKETS);
+
+        private void record(long nanos) {
+            if (nanos < 0)
+                nanos = 0;
+            _count.increment();
+            _totalTime.add(nanos);
+            _shortestTime.accumulate(nanos);
+            _longestTime.accumulate(nanos);
+
+            int index = getBucketIndex(nanos);
+            LongAdder bucket = _buckets.get(index);
+            if (bucket == null) {
+                _buckets.compareAndSet(index, null, new LongAdder());
+                bucket = _buckets.get(index);
+            }
+            bucket.increment();
+        }
+
+        private ValidationEngineStats toStats(String id) {
+            // the histogram is summed first, so the count can't be lower than the number of runs in the histogram
+            long[] counts = new long[_NUM_BUCKETS];
+            long histogramCount = 0;
+            for (int i = 0; i < _NUM_BUCKETS; i++) {
+                LongAdder bucket = _buckets.get(i);
+                if (bucket != null) {
+                    counts[i] = bucket.sum();
+                    histogramCount += counts[i];
+                }
+            }
+            long count = _count.sum();
+            if (count == 0 || histogramCount == 0)
+                return null;
+
+            long totalTime = _totalTime.sum();
+            long shortestTime = _shortestTime.get();
+            long longestTime = _longestTime.get();
+
+            ValidationEngineStats stats = new ValidationEngineStats(id);
+            stats.setNumRun(count);
+            stats.setNumFailures(Math.min(_failures.sum(), count));
+            stats.setTotalTimeNanos(totalTime);
+            stats.setShortestTimeNanos(shortestTime);
+            stats.setLongestTimeNanos(longestTime);
+            stats.setTotalTime(TimeUnit.NANOSECONDS.toMillis(totalTime));
+            stats.setShortestTime(TimeUnit.NANOSECONDS.toMillis(shortestTime));
+            stats.setLongestTime(TimeUnit.NANOSECONDS.toMillis(longestTime));
+            stats.setP50Nanos(getPercentile(counts, histogramCount, 0.5, longestTime));
+            stats.setP99Nanos(getPercentile(counts, histogramCount, 0.99, longestTime));
+            stats.setP999Nanos(getPercentile(counts, histogramCount, 0.999, longestTime));
+            return stats;
+        }
+
+        private static long getPercentile(long[] counts, long total, double percentile, long max) {
+            long rank = (long)Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(getBucketUpperBound(i), max);
+            }
+            return max;
+        }
+    }
+}
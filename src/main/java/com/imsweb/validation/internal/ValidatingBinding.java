@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import groovy.lang.Binding;
+import groovy.lang.MissingPropertyException;
+
+/**
+ * A <code>ValidatingBinding</code> is a Groovy binding made of two layers:
+ * <ul>
+ * <li>a base layer, shared by all the bindings of a given processor and never modified (it contains the contexts)</li>
+ * <li>an overlay, specific to this binding, that contains the variables of the current validatable and any variable set by the conditions and rules</li>
+ * </ul>
+ * Variables are looked up in the overlay first, then in the base layer; variables are always written to the overlay. This allows a binding to be reset and re-used
+ * for another validatable at a cost proportional to the size of its scope instead of the number of contexts.
+ * <p/>
+ * A binding is not thread-safe, it should be used by a single thread at a time.
+ */
+public class ValidatingBinding extends Binding {
+
+    // the shared base layer (never modified)
+    private Map<String, Object> _base;
+
+    // the variables specific to this binding
+    private Map<String, Object> _overlay;
+
+    // whether or not the binding is currently used to validate a validatable
+    private boolean _inUse;
+
+    /**
+     * Constructor.
+     */
+    public ValidatingBinding() {
+        _base = Collections.emptyMap();
+        _overlay = new HashMap<>();
+    }
+
+    /**
+     * Resets this binding so it can be used for a new validatable.
+     * @param base the base layer to use, cannot be null; the map won't be modified by this binding
+     * @param variables the variables to add to the overlay, cannot be null
+     */
+    public void reset(Map<String, Object> base, Map<String, Object> variables) {
+        _base = base;
+        _overlay.clear();
+        _overlay.putAll(variables);
+    }
+
+    /**
+     * Clears the overlay of this binding (so it doesn't keep a reference on the last validated data).
+     */
+    public void clear() {
+        _overlay.clear();
+    }
+
+    public boolean isInUse() {
+        return _inUse;
+    }
+
+    public void setInUse(boolean inUse) {
+        _inUse = inUse;
+    }
+
+    @Override
+    public Object getVariable(String name) {
+        Object result = _overlay.get(name);
+        if (result != null || _overlay.containsKey(name))
+            return result;
+        result = _base.get(name);
+        if (result != null || _base.containsKey(name))
+            return result;
+        throw new MissingPropertyException(name, getClass());
+    }
+
+    @Override
+    public void setVariable(String name, Object value) {
+        _overlay.put(name, value);
+    }
+
+    @Override
+    public boolean hasVariable(String name) {
+        return _overlay.containsKey(name) || _base.containsKey(name);
+    }
+
+    /**
+     * Returns a copy of the variables of this binding (both layers); unlike the default binding, modifying the returned map doesn't modify the binding.
+     * @return the variables of this binding
+     */
+    @Override
+    public Map getVariables() {
+        Map<String, Object> variables = new LinkedHashMap<>(_base);
+        variables.putAll(_overlay);
+        return variables;
+    }
+}
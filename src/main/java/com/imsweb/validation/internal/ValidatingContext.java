@@ -3,22 +3,65 @@
  */
 package com.imsweb.validation.internal;
 
+import java.util.ArrayDeque;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.imsweb.validation.entities.Rule;
+import com.imsweb.validation.entities.RuleFailure;
 
 /**
  * This class is used as a context when processing a validatable. Note that it has noting to do with user-defined contexts that are made avaialable to the rules...
  * <br/><br/>
  * By overridding the conditionFailed() and atLeastOneDependencyFailed() methods, the conditions and dependencies mechanism can be customized to allow more complect features
  * (for example, to allow cross-validator conditions)...
+ * <br/><br/>
+ * If those methods are not overridden, the processors track the failures using the indexes of the rules and conditions (bitsets) and don't call them; the failures are converted
+ * to IDs only when they are requested through getFailedRuleIds() and getFailedConditionIds(). They also evaluate a condition only if a rule needs it (so a condition that is not
+ * needed won't be reported as failed); if those methods are overridden, all the conditions are evaluated since there is no way to know which ones are needed.
+ * <br/><br/>
+ * If an intra-record pool is provided (and the failures are tracked by index), the children of a given level are validated concurrently on that pool; sibling validatables
+ * are independent since they only see the failures of their common parents. Each child is validated with its own copy of this context (an instance of this base class);
+ * the failures of the copies are merged back into this context once all the children have been validated.
+ * <br/><br/>
+ * The validation can also be stopped early, after a given number of failures (see setMaxFailures()) or after the first failure of some severities (see setStopOnSeverities());
+ * the remaining rules and children are not processed anymore once the validation is stopped. This is useful when the caller only needs to know whether a validatable is valid.
+ * <br/><br/>
+ * Finally, time budgets can be provided for each rule and for the entire validatable (see setRuleTimeBudget() and setRecordTimeBudget()); a rule running for longer than
+ * its budget is interrupted and reported as a timeout failure. If the budget of the validatable is exceeded, the validation is stopped.
  */
 public class ValidatingContext {
 
+    // whether or not a given context class keeps the default conditionFailed() and atLeastOneDependencyFailed() methods
+    private static final ClassValue<Boolean> _USES_DEFAULT_CHECKS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("conditionFailed", String[].class, String.class).getDeclaringClass() == ValidatingContext.class
+                        && type.getMethod("atLeastOneDependencyFailed", String[].class, Set.class).getDeclaringClass() == ValidatingContext.class;
+            }
+            catch (NoSuchMethodException e) {
+                return Boolean.FALSE;
+            }
+        }
+    };
+
+    // empty failures, never modified
+    private static final BitSet _NO_FAILURES = new BitSet();
+
     /**
      * Rule IDs to dynamically ignore (if both a collection of rule to execute and ignore are provided, the execute takes precedence).
      */
@@ -44,12 +87,65 @@ public class ValidatingContext {
      */
     protected Map<String, Set<String>> _failedConditionIds;
 
+    // whether or not the failures can be tracked by index only
+    private boolean _indexedFailures;
+
+    // rule failures tracked by index, keyed by validatable path; they haven't been converted to IDs yet
+    private Map<String, IndexedFailures> _pendingFailedRuleIds;
+
+    // condition failures tracked by index, keyed by validatable path; they haven't been converted to IDs yet
+    private Map<String, IndexedFailures> _pendingFailedConditionIds;
+
+    // rule failures (by index) of the validatable levels currently being processed, each one including the failures of its parents
+    private Deque<BitSet> _inheritedRuleFailures;
+
+    // condition failures (by index) of the validatable levels currently being processed, each one including the failures of its parents
+    private Deque<BitSet> _inheritedConditionFailures;
+
+    // pool used to validate the children of a level concurrently, null if they should be validated sequentially
+    private ForkJoinPool _intraRecordPool;
+
+    // maximum number of failures to report, null if there is no maximum
+    private Integer _maxFailures;
+
+    // severities stopping the validation as soon as a failure of one of them is reported, null if the severities don't stop the validation
+    private Collection<Integer> _stopOnSeverities;
+
+    // number of failures reported so far (shared with the copies of this context)
+    private AtomicInteger _numFailures;
+
+    // whether or not the validation is stopped (shared with the copies of this context)
+    private AtomicBoolean _stopped;
+
+    // number of executed rules (shared with the copies of this context), null if the executed rules are not counted
+    private AtomicInteger _numExecutedRules;
+
+    // time budget of each rule, in milliseconds, null if the rules don't have any budget
+    private Long _ruleTimeBudget;
+
+    // time budget of the validatable, in milliseconds, null if the validatable doesn't have any budget
+    private Long _recordTimeBudget;
+
+    // the time (see System.nanoTime()) at which the validation of the validatable must end, 0 if not started yet (shared with the copies of this context)
+    private AtomicLong _recordDeadline;
+
+    // whether or not this validation is left out of the statistics and metrics of the engine
+    private boolean _statsExcluded;
+
     /**
      * Constructor.
      */
     public ValidatingContext() {
         _failedRuleIds = new HashMap<>();
         _failedConditionIds = new HashMap<>();
+        _indexedFailures = _USES_DEFAULT_CHECKS.get(getClass());
+        _pendingFailedRuleIds = new LinkedHashMap<>();
+        _pendingFailedConditionIds = new LinkedHashMap<>();
+        _inheritedRuleFailures = new ArrayDeque<>();
+        _inheritedConditionFailures = new ArrayDeque<>();
+        _numFailures = new AtomicInteger();
+        _stopped = new AtomicBoolean();
+        _recordDeadline = new AtomicLong();
     }
 
     public Collection<String> getToIgnore() {
@@ -76,20 +172,287 @@ public class ValidatingContext {
         _toForce = toForce;
     }
 
+    public ForkJoinPool getIntraRecordPool() {
+        return _intraRecordPool;
+    }
+
+    /**
+     * Sets the pool to use to validate the children of a level concurrently; this is useful when a single validatable is very large (for example a patient set with
+     * many lines). The pool is ignored if the failures can't be tracked by index (see usesIndexedFailures()).
+     * @param intraRecordPool pool to use, null to validate the children sequentially (the default)
+     */
+    public void setIntraRecordPool(ForkJoinPool intraRecordPool) {
+        _intraRecordPool = intraRecordPool;
+    }
+
+    public Integer getMaxFailures() {
+        return _maxFailures;
+    }
+
+    /**
+     * Sets the maximum number of failures to report; the validation stops as soon as that number of failures is reached.
+     * @param maxFailures maximum number of failures (must be positive), null to report all the failures (the default)
+     */
+    public void setMaxFailures(Integer maxFailures) {
+        if (maxFailures != null && maxFailures < 1)
+            throw new RuntimeException("Maximum number of failures must be positive!");
+        _maxFailures = maxFailures;
+    }
+
+    public Collection<Integer> getStopOnSeverities() {
+        return _stopOnSeverities;
+    }
+
+    /**
+     * Sets the severities that stop the validation; the validation stops as soon as a failure for a rule having one of those severities is reported.
+     * @param stopOnSeverities severities stopping the validation, null if the severities shouldn't stop the validation (the default)
+     */
+    public void setStopOnSeverities(Collection<Integer> stopOnSeverities) {
+        _stopOnSeverities = stopOnSeverities;
+    }
+
+    public Long getRuleTimeBudget() {
+        return _ruleTimeBudget;
+    }
+
+    /**
+     * Sets the time budget of each rule; a rule running for longer than its budget is reported as a timeout failure (it's also interrupted if the rule
+     * interruption is enabled, see ValidationEngine.enableRuleInterruption()).
+     * @param ruleTimeBudget time budget in milliseconds (must be positive), null if the rules don't have any budget (the default)
+     */
+    public void setRuleTimeBudget(Long ruleTimeBudget) {
+        if (ruleTimeBudget != null && ruleTimeBudget < 1)
+            throw new RuntimeException("Time budget must be positive!");
+        _ruleTimeBudget = ruleTimeBudget;
+    }
+
+    public Long getRecordTimeBudget() {
+        return _recordTimeBudget;
+    }
+
+    /**
+     * Sets the time budget of the validatable (starting when its first rule runs); once it's exceeded, the running rule is reported as a timeout failure (and
+     * interrupted if the rule interruption is enabled), and the validation is stopped.
+     * @param recordTimeBudget time budget in milliseconds (must be positive), null if the validatable doesn't have any budget (the default)
+     */
+    public void setRecordTimeBudget(Long recordTimeBudget) {
+        if (recordTimeBudget != null && recordTimeBudget < 1)
+            throw new RuntimeException("Time budget must be positive!");
+        _recordTimeBudget = recordTimeBudget;
+    }
+
+    public boolean isStatsExcluded() {
+        return _statsExcluded;
+    }
+
+    /**
+     * Sets whether or not this validation is left out of the statistics (see ValidationEngine.getStats()) and of the metrics of the engine; this is used for the
+     * validations that don't come from the application (like the warm-up of the engine).
+     * @param statsExcluded true to leave this validation out of the statistics
+     */
+    public void setStatsExcluded(boolean statsExcluded) {
+        _statsExcluded = statsExcluded;
+    }
+
+    /**
+     * Returns the time budget of the next rule to run, taking into account the remaining budget of the validatable; stops the validation if that budget is exceeded.
+     * @return the time budget in nanoseconds, -1 if the rule doesn't have any budget, 0 if the budget of the validatable is exceeded
+     */
+    public long getNextRuleTimeBudget() {
+        long budget = _ruleTimeBudget == null ? -1 : TimeUnit.MILLISECONDS.toNanos(_ruleTimeBudget);
+        if (_recordTimeBudget != null) {
+            long now = System.nanoTime();
+            _recordDeadline.compareAndSet(0, now + TimeUnit.MILLISECONDS.toNanos(_recordTimeBudget));
+            long remaining = _recordDeadline.get() - now;
+            if (remaining <= 0) {
+                _stopped.set(true);
+                return 0;
+            }
+            if (budget == -1 || remaining < budget)
+                budget = remaining;
+        }
+        return budget;
+    }
+
+    /**
+     * Keeps track of a reported failure, stopping the validation if needed.
+     * @param failure reported failure
+     */
+    public void failureReported(RuleFailure failure) {
+        int numFailures = _numFailures.incrementAndGet();
+        if (_maxFailures != null && numFailures >= _maxFailures)
+            _stopped.set(true);
+        else if (_stopOnSeverities != null && failure.getRule() != null && _stopOnSeverities.contains(failure.getRule().getSeverity()))
+            _stopped.set(true);
+        else if (failure.isTimedOut() && _recordTimeBudget != null && _recordDeadline.get() - System.nanoTime() <= 0)
+            _stopped.set(true);
+    }
+
+    /**
+     * Returns true if the validation is stopped (no rule or child should be processed anymore), false otherwise.
+     * @return true if the validation is stopped
+     */
+    public boolean isStopped() {
+        return _stopped.get();
+    }
+
+    /**
+     * Starts counting the executed rules (see getNumExecutedRules()); the rules are not counted by default.
+     */
+    public void countExecutedRules() {
+        if (_numExecutedRules == null)
+            _numExecutedRules = new AtomicInteger();
+    }
+
+    /**
+     * Keeps track of an executed rule, if the executed rules are counted.
+     */
+    public void ruleExecuted() {
+        if (_numExecutedRules != null)
+            _numExecutedRules.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of executed rules.
+     * @return the number of executed rules, -1 if the executed rules are not counted
+     */
+    public int getNumExecutedRules() {
+        return _numExecutedRules == null ? -1 : _numExecutedRules.get();
+    }
+
     public Map<String, Set<String>> getFailedRuleIds() {
+        convertPendingFailures(_pendingFailedRuleIds, _failedRuleIds);
         return _failedRuleIds;
     }
 
     public Map<String, Set<String>> getFailedConditionIds() {
+        convertPendingFailures(_pendingFailedConditionIds, _failedConditionIds);
         return _failedConditionIds;
     }
 
     /**
-     * Resets the rule and condition failures. This method should only be used for testing purposes.
+     * Returns true if the processors can track the failures by index only, false if they need to track them by ID and call the
+     * conditionFailed() and atLeastOneDependencyFailed() methods (which is the case if those methods are overridden).
+     * @return true if the failures can be tracked by index only
+     */
+    public boolean usesIndexedFailures() {
+        return _indexedFailures;
+    }
+
+    /**
+     * Registers the rule failures (by index) of a given validatable path; the bitset can still be modified after this call, until the validation returns.
+     * @param validatablePath validatable path
+     * @param failures rule failures, by index
+     * @param ruleIds rule IDs, by index
+     */
+    public void addFailedRuleIndexes(String validatablePath, BitSet failures, String[] ruleIds) {
+        _failedRuleIds.remove(validatablePath);
+        _pendingFailedRuleIds.put(validatablePath, new IndexedFailures(failures, ruleIds));
+    }
+
+    /**
+     * Registers the condition failures (by index) of a given validatable path; the bitset can still be modified after this call, until the validation returns.
+     * @param validatablePath validatable path
+     * @param failures condition failures, by index
+     * @param conditionIds condition IDs, by index
+     */
+    public void addFailedConditionIndexes(String validatablePath, BitSet failures, String[] conditionIds) {
+        _failedConditionIds.remove(validatablePath);
+        _pendingFailedConditionIds.put(validatablePath, new IndexedFailures(failures, conditionIds));
+    }
+
+    /**
+     * Returns the rule failures (by index) of the parent levels of the currently processed validatable; the returned bitset must not be modified.
+     * @return the rule failures of the parent levels
+     */
+    public BitSet getInheritedRuleFailures() {
+        BitSet failures = _inheritedRuleFailures.peek();
+        return failures == null ? _NO_FAILURES : failures;
+    }
+
+    /**
+     * Returns the condition failures (by index) of the parent levels of the currently processed validatable; the returned bitset must not be modified.
+     * @return the condition failures of the parent levels
+     */
+    public BitSet getInheritedConditionFailures() {
+        BitSet failures = _inheritedConditionFailures.peek();
+        return failures == null ? _NO_FAILURES : failures;
+    }
+
+    /**
+     * Makes the provided failures available to the children of the currently processed validatable; must be followed by a call to popInheritedFailures().
+     * @param ruleFailures rule failures (by index) of the current level, including the ones of its parents; the bitset must not be modified anymore
+     * @param conditionFailures condition failures (by index) of the current level, including the ones of its parents; the bitset must not be modified anymore
+     */
+    public void pushInheritedFailures(BitSet ruleFailures, BitSet conditionFailures) {
+        _inheritedRuleFailures.push(ruleFailures);
+        _inheritedConditionFailures.push(conditionFailures);
+    }
+
+    /**
+     * Removes the failures added by the last call to pushInheritedFailures().
+     */
+    public void popInheritedFailures() {
+        _inheritedRuleFailures.pop();
+        _inheritedConditionFailures.pop();
+    }
+
+    /**
+     * Returns a copy of this context that can be used to validate a child of the currently processed validatable on another thread; it has the same settings
+     * and inherits the same failures, but tracks its own failures (see mergeFailures()).
+     * @return a copy of this context
+     */
+    public ValidatingContext copyForChild() {
+        ValidatingContext copy = new ValidatingContext();
+        copy._toIgnore = _toIgnore;
+        copy._toExecute = _toExecute;
+        copy._toForce = _toForce;
+        copy._intraRecordPool = _intraRecordPool;
+        copy._maxFailures = _maxFailures;
+        copy._stopOnSeverities = _stopOnSeverities;
+        copy._numFailures = _numFailures;
+        copy._stopped = _stopped;
+        copy._numExecutedRules = _numExecutedRules;
+        copy._ruleTimeBudget = _ruleTimeBudget;
+        copy._recordTimeBudget = _recordTimeBudget;
+        copy._recordDeadline = _recordDeadline;
+        copy._statsExcluded = _statsExcluded;
+        copy.pushInheritedFailures(getInheritedRuleFailures(), getInheritedConditionFailures());
+        return copy;
+    }
+
+    /**
+     * Adds the failures tracked by the provided context (returned by copyForChild()) to this context.
+     * @param other context to merge
+     */
+    public void mergeFailures(ValidatingContext other) {
+        for (String path : other._failedRuleIds.keySet())
+            _pendingFailedRuleIds.remove(path);
+        _failedRuleIds.putAll(other._failedRuleIds);
+        for (String path : other._pendingFailedRuleIds.keySet())
+            _failedRuleIds.remove(path);
+        _pendingFailedRuleIds.putAll(other._pendingFailedRuleIds);
+        for (String path : other._failedConditionIds.keySet())
+            _pendingFailedConditionIds.remove(path);
+        _failedConditionIds.putAll(other._failedConditionIds);
+        for (String path : other._pendingFailedConditionIds.keySet())
+            _failedConditionIds.remove(path);
+        _pendingFailedConditionIds.putAll(other._pendingFailedConditionIds);
+    }
+
+    /**
+     * Resets the rule and condition failures. This method should only be used for testing purposes, or to re-use the context for another validatable.
      */
     public void resetFailures() {
         _failedRuleIds.clear();
         _failedConditionIds.clear();
+        _pendingFailedRuleIds.clear();
+        _pendingFailedConditionIds.clear();
+        _numFailures.set(0);
+        _stopped.set(false);
+        _recordDeadline.set(0);
+        if (_numExecutedRules != null)
+            _numExecutedRules.set(0);
     }
 
     /**
@@ -108,7 +471,7 @@ public class ValidatingContext {
             if (buf.length() > 0)
                 buf.append(".");
             buf.append(validatablePath);
-            Set<String> failedIds = _failedConditionIds.get(buf.toString());
+            Set<String> failedIds = getFailedConditionIds().get(buf.toString());
             if (failedIds != null && failedIds.contains(conditionId))
                 return true;
         }
@@ -131,10 +494,40 @@ public class ValidatingContext {
             if (buf.length() > 0)
                 buf.append(".");
             buf.append(validatablePath);
-            Set<String> failedIds = _failedRuleIds.get(buf.toString());
+            Set<String> failedIds = getFailedRuleIds().get(buf.toString());
             if (failedIds != null && !Collections.disjoint(failedIds, dependencies))
                 return true;
         }
         return false;
     }
+
+    private static void convertPendingFailures(Map<String, IndexedFailures> pending, Map<String, Set<String>> failures) {
+        if (pending.isEmpty())
+            return;
+
+        for (Entry<String, IndexedFailures> entry : pending.entrySet()) {
+            BitSet indexes = entry.getValue()._failures;
+            String[] ids = entry.getValue()._ids;
+            Set<String> failedIds = new HashSet<>();
+            for (int i = indexes.nextSetBit(0); i >= 0; i = indexes.nextSetBit(i + 1))
+                failedIds.add(ids[i]);
+            failures.put(entry.getKey(), failedIds);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Failures tracked by index, along with the IDs corresponding to the indexes.
+     */
+    private static final class IndexedFailures {
+
+        private final BitSet _failures;
+
+        private final String[] _ids;
+
+        private IndexedFailures(BitSet failures, String[] ids) {
+            _failures = failures;
+            _ids = ids;
+        }
+    }
 }
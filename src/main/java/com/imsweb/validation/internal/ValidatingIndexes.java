@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class assigns dense indexes to the rules and conditions of the engine, so the processors can track the failures using bitsets instead of sets of IDs.
+ * <br/><br/>
+ * The indexes are based on the IDs (two conditions with the same ID in different validators share the same index), since that's how the rules reference
+ * their dependencies and conditions.
+ */
+public class ValidatingIndexes {
+
+    // rule indexes, keyed by rule ID
+    private Map<String, Integer> _ruleIndexes;
+
+    // rule IDs, by index
+    private String[] _ruleIds;
+
+    // condition indexes, keyed by condition ID
+    private Map<String, Integer> _conditionIndexes;
+
+    // condition IDs, by index
+    private String[] _conditionIds;
+
+    /**
+     * Constructor.
+     * @param rules all the rules of the engine
+     * @param conditions all the conditions of the engine
+     */
+    public ValidatingIndexes(Collection<ExecutableRule> rules, Collection<ExecutableCondition> conditions) {
+        _ruleIndexes = new HashMap<>();
+        List<String> ruleIds = new ArrayList<>();
+        for (ExecutableRule rule : rules) {
+            if (!_ruleIndexes.containsKey(rule.getId())) {
+                _ruleIndexes.put(rule.getId(), ruleIds.size());
+                ruleIds.add(rule.getId());
+            }
+        }
+        _ruleIds = ruleIds.toArray(new String[ruleIds.size()]);
+
+        _conditionIndexes = new HashMap<>();
+        List<String> conditionIds = new ArrayList<>();
+        for (ExecutableCondition condition : conditions) {
+            if (!_conditionIndexes.containsKey(condition.getId())) {
+                _conditionIndexes.put(condition.getId(), conditionIds.size());
+                conditionIds.add(condition.getId());
+            }
+        }
+        _conditionIds = conditionIds.toArray(new String[conditionIds.size()]);
+    }
+
+    public String[] getRuleIds() {
+        return _ruleIds;
+    }
+
+    public String[] getConditionIds() {
+        return _conditionIds;
+    }
+
+    /**
+     * Returns the index of the provided rule ID.
+     * @param ruleId rule ID
+     * @return the index of the rule, -1 if the rule is unknown
+     */
+    public int getRuleIndex(String ruleId) {
+        Integer index = _ruleIndexes.get(ruleId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the index of the provided condition ID.
+     * @param conditionId condition ID
+     * @return the index of the condition, -1 if the condition is unknown
+     */
+    public int getConditionIndex(String conditionId) {
+        Integer index = _conditionIndexes.get(conditionId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the indexes of the dependencies of the provided rule; unknown dependencies are ignored since they can't fail.
+     * @param rule rule
+     * @return the dependency indexes, null if the rule has no (known) dependency
+     */
+    public BitSet getDependencyMask(ExecutableRule rule) {
+        if (rule.getDependencies() == null || rule.getDependencies().isEmpty())
+            return null;
+
+        BitSet mask = new BitSet(_ruleIds.length);
+        for (String dependency : rule.getDependencies()) {
+            int index = getRuleIndex(dependency);
+            if (index != -1)
+                mask.set(index);
+        }
+
+        return mask.isEmpty() ? null : mask;
+    }
+
+    /**
+     * Returns the indexes of the conditions of the provided rule; unknown conditions never fail, so if the conditions are OR'ed and one of them is unknown,
+     * the rule can't be skipped because of its conditions.
+     * @param rule rule
+     * @return the condition indexes, null if the rule can't be skipped because of its conditions
+     */
+    public BitSet getConditionMask(ExecutableRule rule) {
+        if (rule.getConditions() == null || rule.getConditions().isEmpty())
+            return null;
+
+        BitSet mask = new BitSet(_conditionIds.length);
+        for (String condition : rule.getConditions()) {
+            int index = getConditionIndex(condition);
+            if (index != -1)
+                mask.set(index);
+            else if (!Boolean.TRUE.equals(rule.getUseAndForConditions()))
+                return null;
+        }
+
+        return mask.isEmpty() ? null : mask;
+    }
+}
@@ -4,11 +4,11 @@
 package com.imsweb.validation.internal;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -18,11 +18,11 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang3.StringUtils;
 
-import groovy.lang.Binding;
-
 import com.imsweb.validation.ConstructionException;
+import com.imsweb.validation.FailureSink;
 import com.imsweb.validation.ValidationEngine;
 import com.imsweb.validation.ValidationEngineStats;
+import com.imsweb.validation.ValidationEngineStatsSnapshot;
 import com.imsweb.validation.ValidationException;
 import com.imsweb.validation.ValidatorContextFunctions;
 import com.imsweb.validation.ValidatorServices;
@@ -38,9 +38,6 @@ import com.imsweb.validation.entities.Validatable;
 @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
 public class ValidatingProcessor implements Processor {
 
-    // map of stats object to keep track of how long each polisher takes to run
-    private static final Map<String, ValidationEngineStats> _STATS = new HashMap<>();
-
     // the current java path for this validating processor
     private String _currentJavaPath;
 
@@ -53,14 +50,41 @@ public class ValidatingProcessor implements Processor {
     // cached sorted rules (need to use a thread-safe collection) - rules are rarely written but are read all the time...
     private List<ExecutableRule> _rules = new CopyOnWriteArrayList<>();
 
+    // indexes of the conditions (see ValidatingIndexes), in the same order as the conditions (-1 for a condition without index)
+    private int[] _conditionIndexes = new int[0];
+
+    // indexes of the conditions of this processor (see ValidatingIndexes)
+    private BitSet _localConditions = new BitSet();
+
+    // rules of the children processors (at any depth) referencing each condition, in the same order as the conditions
+    private List<List<ExecutableRule>> _descendantRules = new ArrayList<>();
+
+    // indexes of the rules (see ValidatingIndexes), in the same order as the rules
+    private int[] _ruleIndexes = new int[0];
+
+    // indexes of the dependencies of each rule, in the same order as the rules (null if a rule has no dependency)
+    private BitSet[] _dependencyMasks = new BitSet[0];
+
+    // indexes of the conditions of each rule, in the same order as the rules (null if a rule can't be skipped because of its conditions)
+    private BitSet[] _conditionMasks = new BitSet[0];
+
+    // rule IDs, by index
+    private String[] _ruleIds = new String[0];
+
+    // condition IDs, by index
+    private String[] _conditionIds = new String[0];
+
     // cached base context; depends directly on the rulesets (there is no CopyOnWriteHashMap, boooh)
     private Map<String, Object> _contexts = new ConcurrentHashMap<>();
 
-    // cached compiled forced rules (#294)
-    private ValidatingProcessorLRUCache<String, ExecutableRule> _cachedForcedRules = new ValidatingProcessorLRUCache<>(10);
+    // cached base layer of the bindings (functions and contexts); re-computed when the contexts change, never modified once computed
+    private volatile Map<String, Object> _bindingBase;
+
+    // bindings re-used by the threads running this processor (a binding can't be shared between threads)
+    private ThreadLocal<ValidatingBinding> _bindings = ThreadLocal.withInitial(ValidatingBinding::new);
 
-    // whether or not stats should be recorded
-    private boolean _recordStats = false;
+    // whether or not stats should be recorded (applies to all the processors, the engine state can be re-built at any time)
+    private static volatile boolean _RECORD_STATS = false;
 
     /**
      * Constructor.
@@ -74,176 +98,403 @@ public class ValidatingProcessor implements Processor {
 
     @Override
     @SuppressWarnings("unchecked")
-    public Collection<RuleFailure> process(Validatable validatable, ValidatingContext vContext) throws ValidationException {
-        Collection<RuleFailure> results = new ArrayList<>();
+    public void process(Validatable validatable, ValidatingContext vContext, FailureSink sink) throws ValidationException {
 
         // a unique rule that needs to be executed (useful for unit tests and editor validation)
         ExecutableRule toForce = null;
         if (vContext.getToForce() != null && _currentJavaPath.equals(vContext.getToForce().getJavaPath())) {
             try {
-                // have to use the expression in the key in case it was changed between two calls...
-                String key = vContext.getToForce().getId() + "|" + vContext.getToForce().getExpression().hashCode();
-                toForce = _cachedForcedRules.get(key);
-                if (toForce == null) {
-                    toForce = new ExecutableRule(vContext.getToForce());
-                    _cachedForcedRules.put(key, toForce);
-                }
+                // the compiled forced rules are cached (#294), the expression is part of the key in case it was changed between two calls...
+                toForce = ForcedRulesCache.get(vContext.getToForce());
             }
             catch (ConstructionException e) {
                 throw new ValidationException(e);
             }
         }
 
-        // pre-execute all conditions for this processor (not applicable if a unique rule is forced)
-        Binding binding = null;
-        if (vContext.getToForce() == null) {
-            binding = buildBinding(validatable);
-            Set<String> currentConditionFailures = new HashSet<>();
-            vContext.getFailedConditionIds().put(validatable.getCurrentLevel(), currentConditionFailures);
-            for (ExecutableCondition condition : _conditions)
-                if (!condition.check(validatable, binding))
-                    currentConditionFailures.add(condition.getId());
-        }
-
-        // if this processor contains no rule, and there isn't one to be forced, we are done!
-        if (!_rules.isEmpty() || toForce != null) {
-
-            // setup the binding if it wasn't setup already for running conditions
-            if (binding == null)
-                binding = buildBinding(validatable);
-
-            // pre-split the java-path since the split results is going to be used a lot
-            String[] validatablePaths = StringUtils.split(validatable.getCurrentLevel(), '.');
-
-            // we are going to keep track of the failures in this collection (also made available on the execution context)
-            Set<String> currentRuleFailures = new HashSet<>();
-            vContext.getFailedRuleIds().put(validatable.getCurrentLevel(), currentRuleFailures);
+        // failures are tracked by index; they are also tracked by ID if the context needs them to check the conditions and dependencies (or if a rule is forced
+        // since that rule doesn't necessarily have an index); the "all" bitsets include the failures of the parent levels, they are copied only if they are modified
+        String level = validatable.getCurrentLevel();
+        boolean trackIds = !vContext.usesIndexedFailures() || toForce != null;
+        BitSet allRuleFailures = vContext.getInheritedRuleFailures();
+        BitSet allConditionFailures = vContext.getInheritedConditionFailures();
+
+        // conditions are not applicable if a unique rule is forced; otherwise they are evaluated lazily, the first time a rule needs them, unless the context
+        // checks the conditions itself (in which case they are all pre-executed since there is no way to know which ones it needs)
+        ValidatingBinding binding = null;
+        BitSet currentConditionFailures = null;
+        Set<String> currentConditionFailureIds = null;
+        BitSet pendingConditions = null;
+        try {
+            if (vContext.getToForce() == null) {
+                currentConditionFailures = new BitSet();
+                if (trackIds) {
+                    currentConditionFailureIds = new HashSet<>();
+                    vContext.getFailedConditionIds().put(level, currentConditionFailureIds);
+                }
+                else
+                    vContext.addFailedConditionIndexes(level, currentConditionFailures, _conditionIds);
+                if (!_conditions.isEmpty()) {
+                    binding = buildBinding(validatable);
+                    allConditionFailures = (BitSet)allConditionFailures.clone();
+                    if (trackIds)
+                        evaluateConditions(null, validatable, binding, currentConditionFailures, allConditionFailures, currentConditionFailureIds, vContext);
+                    else
+                        pendingConditions = (BitSet)_localConditions.clone();
+                }
+            }
 
-            // and finally, go through each rule and execute it if it needs to be executed (ignore all rules if one is to forced, but it's not for this level)
-            for (ExecutableRule rule : toForce != null ? Collections.singleton(toForce) : vContext.getToForce() != null ? Collections.<ExecutableRule>emptySet() : _rules) {
-                String id = rule.getId();
+            // if this processor contains no rule, and there isn't one to be forced, we are done!
+            if (!_rules.isEmpty() || toForce != null) {
+
+                // setup the binding if it wasn't setup already for the conditions
+                if (binding == null)
+                    binding = buildBinding(validatable);
+
+                // pre-split the java-path since the split results is going to be used a lot (only needed if the context checks the conditions and dependencies)
+                String[] validatablePaths = trackIds ? StringUtils.split(level, '.') : null;
+
+                // we are going to keep track of the failures in this collection (also made available on the execution context)
+                BitSet currentRuleFailures = new BitSet();
+                Set<String> currentRuleFailureIds = trackIds ? new HashSet<>() : null;
+                if (trackIds)
+                    vContext.getFailedRuleIds().put(level, currentRuleFailureIds);
+                else
+                    vContext.addFailedRuleIndexes(level, currentRuleFailures, _ruleIds);
+                allRuleFailures = (BitSet)allRuleFailures.clone();
+
+                // and finally, go through each rule and execute it if it needs to be executed (ignore all rules if one is to forced, but it's not for this level)
+                List<ExecutableRule> rules = toForce != null ? Collections.singletonList(toForce) : vContext.getToForce() != null ? Collections.emptyList() : _rules;
+                for (int i = 0; i < rules.size() && !vContext.isStopped(); i++) {
+                    ExecutableRule rule = rules.get(i);
+                    String id = rule.getId();
+                    int index = toForce != null ? -1 : _ruleIndexes[i];
+
+                    // if the caller forces a rule to run, then it cannot be ignored
+                    if (toForce == null) {
+
+                        // *** rule could be ignored because the caller requested to dynamically ignore it, or because it has been flagged as being ignored
+                        if (isIgnored(rule, vContext)) {
+                            ruleFailed(index, id, currentRuleFailures, allRuleFailures, currentRuleFailureIds); // do not run any rules depending on a rule that is being ignored
+                            continue;
+                        }
 
-                // if the caller forces a rule to run, then it cannot be ignored
-                if (toForce == null) {
+                        // *** rule could be ignored because one of its parent rule failed (or was ignored)
+                        if (trackIds ? vContext.atLeastOneDependencyFailed(validatablePaths, rule.getDependencies()) : _dependencyMasks[i] != null && allRuleFailures.intersects(_dependencyMasks[i])) {
+                            ruleFailed(index, id, currentRuleFailures, allRuleFailures, currentRuleFailureIds); // do not run any rules depending on a rule that failed because of its dependencies
+                            continue;
+                        }
 
-                    // *** rule could be ignored because the caller requested to dynamically ignore it
-                    if ((vContext.getToExecute() != null && !vContext.getToExecute().contains(id)) || (vContext.getToIgnore() != null && vContext.getToIgnore().contains(id))) {
-                        currentRuleFailures.add(id); // do not run any rules depending on a rule that is being ignored
-                        continue;
+                        // *** rule could be ignored because of a failing condition (the conditions of this level are evaluated only once, when first needed)
+                        BitSet conditionMask = _conditionMasks[i];
+                        if (pendingConditions != null && conditionMask != null && conditionMask.intersects(pendingConditions)) {
+                            BitSet toEvaluate = (BitSet)conditionMask.clone();
+                            toEvaluate.and(pendingConditions);
+                            evaluateConditions(toEvaluate, validatable, binding, currentConditionFailures, allConditionFailures, null, vContext);
+                            pendingConditions.andNot(toEvaluate);
+                        }
+                        if (trackIds ? conditionFailed(vContext, validatablePaths, rule) : conditionFailed(allConditionFailures, conditionMask, rule.getUseAndForConditions())) {
+                            ruleFailed(index, id, currentRuleFailures, allRuleFailures, currentRuleFailureIds); // do not run any rules depending on a rule that failed because of its condition
+                            continue;
+                        }
                     }
 
-                    // *** rule could be ignored because it has been flagged as being ignored
-                    if (rule.getIgnored() != null && rule.getIgnored()) {
-                        currentRuleFailures.add(id); // do not run any rules depending on a rule that is being ignored
-                        continue;
-                    }
+                    // the rule is interrupted if it runs for longer than its time budget; if the budget of the validatable is already exceeded, the validation stops
+                    long budget = vContext.getNextRuleTimeBudget();
+                    if (budget == 0)
+                        break;
+                    boolean timedOut = false;
+
+                    // the properties of the failure are a view of the properties of the validatable, they are copied only if the sink retains the failure
+                    RuleFailure failure = null;
+                    try {
+                        boolean recordStats = _RECORD_STATS && id != null && !id.trim().isEmpty() && !vContext.isStatsExcluded();
+                        long startTime = recordStats ? System.nanoTime() : 0L;
+                        boolean success;
+                        RuleWatchdog.Watch watch = budget > 0 ? RuleWatchdog.watch(budget) : null;
+                        Object event = EngineEvents.ruleStarted();
+                        try {
+                            success = rule.validate(validatable, binding);
+                        }
+                        finally {
+                            timedOut = watch != null && watch.stop();
+                            if (event != null)
+                                EngineEvents.ruleDone(event, id, _currentJavaPath);
+                            vContext.ruleExecuted();
+                        }
 
-                    // *** rule could be ignored because of a failing condition
-                    if (rule.getConditions() != null && !rule.getConditions().isEmpty()) {
-                        boolean conditionFailed = !rule.getUseAndForConditions();
-                        for (String conditionId : rule.getConditions()) {
-                            boolean thisConditionFailed = vContext.conditionFailed(validatablePaths, conditionId);
-                            if (rule.getUseAndForConditions()) { // if conditions are AND'ed, and this one fails, we are done
-                                if (thisConditionFailed) {
-                                    conditionFailed = true;
-                                    break;
-                                }
-                            }
-                            else { // if conditions are OR'ed, and this one passed, we are done
-                                if (!thisConditionFailed) {
-                                    conditionFailed = false;
-                                    break;
-                                }
+                        // keep track of the stats...
+                        if (recordStats)
+                            StatsRecorder.ruleExecuted(id, System.nanoTime() - startTime, !success || timedOut);
+
+                        // a rule that timed out is reported as such, even if it managed to return
+                        if (timedOut)
+                            failure = createTimeoutFailure(rule, validatable);
+
+                        // if failure, need to keep track of it since other depending rules might not have to run
+                        else if (!success) {
+                            // the message of the rule is pre-parsed (unless the services fill in the messages themselves), an overridden one needs to be parsed
+                            ValidatorServices services = ValidatorServices.getInstance();
+                            String overriddenMsg = (String)binding.getVariable(ValidationEngine.VALIDATOR_ERROR_MESSAGE);
+                            if (overriddenMsg != null || !MessageTemplate.isDefaultFilling(services))
+                                failure = new RuleFailure(rule.getRule(), services.fillInMessage(overriddenMsg != null ? overriddenMsg : rule.getMessage(), validatable), validatable, null, false);
+                            else {
+                                failure = new RuleFailure(rule.getRule(), null, validatable, null, false);
+                                rule.getMessageTemplate().fill(failure, validatable);
                             }
-                        }
-                        if (conditionFailed) {
-                            currentRuleFailures.add(id); // do not run any rules depending on a rule that failed because of its condition
-                            continue;
+                            // extra error messages are used by translated edits only...
+                            failure.setExtraErrorMessages((List<String>)binding.getVariable(ValidationEngine.VALIDATOR_EXTRA_ERROR_MESSAGES));
+                            // information messages are used by translated edits only...
+                            failure.setInformationMessages((List<String>)binding.getVariable(ValidationEngine.VALIDATOR_INFORMATION_MESSAGES));
+                            // keep track of the original result
+                            failure.setOriginalResult((Boolean)binding.getVariable(ValidationEngine.VALIDATOR_ORIGINAL_RESULT));
+                            ruleFailed(index, id, currentRuleFailures, allRuleFailures, currentRuleFailureIds);
                         }
                     }
-
-                    // *** rule could be ignored because one of its parent rule failed (or was ignored)
-                    if (vContext.atLeastOneDependencyFailed(validatablePaths, rule.getDependencies())) {
-                        currentRuleFailures.add(id); // do not run any rules depending on a rule that failed because of its dependencies
-                        continue;
+                    catch (ValidationException e) {
+                        failure = timedOut ? createTimeoutFailure(rule, validatable) : createExceptionFailure(rule, validatable, e.getCause(), vContext);
+                    }
+                    catch (Exception e) {
+                        failure = timedOut ? createTimeoutFailure(rule, validatable) : createExceptionFailure(rule, validatable, null, vContext);
                     }
-                }
 
-                try {
-                    long startTime = System.currentTimeMillis();
-                    boolean success = rule.validate(validatable, binding);
-                    long endTime = System.currentTimeMillis();
-
-                    // keep track of the stats...
-                    if (_recordStats && id != null && !id.trim().isEmpty()) {
-                        synchronized (_STATS) {
-                            if (_STATS.containsKey(id))
-                                ValidationEngineStats.reportRun(_STATS.get(id), endTime - startTime);
-                            else
-                                _STATS.put(id, new ValidationEngineStats(id, endTime - startTime));
+                    // the failure is reported outside of the rule execution, so an exception thrown by the sink is not reported as a failure of the rule
+                    try {
+                        if (failure != null) {
+                            vContext.failureReported(failure);
+                            sink.failureReported(failure);
                         }
                     }
-
-                    // if failure, need to keep track of it since other depending rules might not have to run
-                    if (!success) {
-                        String msg = rule.getMessage();
-                        String overriddenMsg = (String)binding.getVariable(ValidationEngine.VALIDATOR_ERROR_MESSAGE);
-                        if (overriddenMsg != null)
-                            msg = overriddenMsg;
-
-                        RuleFailure failure = new RuleFailure(rule.getRule(), ValidatorServices.getInstance().fillInMessage(msg, validatable), validatable);
-                        // extra error messages are used by translated edits only...
-                        failure.setExtraErrorMessages((List<String>)binding.getVariable(ValidationEngine.VALIDATOR_EXTRA_ERROR_MESSAGES));
-                        // information messages are used by translated edits only...
-                        failure.setInformationMessages((List<String>)binding.getVariable(ValidationEngine.VALIDATOR_INFORMATION_MESSAGES));
-                        // keep track of the original result
-                        failure.setOriginalResult((Boolean)binding.getVariable(ValidationEngine.VALIDATOR_ORIGINAL_RESULT));
-                        results.add(failure);
-                        currentRuleFailures.add(id);
+                    finally {
+                        validatable.clearPropertiesWithError();
                     }
                 }
-                catch (ValidationException e) {
-                    results.add(new RuleFailure(rule.getRule(), ValidationEngine.EXCEPTION_MSG, validatable, e.getCause()));
-                }
-                catch (Exception e) {
-                    results.add(new RuleFailure(rule.getRule(), ValidationEngine.EXCEPTION_MSG, validatable, null));
-                }
-                finally {
-                    validatable.clearPropertiesWithError();
+            }
+
+            // the children won't be able to evaluate the conditions of this level, so the ones they might need have to be evaluated now
+            if (pendingConditions != null && !pendingConditions.isEmpty() && !vContext.isStopped()) {
+                BitSet toEvaluate = new BitSet();
+                for (int j = 0; j < _conditions.size(); j++)
+                    if (_conditionIndexes[j] != -1 && pendingConditions.get(_conditionIndexes[j]) && !toEvaluate.get(_conditionIndexes[j]))
+                        for (ExecutableRule rule : _descendantRules.get(j))
+                            if (!isIgnored(rule, vContext))
+                                toEvaluate.set(_conditionIndexes[j]);
+                if (!toEvaluate.isEmpty())
+                    evaluateConditions(toEvaluate, validatable, binding, currentConditionFailures, allConditionFailures, null, vContext);
+            }
+        }
+        finally {
+            if (binding != null)
+                releaseBinding(binding);
+        }
+
+        // process the children validators (they need to know about the failures of this level), unless the validation was stopped
+        if (!_processors.isEmpty() && !vContext.isStopped()) {
+            vContext.pushInheritedFailures(allRuleFailures, allConditionFailures);
+            try {
+                for (IterativeProcessor p : _processors)
+                    if (!vContext.isStopped())
+                        p.process(validatable, vContext, sink);
+            }
+            finally {
+                vContext.popInheritedFailures();
+            }
+        }
+    }
+
+    /**
+     * Keeps track of a rule failure.
+     * @param index index of the rule, -1 if it doesn't have any
+     * @param id ID of the rule
+     * @param currentFailures failures of the current level
+     * @param allFailures failures of the current level and its parents
+     * @param currentFailureIds IDs of the failures of the current level, null if they are not tracked
+     */
+    private static void ruleFailed(int index, String id, BitSet currentFailures, BitSet allFailures, Set<String> currentFailureIds) {
+        if (index != -1) {
+            currentFailures.set(index);
+            allFailures.set(index);
+        }
+        if (currentFailureIds != null)
+            currentFailureIds.add(id);
+    }
+
+    /**
+     * Creates a timeout failure for the provided rule.
+     * @param rule rule that exceeded its time budget
+     * @param validatable current validatable
+     * @return the failure
+     */
+    private static RuleFailure createTimeoutFailure(ExecutableRule rule, Validatable validatable) {
+        RuleFailure failure = new RuleFailure(rule.getRule(), ValidationEngine.TIMEOUT_MSG, validatable, null, false);
+        failure.setTimedOut(true);
+        if (rule.getId() != null)
+            RuleWatchdog.timeoutReported(rule.getId());
+        return failure;
+    }
+
+    /**
+     * Creates an exception failure for the provided rule.
+     * @param rule rule that threw an exception
+     * @param validatable current validatable
+     * @param cause exception thrown by the rule, can be null
+     * @param vContext validating context
+     * @return the failure
+     */
+    private static RuleFailure createExceptionFailure(ExecutableRule rule, Validatable validatable, Throwable cause, ValidatingContext vContext) {
+        if (!vContext.isStatsExcluded())
+            EngineMetrics.exceptionReported();
+        return new RuleFailure(rule.getRule(), ValidationEngine.EXCEPTION_MSG, validatable, cause, false);
+    }
+
+    /**
+     * Returns true if the provided rule is ignored, either dynamically (through the validating context) or because it is flagged as being ignored.
+     * @param rule rule
+     * @param vContext validating context
+     * @return true if the rule is ignored, false otherwise
+     */
+    private static boolean isIgnored(ExecutableRule rule, ValidatingContext vContext) {
+        if ((vContext.getToExecute() != null && !vContext.getToExecute().contains(rule.getId())) || (vContext.getToIgnore() != null && vContext.getToIgnore().contains(rule.getId())))
+            return true;
+        return rule.getIgnored() != null && rule.getIgnored();
+    }
+
+    /**
+     * Evaluates the requested conditions of this processor, keeping track of the failing ones.
+     * @param toEvaluate indexes of the conditions to evaluate, null to evaluate all of them
+     * @param validatable current validatable
+     * @param binding current binding
+     * @param currentFailures failures of the current level
+     * @param allFailures failures of the current level and its parents
+     * @param currentFailureIds IDs of the failures of the current level, null if they are not tracked
+     * @param vContext validating context
+     * @throws ValidationException if a condition can't be evaluated
+     */
+    private void evaluateConditions(BitSet toEvaluate, Validatable validatable, ValidatingBinding binding, BitSet currentFailures, BitSet allFailures, Set<String> currentFailureIds,
+            ValidatingContext vContext) throws ValidationException {
+        for (int j = 0; j < _conditions.size(); j++) {
+            int index = _conditionIndexes[j];
+            if (toEvaluate != null && (index == -1 || !toEvaluate.get(index)))
+                continue;
+            ExecutableCondition condition = _conditions.get(j);
+            boolean recordStats = _RECORD_STATS && condition.getId() != null && !vContext.isStatsExcluded();
+            long startTime = recordStats ? System.nanoTime() : 0L;
+            boolean success = condition.check(validatable, binding);
+            if (recordStats)
+                StatsRecorder.conditionExecuted(condition.getId(), System.nanoTime() - startTime);
+            if (!success) {
+                if (index != -1) {
+                    currentFailures.set(index);
+                    allFailures.set(index);
                 }
+                if (currentFailureIds != null)
+                    currentFailureIds.add(condition.getId());
             }
         }
+    }
 
-        // process the children validators
-        for (IterativeProcessor p : _processors)
-            results.addAll(p.process(validatable, vContext));
+    /**
+     * Returns true if the conditions of the provided rule failed, using the failed condition indexes.
+     * @param failures failed conditions of the current level and its parents
+     * @param mask conditions of the rule, null if the rule can't be skipped because of its conditions
+     * @param useAnd whether the conditions are AND'ed or OR'ed
+     * @return true if the conditions failed, false otherwise
+     */
+    private static boolean conditionFailed(BitSet failures, BitSet mask, Boolean useAnd) {
+        if (mask == null)
+            return false;
+
+        // if conditions are AND'ed, a single failing one is enough
+        if (useAnd)
+            return failures.intersects(mask);
+
+        // if conditions are OR'ed, they all need to fail
+        for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1))
+            if (!failures.get(i))
+                return false;
+        return true;
+    }
 
-        return results;
+    /**
+     * Returns true if the conditions of the provided rule failed, using the validating context.
+     * @param vContext validating context
+     * @param validatablePaths the currently processed validatable path, already split
+     * @param rule rule
+     * @return true if the conditions failed, false otherwise
+     */
+    private static boolean conditionFailed(ValidatingContext vContext, String[] validatablePaths, ExecutableRule rule) {
+        if (rule.getConditions() == null || rule.getConditions().isEmpty())
+            return false;
+
+        boolean conditionFailed = !rule.getUseAndForConditions();
+        for (String conditionId : rule.getConditions()) {
+            boolean thisConditionFailed = vContext.conditionFailed(validatablePaths, conditionId);
+            if (rule.getUseAndForConditions()) { // if conditions are AND'ed, and this one fails, we are done
+                if (thisConditionFailed) {
+                    conditionFailed = true;
+                    break;
+                }
+            }
+            else { // if conditions are OR'ed, and this one passed, we are done
+                if (!thisConditionFailed) {
+                    conditionFailed = false;
+                    break;
+                }
+            }
+        }
+        return conditionFailed;
     }
 
     /**
-     * Helper to build the binding that will be used for the conditions and rules
+     * Helper to build the binding that will be used for the conditions and rules; the binding must be released once it's not used anymore.
+     * <p/>
+     * The static context is shared by all the bindings of this processor, only the dynamic context (the scope of the validatable) is copied into the binding.
      * @param validatable current validatable
      * @return the Groovy binding
      */
-    protected Binding buildBinding(Validatable validatable) {
-
-        // it is important to use the default constructor to avoid side effect on the _context variable...
-        Binding binding = new Binding();
+    protected ValidatingBinding buildBinding(Validatable validatable) {
 
-        // add static context
-        binding.setVariable(ValidationEngine.VALIDATOR_FUNCTIONS_KEY, ValidatorContextFunctions.getInstance());
-        binding.setVariable(ValidationEngine.VALIDATOR_CONTEXT_KEY, _contexts); // new way of referencing contexts (using a prefix)
-        for (Entry<String, Object> entry : _contexts.entrySet()) // old way of using the contexts (without a prefix); for now we still support it...
-            binding.setVariable(entry.getKey(), entry.getValue());
+        // re-use the binding of the current thread, unless it's already in use (which can only happen if a rule validates another validatable)
+        ValidatingBinding binding = _bindings.get();
+        if (binding.isInUse())
+            binding = new ValidatingBinding();
+        binding.setInUse(true);
 
-        // add dynamic context
-        for (Entry<String, Object> entry : validatable.getScope().entrySet())
-            binding.setVariable(entry.getKey(), entry.getValue());
+        // static context is the base layer, dynamic context is the overlay
+        binding.reset(getBindingBase(), validatable.getScope());
 
         return binding;
     }
 
+    /**
+     * Releases a binding returned by the buildBinding() method.
+     * @param binding binding to release
+     */
+    protected void releaseBinding(ValidatingBinding binding) {
+        binding.clear();
+        binding.setInUse(false);
+    }
+
+    /**
+     * Returns the base layer of the bindings (functions and contexts), computing it if needed.
+     * @return the base layer of the bindings
+     */
+    private Map<String, Object> getBindingBase() {
+        Map<String, Object> base = _bindingBase;
+
+        // the context functions can be re-initialized at any time, in which case the base needs to be re-computed
+        if (base == null || base.get(ValidationEngine.VALIDATOR_FUNCTIONS_KEY) != ValidatorContextFunctions.getInstance()) {
+            base = new HashMap<>();
+            base.put(ValidationEngine.VALIDATOR_FUNCTIONS_KEY, ValidatorContextFunctions.getInstance());
+            base.put(ValidationEngine.VALIDATOR_CONTEXT_KEY, _contexts); // new way of referencing contexts (using a prefix)
+            base.putAll(_contexts); // old way of using the contexts (without a prefix); for now we still support it...
+            base = Collections.unmodifiableMap(base);
+            _bindingBase = base;
+        }
+
+        return base;
+    }
+
     /**
      * Returns the java path for this processor.
      * @return the java path for this processor
@@ -252,6 +503,14 @@ public class ValidatingProcessor implements Processor {
         return _currentJavaPath;
     }
 
+    /**
+     * Returns the number of rules run by this processor.
+     * @return the number of rules
+     */
+    public int getNumRules() {
+        return _rules.size();
+    }
+
     /**
      * Adds an iterative processor to *this* processor; can be call only during initialization process.
      * <p/>
@@ -265,19 +524,67 @@ public class ValidatingProcessor implements Processor {
     /**
      * Sets the rules on this processor.
      * @param rules
+     * @param indexes indexes of the rules and conditions of the engine
      */
-    public synchronized void setRules(List<ExecutableRule> rules) {
+    public synchronized void setRules(List<ExecutableRule> rules, ValidatingIndexes indexes) {
+        int[] ruleIndexes = new int[rules.size()];
+        BitSet[] dependencyMasks = new BitSet[rules.size()];
+        BitSet[] conditionMasks = new BitSet[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            ruleIndexes[i] = indexes.getRuleIndex(rules.get(i).getId());
+            dependencyMasks[i] = indexes.getDependencyMask(rules.get(i));
+            conditionMasks[i] = indexes.getConditionMask(rules.get(i));
+        }
+
         _rules.clear();
         _rules.addAll(rules);
+        _ruleIndexes = ruleIndexes;
+        _dependencyMasks = dependencyMasks;
+        _conditionMasks = conditionMasks;
+        _ruleIds = indexes.getRuleIds();
     }
 
     /**
      * Sets the conditions on this processor.
      * @param conditions
+     * @param indexes indexes of the rules and conditions of the engine
      */
-    public synchronized void setConditions(Collection<ExecutableCondition> conditions) {
+    public synchronized void setConditions(Collection<ExecutableCondition> conditions, ValidatingIndexes indexes) {
+        int[] conditionIndexes = new int[conditions.size()];
+        BitSet localConditions = new BitSet();
+        List<List<ExecutableRule>> descendantRules = new ArrayList<>();
+        int i = 0;
+        for (ExecutableCondition condition : conditions) {
+            conditionIndexes[i] = indexes.getConditionIndex(condition.getId());
+            if (conditionIndexes[i] != -1)
+                localConditions.set(conditionIndexes[i]);
+            descendantRules.add(Collections.emptyList());
+            i++;
+        }
+
         _conditions.clear();
         _conditions.addAll(conditions);
+        _conditionIndexes = conditionIndexes;
+        _localConditions = localConditions;
+        _descendantRules = descendantRules;
+        _conditionIds = indexes.getConditionIds();
+    }
+
+    /**
+     * Sets the rules of the children processors (at any depth); they are used to determine which conditions of this processor need to be evaluated
+     * before processing the children. Must be called after the conditions are set.
+     * @param rules the rules of the children processors
+     */
+    public synchronized void setDescendantRules(Collection<ExecutableRule> rules) {
+        List<List<ExecutableRule>> descendantRules = new ArrayList<>();
+        for (ExecutableCondition condition : _conditions) {
+            List<ExecutableRule> list = new ArrayList<>();
+            for (ExecutableRule rule : rules)
+                if (rule.getConditions() != null && rule.getConditions().contains(condition.getId()))
+                    list.add(rule);
+            descendantRules.add(list.isEmpty() ? Collections.emptyList() : list);
+        }
+        _descendantRules = descendantRules;
     }
 
     /**
@@ -289,6 +596,7 @@ public class ValidatingProcessor implements Processor {
         if (allContexts != null)
             for (Entry<Long, Map<String, Object>> entry : allContexts.entrySet())
                 _contexts.putAll(entry.getValue());
+        _bindingBase = null;
     }
 
     /**
@@ -297,11 +605,17 @@ public class ValidatingProcessor implements Processor {
      * Created on Jun 29, 2011 by depryf
      * @param on if true the stats will be on, otherwise they will be off
      */
-    public void setStatisticsOn(boolean on) {
-        synchronized (_STATS) {
-            _STATS.clear();
-        }
-        _recordStats = on;
+    public static void setStatisticsOn(boolean on) {
+        StatsRecorder.reset();
+        _RECORD_STATS = on;
+    }
+
+    /**
+     * Returns whether or not the statistics are on.
+     * @return true if the statistics are on, false otherwise
+     */
+    public static boolean isStatisticsOn() {
+        return _RECORD_STATS;
     }
 
     /**
@@ -326,9 +640,16 @@ public class ValidatingProcessor implements Processor {
      * @return a collection of <code>StatsDTO</code> object, possibly empty
      */
     public static Map<String, ValidationEngineStats> getStats() {
-        synchronized (_STATS) {
-            return Collections.unmodifiableMap(_STATS);
-        }
+        return StatsRecorder.snapshot(false).getRuleStats();
+    }
+
+    /**
+     * Returns a snapshot of the rule and condition statistics gathered so far.
+     * @param reset whether or not the statistics should be reset as part of the snapshot
+     * @return the snapshot, never null
+     */
+    public static ValidationEngineStatsSnapshot getStatsSnapshot(boolean reset) {
+        return StatsRecorder.snapshot(reset);
     }
 
     /**
@@ -337,9 +658,7 @@ public class ValidatingProcessor implements Processor {
      * Created on Jun 29, 2009 by depryf
      */
     public static void resetStats() {
-        synchronized (_STATS) {
-            _STATS.clear();
-        }
+        StatsRecorder.reset();
     }
 
     @Override
@@ -347,43 +666,4 @@ public class ValidatingProcessor implements Processor {
         return _currentJavaPath + " [" + (_rules == null ? "?" : _rules.size()) + " rule(s)]";
     }
 
-    /**
-     * Simple implementation of a LRU cache based on a LinkedHashMap.
-     * @param <A>
-     * @param <B>
-     */
-    private static class ValidatingProcessorLRUCache<A, B> extends LinkedHashMap<A, B> {
-
-        private static final long serialVersionUID = 4701170688038236784L;
-
-        private final int _maxEntries;
-
-        /**
-         * Constructor.
-         * @param maxEntries the maximum number of entries to keep in the cache
-         */
-        public ValidatingProcessorLRUCache(int maxEntries) {
-            super(maxEntries + 1, 1.0f, true);
-            _maxEntries = maxEntries;
-        }
-
-        /**
-         * Returns <tt>true</tt> if this <code>LruCache</code> has more entries than the maximum specified when it was
-         * created.
-         * <p/>
-         * <p>
-         * This method <em>does not</em> modify the underlying <code>Map</code>; it relies on the implementation of
-         * <code>LinkedHashMap</code> to do that, but that behavior is documented in the JavaDoc for
-         * <code>LinkedHashMap</code>.
-         * </p>
-         * @param eldest <code>Entry</code> in question; this implementation doesn't care what it is, since the implementation is only dependent on the size of the cache
-         * @return <tt>true</tt> if the oldest
-         * @see LinkedHashMap#removeEldestEntry(Entry)
-         */
-        @Override
-        protected boolean removeEldestEntry(Entry<A, B> eldest) {
-            return size() > _maxEntries;
-        }
-    }
-
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.imsweb.validation.ValidatorServices;
+import com.imsweb.validation.entities.SimpleMapValidatable;
+import com.imsweb.validation.entities.SimpleNaaccrLinesValidatable;
+import com.imsweb.validation.entities.Validatable;
+
+/**
+ * This class creates synthetic validatables used to warm up the engine (see ValidationEngine.warmUp()).
+ * <p/>
+ * A validatable is created for a root java-path; each of its levels has the properties used by the rules and conditions of that level (as returned by
+ * getRawProperties()), and a couple of children for each of its child java-paths. The values of the properties are taken from a small set of typical values
+ * (blank, numbers, dates, codes), and change with the variant, so the rules and conditions go through different branches from one variant to the next.
+ */
+public final class WarmUpDataGenerator {
+
+    /**
+     * Display ID of the synthetic validatables
+     */
+    public static final String DISPLAY_ID = "warm-up";
+
+    // the values given to the properties
+    private static final String[] _VALUES = {"", "0", "1", "2", "9", "99", "999", "2015", "20150115", "A", "C509"};
+
+    // number of children created for each child java-path
+    private static final int _NUM_CHILDREN = 2;
+
+    // java-path -> alias
+    private Map<String, String> _aliases;
+
+    // properties used by the rules and conditions, keyed by alias
+    private Map<String, Set<String>> _propertiesByAlias = new HashMap<>();
+
+    /**
+     * Constructor.
+     * @param rules rules to warm up
+     * @param conditions conditions to warm up
+     */
+    public WarmUpDataGenerator(Collection<ExecutableRule> rules, Collection<ExecutableCondition> conditions) {
+        _aliases = ValidatorServices.getInstance().getAllJavaPaths();
+        for (ExecutableRule rule : rules)
+            addProperties(rule.getRawProperties());
+        for (ExecutableCondition condition : conditions)
+            addProperties(condition.getRawProperties());
+    }
+
+    private void addProperties(Set<String> properties) {
+        if (properties == null)
+            return;
+        for (String property : properties) {
+            int idx = property.indexOf('.');
+            if (idx <= 0 || idx == property.length() - 1)
+                continue;
+            String name = property.substring(idx + 1);
+            int end = name.indexOf('.');
+            _propertiesByAlias.computeIfAbsent(property.substring(0, idx), k -> new HashSet<>()).add(end > 0 ? name.substring(0, end) : name);
+        }
+    }
+
+    /**
+     * Creates a synthetic validatable for the provided root java-path.
+     * @param rootJavaPath root java-path
+     * @param variant variant, the values of the properties depend on it
+     * @return the validatable
+     */
+    public Validatable create(String rootJavaPath, int variant) {
+
+        // the NAACCR lines have their own validatable, the lines are a list rather than a map
+        boolean untrimmed = SimpleNaaccrLinesValidatable.ROOT_PREFIX_UNTRIMMED.equals(rootJavaPath);
+        if (untrimmed || SimpleNaaccrLinesValidatable.ROOT_PREFIX.equals(rootJavaPath)) {
+            String alias = _aliases.get(rootJavaPath + (untrimmed ? ".untrimmedline" : ".line"));
+            List<Map<String, String>> lines = new ArrayList<>();
+            for (int i = 0; i < _NUM_CHILDREN; i++) {
+                Map<String, String> line = new HashMap<>();
+                for (String property : _propertiesByAlias.getOrDefault(alias, Collections.emptySet()))
+                    line.put(property, getValue(property, variant + i));
+                lines.add(line);
+            }
+            return new SimpleNaaccrLinesValidatable(lines, null, untrimmed);
+        }
+
+        // the map validatable uses the root java-path as alias, the real alias is added to the scope if it's different
+        Map<String, Object> entity = createEntity(rootJavaPath, variant);
+        String alias = _aliases.get(rootJavaPath);
+        Map<String, Object> context = alias == null || alias.equals(rootJavaPath) ? null : Collections.singletonMap(alias, entity);
+        return new SimpleMapValidatable(DISPLAY_ID, rootJavaPath, entity, context);
+    }
+
+    private Map<String, Object> createEntity(String javaPath, int variant) {
+        Map<String, Object> entity = new HashMap<>();
+        for (String property : _propertiesByAlias.getOrDefault(_aliases.get(javaPath), Collections.emptySet()))
+            entity.put(property, getValue(property, variant));
+        for (String path : _aliases.keySet()) {
+            if (path.startsWith(javaPath + ".") && path.indexOf('.', javaPath.length() + 1) == -1) {
+                List<Map<String, Object>> children = new ArrayList<>();
+                for (int i = 0; i < _NUM_CHILDREN; i++)
+                    children.add(createEntity(path, variant + i + 1));
+                entity.put(path.substring(javaPath.length() + 1), children);
+            }
+        }
+        return entity;
+    }
+
+    private static String getValue(String property, int variant) {
+        return _VALUES[Math.floorMod(property.hashCode() + variant, _VALUES.length)];
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal.callable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.imsweb.validation.ValidationException;
+import com.imsweb.validation.entities.RuleFailure;
+import com.imsweb.validation.entities.Validatable;
+import com.imsweb.validation.internal.EngineEvents;
+import com.imsweb.validation.internal.EngineMetrics;
+import com.imsweb.validation.internal.Processor;
+import com.imsweb.validation.internal.ValidatingContext;
+
+/**
+ * This class is used to multi-thread the validation of a batch of validatables; the range of validatables is recursively split in two halves until it is small
+ * enough to be validated sequentially, letting the fork-join pool balance the work between its threads.
+ */
+public class BatchValidatingTask extends RecursiveAction {
+
+    private static final long serialVersionUID = -2319486721066043817L;
+
+    /**
+     * Validatables to validate.
+     */
+    private List<? extends Validatable> _validatables;
+
+    /**
+     * Index of the first validatable to validate (inclusive).
+     */
+    private int _from;
+
+    /**
+     * Index of the last validatable to validate (exclusive).
+     */
+    private int _to;
+
+    /**
+     * Maximum number of validatables that are validated sequentially by a single task.
+     */
+    private int _threshold;
+
+    /**
+     * Root processors, keyed by root level.
+     */
+    private Map<String, ? extends Processor> _processors;
+
+    /**
+     * Rule IDs to ignore (can be null).
+     */
+    private Collection<String> _toIgnore;
+
+    /**
+     * Rule IDs to execute (can be null).
+     */
+    private Collection<String> _toExecute;
+
+    /**
+     * Results, one collection of failures per validatable, in the same order as the validatables.
+     */
+    private List<Collection<RuleFailure>> _results;
+
+    /**
+     * First exception that happened during the validation; once it's set, the remaining validatables are not validated anymore.
+     */
+    private AtomicReference<ValidationException> _exception;
+
+    /**
+     * Constructor.
+     * @param validatables validatables to validate
+     * @param from index of the first validatable to validate (inclusive)
+     * @param to index of the last validatable to validate (exclusive)
+     * @param threshold maximum number of validatables validated sequentially by a single task
+     * @param processors root processors, keyed by root level
+     * @param toIgnore rule IDs to ignore (can be null)
+     * @param toExecute rule IDs to execute (can be null)
+     * @param results results, must have the same size as the validatables
+     * @param exception holder for the first exception happening during the validation
+     */
+    public BatchValidatingTask(List<? extends Validatable> validatables, int from, int to, int threshold, Map<String, ? extends Processor> processors, Collection<String> toIgnore,
+            Collection<String> toExecute, List<Collection<RuleFailure>> results, AtomicReference<ValidationException> exception) {
+        _validatables = validatables;
+        _from = from;
+        _to = to;
+        _threshold = threshold;
+        _processors = processors;
+        _toIgnore = toIgnore;
+        _toExecute = toExecute;
+        _results = results;
+        _exception = exception;
+    }
+
+    @Override
+    protected void compute() {
+        if (_exception.get() != null)
+            return;
+
+        if (_to - _from > _threshold) {
+            int middle = (_from + _to) >>> 1;
+            invokeAll(new BatchValidatingTask(_validatables, _from, middle, _threshold, _processors, _toIgnore, _toExecute, _results, _exception),
+                    new BatchValidatingTask(_validatables, middle, _to, _threshold, _processors, _toIgnore, _toExecute, _results, _exception));
+            return;
+        }
+
+        // the validating context is re-used for all the validatables of this task, only its failures need to be reset between two validatables
+        ValidatingContext vContext = new ValidatingContext();
+        vContext.setToIgnore(_toIgnore);
+        vContext.setToExecute(_toExecute);
+        for (int i = _from; i < _to && _exception.get() == null; i++) {
+            Validatable validatable = _validatables.get(i);
+            Processor processor = _processors.get(validatable.getRootLevel());
+            try {
+                if (processor == null)
+                    _results.set(i, new HashSet<>());
+                else {
+                    Object event = EngineEvents.validationStarted();
+                    if (event != null)
+                        vContext.countExecutedRules();
+                    List<RuleFailure> failures = new ArrayList<>();
+                    processor.process(validatable, vContext, failure -> failures.add(failure.detach()));
+                    _results.set(i, failures);
+                    EngineMetrics.validationDone(failures.size());
+                    if (event != null)
+                        EngineEvents.validationDone(event, validatable.getRootLevel(), vContext.getNumExecutedRules(), failures.size());
+                }
+            }
+            catch (ValidationException e) {
+                _exception.compareAndSet(null, e);
+            }
+            vContext.resetFailures();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal.callable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.imsweb.validation.ValidationException;
+import com.imsweb.validation.entities.RuleFailure;
+import com.imsweb.validation.entities.Validatable;
+import com.imsweb.validation.internal.Processor;
+import com.imsweb.validation.internal.ValidatingContext;
+
+/**
+ * This class is used to multi-thread the validation of the children of a single validatable; the range of children is recursively split in two halves until it
+ * contains a single child, so each child (and its own children) can be validated by a different thread of the fork-join pool.
+ */
+public class ChildrenValidatingTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 6215402875562319811L;
+
+    /**
+     * Processor to run on each child.
+     */
+    private Processor _processor;
+
+    /**
+     * Children to validate.
+     */
+    private List<Validatable> _children;
+
+    /**
+     * Validating contexts, one per child, in the same order as the children.
+     */
+    private List<ValidatingContext> _contexts;
+
+    /**
+     * Index of the first child to validate (inclusive).
+     */
+    private int _from;
+
+    /**
+     * Index of the last child to validate (exclusive).
+     */
+    private int _to;
+
+    /**
+     * Results, one collection of failures per child, in the same order as the children.
+     */
+    private List<Collection<RuleFailure>> _results;
+
+    /**
+     * First exception that happened during the validation; once it's set (or once the validation is stopped), the remaining children are not validated anymore.
+     */
+    private AtomicReference<ValidationException> _exception;
+
+    /**
+     * Constructor.
+     * @param processor processor to run on each child
+     * @param children children to validate
+     * @param contexts validating contexts, one per child
+     * @param from index of the first child to validate (inclusive)
+     * @param to index of the last child to validate (exclusive)
+     * @param results results, must have the same size as the children
+     * @param exception holder for the first exception happening during the validation
+     */
+    public ChildrenValidatingTask(Processor processor, List<Validatable> children, List<ValidatingContext> contexts, int from, int to, List<Collection<RuleFailure>> results,
+            AtomicReference<ValidationException> exception) {
+        _processor = processor;
+        _children = children;
+        _contexts = contexts;
+        _from = from;
+        _to = to;
+        _results = results;
+        _exception = exception;
+    }
+
+    @Override
+    protected void compute() {
+        if (_exception.get() != null || _contexts.get(_from).isStopped())
+            return;
+
+        if (_to - _from > 1) {
+            int middle = (_from + _to) >>> 1;
+            invokeAll(new ChildrenValidatingTask(_processor, _children, _contexts, _from, middle, _results, _exception),
+                    new ChildrenValidatingTask(_processor, _children, _contexts, middle, _to, _results, _exception));
+            return;
+        }
+
+        try {
+            // the failures are retained until all the children are validated, so they need to be detached
+            List<RuleFailure> failures = new ArrayList<>();
+            _processor.process(_children.get(_from), _contexts.get(_from), failure -> failures.add(failure.detach()));
+            _results.set(_from, failures);
+        }
+        catch (ValidationException e) {
+            _exception.compareAndSet(null, e);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 
 import com.imsweb.validation.entities.Rule;
+import com.imsweb.validation.internal.BatchCompiler;
 import com.imsweb.validation.internal.ExecutableRule;
 
 /**
@@ -24,19 +25,35 @@ public class RuleCompilingCallable implements Callable<Void> {
      */
     private Map<Long, ExecutableRule> _rules;
 
+    /**
+     * Batch compiler holding the already compiled expressions (can be null).
+     */
+    private BatchCompiler _compiler;
+
     /**
      * Constructor.
      * @param rule rule to compile
      * @param rules collection of compiled rules
      */
     public RuleCompilingCallable(Rule rule, Map<Long, ExecutableRule> rules) {
+        this(rule, rules, null);
+    }
+
+    /**
+     * Constructor.
+     * @param rule rule to compile
+     * @param rules collection of compiled rules
+     * @param compiler batch compiler holding the already compiled expressions (can be null)
+     */
+    public RuleCompilingCallable(Rule rule, Map<Long, ExecutableRule> rules, BatchCompiler compiler) {
         _rule = rule;
         _rules = rules;
+        _compiler = compiler;
     }
 
     @Override
     public Void call() throws Exception {
-        _rules.put(_rule.getRuleId(), new ExecutableRule(_rule));
+        _rules.put(_rule.getRuleId(), new ExecutableRule(_rule, _compiler));
         return null;
     }
 }
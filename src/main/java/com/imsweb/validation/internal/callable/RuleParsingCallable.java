@@ -12,7 +12,6 @@ import java.util.concurrent.Callable;
 
 import org.apache.commons.lang3.StringUtils;
 
-import com.imsweb.validation.ConstructionException;
 import com.imsweb.validation.XmlValidatorFactory;
 import com.imsweb.validation.entities.Rule;
 import com.imsweb.validation.entities.RuleHistory;
@@ -101,12 +100,8 @@ public class RuleParsingCallable implements Callable<Void> {
 
         if (_xmlRule.getExpression() == null)
             throw new IOException("Unable to load '" + rule.getId() + "' in " + _validator.getId() + "; no expression provided");
-        try {
-            rule.setExpression(XmlValidatorFactory.reAlign(_xmlRule.getExpression()));
-        }
-        catch (ConstructionException e) {
-            throw new IOException("Unable to load '" + rule.getId() + "' in " + _validator.getId() + "; it contain an invalid expression", e);
-        }
+        // the expression is analyzed when the rule is compiled by the engine, that's also when an invalid expression is reported
+        rule.setUnanalyzedExpression(XmlValidatorFactory.reAlign(_xmlRule.getExpression()));
 
         if (_xmlRule.getMessage() == null)
             throw new IOException("Unable to load '" + rule.getId() + "' in " + _validator.getId() + "; no message provided");
@@ -4,10 +4,15 @@
 package com.imsweb.validation;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.control.CompilationFailedException;
 import org.junit.Assert;
 
 import com.imsweb.validation.entities.EditableValidator;
@@ -114,6 +119,17 @@ public final class TestingUtils {
         }
     }
 
+    /**
+     * Returns the expressions parsed (outside of their compilation) since the last call to clearParsedExpressions().
+     */
+    public static List<String> getParsedExpressions() {
+        return new ArrayList<>(TestingValidatorServices._PARSED_EXPRESSIONS);
+    }
+
+    public static void clearParsedExpressions() {
+        TestingValidatorServices._PARSED_EXPRESSIONS.clear();
+    }
+
     public static void assertEditFailures(Collection<RuleFailure> results) {
         if (results.isEmpty())
             Assert.fail("\nWas expecting at least one failure but got none");
@@ -141,6 +157,11 @@ public final class TestingUtils {
          */
         private static final Map<String, String> _EXTRA_ALIASES = new HashMap<>();
 
+        /**
+         * Expressions parsed by parseExpressionTree()
+         */
+        private static final List<String> _PARSED_EXPRESSIONS = new CopyOnWriteArrayList<>();
+
         static {
             _EXTRA_ALIASES.put("level1", "level1");
             _EXTRA_ALIASES.put("level1.level2", "level2");
@@ -173,6 +194,12 @@ public final class TestingUtils {
             return super.getJavaPathForAlias(alias);
         }
 
+        @Override
+        public ModuleNode parseExpressionTree(String id, String expression) throws CompilationFailedException {
+            _PARSED_EXPRESSIONS.add(expression);
+            return super.parseExpressionTree(id, expression);
+        }
+
         @Override
         public Map<String, String> getAllJavaPaths() {
             Map<String, String> result = new HashMap<>();
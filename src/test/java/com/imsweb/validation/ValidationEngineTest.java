@@ -3,7 +3,11 @@
  */
 package com.imsweb.validation;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -12,11 +16,24 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import groovy.lang.Binding;
+
 import com.imsweb.validation.entities.Condition;
 import com.imsweb.validation.entities.EditableCondition;
 import com.imsweb.validation.entities.EditableRule;
@@ -27,6 +44,12 @@ import com.imsweb.validation.entities.RuleHistory;
 import com.imsweb.validation.entities.SimpleMapValidatable;
 import com.imsweb.validation.entities.Validatable;
 import com.imsweb.validation.entities.Validator;
+import com.imsweb.validation.internal.BatchCompiler;
+import com.imsweb.validation.internal.CompiledScriptsCache;
+import com.imsweb.validation.internal.ExecutableRule;
+import com.imsweb.validation.internal.ExpressionAnalyzer;
+import com.imsweb.validation.internal.RuleOrderer;
+import com.imsweb.validation.internal.RuleWatchdog;
 import com.imsweb.validation.internal.ValidatingContext;
 
 @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
@@ -121,6 +144,23 @@ public class ValidationEngineTest {
             Assert.fail("Was expecting an exception but didn't get it");
         ValidationEngine.uninitialize();
         ValidationEngine.enableMultiThreadedCompilation(1);
+
+        // a failed re-initialization keeps the previous state of the engine
+        Validator v2 = XmlValidatorFactory.loadValidatorFromXml(Thread.currentThread().getContextClassLoader().getResource("fake-validator.xml"));
+        ValidationEngine.initialize(v2);
+        exception = false;
+        try {
+            ValidationEngine.initialize(Collections.singletonList(v));
+        }
+        catch (ConstructionException e) {
+            exception = true;
+        }
+        if (!exception)
+            Assert.fail("Was expecting an exception but didn't get it");
+        Assert.assertTrue(ValidationEngine.isInitialized());
+        Assert.assertSame(v2, ValidationEngine.getValidator("fake-validator"));
+        Assert.assertNotNull(ValidationEngine.getRule("fv-rule1"));
+        ValidationEngine.uninitialize();
     }
 
     @Test
@@ -305,7 +345,14 @@ public class ValidationEngineTest {
 
         // after running some edits, there should be some stats available...
         Assert.assertFalse(ValidationEngine.getStats().isEmpty());
-        ValidationEngine.resetStats();
+        ValidationEngineStats stats = ValidationEngine.getStats().get("fv-rule1");
+        Assert.assertTrue(stats.getNumRun() > 0);
+        Assert.assertTrue(stats.getTotalTimeNanos() > 0);
+        Assert.assertTrue(stats.getShortestTimeNanos() <= stats.getP50Nanos() && stats.getP50Nanos() <= stats.getP99Nanos());
+        Assert.assertTrue(stats.getP99Nanos() <= stats.getP999Nanos() && stats.getP999Nanos() <= stats.getLongestTimeNanos());
+        ValidationEngineStatsSnapshot snapshot = ValidationEngine.getStatsSnapshot(true);
+        Assert.assertEquals(stats.getNumRun(), snapshot.getRuleStats().get("fv-rule1").getNumRun());
+        Assert.assertTrue(snapshot.getConditionStats().containsKey("fv-condition"));
         Assert.assertTrue(ValidationEngine.getStats().isEmpty());
         ValidationEngine.turnStatisticsOff();
     }
@@ -348,7 +395,8 @@ public class ValidationEngineTest {
         results.addAll(ValidationEngine.validate(new SimpleMapValidatable("level1", root), vContext));
         results.addAll(ValidationEngine.validate(new SimpleMapValidatable("root", root), vContext));
         TestingUtils.assertEditFailure(results, "fvcr-rule");
-        Assert.assertTrue(vContext.getFailedConditionIds().get("level1").contains("fvcr-condition"));
+        // the default context only evaluates the conditions needed by the rules of the validated tree, and no rule uses the condition
+        Assert.assertFalse(vContext.getFailedConditionIds().get("level1").contains("fvcr-condition"));
         Assert.assertTrue(vContext.getFailedRuleIds().get("root.repeatedObjects[0]").contains("fvcr-rule"));
         vContext.resetFailures();
         results.clear();
@@ -401,6 +449,100 @@ public class ValidationEngineTest {
         ValidationEngine.deleteValidator("fvcr");
     }
 
+    @Test
+    public void testFailedIds() throws Exception {
+        TestingUtils.loadValidator("fake-validator");
+
+        Map<String, Object> level3 = new HashMap<>();
+        level3.put("prop", "1");
+        Map<String, Object> level2 = new HashMap<>();
+        level2.put("prop2", "IGNORED");
+        level2.put("level3", Collections.singletonList(level3));
+        Map<String, Object> entity = new HashMap<>();
+        entity.put("level2", Collections.singletonList(level2));
+        Validatable validatable = new SimpleMapValidatable("ID", "level1", entity);
+
+        // the default context tracks the failures by index, a context overriding the checks tracks them by ID; both should behave the same way
+        ValidatingContext indexedContext = new ValidatingContext();
+        ValidatingContext idContext = new ValidatingContext() {
+            @Override
+            public boolean atLeastOneDependencyFailed(String[] validatablePaths, Set<String> dependencies) {
+                return super.atLeastOneDependencyFailed(validatablePaths, dependencies);
+            }
+        };
+        Assert.assertTrue(indexedContext.usesIndexedFailures());
+        Assert.assertFalse(idContext.usesIndexedFailures());
+        for (ValidatingContext vContext : Arrays.asList(indexedContext, idContext)) {
+
+            // the condition fails, so rule2 is skipped, and so is rule3 since it depends on it
+            TestingUtils.assertNoEditFailure(ValidationEngine.validate(validatable, vContext), "fv-rule3");
+            Assert.assertEquals(Collections.singleton("fv-condition"), vContext.getFailedConditionIds().get("level1.level2[0]"));
+            Assert.assertEquals(Collections.emptySet(), vContext.getFailedRuleIds().get("level1"));
+            Assert.assertEquals(Collections.singleton("fv-rule2"), vContext.getFailedRuleIds().get("level1.level2[0]"));
+            Assert.assertEquals(Collections.singleton("fv-rule3"), vContext.getFailedRuleIds().get("level1.level2[0].level3[0]"));
+            vContext.resetFailures();
+            Assert.assertTrue(vContext.getFailedRuleIds().isEmpty());
+
+            // without the condition failing, only rule3 fails
+            level2.put("prop2", "NOT-IGNORED");
+            TestingUtils.assertEditFailure(ValidationEngine.validate(validatable, vContext), "fv-rule3");
+            Assert.assertEquals(Collections.emptySet(), vContext.getFailedConditionIds().get("level1.level2[0]"));
+            Assert.assertEquals(Collections.emptySet(), vContext.getFailedRuleIds().get("level1.level2[0]"));
+            Assert.assertEquals(Collections.singleton("fv-rule3"), vContext.getFailedRuleIds().get("level1.level2[0].level3[0]"));
+            vContext.resetFailures();
+            level2.put("prop2", "IGNORED");
+        }
+
+        // the default context evaluates a condition only if a rule needs it; if the rule using the condition isn't executed, the condition doesn't fail
+        indexedContext.setToExecute(Arrays.asList("fv-rule1", "fv-rule3"));
+        ValidationEngine.validate(validatable, indexedContext);
+        Assert.assertEquals(Collections.emptySet(), indexedContext.getFailedConditionIds().get("level1.level2[0]"));
+        indexedContext.resetFailures();
+        indexedContext.setToExecute(Arrays.asList("fv-rule1", "fv-rule2"));
+        ValidationEngine.validate(validatable, indexedContext);
+        Assert.assertEquals(Collections.singleton("fv-condition"), indexedContext.getFailedConditionIds().get("level1.level2[0]"));
+
+        TestingUtils.unloadValidator("fake-validator");
+    }
+
+    @Test
+    public void testStaticCompilation() throws Exception {
+        Validator v = TestingUtils.loadValidator("fake-validator");
+
+        Map<String, Object> entity = new HashMap<>();
+        entity.put("prop", "1");
+        Validatable validatable = new SimpleMapValidatable("ID", "level1", entity);
+
+        EditableRule rule = new EditableRule();
+        rule.setId("static-rule");
+        rule.setMessage("msg");
+        rule.setValidatorId("fake-validator");
+        rule.setJavaPath("level1");
+        rule.setExpression("return Functions.asInt(level1.prop) == 2");
+        rule.setUseStaticCompilation(Boolean.TRUE);
+        ValidationEngine.addRule(rule);
+        Assert.assertTrue(new ExecutableRule(v.getRule("static-rule")).isStaticallyCompiled());
+        TestingUtils.assertEditFailure(ValidationEngine.validate(validatable), "static-rule");
+        rule.setRuleId(v.getRule("static-rule").getRuleId());
+
+        // an expression that doesn't type-check falls back to dynamic compilation
+        rule.setExpression("int i = 'ABC'; return true");
+        ValidationEngine.updateRule(rule);
+        Assert.assertFalse(new ExecutableRule(v.getRule("static-rule")).isStaticallyCompiled());
+
+        // the flag of the validator is used when the rule doesn't define it
+        rule.setExpression("return Functions.asInt(level1.prop) == 1");
+        rule.setUseStaticCompilation(null);
+        ValidationEngine.updateRule(rule);
+        Assert.assertFalse(new ExecutableRule(v.getRule("static-rule")).isStaticallyCompiled());
+        v.setUseStaticCompilation(Boolean.TRUE);
+        Assert.assertTrue(new ExecutableRule(v.getRule("static-rule")).isStaticallyCompiled());
+        TestingUtils.assertNoEditFailure(ValidationEngine.validate(validatable), "static-rule");
+        v.setUseStaticCompilation(null);
+
+        TestingUtils.unloadValidator("fake-validator");
+    }
+
     @Test
     public void testValidationException() throws Exception {
         TestingUtils.loadValidator("fake-validator-exception");
@@ -1188,6 +1330,25 @@ public class ValidationEngineTest {
         r.setExpression("return false");
         TestingUtils.assertEditFailure(ValidationEngine.validate(new SimpleMapValidatable("ID", "level", new HashMap<String, Object>()), r), "tmp");
 
+        // the compiled forced rule is cached; the expression is part of the key, so a modified rule is compiled again
+        long hits = ValidationEngine.getForcedRulesCacheHits();
+        long misses = ValidationEngine.getForcedRulesCacheMisses();
+        TestingUtils.assertEditFailure(ValidationEngine.validate(new SimpleMapValidatable("ID", "level", new HashMap<String, Object>()), r), "tmp");
+        Assert.assertEquals(hits + 1, ValidationEngine.getForcedRulesCacheHits());
+        Assert.assertEquals(misses, ValidationEngine.getForcedRulesCacheMisses());
+        r.setExpression("return 1 == 2");
+        TestingUtils.assertEditFailure(ValidationEngine.validate(new SimpleMapValidatable("ID", "level", new HashMap<String, Object>()), r), "tmp");
+        Assert.assertEquals(misses + 1, ValidationEngine.getForcedRulesCacheMisses());
+
+        // the cache is bounded
+        ValidationEngine.setForcedRulesCacheCapacity(1, 1000);
+        Assert.assertEquals(1, ValidationEngine.getForcedRulesCacheSize());
+        ValidationEngine.setForcedRulesCacheCapacity(0, 1000);
+        Assert.assertEquals(0, ValidationEngine.getForcedRulesCacheSize());
+        TestingUtils.assertEditFailure(ValidationEngine.validate(new SimpleMapValidatable("ID", "level", new HashMap<String, Object>()), r), "tmp");
+        Assert.assertEquals(0, ValidationEngine.getForcedRulesCacheSize());
+        ValidationEngine.setForcedRulesCacheCapacity(500, 2000000L);
+
         // if the validatable uses a wrong path, that's fine
         TestingUtils.assertNoEditFailure(ValidationEngine.validate(new SimpleMapValidatable("ID", "whatever", new HashMap<String, Object>()), r), "tmp");
 
@@ -1202,6 +1363,848 @@ public class ValidationEngineTest {
         Assert.fail("Was expecting an exception, didn't get it...");
     }
 
+    @Test
+    public void testMultiThreadedValidation() throws Exception {
+        TestingUtils.loadValidator("fake-validator");
+
+        // every other record should fail the third rule; this allows to verify that the threads don't share their bindings
+        List<Validatable> validatables = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+            validatables.add(createLevel1Validatable("ID" + i, 1, i % 2 == 0 ? "1" : "0"));
+
+        // each thread validates all the records and checks the result of every one of them (the throughput is measured by the JMH benchmarks)
+        runValidations(validatables, 1, 2);
+        runValidations(validatables, Math.max(4, Runtime.getRuntime().availableProcessors()), 10);
+
+        TestingUtils.unloadValidator("fake-validator");
+    }
+
+    @Test
+    public void testModifyRuleWhileValidating() throws Exception {
+        TestingUtils.loadValidator("fake-validator");
+
+        Validatable validatable = createLevel1Validatable("ID", 1, "1");
+
+        // validate the same record over and over while the third rule gets updated; the validations should never be blocked, and they should always
+        // see a consistent version of the engine (the rule either uses the original expression or the new one, both of them failing)
+        ExecutorService service = Executors.newSingleThreadExecutor();
+        Future<Integer> future = service.submit(() -> {
+            int count = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                TestingUtils.assertEditFailure(ValidationEngine.validate(validatable), "fv-rule3");
+                count++;
+            }
+            return count;
+        });
+
+        Rule original = ValidationEngine.getRule("fv-rule3");
+        String originalExpression = original.getExpression();
+        EditableRule rule = new EditableRule(original);
+        for (int i = 0; i < 25; i++) {
+            rule.setExpression(i % 2 == 0 ? "return level3.prop != '1' && " + i + " > 0" : "return level3.prop != Context.FV_CONTEXT1");
+            ValidationEngine.updateRule(rule);
+        }
+
+        service.shutdownNow();
+        Assert.assertTrue(future.get() > 0);
+
+        // the published rules are never modified, the updates are applied to new rules
+        Assert.assertEquals(originalExpression, original.getExpression());
+        Assert.assertNotSame(original, ValidationEngine.getRule("fv-rule3"));
+        Assert.assertEquals(rule.getExpression(), ValidationEngine.getRule("fv-rule3").getExpression());
+        Assert.assertTrue(ValidationEngine.getRule("fv-rule3").getRawProperties().contains("level3.prop"));
+
+        TestingUtils.unloadValidator("fake-validator");
+    }
+
+    @Test
+    public void testValidateBatch() throws Exception {
+        TestingUtils.loadValidator("fake-validator");
+
+        // every other record should fail the third rule
+        List<Validatable> validatables = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+            validatables.add(createLevel1Validatable("ID" + i, 1, i % 2 == 0 ? "1" : "0"));
+
+        // the results should come back in the same order as the validatables, and they should be the same as the single-threaded ones
+        List<Collection<RuleFailure>> results = ValidationEngine.validateBatch(validatables, 4);
+        Assert.assertEquals(validatables.size(), results.size());
+        for (int i = 0; i < validatables.size(); i++) {
+            if (i % 2 == 0)
+                TestingUtils.assertEditFailure(results.get(i), "fv-rule3");
+            else
+                TestingUtils.assertNoEditFailure(results.get(i), "fv-rule3");
+            Assert.assertEquals(ValidationEngine.validate(validatables.get(i)).size(), results.get(i).size());
+        }
+
+        // same test with a provided pool and some ignored rules
+        ForkJoinPool pool = new ForkJoinPool(2);
+        results = ValidationEngine.validateBatch(validatables, Collections.singleton("fv-rule3"), null, pool);
+        pool.shutdown();
+        for (Collection<RuleFailure> failures : results)
+            TestingUtils.assertNoEditFailure(failures, "fv-rule3");
+
+        // an empty batch should return an empty result
+        Assert.assertTrue(ValidationEngine.validateBatch(Collections.<Validatable>emptyList()).isEmpty());
+
+        TestingUtils.unloadValidator("fake-validator");
+    }
+
+    @Test
+    public void testIntraRecordPool() throws Exception {
+        TestingUtils.loadValidator("fake-validator");
+
+        // a single large record; the condition fails for every third level2 object, the third rule fails for every other level3 object
+        Validatable validatable = createLevel1Validatable("ID", 100, i -> i % 3 == 0 ? "IGNORED" : "NOT-IGNORED", "1", "0", "1", "0");
+
+        ValidatingContext sequentialContext = new ValidatingContext();
+        List<RuleFailure> sequentialFailures = new ArrayList<>(ValidationEngine.validate(validatable, sequentialContext));
+        Assert.assertFalse(sequentialFailures.isEmpty());
+
+        // the failures (and their order) should be the same when the children are validated concurrently
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ValidatingContext parallelContext = new ValidatingContext();
+            parallelContext.setIntraRecordPool(pool);
+            List<RuleFailure> parallelFailures = new ArrayList<>(ValidationEngine.validate(validatable, parallelContext));
+            Assert.assertEquals(sequentialFailures.size(), parallelFailures.size());
+            for (int i = 0; i < sequentialFailures.size(); i++) {
+                Assert.assertEquals(sequentialFailures.get(i).getRule().getId(), parallelFailures.get(i).getRule().getId());
+                Assert.assertEquals(sequentialFailures.get(i).getProperties(), parallelFailures.get(i).getProperties());
+            }
+            Assert.assertEquals(sequentialContext.getFailedRuleIds(), parallelContext.getFailedRuleIds());
+            Assert.assertEquals(sequentialContext.getFailedConditionIds(), parallelContext.getFailedConditionIds());
+
+            // same thing when the record itself is validated on the pool (the current thread participates in the validation of the children)
+            parallelContext.resetFailures();
+            Assert.assertEquals(sequentialFailures.size(), pool.submit(() -> ValidationEngine.validate(validatable, parallelContext)).get().size());
+            Assert.assertEquals(sequentialContext.getFailedRuleIds(), parallelContext.getFailedRuleIds());
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        TestingUtils.unloadValidator("fake-validator");
+    }
+
+    @Test
+    public void testStopValidation() throws Exception {
+        TestingUtils.loadValidator("fake-validator");
+
+        // the third rule fails for every level3 object (and nothing else fails)
+        Validatable validatable = createLevel1Validatable("ID", 10, "1", "1");
+        List<RuleFailure> allFailures = new ArrayList<>(ValidationEngine.validate(validatable));
+        Assert.assertEquals(20, allFailures.size());
+
+        // capped validation returns the first failures only
+        ValidatingContext vContext = new ValidatingContext();
+        vContext.setMaxFailures(3);
+        List<RuleFailure> failures = new ArrayList<>(ValidationEngine.validate(validatable, vContext));
+        Assert.assertEquals(3, failures.size());
+        Assert.assertTrue(vContext.isStopped());
+        for (int i = 0; i < failures.size(); i++)
+            Assert.assertEquals(allFailures.get(i).getProperties(), failures.get(i).getProperties());
+
+        // the children that are not processed don't have any failure registered
+        Assert.assertNull(vContext.getFailedRuleIds().get("level1.level2[9].level3[0]"));
+
+        // same thing when the children are validated concurrently
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            vContext.resetFailures();
+            vContext.setIntraRecordPool(pool);
+            Assert.assertEquals(3, ValidationEngine.validate(validatable, vContext).size());
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        // fail-fast validation on a given severity
+        EditableRule rule = new EditableRule(ValidationEngine.getRule("fv-rule3"));
+        rule.setSeverity(2);
+        ValidationEngine.updateRule(rule);
+        vContext = new ValidatingContext();
+        vContext.setStopOnSeverities(Collections.singleton(1));
+        Assert.assertEquals(20, ValidationEngine.validate(validatable, vContext).size());
+        vContext = new ValidatingContext();
+        vContext.setStopOnSeverities(Collections.singleton(2));
+        Assert.assertEquals(1, ValidationEngine.validate(validatable, vContext).size());
+
+        TestingUtils.unloadValidator("fake-validator");
+    }
+
+    @Test
+    public void testTimeBudgets() throws Exception {
+        ValidationEngine.enableRuleInterruption();
+        try {
+            TestingUtils.loadValidator("fake-validator");
+            checkTimeBudgets();
+        }
+        finally {
+            ValidationEngine.disableRuleInterruption();
+        }
+
+        // a nested watch restores the watch of the outer rule when it stops
+        RuleWatchdog.Watch outer = RuleWatchdog.watch(TimeUnit.MINUTES.toNanos(1));
+        RuleWatchdog.Watch inner = RuleWatchdog.watch(TimeUnit.MILLISECONDS.toNanos(1));
+        Thread.sleep(20);
+        Assert.assertTrue(RuleWatchdog.isCurrentWatchExpired());
+        Assert.assertTrue(inner.stop());
+        Assert.assertFalse(RuleWatchdog.isCurrentWatchExpired());
+        Assert.assertFalse(outer.stop());
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+
+        TestingUtils.unloadValidator("fake-validator");
+    }
+
+    private void checkTimeBudgets() throws Exception {
+        ValidationEngine.resetRuleTimeouts();
+
+        EditableRule rule = new EditableRule();
+        rule.setId("looping-rule");
+        rule.setMessage("msg");
+        rule.setValidatorId("fake-validator");
+        rule.setJavaPath("level1");
+        rule.setExpression("while (true) { level1.prop }");
+        ValidationEngine.addRule(rule);
+
+        Map<String, Object> entity = new HashMap<>();
+        entity.put("prop", "0");
+        Validatable validatable = new SimpleMapValidatable("ID", "level1", entity);
+
+        // the rule is interrupted once it exceeds its budget, and reported as a timeout; the other rules are still executed
+        ValidatingContext vContext = new ValidatingContext();
+        vContext.setRuleTimeBudget(50L);
+        vContext.setToExecute(Arrays.asList("looping-rule", "fv-rule1"));
+        entity.put("prop", "1");
+        Collection<RuleFailure> failures = ValidationEngine.validate(validatable, vContext);
+        Assert.assertEquals(2, failures.size());
+        for (RuleFailure failure : failures) {
+            Assert.assertEquals("looping-rule".equals(failure.getRule().getId()), failure.isTimedOut());
+            if (failure.isTimedOut())
+                Assert.assertEquals(ValidationEngine.TIMEOUT_MSG, failure.getMessage());
+        }
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+        Assert.assertEquals(Long.valueOf(1), ValidationEngine.getRuleTimeouts().get("looping-rule"));
+
+        // the validation stops once the budget of the validatable is exceeded
+        vContext = new ValidatingContext();
+        vContext.setRecordTimeBudget(50L);
+        vContext.setToExecute(Collections.singletonList("looping-rule"));
+        failures = ValidationEngine.validate(validatable, vContext);
+        Assert.assertEquals(1, failures.size());
+        Assert.assertTrue(failures.iterator().next().isTimedOut());
+        Assert.assertTrue(vContext.isStopped());
+        Assert.assertEquals(Long.valueOf(2), ValidationEngine.getRuleTimeouts().get("looping-rule"));
+
+        ValidationEngine.resetRuleTimeouts();
+        Assert.assertTrue(ValidationEngine.getRuleTimeouts().isEmpty());
+    }
+
+    @Test
+    public void testMXBean() throws Exception {
+        TestingUtils.loadValidator("fake-validator");
+        ValidationEngine.registerMXBean();
+        ValidationEngine.registerMXBean(); // registering twice is not an issue
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ValidationEngine.MXBEAN_NAME);
+        int numRules = 0;
+        for (Validator v : ValidationEngine.getValidators().values())
+            numRules += v.getRules().size();
+        Assert.assertEquals(ValidationEngine.getValidators().size(), server.getAttribute(name, "NumValidators"));
+        Assert.assertEquals(numRules, server.getAttribute(name, "NumRules"));
+        Assert.assertTrue((Long)server.getAttribute(name, "LastInitializationDuration") >= 0);
+
+        Map<String, Object> entity = new HashMap<>();
+        entity.put("prop", "1");
+        long numValidations = (Long)server.getAttribute(name, "NumValidations");
+        long numFailures = (Long)server.getAttribute(name, "NumFailures");
+        server.invoke(name, "turnStatisticsOn", null, null);
+        Collection<RuleFailure> failures = ValidationEngine.validate(new SimpleMapValidatable("ID", "level1", entity));
+        Assert.assertEquals(numValidations + 1, server.getAttribute(name, "NumValidations"));
+        Assert.assertEquals(numFailures + failures.size(), server.getAttribute(name, "NumFailures"));
+        Assert.assertTrue((Boolean)server.getAttribute(name, "StatisticsOn"));
+        String[] slowestRules = (String[])server.invoke(name, "getSlowestRules", new Object[] {1}, new String[] {int.class.getName()});
+        Assert.assertEquals(1, slowestRules.length);
+        server.invoke(name, "turnStatisticsOff", null, null);
+        Assert.assertFalse(ValidationEngine.isStatisticsOn());
+
+        // the ignore flags can be updated through the interface
+        server.invoke(name, "ignoreRules", new Object[] {"fv-rule1, fv-rule2"}, new String[] {String.class.getName()});
+        Assert.assertTrue(ValidationEngine.getRule("fv-rule1").getIgnored());
+        Assert.assertTrue(ValidationEngine.getRule("fv-rule2").getIgnored());
+        server.invoke(name, "stopIgnoringRules", new Object[] {"fv-rule1,fv-rule2"}, new String[] {String.class.getName()});
+        Assert.assertFalse(ValidationEngine.getRule("fv-rule1").getIgnored());
+
+        ValidationEngine.unregisterMXBean();
+        Assert.assertFalse(server.isRegistered(name));
+        ValidationEngine.unregisterMXBean(); // un-registering twice is not an issue
+
+        TestingUtils.unloadValidator("fake-validator");
+    }
+
+    @Test
+    public void testFailureSink() throws Exception {
+        TestingUtils.loadValidator("fake-validator");
+
+        // the third rule fails for every level3 object
+        Validatable validatable = createLevel1Validatable("ID", 5, "1", "1");
+        List<RuleFailure> expected = new ArrayList<>(ValidationEngine.validate(validatable));
+        Assert.assertEquals(10, expected.size());
+
+        // the failures are reported in the same order, the properties can be read during the call, and they are copied when the failure is detached
+        List<RuleFailure> retained = new ArrayList<>();
+        List<Set<String>> properties = new ArrayList<>();
+        ValidationEngine.validate(validatable, failure -> {
+            properties.add(new HashSet<>(failure.getProperties()));
+            retained.add(failure.detach());
+        });
+        Assert.assertEquals(expected.size(), retained.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).getRule(), retained.get(i).getRule());
+            Assert.assertEquals(expected.get(i).getProperties(), properties.get(i));
+            Assert.assertEquals(expected.get(i).getProperties(), retained.get(i).getProperties());
+        }
+
+        // the properties are a read-only view until the failure is detached
+        ValidationEngine.validate(validatable, failure -> {
+            try {
+                failure.getProperties().add("other");
+                Assert.fail("The properties should be read-only");
+            }
+            catch (UnsupportedOperationException e) {
+                // expected
+            }
+        });
+
+        // the sink only receives the maximum number of failures, even if the children are validated concurrently
+        AtomicInteger count = new AtomicInteger();
+        ValidatingContext vContext = new ValidatingContext();
+        vContext.setMaxFailures(3);
+        ValidationEngine.validate(validatable, vContext, failure -> count.incrementAndGet());
+        Assert.assertEquals(3, count.get());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            count.set(0);
+            vContext.resetFailures();
+            vContext.setIntraRecordPool(pool);
+            ValidationEngine.validate(validatable, vContext, failure -> count.incrementAndGet());
+            Assert.assertEquals(3, count.get());
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        TestingUtils.unloadValidator("fake-validator");
+    }
+
+    @Test
+    public void testRuleOrderingProfile() throws Exception {
+        EditableValidator v = new EditableValidator();
+        v.setId("fvro");
+        ValidationEngine.addValidator(v);
+
+        // the "loop" rule is statically expensive, the "dependent" rule depends on the "base" rule; all the rules fail
+        String[][] definitions = {{"fvro-loop", "def total = 0\nfor (i in 1..10) { for (j in 1..10) { total += i * j } }\nreturn total < 0", null}, {"fvro-simple", "return false",
+                null}, {"fvro-base", "return false", null}, {"fvro-dependent", "return false", "fvro-base"}};
+        addRules(v.getId(), definitions);
+        Validatable validatable = new SimpleMapValidatable("ID", "level1", new HashMap<>());
+
+        // only the static estimates: the expensive rule runs last
+        ValidationEngine.setRuleOrderingProfile(Collections.emptyMap());
+        List<RuleFailure> failures = new ArrayList<>(ValidationEngine.validate(validatable));
+        Assert.assertEquals(3, failures.size());
+        Assert.assertEquals("fvro-loop", failures.get(2).getRule().getId());
+
+        // the profile says the "loop" rule is cheap and the "simple" rule is expensive; the "dependent" rule is the cheapest but it still runs after the "base"
+        // rule (which is not in the profile and gets the average failure rate), and it's skipped since the "base" rule failed
+        Map<String, ValidationEngineStats> profile = new HashMap<>();
+        profile.put("fvro-loop", createProfileStats("fvro-loop", 10L));
+        profile.put("fvro-simple", createProfileStats("fvro-simple", 1000000L));
+        profile.put("fvro-dependent", createProfileStats("fvro-dependent", 1L));
+        ValidationEngine.setRuleOrderingProfile(profile);
+        failures = new ArrayList<>(ValidationEngine.validate(validatable));
+        Assert.assertEquals(3, failures.size());
+        Assert.assertEquals("fvro-base", failures.get(0).getRule().getId());
+        Assert.assertEquals("fvro-loop", failures.get(1).getRule().getId());
+        Assert.assertEquals("fvro-simple", failures.get(2).getRule().getId());
+
+        // the profile survives a round-trip
+        StringWriter writer = new StringWriter();
+        ValidationEngine.writeRuleProfile(ValidationEngine.getRuleOrderingProfile(), writer);
+        Map<String, ValidationEngineStats> loadedProfile = ValidationEngine.readRuleProfile(new StringReader(writer.toString()));
+        Assert.assertEquals(profile.keySet(), loadedProfile.keySet());
+        for (ValidationEngineStats stats : profile.values()) {
+            ValidationEngineStats loadedStats = loadedProfile.get(stats.getId());
+            Assert.assertEquals(stats.getNumRun(), loadedStats.getNumRun());
+            Assert.assertEquals(stats.getTotalTimeNanos(), loadedStats.getTotalTimeNanos());
+            Assert.assertEquals(stats.getNumFailures(), loadedStats.getNumFailures());
+        }
+
+        ValidationEngine.setRuleOrderingProfile(null);
+        Assert.assertNull(ValidationEngine.getRuleOrderingProfile());
+        Assert.assertEquals(3, ValidationEngine.validate(validatable).size());
+
+        TestingUtils.unloadValidator("fvro");
+    }
+
+    @Test
+    public void testRevalidate() throws Exception {
+        EditableValidator v = new EditableValidator();
+        v.setId("fvrv");
+        ValidationEngine.addValidator(v);
+
+        // each rule checks one property, the third rule depends on the second one
+        String[][] definitions = {{"fvrv-rule1", "return level1.a != 'X'", null}, {"fvrv-rule2", "return level1.b != 'X'", null}, {"fvrv-rule3", "return level1.c != 'X'",
+                "fvrv-rule2"}};
+        addRules(v.getId(), definitions);
+
+        Map<String, Object> entity = new HashMap<>();
+        entity.put("a", "X");
+        entity.put("b", "Y");
+        entity.put("c", "X");
+        Validatable validatable = new SimpleMapValidatable("ID", "level1", entity);
+        Collection<RuleFailure> failures = ValidationEngine.validate(validatable);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("fvrv-rule1", "fvrv-rule3")), getFailedRuleIds(failures));
+        RuleFailure rule1Failure = failures.stream().filter(f -> "fvrv-rule1".equals(f.getRule().getId())).findFirst().orElseThrow(IllegalStateException::new);
+
+        // changing "b" re-executes the second rule and the rule depending on it, the failure of the first rule is kept as-is
+        entity.put("b", "X");
+        failures = ValidationEngine.revalidate(validatable, failures, Collections.singleton("level1.b"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("fvrv-rule1", "fvrv-rule2")), getFailedRuleIds(failures));
+        Assert.assertSame(rule1Failure, failures.iterator().next());
+        Assert.assertEquals(getFailedRuleIds(ValidationEngine.validate(validatable)), getFailedRuleIds(failures));
+
+        // the third rule depends on the second one, so the second one is also re-executed when "c" changes
+        entity.put("b", "Y");
+        failures = ValidationEngine.revalidate(validatable, failures, Collections.singleton("level1.c"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("fvrv-rule1", "fvrv-rule3")), getFailedRuleIds(failures));
+
+        // an unrelated property doesn't re-execute anything, a parent property re-executes all the rules using it
+        entity.put("a", "Z");
+        Assert.assertEquals(getFailedRuleIds(failures), getFailedRuleIds(ValidationEngine.revalidate(validatable, failures, Collections.singleton("level1.other"))));
+        failures = ValidationEngine.revalidate(validatable, failures, Collections.singleton("level1"));
+        Assert.assertEquals(Collections.singleton("fvrv-rule3"), getFailedRuleIds(failures));
+
+        // the index belongs to the engine state, modifying a rule without going through the engine doesn't affect it
+        ValidationEngine.getRule("fvrv-rule1").setExpression("return level1.z != 'X'");
+        entity.put("a", "X");
+        failures = ValidationEngine.revalidate(validatable, failures, Collections.singleton("level1.a"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("fvrv-rule1", "fvrv-rule3")), getFailedRuleIds(failures));
+
+        TestingUtils.unloadValidator("fvrv");
+    }
+
+    @Test
+    public void testBatchCompilation() throws Exception {
+        Validator v = XmlValidatorFactory.loadValidatorFromXml(Thread.currentThread().getContextClassLoader().getResource("fake-validator.xml"));
+
+        // all the expressions are compiled at once, and their classes are defined in a single class loader
+        BatchCompiler compiler = BatchCompiler.compile(v, 2);
+        Class<?> ruleClass = compiler.getScriptClass(v.getRule("fv-rule1").getExpression(), false);
+        Class<?> conditionClass = compiler.getScriptClass(v.getCondition("fv-condition").getExpression(), false);
+        Assert.assertNotNull(ruleClass);
+        Assert.assertNotNull(conditionClass);
+        Assert.assertSame(ruleClass.getClassLoader(), conditionClass.getClassLoader());
+        Assert.assertNull(compiler.getScriptClass(v.getRule("fv-rule1").getExpression(), true));
+
+        // an expression that can be parsed but not compiled is left out of the batch, the other expressions are still compiled
+        Rule bad = new Rule();
+        bad.setId("fv-bad");
+        bad.setJavaPath("level1");
+        bad.setExpression("def x = 1\ndef x = 2\nreturn true");
+        bad.setValidator(v);
+        Set<Rule> rules = new HashSet<>(v.getRules());
+        rules.add(bad);
+        v.setRules(rules);
+        compiler = BatchCompiler.compile(v, 1);
+        Assert.assertNull(compiler.getScriptClass(bad.getExpression(), false));
+        Assert.assertNotNull(compiler.getScriptClass(v.getRule("fv-rule1").getExpression(), false));
+
+        // and its error is reported the same way with or without the batch compilation
+        String batchError = null, error = null;
+        try {
+            ValidationEngine.initialize(v);
+        }
+        catch (ConstructionException e) {
+            batchError = e.getMessage();
+        }
+        ValidationEngine.disableBatchCompilation();
+        try {
+            ValidationEngine.initialize(v);
+        }
+        catch (ConstructionException e) {
+            error = e.getMessage();
+        }
+        finally {
+            ValidationEngine.enableBatchCompilation();
+        }
+        Assert.assertNotNull(batchError);
+        Assert.assertEquals(error, batchError);
+
+        ValidationEngine.initialize();
+    }
+
+    @Test
+    public void testFusedCompilation() throws Exception {
+        Validator v = new Validator();
+        v.setId("fvfc");
+        String[][] definitions = {{"fvfc-simple", "return level1.a != 'X'"}, {"fvfc-same", "return level1.a != 'X'"}, {"fvfc-local", "def x = level1.b\nreturn x != 'X'"},
+                {"fvfc-closure", "return ['X', 'Y'].every { it != level1.c }"}, {"fvfc-binding", "Functions.forceFailureOnProperty(binding, 'level1.d')\nreturn level1.d != 'X'"},
+                {"fvfc-method", "def check(v) { v != 'X' }\nreturn check(level1.e)"}, {"fvfc-error", "return level1.missing.size() > 0"}};
+        Set<Rule> rules = createRules(v, "message ${level1.a}", definitions);
+        v.setRules(rules);
+
+        // the rules are fused, except the one declaring a method; rules with the same expression share the same method
+        BatchCompiler compiler = BatchCompiler.compile(v, 1, true);
+        Assert.assertNotNull(compiler.getFusedEdit(v.getRule("fvfc-simple")));
+        Assert.assertEquals(compiler.getFusedEdit(v.getRule("fvfc-simple")).getIndex(), compiler.getFusedEdit(v.getRule("fvfc-same")).getIndex());
+        Assert.assertNotNull(compiler.getFusedEdit(v.getRule("fvfc-closure")));
+        Assert.assertNull(compiler.getFusedEdit(v.getRule("fvfc-method")));
+        Assert.assertNotNull(compiler.getScriptClass(v.getRule("fvfc-method").getExpression(), false));
+        Assert.assertNull(BatchCompiler.compile(v, 1).getFusedEdit(v.getRule("fvfc-simple")));
+
+        // a rule that doesn't compile in the fused class is left out, the other rules are still fused
+        Rule bad = new Rule();
+        bad.setId("fvfc-bad");
+        bad.setJavaPath("level1");
+        bad.setExpression("def x = 1\ndef x = 2\nreturn true");
+        bad.setValidator(v);
+        Set<Rule> withBad = new HashSet<>(rules);
+        withBad.add(bad);
+        v.setRules(withBad);
+        compiler = BatchCompiler.compile(v, 1, true);
+        Assert.assertNull(compiler.getFusedEdit(bad));
+        Assert.assertNotNull(compiler.getFusedEdit(v.getRule("fvfc-local")));
+        v.setRules(rules);
+
+        // the fused rules report exactly the same failures
+        Map<String, Object> entity = new HashMap<>();
+        entity.put("a", "X");
+        entity.put("b", "X");
+        entity.put("c", "Y");
+        entity.put("d", "X");
+        entity.put("e", "X");
+        Validatable validatable = new SimpleMapValidatable("ID", "level1", entity);
+        ValidationEngine.initialize(v);
+        List<String> expected = new ArrayList<>();
+        for (RuleFailure failure : ValidationEngine.validate(validatable))
+            expected.add(failure.getRule().getId() + "|" + failure.getMessage() + "|" + failure.getProperties() + "|" + (failure.getGroovyException() != null));
+        ValidationEngine.enableFusedCompilation();
+        try {
+            ValidationEngine.initialize(v);
+            List<String> actual = new ArrayList<>();
+            for (RuleFailure failure : ValidationEngine.validate(validatable))
+                actual.add(failure.getRule().getId() + "|" + failure.getMessage() + "|" + failure.getProperties() + "|" + (failure.getGroovyException() != null));
+            Collections.sort(expected);
+            Collections.sort(actual);
+            Assert.assertEquals(7, actual.size());
+            Assert.assertEquals(expected, actual);
+        }
+        finally {
+            ValidationEngine.disableFusedCompilation();
+        }
+
+        ValidationEngine.initialize();
+    }
+
+    @Test
+    public void testLazyCompilation() throws Exception {
+        Validator v = new Validator();
+        v.setId("fvlc");
+        String[][] definitions = {{"fvlc-rule1", "return level1.a != 'X'"}, {"fvlc-rule2", "return level1.b != 'X'"}, {"fvlc-bad", "def x = 1\ndef x = 2\nreturn true"}};
+        v.setRules(createRules(v, "message", definitions));
+
+        Map<String, Object> entity = new HashMap<>();
+        entity.put("a", "X");
+        entity.put("b", "Y");
+        Validatable validatable = new SimpleMapValidatable("ID", "level1", entity);
+
+        // the copies of a lazily created rule share its compilation, unless their expression is changed
+        Rule rule1 = v.getRule("fvlc-rule1");
+        ExecutableRule lazyRule = new ExecutableRule(rule1, null, true);
+        ExecutableRule copy = new ExecutableRule(lazyRule);
+        ExecutableRule modifiedCopy = new ExecutableRule(lazyRule);
+        modifiedCopy.setExpression("return level1.b != 'X'");
+        Assert.assertTrue(copy.isCompilationPending());
+        Assert.assertFalse(modifiedCopy.isCompilationPending());
+        copy.compile();
+        Assert.assertFalse(lazyRule.isCompilationPending());
+        Binding binding = new Binding();
+        binding.setVariable("level1", entity);
+        Assert.assertFalse(lazyRule.validate(validatable, binding));
+        Assert.assertFalse(copy.validate(validatable, binding));
+        Assert.assertTrue(modifiedCopy.validate(validatable, binding));
+
+        ValidationEngine.enableLazyCompilation(0);
+        try {
+            // the validator loads even if one of its rules doesn't compile; the rules are compiled when they first run
+            ValidationEngine.initialize(v);
+            Assert.assertEquals(3, ValidationEngine.getNumPendingCompilations());
+            ValidatingContext vContext = new ValidatingContext();
+            vContext.setToExecute(Collections.singletonList("fvlc-rule1"));
+            Collection<RuleFailure> failures = ValidationEngine.validate(validatable, vContext);
+            Assert.assertEquals(Collections.singleton("fvlc-rule1"), getFailedRuleIds(failures));
+            Assert.assertEquals(2, ValidationEngine.getNumPendingCompilations());
+
+            // the compilation error is reported when the rule runs, and by awaitFullCompilation()
+            failures = ValidationEngine.validate(validatable);
+            Assert.assertEquals(new HashSet<>(Arrays.asList("fvlc-rule1", "fvlc-bad")), getFailedRuleIds(failures));
+            RuleFailure badFailure = failures.stream().filter(f -> "fvlc-bad".equals(f.getRule().getId())).findFirst().orElseThrow(IllegalStateException::new);
+            Assert.assertNotNull(badFailure.getGroovyException());
+            Assert.assertEquals(0, ValidationEngine.getNumPendingCompilations());
+            try {
+                ValidationEngine.awaitFullCompilation();
+                Assert.fail("Was expecting an exception");
+            }
+            catch (ConstructionException e) {
+                Assert.assertTrue(e.getMessage().contains("fvlc-bad"));
+            }
+
+            // with background threads, all the rules end up compiled
+            v.setRules(v.getRules().stream().filter(r -> !"fvlc-bad".equals(r.getId())).collect(Collectors.toSet()));
+            ValidationEngine.enableLazyCompilation(2);
+            ValidationEngine.initialize(v);
+            ValidationEngine.awaitFullCompilation();
+            Assert.assertEquals(0, ValidationEngine.getNumPendingCompilations());
+            Assert.assertEquals(Collections.singleton("fvlc-rule1"), getFailedRuleIds(ValidationEngine.validate(validatable)));
+        }
+        finally {
+            ValidationEngine.disableLazyCompilation();
+        }
+
+        ValidationEngine.initialize();
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        Validator v = XmlValidatorFactory.loadValidatorFromXml(Thread.currentThread().getContextClassLoader().getResource("fake-validator.xml"));
+
+        // the warm-up runs the rules (and compiles them if they are lazily compiled) but doesn't affect the statistics
+        ValidationEngine.enableLazyCompilation(0);
+        try {
+            ValidationEngine.initialize(v);
+        }
+        finally {
+            ValidationEngine.disableLazyCompilation();
+        }
+        Assert.assertFalse(ValidationEngine.isWarmedUp());
+        ValidationEngine.resetStats();
+        ValidationEngine.turnStatisticsOn();
+        try {
+            Assert.assertTrue(ValidationEngine.warmUp(10, 0) >= 10);
+            Assert.assertTrue(ValidationEngine.isWarmedUp());
+            Assert.assertTrue(ValidationEngine.getStats().isEmpty());
+            Assert.assertTrue(ValidationEngine.getNumPendingCompilations() < v.getRules().size());
+        }
+        finally {
+            ValidationEngine.turnStatisticsOff();
+        }
+
+        // re-loading the engine resets the warmed-up flag, and a warm-up that doesn't validate anything doesn't set it
+        ValidationEngine.initialize(v);
+        Assert.assertFalse(ValidationEngine.isWarmedUp());
+        Assert.assertEquals(0, ValidationEngine.warmUp(0, 10));
+        Assert.assertFalse(ValidationEngine.isWarmedUp());
+        Assert.assertTrue(ValidationEngine.warmUp(1, 10000) > 0);
+        Assert.assertTrue(ValidationEngine.isWarmedUp());
+        try {
+            ValidationEngine.warmUp(-1, 0);
+            Assert.fail("Was expecting an exception");
+        }
+        catch (RuntimeException e) {
+            // expected
+        }
+
+        // an uninitialized engine is never warmed up
+        ValidationEngine.uninitialize();
+        Assert.assertEquals(0, ValidationEngine.warmUp(10, 0));
+        Assert.assertFalse(ValidationEngine.isWarmedUp());
+
+        ValidationEngine.initialize();
+    }
+
+    @Test
+    public void testExpressionAnalysis() throws Exception {
+
+        // setting an invalid expression on a rule still fails right away, unless its analysis is deferred to its compilation
+        Rule rule = new Rule();
+        rule.setId("fv-analysis");
+        try {
+            rule.setExpression("!@$%^");
+            Assert.fail("Was expecting an exception");
+        }
+        catch (ConstructionException e) {
+            // expected
+        }
+        rule.setUnanalyzedExpression("!@$%^");
+        Assert.assertTrue(rule.getRawProperties().isEmpty());
+        try {
+            new ExecutableRule(rule);
+            Assert.fail("Was expecting an exception");
+        }
+        catch (ConstructionException e) {
+            // expected
+        }
+
+        // an analyzer added to a compilation gathers the properties and the cost from the AST built to compile the expression, without parsing it again
+        String expression = "return level1.prop != Context.FV_CONTEXT1 && level1.otherProp != null";
+        TestingUtils.clearParsedExpressions();
+        ExpressionAnalyzer analyzer = new ExpressionAnalyzer();
+        CompiledScriptsCache.getScriptClass(expression, false, analyzer);
+        Set<String> properties = new HashSet<>();
+        Set<String> contextEntries = new HashSet<>();
+        Assert.assertTrue(analyzer.analyze("rule", expression, properties, contextEntries, null));
+        rule.setUnanalyzedExpression(expression);
+        rule.analyzeExpression(analyzer);
+        ExecutableRule execRule = new ExecutableRule(rule);
+        long cost = execRule.getStaticCost();
+        Assert.assertEquals(Collections.emptyList(), TestingUtils.getParsedExpressions());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("level1.prop", "level1.otherProp")), properties);
+        Assert.assertTrue(contextEntries.contains("FV_CONTEXT1"));
+        Assert.assertEquals(properties, rule.getRawProperties());
+        Assert.assertEquals(contextEntries, rule.getPotentialContextEntries());
+        Assert.assertEquals(RuleOrderer.estimateCost(expression), cost);
+
+        // the analyses belong to the analyzer, an expression it didn't compile is parsed (only once)
+        TestingUtils.clearParsedExpressions();
+        analyzer = new ExpressionAnalyzer();
+        properties.clear();
+        Assert.assertFalse(analyzer.analyze("rule", expression, properties, null, null));
+        Assert.assertTrue(analyzer.analyze("rule", expression, properties, null, null));
+        Assert.assertEquals(rule.getRawProperties(), properties);
+        Assert.assertEquals(Collections.singletonList(expression), TestingUtils.getParsedExpressions());
+
+        // loading and initializing a validator doesn't parse the rule and condition expressions, they are analyzed while they are compiled
+        TestingUtils.clearParsedExpressions();
+        Validator v = XmlValidatorFactory.loadValidatorFromXml(Thread.currentThread().getContextClassLoader().getResource("fake-validator.xml"));
+        ValidationEngine.initialize(v);
+        ValidationEngine.setRuleOrderingProfile(Collections.emptyMap());
+        Set<String> expressions = new HashSet<>();
+        v.getRules().forEach(r -> expressions.add(r.getExpression()));
+        v.getConditions().forEach(c -> expressions.add(c.getExpression()));
+        for (String parsed : TestingUtils.getParsedExpressions())
+            Assert.assertFalse(parsed, expressions.contains(parsed));
+        for (Rule r : v.getRules()) {
+            properties.clear();
+            ValidatorServices.getInstance().parseExpression("rule", r.getExpression(), properties, null, null);
+            Assert.assertEquals(properties, ValidationEngine.getRule(r.getId()).getRawProperties());
+        }
+
+        // updating a rule doesn't parse its new expression either, the raw rule gets the properties gathered while compiling it
+        TestingUtils.clearParsedExpressions();
+        EditableRule editableRule = new EditableRule(ValidationEngine.getRule("fv-rule1"));
+        editableRule.setExpression("return level1.otherProp != null");
+        ValidationEngine.updateRule(editableRule);
+        Assert.assertEquals(Collections.emptyList(), TestingUtils.getParsedExpressions());
+        Assert.assertEquals(Collections.singleton("level1.otherProp"), ValidationEngine.getRule("fv-rule1").getRawProperties());
+
+        // with the fused compilation, the expressions are parsed once to check whether they can be fused, and that analysis is re-used
+        ValidationEngine.enableFusedCompilation();
+        try {
+            TestingUtils.clearParsedExpressions();
+            v = XmlValidatorFactory.loadValidatorFromXml(Thread.currentThread().getContextClassLoader().getResource("fake-validator.xml"));
+            ValidationEngine.initialize(v);
+            ValidationEngine.setRuleOrderingProfile(Collections.emptyMap());
+            List<String> parsed = TestingUtils.getParsedExpressions();
+            for (Rule r : v.getRules())
+                Assert.assertTrue(r.getId(), parsed.indexOf(r.getExpression()) == parsed.lastIndexOf(r.getExpression()));
+        }
+        finally {
+            ValidationEngine.disableFusedCompilation();
+        }
+
+        ValidationEngine.setRuleOrderingProfile(null);
+        ValidationEngine.initialize();
+    }
+
+    private void addRules(String validatorId, String[][] definitions) throws Exception {
+        for (String[] definition : definitions) {
+            EditableRule r = new EditableRule();
+            r.setId(definition[0]);
+            r.setJavaPath("level1");
+            r.setExpression(definition[1]);
+            r.setMessage("message");
+            r.setValidatorId(validatorId);
+            if (definition[2] != null)
+                r.setDependencies(Collections.singleton(definition[2]));
+            ValidationEngine.addRule(r);
+        }
+    }
+
+    private Set<Rule> createRules(Validator v, String message, String[][] definitions) throws Exception {
+        Set<Rule> rules = new HashSet<>();
+        for (String[] definition : definitions) {
+            Rule r = new Rule();
+            r.setId(definition[0]);
+            r.setJavaPath("level1");
+            r.setExpression(definition[1]);
+            r.setMessage(message);
+            r.setValidator(v);
+            rules.add(r);
+        }
+        return rules;
+    }
+
+    private Validatable createLevel1Validatable(String id, int numLevel2, String... level3Props) {
+        return createLevel1Validatable(id, numLevel2, null, level3Props);
+    }
+
+    private Validatable createLevel1Validatable(String id, int numLevel2, IntFunction<String> level2Prop2, String... level3Props) {
+        List<Map<String, Object>> level2List = new ArrayList<>();
+        for (int i = 0; i < numLevel2; i++) {
+            List<Map<String, Object>> level3List = new ArrayList<>();
+            for (String prop : level3Props) {
+                Map<String, Object> level3 = new HashMap<>();
+                level3.put("prop", prop);
+                level3List.add(level3);
+            }
+            Map<String, Object> level2 = new HashMap<>();
+            if (level2Prop2 != null)
+                level2.put("prop2", level2Prop2.apply(i));
+            level2.put("level3", level3List);
+            level2List.add(level2);
+        }
+        Map<String, Object> entity = new HashMap<>();
+        entity.put("level2", level2List);
+        return new SimpleMapValidatable(id, "level1", entity);
+    }
+
+    private Set<String> getFailedRuleIds(Collection<RuleFailure> failures) {
+        return failures.stream().map(f -> f.getRule().getId()).collect(Collectors.toSet());
+    }
+
+    private ValidationEngineStats createProfileStats(String id, long averageTimeNanos) {
+        ValidationEngineStats stats = new ValidationEngineStats(id);
+        stats.setNumRun(100L);
+        stats.setTotalTimeNanos(100 * averageTimeNanos);
+        stats.setNumFailures(100L);
+        return stats;
+    }
+
+    private void runValidations(List<Validatable> validatables, int numThreads, int numIterations) throws Exception {
+        ExecutorService service = Executors.newFixedThreadPool(numThreads);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int thread = 0; thread < numThreads; thread++) {
+            futures.add(service.submit(() -> {
+                for (int iteration = 0; iteration < numIterations; iteration++) {
+                    for (int i = 0; i < validatables.size(); i++) {
+                        Collection<RuleFailure> failures = ValidationEngine.validate(validatables.get(i));
+                        if (i % 2 == 0)
+                            TestingUtils.assertEditFailure(failures, "fv-rule3");
+                        else
+                            TestingUtils.assertNoEditFailure(failures, "fv-rule3");
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<Void> future : futures)
+            future.get();
+        service.shutdown();
+    }
+
     @Test
     public void testModifySets() {
         Assert.assertTrue(true);
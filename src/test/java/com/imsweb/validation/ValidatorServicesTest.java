@@ -4,16 +4,24 @@
 package com.imsweb.validation;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.codehaus.groovy.control.CompilationFailedException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import groovy.lang.Binding;
+import groovy.lang.Script;
+
+import com.imsweb.validation.entities.Rule;
+import com.imsweb.validation.entities.RuleFailure;
 import com.imsweb.validation.entities.SimpleMapValidatable;
 import com.imsweb.validation.entities.Validatable;
+import com.imsweb.validation.internal.MessageTemplate;
 
 /**
  * Created on Feb 24, 2011 by depryf
@@ -63,6 +71,46 @@ public class ValidatorServicesTest {
         Assert.assertNotNull(ValidatorServices.getInstance().getAllJavaPaths());
     }
 
+    @Test
+    public void testGetAliasType() {
+        Assert.assertEquals(List.class, ValidatorServices.getInstance().getAliasType("lines"));
+        Assert.assertEquals(Map.class, ValidatorServices.getInstance().getAliasType("line"));
+        Assert.assertEquals(Map.class, ValidatorServices.getInstance().getAliasType("record"));
+        Assert.assertNull(ValidatorServices.getInstance().getAliasType("level1"));
+        Assert.assertNull(ValidatorServices.getInstance().getAliasType("something"));
+    }
+
+    @Test
+    public void testStaticCompilation() {
+        String expression = "line.primarySite == 'C123' && Functions.asInt(line.count) == 5 && Context.TEST_CONTEXT.contains(lines.size())";
+
+        Map<String, Object> line = new HashMap<>();
+        line.put("primarySite", "C123");
+        line.put("count", "5");
+        Binding binding = new Binding();
+        binding.setVariable(ValidationEngine.VALIDATOR_FUNCTIONS_KEY, ValidatorContextFunctions.getInstance());
+        binding.setVariable(ValidationEngine.VALIDATOR_CONTEXT_KEY, Collections.singletonMap("TEST_CONTEXT", Collections.singletonList(1)));
+        binding.setVariable("lines", Collections.singletonList(line));
+        binding.setVariable("line", line);
+
+        // the static and dynamic versions of the expression should return the same thing
+        for (boolean useStaticCompilation : new boolean[] {true, false}) {
+            Script script = ValidatorServices.getInstance().compileExpression(expression, useStaticCompilation);
+            script.setBinding(binding);
+            Assert.assertEquals(Boolean.TRUE, script.run());
+        }
+
+        // an expression that doesn't type-check can't be statically compiled
+        ValidatorServices.getInstance().compileExpression("int i = 'ABC'; return true", false);
+        try {
+            ValidatorServices.getInstance().compileExpression("int i = 'ABC'; return true", true);
+            Assert.fail("Was expecting an exception");
+        }
+        catch (CompilationFailedException e) {
+            // expected
+        }
+    }
+
     /**
      * Created on Aug 27, 2010 by depryf
      */
@@ -267,6 +315,31 @@ public class ValidatorServicesTest {
         Assert.assertEquals("Wrong date (Y:2011 M:06 D:)!!!", ValidatorServices.getInstance().fillInMessage("Wrong date (${line.dateOfDiagnosisMinusDay.formatDate()})!!!", v));
         Assert.assertEquals("Wrong date (Y:2011 M:   D:)!!!", ValidatorServices.getInstance().fillInMessage("Wrong date (${line.dateOfDiagnosisMinusDayMonth.formatDate()})!!!", v));
         Assert.assertEquals("Wrong date (Y:     M:   D:)!!!", ValidatorServices.getInstance().fillInMessage("Wrong date (${line.dateOfDiagnosisBlank.formatDate()})!!!", v));
+
+        // tags without a property are not replaced
+        Assert.assertEquals("Something ${line} and 1", ValidatorServices.getInstance().fillInMessage("Something ${line} and ${line.vitalStatus}", v));
+
+        // objects that are not maps are read through their declared fields
+        Validatable v2 = new SimpleMapValidatable("TEST", "line", map, Collections.singletonMap("obj", new MessageObject("VALUE")));
+        Assert.assertEquals("Value is VALUE, other is <ERROR>", ValidatorServices.getInstance().fillInMessage("Value is ${obj._value}, other is ${obj._other}", v2));
+        Assert.assertEquals("Value is VALUE", ValidatorServices.getInstance().fillInMessage("Value is ${obj._value}", v2));
+
+        // the values are read when the message of a failure is filled in, but the message is formatted only when it's requested
+        RuleFailure failure = new RuleFailure(new Rule(), "", v);
+        MessageTemplate.compile("Value of ${line.vitalStatus}").fill(failure, v);
+        map.put("vitalStatus", "2");
+        Assert.assertEquals("Value of 1", failure.getMessage());
+        Assert.assertTrue(MessageTemplate.isDefaultFilling(ValidatorServices.getInstance()));
+    }
+
+    private static class MessageObject {
+
+        @SuppressWarnings("unused")
+        private String _value;
+
+        MessageObject(String value) {
+            _value = value;
+        }
     }
 
     @Test
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import groovy.lang.Binding;
+import groovy.lang.Script;
+
+import com.imsweb.validation.TestingUtils;
+
+public class CompiledScriptsCacheTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        TestingUtils.init();
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        File dir = new File(_folder.getRoot(), "cache");
+        CompiledScriptsCache cache = new CompiledScriptsCache(dir);
+        Assert.assertTrue(dir.isDirectory());
+
+        // the closure is compiled into its own class, it needs to be cached with the script class
+        String expression = "return values.findAll { it > 1 }.size() == 2";
+
+        // first call compiles the expression and writes the entry, second call defines the class from the entry
+        Class<? extends Script> compiledClass = cache.load(expression, false);
+        File[] files = dir.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(1, files.length);
+        Class<? extends Script> cachedClass = cache.load(expression, false);
+        Assert.assertNotSame(compiledClass, cachedClass);
+        Assert.assertEquals(compiledClass.getName(), cachedClass.getName());
+        Assert.assertTrue(run(cachedClass));
+
+        // a different expression or compilation mode uses a different entry
+        cache.load(expression, true);
+        cache.load("return false", false);
+        Assert.assertEquals(3, dir.listFiles().length);
+
+        // a corrupted entry is re-created
+        Files.write(files[0].toPath(), "corrupted".getBytes(StandardCharsets.US_ASCII));
+        Assert.assertTrue(run(cache.load(expression, false)));
+        Assert.assertTrue(run(cache.load(expression, false)));
+        Assert.assertTrue(files[0].length() > "corrupted".length());
+
+        // same thing with a valid magic number but corrupted counts and lengths (they would otherwise fail the allocation of the bytecode)
+        byte[] content = Files.readAllBytes(files[0].toPath());
+        int lengthOffset = 8 + 2 + ByteBuffer.wrap(content, 8, 2).getShort();
+        for (int[] corruption : new int[][] {{lengthOffset, Integer.MAX_VALUE}, {lengthOffset, -5}, {4, Integer.MAX_VALUE}, {4, -1}}) {
+            byte[] corrupted = content.clone();
+            ByteBuffer.wrap(corrupted).putInt(corruption[0], corruption[1]);
+            Files.write(files[0].toPath(), corrupted);
+            Assert.assertTrue(run(cache.load(expression, false)));
+            Assert.assertFalse(Arrays.equals(corrupted, Files.readAllBytes(files[0].toPath())));
+            Assert.assertTrue(run(cache.load(expression, false)));
+        }
+    }
+
+    private static boolean run(Class<? extends Script> scriptClass) throws Exception {
+        Script script = scriptClass.newInstance();
+        Binding binding = new Binding();
+        binding.setVariable("values", Arrays.asList(1, 2, 3));
+        script.setBinding(binding);
+        return (Boolean)script.run();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.imsweb.validation.ValidationEngineStats;
+import com.imsweb.validation.ValidationEngineStatsSnapshot;
+
+public class StatsRecorderTest {
+
+    @Test
+    public void testBuckets() {
+        // the small values have their own bucket
+        for (long value = 0; value < 8; value++) {
+            Assert.assertEquals(value, StatsRecorder.getBucketIndex(value));
+            Assert.assertEquals(value, StatsRecorder.getBucketUpperBound((int)value));
+        }
+
+        // the other values fall in a bucket whose width is at most 1/8th of its values
+        long previousUpperBound = 7;
+        for (int index = 8; index <= StatsRecorder.getBucketIndex(Long.MAX_VALUE); index++) {
+            long upperBound = StatsRecorder.getBucketUpperBound(index);
+            Assert.assertEquals(index, StatsRecorder.getBucketIndex(previousUpperBound + 1));
+            Assert.assertEquals(index, StatsRecorder.getBucketIndex(upperBound));
+            Assert.assertTrue(upperBound - previousUpperBound <= (previousUpperBound + 1) / 8 + 1);
+            previousUpperBound = upperBound;
+        }
+        Assert.assertEquals(Long.MAX_VALUE, previousUpperBound);
+        Assert.assertEquals(0, StatsRecorder.getBucketIndex(-1));
+    }
+
+    @Test
+    public void testSnapshot() {
+        StatsRecorder.reset();
+        for (long i = 1; i <= 1000; i++)
+            StatsRecorder.ruleExecuted("rule", i * 1000, i % 4 == 0);
+        StatsRecorder.conditionExecuted("condition", 5);
+
+        ValidationEngineStats stats = StatsRecorder.snapshot(false).getRuleStats().get("rule");
+        Assert.assertEquals(1000, stats.getNumRun());
+        Assert.assertEquals(500500000L, stats.getTotalTimeNanos());
+        Assert.assertEquals(1000L, stats.getShortestTimeNanos());
+        Assert.assertEquals(1000000L, stats.getLongestTimeNanos());
+        Assert.assertEquals(1L, stats.getLongestTime().longValue());
+        Assert.assertEquals(500500L, stats.getAverageTimeNanos());
+        Assert.assertEquals(250L, stats.getNumFailures());
+        Assert.assertEquals(0.25, stats.getFailureRate(), 0.0001);
+        Assert.assertEquals(500000, stats.getP50Nanos(), 500000 / 8);
+        Assert.assertEquals(990000, stats.getP99Nanos(), 990000 / 8);
+        Assert.assertEquals(999000, stats.getP999Nanos(), 999000 / 8);
+
+        // resetting as part of the snapshot keeps the recorded runs in the snapshot
+        ValidationEngineStatsSnapshot snapshot = StatsRecorder.snapshot(true);
+        Assert.assertEquals(1000, snapshot.getRuleStats().get("rule").getNumRun());
+        Assert.assertEquals(5L, snapshot.getConditionStats().get("condition").getP50Nanos());
+        Assert.assertTrue(StatsRecorder.snapshot(false).getRuleStats().isEmpty());
+        Assert.assertTrue(StatsRecorder.snapshot(false).getConditionStats().isEmpty());
+    }
+}
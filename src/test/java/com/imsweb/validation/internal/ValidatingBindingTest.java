@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 Information Management Services, Inc.
+ */
+package com.imsweb.validation.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import groovy.lang.MissingPropertyException;
+
+public class ValidatingBindingTest {
+
+    @Test
+    public void testLayers() {
+        Map<String, Object> base = new HashMap<>();
+        base.put("ctx1", "base-value1");
+        base.put("ctx2", "base-value2");
+        base = Collections.unmodifiableMap(base);
+
+        ValidatingBinding binding = new ValidatingBinding();
+        binding.reset(base, Collections.singletonMap("ctx2", "scope-value2"));
+
+        // the overlay takes precedence on the base
+        Assert.assertEquals("base-value1", binding.getVariable("ctx1"));
+        Assert.assertEquals("scope-value2", binding.getVariable("ctx2"));
+        Assert.assertTrue(binding.hasVariable("ctx1"));
+        Assert.assertFalse(binding.hasVariable("other"));
+        Assert.assertEquals(2, binding.getVariables().size());
+
+        // writing never modifies the base, even a null value hides the base value
+        binding.setVariable("ctx1", null);
+        binding.setVariable("other", "other-value");
+        Assert.assertNull(binding.getVariable("ctx1"));
+        Assert.assertEquals("other-value", binding.getVariable("other"));
+        Assert.assertEquals("base-value1", base.get("ctx1"));
+
+        // resetting the binding discards the written variables
+        binding.reset(base, Collections.emptyMap());
+        Assert.assertEquals("base-value1", binding.getVariable("ctx1"));
+        Assert.assertEquals("base-value2", binding.getVariable("ctx2"));
+        Assert.assertFalse(binding.hasVariable("other"));
+        try {
+            binding.getVariable("other");
+            Assert.fail("Was expecting an exception");
+        }
+        catch (MissingPropertyException e) {
+            // expected
+        }
+    }
+}